@@ -0,0 +1,72 @@
+package com.schmidt.client.report;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.EpochClock;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.Status;
+
+/**
+ * The client's own work per operation besides the I/O: reporting a chunk
+ * result in either wire protocol to a stream that discards it, and taking
+ * a resource status.  Compare with {@link com.schmidt.client.test.io.WriteEngineBenchmark}
+ * to see how much of a measured operation is the client.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReporterBenchmark {
+
+	private Reporter binary;
+	private Reporter text;
+	private final ChunkResult result = new ChunkResult();
+	private final ResourceSampler sampler = new ResourceSampler();
+	private final Status status = new Status();
+
+	@Setup
+	public void connect() {
+		binary = new BinaryReporter(OutputStream.nullOutputStream(), "client1");
+		text = new TextReporter(new PrintWriter(OutputStream.nullOutputStream(), true), "client1");
+		result.setOperation(Operation.WRITE);
+		result.setChunkSize(65536);
+		result.setNanos(342000);
+		result.setWriteNanos(40000);
+		result.setFlushNanos(2000);
+		result.setSyncNanos(300000);
+	}
+
+	@Benchmark
+	public void binaryChunkResult() {
+		result.setTimestamp(EpochClock.epochNanos());
+		binary.chunkResult(result);
+	}
+
+	@Benchmark
+	public void textChunkResult() {
+		result.setTimestamp(EpochClock.epochNanos());
+		text.chunkResult(result);
+	}
+
+	@Benchmark
+	public Status sampleStatus() {
+		sampler.sample(status);
+		return status;
+	}
+}
@@ -0,0 +1,65 @@
+package com.schmidt.client.test.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of producing a chunk of test data: building a String, which the
+ * stream engine does per chunk, against filling a reused buffer, which the
+ * channel and mmap engines do once, and stamping the blocks of a generated
+ * payload, which they do before every chunk.  Divide the chunk size by the
+ * stamp time for the rate payloads are produced at.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordsBenchmark {
+
+	@Param({ "4096", "65536", "1048576" })
+	public int chunkSize;
+
+	private ByteBuffer buffer;
+	private ByteBuffer payloadBuffer;
+	private Payload payload;
+
+	@Setup
+	public void allocate() {
+		buffer = ByteBuffer.allocateDirect(chunkSize);
+		payloadBuffer = ByteBuffer.allocateDirect(chunkSize);
+		payload = new Payload(2, 2, 1);
+		payload.fill(payloadBuffer);
+	}
+
+	@Benchmark
+	public String create() {
+		return Records.create(chunkSize);
+	}
+
+	@Benchmark
+	public ByteBuffer fill() {
+		buffer.clear();
+		Records.fill(buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	public ByteBuffer stampPayload() {
+		payload.next(payloadBuffer, chunkSize);
+		return payloadBuffer;
+	}
+}
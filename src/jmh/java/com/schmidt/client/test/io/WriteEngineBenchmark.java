@@ -0,0 +1,83 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.schmidt.protocol.ChunkResult;
+
+/**
+ * Time to write one chunk through each I/O engine, the operation the client
+ * times.  Chunks are written to a test file that is truncated and written
+ * again once it reaches the file size, as the write workload does.  The
+ * directory defaults to the working directory; run with -p engine=direct
+ * -p directory=... to measure O_DIRECT on a file system that supports it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteEngineBenchmark {
+
+	@Param({ Engines.CHANNEL, Engines.MMAP, Engines.STREAM })
+	public String engine;
+
+	@Param({ "4096", "65536", "1048576" })
+	public int chunkSize;
+
+	@Param({ "67108864" })
+	public int fileSize;
+
+	@Param({ "false" })
+	public boolean sync;
+
+	@Param({ "." })
+	public String directory;
+
+	private WriteEngine writer;
+	private File file;
+	private int written;
+	private final ChunkResult result = new ChunkResult();
+
+	@Setup(Level.Trial)
+	public void open() throws IOException {
+		writer = Engines.create(engine, chunkSize, sync);
+		file = new File(directory, "benchmark_" + engine + "_" + chunkSize);
+		writer.open(file);
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws IOException {
+		writer.close();
+		file.delete();
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		if (written >= fileSize) {
+			writer.close();
+			writer.open(file);
+			written = 0;
+		}
+		int length = Math.min(chunkSize, fileSize - written);
+		writer.write(length, result);
+		written += length;
+		return result.getNanos();
+	}
+}
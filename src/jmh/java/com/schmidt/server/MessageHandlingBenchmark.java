@@ -0,0 +1,94 @@
+package com.schmidt.server;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.FrameDecoder;
+import com.schmidt.protocol.FrameEncoder;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.TextFormat;
+import com.schmidt.server.domain.Client;
+import com.schmidt.server.stats.ClientStats;
+import com.schmidt.server.stats.ResultParser;
+
+/**
+ * Server work per chunk result received: parsing a result line, and
+ * handling a result as a line or as binary frames, including recording it
+ * in the client's statistics and rendering and publishing it for echo.  No
+ * clients are registered, so publishing does not queue anything; see
+ * {@link com.schmidt.server.broadcast.BroadcastBenchmark} for the fan out.
+ * Logging is raised to INFO so the appenders are not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageHandlingBenchmark {
+
+	private static final int FRAMES = 100;
+
+	private String line;
+	private ByteBuffer frames;
+	private final ChunkResult parsed = new ChunkResult();
+	private ClientMessageHandler handler;
+	private FrameDecoder decoder;
+
+	@Setup
+	public void prepare() {
+		Logger.getRootLogger().setLevel(Level.INFO);
+
+		ChunkResult result = new ChunkResult();
+		result.setOperation(Operation.WRITE);
+		result.setTimestamp(System.currentTimeMillis() * 1000000L);
+		result.setChunkSize(65536);
+		result.setNanos(342000);
+		result.setWriteNanos(40000);
+		result.setFlushNanos(2000);
+		result.setSyncNanos(300000);
+		line = TextFormat.chunkResult("client1", result);
+
+		frames = ByteBuffer.allocate(FRAMES * FrameEncoder.MAX_FIXED);
+		for (int i = 0; i < FRAMES; i++) {
+			FrameEncoder.chunkResult(frames, result);
+		}
+		frames.flip();
+
+		handler = new ClientMessageHandler(new Client("client1"), new ClientStats("client1"));
+		decoder = new FrameDecoder(handler);
+	}
+
+	@Benchmark
+	public boolean parseLine() {
+		return ResultParser.parse(line, parsed);
+	}
+
+	@Benchmark
+	public void handleLine() {
+		handler.onText(line);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	public void decodeFrames() throws ProtocolException {
+		frames.rewind();
+		decoder.decode(frames);
+	}
+}
@@ -0,0 +1,72 @@
+package com.schmidt.server.broadcast;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.schmidt.server.domain.Client;
+import com.schmidt.server.registry.ClientRegistry;
+
+/**
+ * Publishing one message to every registered client, followed by each
+ * client's writer draining its queue as it would before writing to the
+ * socket.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+	@Param({ "1", "16", "256" })
+	public int clients;
+
+	private Broadcaster broadcaster;
+	private final List<OutboundQueue> queues = new ArrayList<OutboundQueue>();
+	private final List<String> batch = new ArrayList<String>();
+	private String line;
+
+	@Setup
+	public void register() {
+		ClientRegistry registry = new ClientRegistry();
+		Closeable connection = new Closeable() {
+			public void close() {
+			}
+		};
+		for (int i = 0; i < clients; i++) {
+			Client client = new Client("client" + i);
+			OutboundQueue outbound = new OutboundQueue(1024, SlowConsumerPolicy.DROP, connection, null);
+			client.setOutbound(outbound);
+			registry.add(client);
+			queues.add(outbound);
+		}
+		broadcaster = new Broadcaster(registry, true);
+		line = "client1 write chunksize: 65536 time: 342000 write: 40000 flush: 2000 fsync: 300000";
+	}
+
+	@Benchmark
+	public int publish() {
+		broadcaster.publish("client1", line);
+		int drained = 0;
+		for (OutboundQueue outbound : queues) {
+			drained += outbound.drainTo(batch, 64);
+			batch.clear();
+		}
+		return drained;
+	}
+}
@@ -0,0 +1,99 @@
+package com.schmidt.server.log;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.TextFormat;
+
+/**
+ * Messages logged per second: a synchronous log4j call as the connection
+ * threads used to make, a batch put in the ring and written by the drain
+ * the background writer runs, which is the rate the log can sustain, and
+ * the cost to a connection thread when the log is above DEBUG.  The
+ * appender formats with the server's pattern into a writer that discards
+ * the text, so the disk is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageLogBenchmark {
+
+	private static final int BATCH = 512;
+
+	private Logger target;
+	private Logger quiet;
+	private MessageLog messages;
+	private MessageLog disabled;
+	private String line;
+
+	@Setup
+	public void prepare() {
+		Writer discard = new Writer() {
+			public void write(char[] buffer, int offset, int length) {
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		};
+		target = Logger.getLogger("benchmark.messages");
+		target.setAdditivity(false);
+		target.setLevel(Level.DEBUG);
+		target.addAppender(new WriterAppender(new PatternLayout("%d{ISO8601} %-5p [%t] %c - %m%n"), discard));
+		quiet = Logger.getLogger("benchmark.quiet");
+		quiet.setAdditivity(false);
+		quiet.setLevel(Level.INFO);
+
+		messages = new MessageLog(target, BATCH * 2);
+		disabled = new MessageLog(quiet, BATCH);
+
+		ChunkResult result = new ChunkResult();
+		result.setOperation(Operation.WRITE);
+		result.setTimestamp(System.currentTimeMillis() * 1000000L);
+		result.setChunkSize(65536);
+		result.setNanos(342000);
+		line = TextFormat.chunkResult("client1", result);
+	}
+
+	@Benchmark
+	public void direct() {
+		target.debug("Message Recieved from: " + "client1" + " Msg: " + line);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int ringAndWriter() {
+		for (int i = 0; i < BATCH; i++) {
+			messages.received("client1", line);
+		}
+		return messages.drain();
+	}
+
+	@Benchmark
+	public void receivedAboveDebug() {
+		disabled.received("client1", line);
+	}
+}
@@ -0,0 +1,91 @@
+package com.schmidt.server.registry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.schmidt.server.domain.Client;
+
+/**
+ * Registry operations under contention: clients joining and leaving while
+ * other threads iterate the registry to broadcast, and concurrent lookups,
+ * over a registry already holding many clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientRegistryBenchmark {
+
+	private static final int REGISTERED = 1000;
+
+	private final ClientRegistry registry = new ClientRegistry();
+	private final String[] registered = new String[REGISTERED];
+	private final AtomicInteger names = new AtomicInteger();
+
+	/**
+	 * A client of its own for each thread that joins and leaves
+	 */
+	@State(Scope.Thread)
+	public static class Joiner {
+		Client client;
+		int next;
+
+		@Setup
+		public void name(ClientRegistryBenchmark benchmark) {
+			int id = benchmark.names.incrementAndGet();
+			client = new Client("joiner" + id);
+			next = id * 97 % REGISTERED;
+		}
+	}
+
+	@Setup
+	public void register() {
+		for (int i = 0; i < REGISTERED; i++) {
+			registered[i] = "client" + i;
+			registry.add(new Client(registered[i]));
+		}
+	}
+
+	@Benchmark
+	@Group("churn")
+	@GroupThreads(3)
+	public boolean addRemove(Joiner joiner) {
+		return registry.add(joiner.client) && registry.remove(joiner.client);
+	}
+
+	@Benchmark
+	@Group("churn")
+	@GroupThreads(1)
+	public int iterate() {
+		int count = 0;
+		for (Client client : registry.clients()) {
+			if (client.getOutbound() == null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Client lookup(Joiner joiner) {
+		joiner.next = (joiner.next + 1) % REGISTERED;
+		return registry.get(registered[joiner.next]);
+	}
+}
@@ -1,22 +1,29 @@
 package com.schmidt;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.GraphicsEnvironment;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-
-import javax.swing.JFrame;
-import javax.swing.JOptionPane;
-import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
-import javax.swing.JTextField;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -26,34 +33,74 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.log4j.Logger;
 
+import com.schmidt.client.report.BinaryReporter;
+import com.schmidt.client.report.IntervalReporter;
+import com.schmidt.client.report.IntervalTarget;
+import com.schmidt.client.report.Reporter;
+import com.schmidt.client.report.ResourceSampler;
+import com.schmidt.client.report.TextReporter;
+import com.schmidt.client.test.FileLayout;
+import com.schmidt.client.test.Pacer;
 import com.schmidt.client.test.StorageTest;
+import com.schmidt.client.test.VerifyMode;
+import com.schmidt.client.test.Workload;
+import com.schmidt.client.test.io.Engines;
+import com.schmidt.client.test.io.Payload;
+import com.schmidt.client.test.io.Preallocation;
+import com.schmidt.client.test.io.Verifier;
+import com.schmidt.client.test.io.WorkingSet;
+import com.schmidt.client.view.ClientView;
+import com.schmidt.client.view.HeadlessView;
+import com.schmidt.client.view.SwingView;
+import com.schmidt.protocol.EpochClock;
+import com.schmidt.protocol.Protocol;
+import com.schmidt.protocol.Status;
+import com.schmidt.protocol.TestStart;
+import com.schmidt.util.Threads;
 
 /**
  * Simple test client for driving storage test.  Client can be 
  * executed with command line parameters or graphically.  A GUI is displayed
  * but not required for the test to proceed.  Events are displayed in the UI as
- * well as on the console.  
+ * well as on the console.  With -u, or when there is no display, the client
+ * runs headless and never loads the GUI.
  *
  * The client follows a simple protocol for processing commands to/from the server.
  * When the server sends "SUBMITNAME" the client replies with the
  * desired client name.  The server will keep sending "SUBMITNAME"
  * requests as long as the client submits client names that are
- * already in use.  
+ * already in use.  If the server offers the binary protocol with its
+ * NAMEACCEPTED reply the client switches to binary frames for everything
+ * it sends, unless told to stay with text.  If the server also accepts
+ * intervals the chunk results are aggregated over --interval seconds and
+ * sent once per interval, unless --raw asks for every result.
+ *
+ * With -k one process runs many logical clients, each with its own name and
+ * storage tests, over one binary connection.  The heartbeat and the status,
+ * which describes the whole process, are sent once for the connection from
+ * a single scheduler thread.
  */
 public class Client {
 
     private BufferedReader in;
     private PrintWriter out;
-    private JFrame frame = new JFrame("Client");
-    private JTextField textField = new JTextField(40);
-    private JTextArea messageArea = new JTextArea(8, 40);
+    private volatile Reporter reporter;
+    private volatile Reporter[] reporters = new Reporter[0];
+    private ClientView view;
+    private boolean headless;
     
     private String serverAddress;
     private String clientName;
+    private boolean nameSubmitted;
+    private String protocol = "binary";
     
-    private Thread heartbeatThread;
-    private StorageTest storageTest;
-    private Thread statusUpdate;
+    private volatile ScheduledExecutorService scheduler;
+    private volatile Thread[] storageTests = new Thread[0];
+    private volatile StatusUpdate statusUpdate;
+    private volatile ScheduledFuture<?> statusUpdates;
+    private volatile IntervalReporter[] intervalReporters = new IntervalReporter[0];
+    private volatile ScheduledFuture<?> intervalFlushes;
+    private boolean stopped;
     
     static DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
 	
@@ -70,15 +117,51 @@ public class Client {
     private int chunkSize = (int) ((Math.pow(1024, 2)) * 10);
     //Default File Size 20 MB
     private int fileSize = 10485760 * 20;
+    // fsync after every chunk
+    private boolean sync;
+    // I/O engine used to write the test files, one instance per worker
+    private String engineName = Engines.CHANNEL;
+    // Layout of the write workload's files, files kept by the tree and pool
+    // layouts, 0 for the layout's default, and how new files are sized
+    private FileLayout layout = FileLayout.CREATE;
+    private int layoutFiles;
+    private Preallocation preallocation = Preallocation.NONE;
+    // Data written: records, random or compression:dedup ratios, and the seed
+    // it is generated from, mixed with each worker's name
+    private String payload = "records";
+    private long payloadSeed = 1;
+    // Whether and when written files are read back and checked
+    private VerifyMode verify = VerifyMode.NONE;
+    // Worker pool size and the directories the workers write to
+    private int workers = 1;
+    private File[] directories = new File[0];
+    // Open loop rate in operations or, if rateMegabytes, MB per second; 0 for closed loop
+    private double rate;
+    private boolean rateMegabytes;
+    // Workload and, for the read workloads, the working set size and block size
+    private Workload workload = Workload.WRITE;
+    private long workingSetSize;
+    private int blockSize = 4096;
+    // Default share of reads in the mixed workload
+    private int readPercent = 70;
+    // Seconds between status reports
+    private int statusInterval = 10;
+    // Seconds chunk results are aggregated over, unless every result is sent
+    private double resultInterval = 1;
+    private boolean rawResults;
+    // Logical clients run over the one connection, and those the server refused
+    private int logicalClients = 1;
+    private final Set<Integer> rejected = ConcurrentHashMap.newKeySet();
+    // Held while the tests are started and while a logical client is refused
+    private final Object testsLock = new Object();
     // Default server port 
-    private static int SERVERPORT = 9001;
+    private static final int SERVERPORT = 9001;
 
 
     /**
      * Client Constructor
      * Process any CLI arguments passed in
-     * Setup the UI and attach listener for handling input and output 
-     * from the UI
+     * Setup the UI, unless running headless
      * 
      * @param args
      */
@@ -86,26 +169,11 @@ public class Client {
     	
     	processCLIArgs(args);
 
-        // Layout GUI
-        textField.setEditable(false);
-        messageArea.setEditable(false);
-        frame.getContentPane().add(textField, "North");
-        frame.getContentPane().add(new JScrollPane(messageArea), "Center");
-        frame.pack();
-
-        // Add Listeners
-        textField.addActionListener(new ActionListener() {
-            /**
-             * Responds to pressing the enter key in the textfield by sending
-             * the contents of the text field to the server.    Then clear
-             * the text area in preparation for the next message.
-             */
-            public void actionPerformed(ActionEvent e) {
-            	String input = textField.getText();
-                out.println(input);
-                textField.setText("");
-            }
-        });
+    	if (!headless && GraphicsEnvironment.isHeadless()) {
+    		log.info("No display available, running headless");
+    		headless = true;
+    	}
+    	view = headless ? new HeadlessView() : new SwingView();
     }
     
     /**
@@ -116,11 +184,42 @@ public class Client {
     	
     	// Add all command line arguments to options
     	options.addOption("h", false, "Display Help");    	
-    	options.addOption("t", true, "Length of time in seconds for test");
-    	options.addOption("s", true, "Server FQDN or IP address");
+    	options.addOption("t", true, "Length of time in seconds for test. Default until the server stops the test.");
+    	options.addOption("s", true, "Server FQDN or IP address, optionally followed by :port. Default port " +
+    			SERVERPORT + ".");
     	options.addOption("n", true, "Client name.");
     	options.addOption("c", true, "Data chunk size in bytes.");
     	options.addOption("f", true, "File size in bytes.");
+    	options.addOption("y", false, "fsync after every chunk and report fsync time.");
+    	options.addOption("e", true, "I/O engine: channel, direct (O_DIRECT), mmap or stream. Default channel.");
+    	options.addOption("w", true, "Workload: write, seqread, randread or mixed. Default write.");
+    	options.addOption("b", true, "Block size in bytes for the read and mixed workloads. Default 4096.");
+    	options.addOption("r", true, "Percentage of reads in the mixed workload. Default 70.");
+    	options.addOption("g", true, "Working set size in bytes for the read and mixed workloads. Default the file size.");
+    	options.addOption("l", true, "File layout of the write workload: create (a new file each time, deleted once written), " +
+    			"tree (files kept in a directory tree), rewrite (one file rewritten in place) or pool (files rewritten " +
+    			"in place in turn). Default create.");
+    	options.addOption("m", true, "Number of files in the tree or pool layout. Default 4096 for tree, 16 for pool.");
+    	options.addOption("z", true, "Preallocate new files before the timed writes: sparse (set the length) or full " +
+    			"(write and sync zeros). Default none.");
+    	options.addOption("o", true, "Data to write: records (a repeated text record), random, or compression:dedup " +
+    			"ratios such as 2:1.5 for storage that compresses or deduplicates. Default records.");
+    	options.addOption("x", true, "Seed for the random, compressible and dedupable data. Default 1.");
+    	options.addOption("q", true, "Verify written data: immediate (read each file back once written) or deferred " +
+    			"(read a kept file back before it is written again). Blocks carry a checksummed header. Default none.");
+    	options.addOption("j", true, "Number of worker threads, each with its own files and one I/O outstanding. Default 1.");
+    	options.addOption("d", true, "Comma separated directories the workers write to in turn. Default the working directory.");
+    	options.addOption("a", "rate", true, "Open loop: issue N operations per second, or N MB per second with an MB suffix, " +
+    			"shared by all workers. Latency is measured from each operation's scheduled start. Default closed loop.");
+    	options.addOption("i", true, "Seconds between resource status reports. Default 10.");
+    	options.addOption(null, "interval", true, "Seconds over which chunk results are aggregated and sent as one " +
+    			"message per worker and operation, when the server accepts them. Default 1.");
+    	options.addOption(null, "raw", false, "Send every chunk result to the server instead of aggregating them.");
+    	options.addOption("v", false, "Run worker threads on virtual threads (JDK 21+).");
+    	options.addOption("p", true, "Wire protocol: binary or text. Binary is used only if the server offers it. Default binary.");
+    	options.addOption("k", true, "Number of logical clients to run in this process over one connection, named " +
+    			"<name>-1 to <name>-N, each with its own storage tests. Needs the binary protocol. Default 1.");
+    	options.addOption("u", false, "Run headless without the GUI. The server defaults to localhost and the name to host-pid.");
     	
     	try {
 			cmd = parser.parse( options, args);
@@ -129,11 +228,36 @@ public class Client {
 				help();
 			}
 			
-			// Look for all required options first and exit if not found.
-			if (!cmd.hasOption("t")) {
-				System.out.println("Missing required option: t");
-				help();
+			if (cmd.hasOption("k")) {
+				logicalClients = Integer.valueOf(cmd.getOptionValue("k"));
+				if (logicalClients < 1) {
+					throw new IllegalArgumentException("Logical clients must be at least 1");
+				}
 			}
+			configure(cmd);
+			headless = cmd.hasOption("u");
+			
+		} catch (ParseException e1) {
+			e1.printStackTrace();
+		} catch (NumberFormatException ne) {
+			log.error("Test time, sizes, counts and rates must be numbers");
+			help();
+		} catch (IllegalArgumentException ie) {
+			log.error(ie.getMessage());
+			help();
+		}
+
+    }
+
+    /**
+     * Apply the options present on a command line, leaving the others
+     * unchanged.  Used for the client's own command line and for the
+     * options a coordinating server sends with STARTTEST.
+     * 
+     * @param cmd parsed options
+     * @throws IllegalArgumentException if a value is invalid
+     */
+    private void configure(CommandLine cmd) {
 
 			if (cmd.hasOption("t")) {
 				testTime = Integer.valueOf(cmd.getOptionValue("t"));
@@ -142,6 +266,7 @@ public class Client {
 			
 			if (cmd.hasOption("s")) {
 				serverAddress = cmd.getOptionValue("s");
+				parseServerAddress(serverAddress);
 				log.debug("Setting server address to: " + serverAddress);
 			}
 
@@ -160,16 +285,214 @@ public class Client {
 				log.debug("Setting file size to: " + fileSize + " bytes");
 			}
 
-			
-		} catch (ParseException e1) {
-			e1.printStackTrace();
-		} catch (NumberFormatException ne) {
-			log.error("Test time must be number");
-			help();
-		}
+			if (cmd.hasOption("y")) {
+				sync = true;
+			}
+
+			if (cmd.hasOption("e")) {
+				engineName = cmd.getOptionValue("e").toLowerCase();
+				if (!Engines.isKnown(engineName)) {
+					throw new IllegalArgumentException("Unknown I/O engine: " + engineName);
+				}
+				log.debug("Setting I/O engine to: " + engineName);
+			}
+
+			if (cmd.hasOption("j")) {
+				workers = Integer.valueOf(cmd.getOptionValue("j"));
+				if (workers < 1) {
+					throw new IllegalArgumentException("Workers must be at least 1");
+				}
+				log.debug("Setting workers to: " + workers);
+			}
+
+			if (cmd.hasOption("d")) {
+				String[] names = cmd.getOptionValue("d").split(",");
+				directories = new File[names.length];
+				for (int i = 0; i < names.length; i++) {
+					directories[i] = new File(names[i].trim());
+					if (!directories[i].isDirectory()) {
+						throw new IllegalArgumentException("Not a directory: " + directories[i]);
+					}
+				}
+				log.debug("Setting directories to: " + Arrays.toString(directories));
+			}
+
+			if (cmd.hasOption("a")) {
+				String value = cmd.getOptionValue("a").trim().toUpperCase();
+				rateMegabytes = value.endsWith("MB");
+				rate = Double.valueOf(rateMegabytes ? value.substring(0, value.length() - 2) : value);
+				if (!(rate > 0)) {
+					throw new IllegalArgumentException("Rate must be positive");
+				}
+				log.debug("Setting rate to: " + rate + (rateMegabytes ? " MB/s" : " ops/s"));
+			}
+
+			if (cmd.hasOption("w")) {
+				workload = Workload.forName(cmd.getOptionValue("w").toLowerCase());
+				log.debug("Setting workload to: " + workload.getName());
+			}
+
+			if (cmd.hasOption("l")) {
+				layout = FileLayout.forName(cmd.getOptionValue("l").toLowerCase());
+				log.debug("Setting file layout to: " + layout.getName());
+			}
+
+			if (cmd.hasOption("m")) {
+				layoutFiles = Integer.valueOf(cmd.getOptionValue("m"));
+				if (layoutFiles < 1) {
+					throw new IllegalArgumentException("Layout files must be at least 1");
+				}
+				log.debug("Setting layout files to: " + layoutFiles);
+			}
+
+			if (cmd.hasOption("z")) {
+				preallocation = Preallocation.forName(cmd.getOptionValue("z").toLowerCase());
+				log.debug("Setting preallocation to: " + preallocation.getName());
+			}
+
+			if (cmd.hasOption("o")) {
+				String spec = cmd.getOptionValue("o").toLowerCase();
+				Payload.parse(spec, 0);
+				payload = spec;
+				log.debug("Setting payload to: " + payload);
+			}
 
+			if (cmd.hasOption("x")) {
+				payloadSeed = Long.valueOf(cmd.getOptionValue("x"));
+			}
+
+			if (cmd.hasOption("q")) {
+				verify = VerifyMode.forName(cmd.getOptionValue("q").toLowerCase());
+				if (verify != VerifyMode.NONE && (workload.usesWorkingSet() || Engines.STREAM.equals(engineName))) {
+					throw new IllegalArgumentException("Verification needs the write workload and the channel, direct or mmap engine");
+				}
+				if (verify == VerifyMode.DEFERRED && !layout.keepsFiles()) {
+					log.warn("The create layout deletes files once written, verifying them immediately instead");
+					verify = VerifyMode.IMMEDIATE;
+				}
+				log.debug("Setting verify to: " + verify.getName());
+			}
+
+			if (cmd.hasOption("r")) {
+				readPercent = Integer.valueOf(cmd.getOptionValue("r"));
+				log.debug("Setting read percentage to: " + readPercent);
+			}
+
+			if (cmd.hasOption("b")) {
+				blockSize = Integer.valueOf(cmd.getOptionValue("b"));
+				log.debug("Setting block size to: " + blockSize + " bytes");
+			}
+
+			if (cmd.hasOption("g")) {
+				workingSetSize = Long.valueOf(cmd.getOptionValue("g"));
+				log.debug("Setting working set to: " + workingSetSize + " bytes");
+			}
+
+			if (workload.usesWorkingSet()) {
+				if (blockSize <= 0 || blockSize > fileSize) {
+					throw new IllegalArgumentException("Block size must be between 1 and the file size " + fileSize);
+				}
+				warnIfCached(getWorkingSetSize() * logicalClients);
+			}
+
+			if (cmd.hasOption("i")) {
+				statusInterval = Integer.valueOf(cmd.getOptionValue("i"));
+				if (statusInterval <= 0) {
+					throw new IllegalArgumentException("Status interval must be at least one second");
+				}
+			}
+
+			if (cmd.hasOption("interval")) {
+				resultInterval = Double.valueOf(cmd.getOptionValue("interval"));
+				if (!(resultInterval >= 0.001)) {
+					throw new IllegalArgumentException("Result interval must be at least a millisecond");
+				}
+				log.debug("Setting result interval to: " + resultInterval + " secs");
+			}
+
+			rawResults = cmd.hasOption("raw");
+
+			if (cmd.hasOption("v")) {
+				Threads.setVirtual(true);
+			}
+
+			if (cmd.hasOption("p")) {
+				protocol = cmd.getOptionValue("p").toLowerCase();
+				log.debug("Setting protocol to: " + protocol);
+			}
+    }
+
+    /**
+     * Apply the options sent by a coordinating server.  Invalid options are
+     * logged and the client keeps its own settings for them.
+     */
+    private void configure(TestStart start) {
+    	List<String> args = new ArrayList<String>();
+    	for (Map.Entry<String, String> option : start.getOptions().entrySet()) {
+    		args.add("-" + option.getKey());
+    		if (!option.getValue().isEmpty()) {
+    			args.add(option.getValue());
+    		}
+    	}
+    	try {
+    		configure(parser.parse(options, args.toArray(new String[args.size()])));
+    	} catch (ParseException e) {
+    		log.error("Ignoring test options from server: " + e.getMessage());
+    	} catch (IllegalArgumentException e) {
+    		log.error("Ignoring invalid test option from server: " + e.getMessage());
+    	}
+    	if (start.getDurationSeconds() > 0) {
+    		testTime = start.getDurationSeconds();
+    	}
+    }
+
+    /**
+     * @return working set size, by default one file
+     */
+    private long getWorkingSetSize() {
+    	return workingSetSize > 0 ? workingSetSize : fileSize;
     }
     
+    /**
+     * Reads from a working set that fits in memory are mostly served by the
+     * page cache rather than the device.
+     */
+    private static void warnIfCached(long size) {
+    	java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    	if (os instanceof com.sun.management.OperatingSystemMXBean) {
+    		long memory = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+    		if (size <= memory) {
+    			log.warn("Working set of " + size + " bytes fits in " + memory +
+    					" bytes of memory, reads may be served from the page cache");
+    		}
+    	}
+    }
+
+    /**
+     * @param address host, host:port, or [IPv6 address]:port
+     * @return the server's host and port, the default port if none is given
+     */
+    static InetSocketAddress parseServerAddress(String address) {
+    	String host = address;
+    	int port = SERVERPORT;
+    	int colon = address.lastIndexOf(':');
+    	if (colon > 0 && (address.indexOf(':') == colon || address.charAt(colon - 1) == ']')) {
+    		host = address.substring(0, colon);
+    		try {
+    			port = Integer.parseInt(address.substring(colon + 1));
+    		} catch (NumberFormatException e) {
+    			port = -1;
+    		}
+    		if (port < 1 || port > 65535) {
+    			throw new IllegalArgumentException("Server port must be between 1 and 65535: " + address);
+    		}
+    	}
+    	if (host.startsWith("[") && host.endsWith("]")) {
+    		host = host.substring(1, host.length() - 1);
+    	}
+    	return InetSocketAddress.createUnresolved(host, port);
+    }
+
     /**
      * Print help to CLI
      */
@@ -183,26 +506,16 @@ public class Client {
 
 
     /**
-     * UI: Prompt for and return the address of the server.
-     */
-    private String getServerAddressUI() {
-        
-    	return (String) JOptionPane.showInputDialog(
-            frame,
-            "Enter IP Address ro FQDN of the Server:",
-            "Storage Test Client",
-            JOptionPane.QUESTION_MESSAGE, null,null,"localhost");
-    }
-
-    /**
-     * UI: Get client name.  If not passed in on command line, 
-     * prompt for and return the desired client name.
+     * UI: Get client name.  If not passed in on command line, or if the
+     * server refused the name submitted before, ask the view for one.
+     * 
+     * @return the name, or null to give up
      */
 	private String getName() {
 
-		return (clientName != null) ? clientName : JOptionPane.showInputDialog(
-				frame, "Choose a client name:", "Client name selection",
-				JOptionPane.PLAIN_MESSAGE);
+		String rejected = nameSubmitted ? logicalName(1) : null;
+		nameSubmitted = true;
+		return (rejected == null && clientName != null) ? clientName : view.askName(rejected);
 	}
 
 	/**
@@ -216,12 +529,17 @@ public class Client {
 
 		// Make connection and initialize streams
 		if (serverAddress == null || serverAddress.isEmpty()) {
-			serverAddress = getServerAddressUI();
+			serverAddress = view.askServerAddress();
+			if (serverAddress == null) {
+				return;
+			}
 		}
 
-		Socket socket = new Socket(serverAddress, SERVERPORT);
+		InetSocketAddress server = parseServerAddress(serverAddress);
+		Socket socket = new Socket(server.getHostString(), server.getPort());
 		in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 		out = new PrintWriter(socket.getOutputStream(), true);
+		reporter = new TextReporter(out, clientName);
 
 		// Process all messages from server, according to the protocol.
 		while (true) {
@@ -237,44 +555,79 @@ public class Client {
 				break;
 			} else if (line.startsWith("SUBMITNAME")) {
 
-				clientName = getName();
-				out.println(clientName);
 				log.debug("SUBMITNAME requested");
+				clientName = getName();
+				if (clientName == null) {
+					break;
+				}
+				out.println(logicalName(1));
 
 			} else if (line.startsWith("NAMEACCEPTED")) {
 
-				textField.setEditable(true);
+				List<String> offered = Arrays.asList(line.split(" "));
+				if (protocol.equals("binary") && offered.contains(Protocol.BINARY)) {
+					out.println(Protocol.ACCEPT_BINARY);
+					BinaryReporter binary = new BinaryReporter(socket.getOutputStream(), logicalName(1));
+					boolean intervals = !rawResults && offered.contains(Protocol.INTERVALS);
+					Reporter[] all = new Reporter[logicalClients];
+					IntervalReporter[] aggregating = new IntervalReporter[intervals ? logicalClients : 0];
+					for (int c = 1; c <= logicalClients; c++) {
+						IntervalTarget target = binary;
+						if (c > 1) {
+							binary.join(c, logicalName(c));
+							target = binary.forClient(c);
+						}
+						if (intervals) {
+							aggregating[c - 1] = new IntervalReporter(target, Math.round(resultInterval * 1e9));
+							all[c - 1] = aggregating[c - 1];
+						} else {
+							all[c - 1] = target;
+						}
+					}
+					reporter = all[0];
+					reporters = all;
+					intervalReporters = aggregating;
+					log.debug("Using binary protocol" + (intervals ? " with " + resultInterval + " sec result intervals" : ""));
+				} else if (logicalClients > 1) {
+					log.error("Running " + logicalClients + " logical clients needs the binary protocol");
+					break;
+				} else {
+					reporter = new TextReporter(out, clientName);
+					reporters = new Reporter[] { reporter };
+				}
+				view.connected(reporter);
+				startHeartbeat();
 				log.debug("NAMEACCEPTED received");
 
 			} else if (line.startsWith("MESSAGE")) {
 
-				messageArea.append(line.substring(8) + "\n");
+				view.message(line.substring(8));
 				log.debug("MESSAGE received: " + line);
 
-			} else if (line.startsWith("STARTTEST")) {
+			} else if (line.startsWith(Protocol.START_TEST)) {
 
-				log.debug("Starting Heartbeat: "
-						+ dateFormat.format(new Date()));
-				heartbeatThread = new Thread(new Heartbeat(out));
-				heartbeatThread.start();
+				TestStart start = TestStart.parse(line);
+				configure(start);
+				long localStart = start.getLocalStartMillis(System.currentTimeMillis());
+				if (localStart != start.getStartMillis()) {
+					log.debug("Clock differs from the server's by " + (start.getStartMillis() - localStart) + " ms");
+				}
+				startTest(localStart);
 
-				log.debug("Starting Storage Performance Test: "
-						+ dateFormat.format(new Date()));
-				storageTest = new StorageTest(clientName, fileSize, chunkSize, testTime, out);
-				storageTest.start();
+			} else if (line.startsWith(Protocol.STOP_TEST)) {
+
+				log.debug("STOPTEST received");
+				stopTest();
+
+			} else if (line.startsWith(Protocol.JOIN_REJECTED)) {
+
+				String[] fields = line.split(" ");
+				if (fields.length >= 3) {
+					int id = Integer.parseInt(fields[1]);
+					log.error("Client name " + fields[2] + " is taken, logical client " + id + " does not run");
+					rejectClient(id);
+				}
 
-				statusUpdate = new Thread(new StatusUpdate(out));
-				statusUpdate.start();
-				
-			}
-			
-			// Execute until test time has been reached
-			// Very simple way to track test execute test time
-			if (System.currentTimeMillis()-startTime > testTime*1000) {
-				long endTime = System.currentTimeMillis();
-				log.debug("End Time: " + endTime);
-				log.debug("Test time elapsed: " + ((endTime - startTime) / 1000) + " secs...");
-				out.println("exit");
 			}
 		}
 
@@ -287,74 +640,285 @@ public class Client {
 	}
     
     
+    /**
+     * Start the scheduler and send a heartbeat every
+     * {@link Protocol#HEARTBEAT_SECONDS} from now on, so that the server
+     * knows the client is alive while it waits for a coordinated start.
+     */
+    private void startHeartbeat() {
+    	log.debug("Starting Heartbeat: " + dateFormat.format(new Date()));
+    	scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    		public Thread newThread(Runnable r) {
+    			Thread thread = new Thread(r, "client-scheduler");
+    			thread.setDaemon(true);
+    			return thread;
+    		}
+    	});
+    	scheduler.scheduleAtFixedRate(new Heartbeat(reporter), 0, Protocol.HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Start the storage tests and the status updates at the
+     * given time, so that coordinated clients start together, and stop them
+     * after the test time if one is set.
+     * 
+     * @param startMillis when to start, or 0 to start now
+     */
+    private void startTest(final long startMillis) {
+    	Threads.start("test-starter", new Runnable() {
+    		public void run() {
+    			try {
+    				long wait = startMillis - System.currentTimeMillis();
+    				if (wait > 0) {
+    					log.debug("Test starts in " + wait + " ms");
+    					Thread.sleep(wait);
+    				}
+    			} catch (InterruptedException e) {
+    				return;
+    			}
+
+    			log.debug("Starting Storage Performance Test: "
+    					+ dateFormat.format(new Date()));
+    			long origin = startMillis > 0 ? startMillis * 1000000L : EpochClock.epochNanos();
+    			for (IntervalReporter intervalReporter : intervalReporters) {
+    				intervalReporter.setOrigin(origin);
+    			}
+    			// A logical client refused while the tests start is either
+    			// skipped here or stopped once they are published
+    			synchronized (testsLock) {
+    				Thread[] tests = new Thread[logicalClients * workers];
+    				for (int c = 1; c <= logicalClients; c++) {
+    					if (rejected.contains(c)) {
+    						continue;
+    					}
+    					String name = logicalName(c);
+    					for (int i = 0; i < workers; i++) {
+    						int worker = workers == 1 ? 0 : i + 1;
+    						String thread = logicalClients == 1 ? "storage-test" : "storage-test-" + name;
+    						tests[(c - 1) * workers + i] = Threads.start(worker == 0 ? thread : thread + "-" + worker,
+    								storageTest(name, worker, reporters[c - 1]));
+    					}
+    				}
+    				storageTests = tests;
+    			}
+
+    			statusUpdate = new StatusUpdate(reporter);
+    			statusUpdates = scheduler.scheduleAtFixedRate(statusUpdate, 0, statusInterval, TimeUnit.SECONDS);
+    			if (intervalReporters.length > 0) {
+    				long period = Math.max(1, Math.round(resultInterval * 1000));
+    				intervalFlushes = scheduler.scheduleAtFixedRate(new IntervalFlush(intervalReporters), period, period,
+    						TimeUnit.MILLISECONDS);
+    			}
+
+    			if (testTime > 0) {
+    				try {
+    					Thread.sleep(testTime * 1000L);
+    				} catch (InterruptedException e) {
+    					return;
+    				}
+    				log.debug("Test time elapsed: " + testTime + " secs...");
+    				stopTest();
+    			}
+    		}
+    	});
+    }
+
+    /**
+     * Stop the storage tests, give them a moment to send their last
+     * results, or with deferred verification until they have checked
+     * their last files, and tell the server the client is done.
+     */
+    private synchronized void stopTest() {
+    	if (stopped) {
+    		return;
+    	}
+    	stopped = true;
+    	log.debug("End Time: " + System.currentTimeMillis());
+    	for (Thread storageTest : storageTests) {
+    		if (storageTest != null) {
+    			storageTest.interrupt();
+    		}
+    	}
+    	try {
+    		// Deferred verification reads back the last files before the
+    		// tests end, which may take longer than sending the last results
+    		long wait = verify == VerifyMode.DEFERRED ? 0 : 1000;
+    		for (Thread storageTest : storageTests) {
+    			if (storageTest != null) {
+    				storageTest.join(wait);
+    			}
+    		}
+    		// Send the results of the last interval, then a last status once
+    		// the periodic ones have stopped; the heartbeat goes on until the
+    		// client exits
+    		if (intervalFlushes != null) {
+    			intervalFlushes.cancel(false);
+    		}
+    		for (IntervalReporter intervalReporter : intervalReporters) {
+    			intervalReporter.flush();
+    		}
+    		if (statusUpdates != null) {
+    			statusUpdates.cancel(false);
+    		}
+    		if (statusUpdate != null) {
+    			statusUpdate.run();
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    	}
+    	reporter.exit();
+    }
+
+    /**
+     * Keep a logical client the server refused from running, and stop its
+     * storage tests if they have started.
+     * 
+     * @param id logical client from 1
+     */
+    private void rejectClient(int id) {
+    	synchronized (testsLock) {
+    		rejected.add(id);
+    		Thread[] tests = storageTests;
+    		for (int i = (id - 1) * workers; i < id * workers && i < tests.length; i++) {
+    			if (i >= 0 && tests[i] != null) {
+    				tests[i].interrupt();
+    			}
+    		}
+    	}
+    }
+
+    /**
+     * @param id logical client from 1
+     * @return name the logical client registers with: the client name, or
+     * with several logical clients the name followed by the id
+     */
+    private String logicalName(int id) {
+    	return logicalClients == 1 ? clientName : clientName + "-" + id;
+    }
+
+    /**
+     * Create the storage test for one worker.  Each worker gets its own
+     * engine, an equal share of the working set and, in open loop mode,
+     * an equal share of the rate.  Pool workers write back to back without
+     * pausing between files.
+     * 
+     * @param name name of the logical client the worker belongs to
+     * @param worker worker number from 1, or 0 when there is no pool
+     */
+    private StorageTest storageTest(String name, int worker, Reporter reporter) {
+    	// Each worker's data differs, or storage would dedup workers against each other
+    	Payload data = Payload.parse(payload, payloadSeed ^ ((long) name.hashCode() << 32) ^ worker);
+    	if (verify != VerifyMode.NONE) {
+    		data.setVerify(((long) name.hashCode() << 32) | worker);
+    	}
+    	StorageTest test = new StorageTest(name, fileSize, chunkSize, testTime,
+    			Engines.create(engineName, chunkSize, sync, data), reporter);
+    	File directory = directories.length == 0 ? null : directories[Math.max(0, worker - 1) % directories.length];
+    	test.setWorker(worker, directory);
+    	test.setLayout(layout, layoutFiles > 0 ? layoutFiles : layout.getDefaultFiles(), preallocation);
+    	if (worker > 0) {
+    		test.setPause(0);
+    	}
+    	if (verify != VerifyMode.NONE) {
+    		test.setVerify(verify, new Verifier(data, chunkSize, Engines.DIRECT.equals(engineName)));
+    	}
+    	if (workload.usesWorkingSet()) {
+    		String files = worker == 0 ? name : name + "-w" + worker;
+    		WorkingSet workingSet = new WorkingSet(directory, files, getWorkingSetSize() / workers, fileSize, blockSize,
+    				Engines.DIRECT.equals(engineName), sync);
+    		workingSet.setPayload(data);
+    		test.setWorkload(workload, workingSet, readPercent);
+    	}
+    	if (rate > 0) {
+    		int operationSize = workload.usesWorkingSet() ? blockSize : chunkSize;
+    		double ops = rateMegabytes ? rate * 1024 * 1024 / operationSize : rate;
+    		test.setPacer(new Pacer(ops / workers));
+    	}
+    	return test;
+    }
+
     /** Perform any steps to clean up and exit the client
      *  Ensure that threads are exited
      */
     private void exit () {
-    	heartbeatThread.interrupt();
-    	storageTest.interrupt();
-    	statusUpdate.interrupt();
+    	if (scheduler != null) {
+    		scheduler.shutdownNow();
+    	}
+    	for (Thread storageTest : storageTests) {
+    		if (storageTest != null) {
+    			storageTest.interrupt();
+    		}
+    	}
     }
     
     /**
-     * Send Heartbeat to server every 5 seconds
+     * Send Heartbeat to server, scheduled every {@link Protocol#HEARTBEAT_SECONDS}
      */
-    private static class Heartbeat extends Thread {
+    private static class Heartbeat implements Runnable {
     	
-    	private PrintWriter printWriter;
+    	private Reporter reporter;
     	
-    	public Heartbeat (PrintWriter printWriter) {
-    		this.printWriter = printWriter;
+    	public Heartbeat (Reporter reporter) {
+    		this.reporter = reporter;
     	}
     	
     	public void run () {
-    		while (true) {
-    			printWriter.println("HeartBeat: " +  dateFormat.format(new Date()));
-    			try {
-					Thread.sleep(5000);
-				} catch (InterruptedException e) {
-					break;
-				}
-    		}
+    		reporter.heartbeat(EpochClock.epochNanos());
     	}    	
     }
     
     /**
-     *     Send CPU and Memory information to server every 10 seconds
+     * Send the intervals that have ended, for workers whose next result
+     * is not due yet
      */
-    private static class StatusUpdate extends Thread {
+    private static class IntervalFlush implements Runnable {
+
+    	private IntervalReporter[] reporters;
+
+    	public IntervalFlush (IntervalReporter[] reporters) {
+    		this.reporters = reporters;
+    	}
+
+    	public void run () {
+    		long now = EpochClock.epochNanos();
+    		for (IntervalReporter reporter : reporters) {
+    			reporter.flush(now);
+    		}
+    	}
+    }
+
+    /**
+     *     Send CPU, memory, GC and I/O information to server, scheduled
+     *     every status interval
+     */
+    private static class StatusUpdate implements Runnable {
     	
-    	private PrintWriter printWriter;
+    	private Reporter reporter;
+    	private Status status = new Status();
+    	private ResourceSampler sampler = new ResourceSampler();
     	
-    	public StatusUpdate (PrintWriter printWriter) {
-    		this.printWriter = printWriter;
+    	public StatusUpdate (Reporter reporter) {
+    		this.reporter = reporter;
     	}
     	
-    	public void run () {
-    		while (true) {
-    			printWriter.println("Status Memory: " +  Runtime.getRuntime().totalMemory());
-    			try {
-					Thread.sleep(10000);
-				} catch (InterruptedException e) {
-					break;
-				}
-    		}
+    	public synchronized void run () {
+    		sampler.sample(status);
+    		reporter.status(status);
     	}    	
     }
 
 
     /**
-     * Runs the client as an application with a closeable frame.
+     * Runs the client as an application with a closeable frame, or headless.
      */
     public static void main(String[] args) throws Exception {
     	
         Client client = new Client(args);
-        client.frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        client.frame.setVisible(true);
+        client.view.show();
         
         client.run(System.currentTimeMillis());
         client.exit();
         
-        client.frame.dispose();
+        client.view.close();
     }
 }
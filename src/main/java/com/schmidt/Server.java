@@ -1,17 +1,51 @@
 package com.schmidt;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
 import org.apache.log4j.Logger;
 
+import com.schmidt.protocol.FrameDecoder;
+import com.schmidt.protocol.LineReader;
+import com.schmidt.protocol.Protocol;
+import com.schmidt.protocol.TestStart;
+import com.schmidt.server.ConnectionHandler;
+import com.schmidt.server.broadcast.Broadcaster;
+import com.schmidt.server.broadcast.OutboundQueue;
+import com.schmidt.server.broadcast.OutboundWriter;
+import com.schmidt.server.broadcast.SlowConsumerPolicy;
+import com.schmidt.server.coordinator.TestCoordinator;
 import com.schmidt.server.domain.Client;
+import com.schmidt.server.log.MessageLog;
+import com.schmidt.server.metrics.MetricsServer;
+import com.schmidt.server.metrics.ServerMetrics;
+import com.schmidt.server.nio.NioServer;
+import com.schmidt.server.registry.ClientMonitor;
+import com.schmidt.server.registry.ClientRegistry;
+import com.schmidt.server.registry.RegistryListener;
+import com.schmidt.server.stats.ClientStats;
+import com.schmidt.server.stats.ResultAggregator;
+import com.schmidt.server.store.RunFileWriter;
+import com.schmidt.util.Threads;
 
 /**
  * A multithreaded test tool.  When a client connects the
@@ -19,40 +53,177 @@ import com.schmidt.server.domain.Client;
  * text "SUBMITNAME", and keeps requesting a name until
  * a unique one is received.  After a client submits a unique
  * name, the server acknowledges with "NAMEACCEPTED".  Then
- * all messages from that client will be logged.
+ * all messages from that client will be logged.  The acknowledgement
+ * offers the binary protocol, which clients may switch to, and results
+ * aggregated over intervals; see {@link Protocol}.
  *
+ * The server runs in one of two modes.  The default "thread" mode
+ * spawns a blocking handler thread per connection.  The "nio" mode
+ * services all connections from a small fixed pool of selector threads.
+ * With -v the thread mode handlers run on virtual threads when the JDK
+ * supports them.
+ *
+ * Messages for a client are queued on a bounded per-connection queue and
+ * written in batches, so a slow client never stalls the sender.
+ *
+ * Chunk results are aggregated as they arrive and throughput and latency
+ * percentiles are logged every report interval and at shutdown.
+ *
+ * With -c or -t the server coordinates the test: it waits for the given
+ * number of clients, starts them all at the same moment with the same
+ * options, stops them after the duration and only counts results from
+ * inside that window.  Otherwise each client starts as soon as it is
+ * accepted.
  */
 public class Server {
 
     /**
-     * The port that the server listens on.  Static for now, can change to CLI arg in future
+     * The default port that the server listens on.  Can be overridden with -p
      */
     private static final int PORT = 9001;
    
 
     /**
-     * The set of all test clients.  Maintained
+     * The set of all test clients, keyed by name.  Maintained
      * so that we can check that new clients are not registering name
      * already in use.
      */
-    private static ArrayList<Client> clients = new ArrayList<Client>();
+    private static final ClientRegistry clients = new ClientRegistry();
     
     /**
      * Log4j used to handle logging
      */
     final static Logger log = Logger.getLogger(Server.class.getName());
     
+    private static CommandLineParser parser = new DefaultParser();
+    private static Options options = new Options();
+
+    private static int port = PORT;
+    private static String mode = "thread";
+    private static int ioThreads = Runtime.getRuntime().availableProcessors();
+    private static int queueCapacity = 1024;
+    private static SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP;
+
+    /**
+     * Fans client messages out to the other clients' outbound queues
+     */
+    private static Broadcaster broadcaster = new Broadcaster(clients, true);
+
+    /**
+     * Logs received messages at DEBUG from a background writer, so the
+     * connection threads never wait for an appender
+     */
+    private static final MessageLog messageLog = new MessageLog(log, 65536);
+
+    private static int reportInterval = 10;
+    private static int windowLength = 6;
+
+    /**
+     * Collects results from every client into run statistics.  Replaced
+     * with the configured one, and started, by main.
+     */
+    private static ResultAggregator aggregator = new ResultAggregator(reportInterval, windowLength);
+
+    /**
+     * Coordinated test settings.  No coordinator when neither is given.
+     */
+    private static int expectedClients;
+    private static int testDuration;
+    private static TestStart testOptions = new TestStart();
+    private static TestCoordinator coordinator;
+
+    /**
+     * Every accepted result is appended to the run file, if one is given
+     */
+    private static File runFileName;
+    private static RunFileWriter runFile;
+
+    /**
+     * Counters for the metrics endpoint, served when a port is given
+     */
+    private static final ServerMetrics metrics = new ServerMetrics();
+    private static int metricsPort = -1;
+
+    /**
+     * Heartbeat intervals a client may miss before it is disconnected, 0
+     * to keep silent clients
+     */
+    private static int missedHeartbeats = 6;
+
+    /**
+     * Runs all periodic work on one thread: statistics reports, the
+     * coordinated test's start and stop, and the silent client check
+     */
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+    		new ThreadFactory() {
+    			public Thread newThread(Runnable r) {
+    				Thread thread = new Thread(r, "server-scheduler");
+    				thread.setDaemon(true);
+    				return thread;
+    			}
+    		});
+
 
     /**
      * The application main method, which just listens on a port and
-     * spawns handler threads.
+     * spawns handler threads, or hands the listener to the NIO event loop.
      */
     public static void main(String[] args) throws Exception {
-    	log.debug("The test server is running.");
-        ServerSocket listener = new ServerSocket(PORT);
+    	processCLIArgs(args);
+    	messageLog.start();
+    	clients.addListener(new RegistryListener() {
+    		public void clientJoined(Client client) {
+    			log.debug("Registering client: " + client.getName());
+    		}
+
+    		public void clientLeft(Client client) {
+    			log.debug("Removeing client: " + client.getName());
+    			log.debug("There are " + clients.size() + " clients");
+    		}
+    	});
+    	log.debug("The test server is running in " + mode + " mode on port " + port);
+
+    	aggregator = new ResultAggregator(reportInterval, windowLength);
+    	aggregator.start(scheduler);
+    	if (expectedClients > 0 || testDuration > 0) {
+    		coordinator = new TestCoordinator(clients, aggregator, Math.max(1, expectedClients),
+    				testDuration > 0 ? testDuration : 60, testOptions, scheduler);
+    		log.info("Coordinating a test of " + Math.max(1, expectedClients) + " clients");
+    	}
+    	if (missedHeartbeats > 0) {
+    		scheduler.scheduleAtFixedRate(new ClientMonitor(clients, missedHeartbeats, metrics),
+    				Protocol.HEARTBEAT_SECONDS, Protocol.HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    	}
+    	if (runFileName != null) {
+    		runFile = new RunFileWriter(runFileName);
+    		log.info("Writing results to run file " + runFileName);
+    	}
+    	if (metricsPort >= 0) {
+    		new MetricsServer(metricsPort, clients, aggregator, metrics).start();
+    	}
+    	Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+    		public void run() {
+    			aggregator.summary();
+    			if (runFile != null) {
+    				try {
+    					runFile.close();
+    				} catch (IOException e) {
+    					log.error("Could not close run file " + runFileName, e);
+    				}
+    			}
+    		}
+    	}, "shutdown"));
+
+    	if (mode.equals("nio")) {
+    		new NioServer(port, ioThreads).run();
+    		return;
+    	}
+
+        ServerSocket listener = new ServerSocket(port, NioServer.BACKLOG);
         try {
             while (true) {
-                new Handler(listener.accept()).start();
+                Socket socket = listener.accept();
+                Threads.start("handler-" + socket.getRemoteSocketAddress(), new Handler(socket));
             }
         } finally {
             listener.close();
@@ -60,17 +231,278 @@ public class Server {
     }
 
     /**
-     * A handler thread class.  Handlers are spawned from the listening
-     * loop and are responsible for a dealing with a single client
+     * Use Apache command line parser to process arguments
+     * @param args
+     */
+    private static void processCLIArgs(String[] args) {
+
+    	options.addOption("h", false, "Display Help");
+    	options.addOption("p", true, "Port to listen on. Default " + PORT);
+    	options.addOption("m", true, "Connection handling mode: thread or nio. Default thread");
+    	options.addOption("w", true, "Number of I/O threads in nio mode. Default number of CPUs");
+    	options.addOption("v", false, "Run thread mode handlers on virtual threads (JDK 21+)");
+    	options.addOption("q", true, "Outbound queue length per client. Default 1024");
+    	options.addOption("o", true, "Slow client policy when its queue is full: drop or disconnect. Default drop");
+    	options.addOption("n", false, "Do not echo client messages to other clients");
+    	options.addOption("i", true, "Seconds between statistics reports. Default 10");
+    	options.addOption("s", true, "Sliding window length in report intervals. Default 6");
+    	options.addOption("c", true, "Coordinate a test: wait for this many clients, then start them together");
+    	options.addOption("t", true, "Coordinated test length in seconds. Default 60");
+    	options.addOption("a", true, "Client options for a coordinated test, as key=value pairs separated by commas, " +
+    			"for example c=1048576,f=20971520,w=randread");
+    	options.addOption("r", true, "Write every result to this run file, for reports with RunReport.");
+    	options.addOption("x", true, "Serve metrics over HTTP on this port, Prometheus text on /metrics and JSON on " +
+    			"/metrics.json");
+    	options.addOption("d", true, "Disconnect a client that sends heartbeats once nothing has arrived from it for " +
+    			"this many heartbeat intervals of " + Protocol.HEARTBEAT_SECONDS + " seconds. 0 to never. Default 6");
+
+    	try {
+    		CommandLine cmd = parser.parse(options, args);
+
+    		if (cmd.hasOption("h")) {
+    			help();
+    		}
+
+    		if (cmd.hasOption("p")) {
+    			port = Integer.valueOf(cmd.getOptionValue("p"));
+    		}
+
+    		if (cmd.hasOption("m")) {
+    			mode = cmd.getOptionValue("m").toLowerCase();
+    			if (!mode.equals("thread") && !mode.equals("nio")) {
+    				System.out.println("Unknown mode: " + mode);
+    				help();
+    			}
+    		}
+
+    		if (cmd.hasOption("w")) {
+    			ioThreads = Integer.valueOf(cmd.getOptionValue("w"));
+    		}
+
+    		Threads.setVirtual(cmd.hasOption("v"));
+
+    		if (cmd.hasOption("q")) {
+    			queueCapacity = Integer.valueOf(cmd.getOptionValue("q"));
+    		}
+
+    		if (cmd.hasOption("o")) {
+    			try {
+    				slowConsumerPolicy = SlowConsumerPolicy.valueOf(cmd.getOptionValue("o").toUpperCase());
+    			} catch (IllegalArgumentException e) {
+    				throw new IllegalArgumentException("Slow client policy must be drop or disconnect");
+    			}
+    		}
+
+    		broadcaster = new Broadcaster(clients, !cmd.hasOption("n"));
+
+    		if (cmd.hasOption("i")) {
+    			reportInterval = Integer.valueOf(cmd.getOptionValue("i"));
+    		}
+
+    		if (cmd.hasOption("s")) {
+    			windowLength = Integer.valueOf(cmd.getOptionValue("s"));
+    		}
+
+    		if (cmd.hasOption("c")) {
+    			expectedClients = Integer.valueOf(cmd.getOptionValue("c"));
+    		}
+
+    		if (cmd.hasOption("t")) {
+    			testDuration = Integer.valueOf(cmd.getOptionValue("t"));
+    		}
+
+    		if (cmd.hasOption("a")) {
+    			testOptions = TestStart.parse(Protocol.START_TEST + " " + cmd.getOptionValue("a").replace(',', ' '));
+    		}
+
+    		if (cmd.hasOption("r")) {
+    			runFileName = new File(cmd.getOptionValue("r"));
+    		}
+
+    		if (cmd.hasOption("x")) {
+    			metricsPort = Integer.valueOf(cmd.getOptionValue("x"));
+    		}
+
+    		if (cmd.hasOption("d")) {
+    			missedHeartbeats = Integer.valueOf(cmd.getOptionValue("d"));
+    		}
+    	} catch (ParseException e) {
+    		e.printStackTrace();
+    	} catch (NumberFormatException ne) {
+    		log.error("Port, thread count, queue length, report and test settings must be numbers");
+    		help();
+    	} catch (IllegalArgumentException ie) {
+    		log.error(ie.getMessage());
+    		help();
+    	}
+    }
+
+    /**
+     * Print help to CLI
+     */
+    private static void help() {
+    	HelpFormatter formater = new HelpFormatter();
+
+    	formater.printHelp("Server", options);
+    	System.exit(0);
+    }
+
+    /**
+     * Create the outbound queue for a new connection using the configured
+     * length and slow client policy.
+     *
+     * @param connection closed if the policy disconnects the client
+     * @param signal run after each queued line, may be null
      */
-    private static class Handler extends Thread {
+    public static OutboundQueue createOutbound(Closeable connection, Runnable signal) {
+    	return new OutboundQueue(queueCapacity, slowConsumerPolicy, connection, signal);
+    }
+
+    /**
+     * Attempt to register a client name.  On success the client is
+     * acknowledged with "NAMEACCEPTED" and the outbound queue is attached so
+     * this client can receive broadcast messages.  The client is told to
+     * start its test at once, or when coordinating, once the coordinator
+     * starts the test.  The registry claims the name atomically, so no lock
+     * is needed.
+     *
+     * @param name name submitted by the client
+     * @param outbound queue used to reach the client
+     * @return the registered client, or null if the name is taken
+     */
+    public static Client register(String name, OutboundQueue outbound) {
+    	Client client = new Client(name);
+    	if (!clients.add(client)) {
+    		return null;
+    	}
+
+    	// Attach the queue only after the handshake so broadcasts
+    	// can not overtake NAMEACCEPTED.
+    	outbound.offerControl("NAMEACCEPTED " + Protocol.BINARY + " " + Protocol.INTERVALS);
+    	if (coordinator == null) {
+    		outbound.offerControl(Protocol.START_TEST);
+    	}
+    	client.setOutbound(outbound);
+    	if (coordinator != null) {
+    		coordinator.clientRegistered(client);
+    	}
+    	return client;
+    }
+
+    /**
+     * Register a logical client joining over the connection of a registered
+     * client.  It has no outbound queue of its own: messages for the
+     * process reach it through its parent's connection.
+     *
+     * @param name name of the logical client
+     * @param parent client whose connection it shares
+     * @return the registered client, or null if the name is taken
+     */
+    public static Client join(String name, Client parent) {
+    	Client client = new Client(name);
+    	client.setParent(parent);
+    	if (!clients.add(client)) {
+    		return null;
+    	}
+    	if (coordinator != null) {
+    		coordinator.clientRegistered(client);
+    	}
+    	return client;
+    }
+
+    /**
+     * @param name client that sent the result
+     * @param timestamp when the operation completed, nanoseconds since the epoch
+     * @return true if the result should be counted: always, unless a
+     * coordinated test is running and the result is from outside it
+     */
+    public static boolean accepts(String name, long timestamp) {
+    	return coordinator == null || coordinator.accepts(name, timestamp);
+    }
+
+    /**
+     * @return the run file results are written to, or null
+     */
+    public static RunFileWriter runFile() {
+    	return runFile;
+    }
+
+    /**
+     * @return the registered client of that name, or null
+     */
+    public static Client client(String name) {
+    	return clients.get(name);
+    }
+
+    /**
+     * @return server counters
+     */
+    public static ServerMetrics metrics() {
+    	return metrics;
+    }
+
+    /**
+     * @return the statistics collected for a registered client.  Release
+     * them with {@link #releaseStats(ClientStats)} when the client leaves.
+     */
+    public static ClientStats statsFor(String name) {
+    	return aggregator.join(name);
+    }
+
+    /**
+     * Fold a departed client's statistics into the run totals.
+     */
+    public static void releaseStats(ClientStats stats) {
+    	aggregator.leave(stats);
+    }
+
+    /**
+     * Log a message received from one client and echo it to every
+     * registered client.
+     *
+     * @param name name of the sending client
+     * @param input line received from the client
+     */
+    public static void broadcast(String name, String input) {
+    	messageLog.received(name, input);
+    	broadcaster.publish(name, input);
+    }
+
+    /**
+     * @return true if received messages are echoed or logged, and so are
+     * worth rendering as text
+     */
+    public static boolean wantsText() {
+    	return broadcaster.isEcho() || messageLog.isEnabled();
+    }
+
+    /**
+     * Remove a client's name and its print writer from the set of all
+     * clients.  Nothing is removed if the client was already evicted and
+     * its name taken again by a new connection.
+     *
+     * @param client the departing client, as returned by register or join
+     */
+    public static void unregister(Client client) {
+    	clients.remove(client);
+    }
+
+    /**
+     * A handler task.  Handlers are spawned on their own platform or virtual
+     * thread from the listening loop and are responsible for a dealing with
+     * a single client
+     */
+    private static class Handler implements Runnable {
         private String name;
+        private Client client;
         private Socket socket;
-        private BufferedReader in;
-        private PrintWriter out;
+        private LineReader in;
+        private OutboundQueue out;
+        private Thread writer;
+        private ConnectionHandler messages;
 
         /**
-         * Constructs a handler thread
+         * Constructs a handler
          */
         public Handler(Socket socket) {
             this.socket = socket;
@@ -83,101 +515,83 @@ public class Server {
          * the client in a global set
          */
         public void run() {
+            metrics.connected();
+            metrics.handlerStarted();
             try {
 
-                // Create character streams for the socket.
-                in = new BufferedReader(new InputStreamReader(
+                // Create streams for the socket.  Input is read a line at a
+                // time until the client switches to binary frames.  Output is
+                // queued and written in batches by a separate writer.
+                in = new LineReader(new BufferedInputStream(
                     socket.getInputStream()));
-                out = new PrintWriter(socket.getOutputStream(), true);
+                out = createOutbound(socket, null);
+                writer = Threads.start("writer-" + socket.getRemoteSocketAddress(),
+                    new OutboundWriter(out, new PrintWriter(new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream())))));
 
                 // Request a name from this client.  Keep requesting until
-                // a name is submitted that is not already used.  Note that
-                // checking for the existence of a name and adding the name
-                // must be done while locking the set of names.
-                while (true) {
-                	boolean addClient = false;
-                    out.println("SUBMITNAME");
+                // a name is submitted that is not already used.
+                while (client == null) {
+                    out.offerControl("SUBMITNAME");
                     name = in.readLine();
                     
                     if (name == null) {
                         return;
                     }
                     
-                    synchronized (clients) {
-                    	if (clients.isEmpty()) {
-                			addClient = true;;
-                    	} else {
-	                    	for (Client client: clients) {
-	                    		if (!client.getName().equals(name)) {
-	                    			addClient = true;
-	                    		}
-	                    	}
-                    	}
-	                    if (addClient) {
-	                    	log.debug("Registering client: " + name);
-                			Client client = new Client(name);
-
-                            // Add the socket's print writer to the set of all writers so
-                            // this client can receive broadcast messages.
-                			out.println("NAMEACCEPTED");
-                			client.setWriter(out);
-                			out.println("STARTTEST");
-                			client.setWriter(out);
-                			
-                			clients.add(client);
-	                    	break;
-	                    }
-                    }
+                    client = register(name, out);
                 }
 
-                // Now that a successful name has been chosen, add the
-                // socket's print writer to the set of all writers so
-                // this client can receive messages.
-                
-                // Accept messages from this client and log them.
-                while (true) {
+                // Accept messages from this client, record and log them.
+                messages = new ConnectionHandler(client, out);
+                while (!messages.isExited()) {
                     String input = in.readLine();
                     
                     if (input == null) {
                         return;
-                    } else if (input.equalsIgnoreCase("exit")) {
-                    	//writer.println("MESSAGE " + name + ": " + input);
-                    	log.debug("Exiting for client: " + name);
+                    } else if (input.equals(Protocol.ACCEPT_BINARY)) {
+                    	readFrames(messages);
                     	break;
                     }
                    
-                    for (Client client : clients) {
-                    	log.debug("Message Recieved from: " + name + " Msg: " + input);
-                        client.getWriter().println("MESSAGE " + name + ": " + input);
-                    }
+                    messages.onText(input);
                 }
             } catch (IOException e) {
             	log.error(e);
             } finally {
                 // This client is going down!  Remove its name and its print
                 // writer from the sets, and close its socket.
-            	// Ensure that that no one else will be updating the clients while removing a client
-            	synchronized (clients) {
-	                if (name != null) {
-	                	if (clients.size() == 1) {
-	                		clients.clear();
-	                	} else {
-	                		Iterator<Client> iter = clients.iterator();
-	                		while(iter.hasNext()){
-	                			if (iter.next().getName().equals(name)) {
-	                				log.debug("Removeing client: " + name);
-	                				iter.remove();
-	                			}
-	                		}
-	                	}
-	                	
-	                    log.debug("There are " + clients.size() + " clients");
-	                }
-	                try {
-	                    socket.close();
-	                } catch (IOException e) {
-	                }
-            	}
+                if (messages != null) {
+                	messages.close();
+                }
+                if (client != null) {
+                	unregister(client);
+                }
+                if (writer != null) {
+                	writer.interrupt();
+                }
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                }
+                metrics.handlerStopped();
+            }
+        }
+
+        /**
+         * Decode binary frames from the rest of the stream until the client
+         * sends EXIT or disconnects.
+         */
+        private void readFrames(ConnectionHandler handler) throws IOException {
+            FrameDecoder decoder = new FrameDecoder(handler);
+            InputStream stream = in.getInputStream();
+            byte[] bytes = new byte[8192];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int read;
+            while (!handler.isExited() && (read = stream.read(bytes)) > 0) {
+                buffer.clear();
+                buffer.limit(read);
+                decoder.decode(buffer);
             }
         }
     }
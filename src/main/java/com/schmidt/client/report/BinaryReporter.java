@@ -0,0 +1,165 @@
+package com.schmidt.client.report;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.FrameEncoder;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.Protocol;
+import com.schmidt.protocol.Status;
+
+/**
+ * Reports using binary frames once the server has offered them.  Every
+ * message is encoded into one reused buffer and written with a single call,
+ * so reporting a chunk result allocates nothing.
+ *
+ * Logical clients running in the same process share the reporter: each is
+ * announced with {@link #join} and reports through {@link #forClient}, which
+ * prefixes every message with a CLIENT frame.  Both frames are written
+ * together, so messages of different clients never interleave.
+ */
+public class BinaryReporter implements IntervalTarget {
+
+	private final OutputStream out;
+	private final ByteBuffer buffer = ByteBuffer.allocate(Protocol.HEADER + Protocol.MAX_FRAME);
+
+	final static Logger log = Logger.getLogger(BinaryReporter.class.getName());
+
+	/**
+	 * Sends HELLO with the client name.
+	 *
+	 * @param out server socket stream
+	 * @param clientName name this client registered with
+	 */
+	public BinaryReporter(OutputStream out, String clientName) {
+		this.out = out;
+		synchronized (this) {
+			buffer.clear();
+			FrameEncoder.hello(buffer, clientName);
+			send();
+		}
+	}
+
+	public synchronized void chunkResult(ChunkResult result) {
+		buffer.clear();
+		FrameEncoder.chunkResult(buffer, result);
+		send();
+	}
+
+	public synchronized void interval(IntervalResult interval) {
+		buffer.clear();
+		FrameEncoder.interval(buffer, interval);
+		send();
+	}
+
+	public synchronized void heartbeat(long timestamp) {
+		buffer.clear();
+		FrameEncoder.heartbeat(buffer, timestamp);
+		send();
+	}
+
+	public synchronized void status(Status status) {
+		buffer.clear();
+		FrameEncoder.status(buffer, status);
+		send();
+	}
+
+	public synchronized void text(String line) {
+		buffer.clear();
+		FrameEncoder.text(buffer, line);
+		send();
+	}
+
+	public synchronized void exit() {
+		buffer.clear();
+		FrameEncoder.exit(buffer);
+		send();
+	}
+
+	/**
+	 * Register another logical client over this connection.
+	 *
+	 * @param id number its messages are routed with, from 2
+	 * @param name name to register it under
+	 */
+	public synchronized void join(int id, String name) {
+		buffer.clear();
+		FrameEncoder.join(buffer, id, name);
+		send();
+	}
+
+	/**
+	 * @param id number the logical client joined with
+	 * @return reporter for the logical client's own messages
+	 */
+	public IntervalTarget forClient(final int id) {
+		return new IntervalTarget() {
+			public void chunkResult(ChunkResult result) {
+				synchronized (BinaryReporter.this) {
+					buffer.clear();
+					FrameEncoder.client(buffer, id);
+					FrameEncoder.chunkResult(buffer, result);
+					send();
+				}
+			}
+
+			public void interval(IntervalResult interval) {
+				synchronized (BinaryReporter.this) {
+					buffer.clear();
+					FrameEncoder.client(buffer, id);
+					FrameEncoder.interval(buffer, interval);
+					send();
+				}
+			}
+
+			public void heartbeat(long timestamp) {
+				synchronized (BinaryReporter.this) {
+					buffer.clear();
+					FrameEncoder.client(buffer, id);
+					FrameEncoder.heartbeat(buffer, timestamp);
+					send();
+				}
+			}
+
+			public void status(Status status) {
+				synchronized (BinaryReporter.this) {
+					buffer.clear();
+					FrameEncoder.client(buffer, id);
+					FrameEncoder.status(buffer, status);
+					send();
+				}
+			}
+
+			public void text(String line) {
+				synchronized (BinaryReporter.this) {
+					buffer.clear();
+					FrameEncoder.client(buffer, id);
+					FrameEncoder.text(buffer, line);
+					send();
+				}
+			}
+
+			public void exit() {
+				synchronized (BinaryReporter.this) {
+					buffer.clear();
+					FrameEncoder.client(buffer, id);
+					FrameEncoder.exit(buffer);
+					send();
+				}
+			}
+		};
+	}
+
+	private void send() {
+		try {
+			out.write(buffer.array(), 0, buffer.position());
+			out.flush();
+		} catch (IOException e) {
+			log.debug("Unable to report to server: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.schmidt.client.report;
+
+import java.util.Arrays;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.Status;
+
+/**
+ * Aggregates the chunk results of one logical client over fixed intervals
+ * and sends one {@link IntervalResult} per worker and operation for each
+ * interval instead of a message per chunk, so the reporting traffic and the
+ * server's work stay the same however small the chunks are.  Other messages
+ * pass straight through.
+ *
+ * Intervals are aligned to an origin, normally the test start, so clients
+ * started together cut the same intervals.  Each worker's interval is sent
+ * when the first result of that worker after its end arrives or when
+ * {@link #flush(long)} finds it over, whichever comes first, so a worker
+ * that is still finishing a chunk does not lose its results to one that
+ * has moved on.  Workers and operations without results in an interval
+ * send nothing.  A result that arrives after its worker's interval was
+ * sent goes into the next one, so no interval is sent twice.
+ *
+ * Storage test threads record under the reporter's lock, which costs a few
+ * histogram updates per chunk; the interval is encoded and sent under the
+ * same lock once per interval.
+ */
+public class IntervalReporter implements Reporter {
+
+	private static final int OPERATIONS = Operation.values().length;
+
+	private final IntervalTarget target;
+	private final long intervalNanos;
+	private long origin;
+	// Indexed by worker: end of the interval being collected, 0 while
+	// nothing is collected, and end of the last interval sent
+	private long[] ends = new long[0];
+	private long[] sent = new long[0];
+	// Indexed by worker * OPERATIONS + operation, created on first use
+	private IntervalResult[] intervals = new IntervalResult[0];
+
+	/**
+	 * @param target sends the intervals and the other messages
+	 * @param intervalNanos length of an interval
+	 */
+	public IntervalReporter(IntervalTarget target, long intervalNanos) {
+		if (intervalNanos <= 0) {
+			throw new IllegalArgumentException("Interval must be positive");
+		}
+		this.target = target;
+		this.intervalNanos = intervalNanos;
+	}
+
+	/**
+	 * @param origin time intervals are aligned to, nanoseconds since the epoch
+	 */
+	public synchronized void setOrigin(long origin) {
+		this.origin = origin;
+	}
+
+	public synchronized void chunkResult(ChunkResult result) {
+		int worker = result.getWorker();
+		if (worker >= ends.length) {
+			int length = Math.max(worker + 1, ends.length * 2);
+			ends = Arrays.copyOf(ends, length);
+			sent = Arrays.copyOf(sent, length);
+		}
+		long timestamp = Math.max(result.getTimestamp(), sent[worker]);
+		if (ends[worker] != 0 && timestamp >= ends[worker]) {
+			send(worker);
+		}
+		if (ends[worker] == 0) {
+			ends[worker] = origin + (Math.floorDiv(timestamp - origin, intervalNanos) + 1) * intervalNanos;
+		}
+		IntervalResult interval = interval(worker, result.getOperation());
+		if (interval.getCount() == 0) {
+			interval.reset(ends[worker] - intervalNanos);
+		}
+		interval.record(result);
+	}
+
+	/**
+	 * Send the intervals being collected that ended before now.  Called
+	 * periodically so that the last results before a pause are not held
+	 * back.
+	 *
+	 * @param now nanoseconds since the epoch
+	 */
+	public synchronized void flush(long now) {
+		for (int worker = 0; worker < ends.length; worker++) {
+			if (ends[worker] != 0 && now >= ends[worker]) {
+				send(worker);
+			}
+		}
+	}
+
+	/**
+	 * Send whatever has been collected, at the end of the test.
+	 */
+	public synchronized void flush() {
+		for (int worker = 0; worker < ends.length; worker++) {
+			if (ends[worker] != 0) {
+				send(worker);
+			}
+		}
+	}
+
+	private IntervalResult interval(int worker, Operation operation) {
+		int i = worker * OPERATIONS + operation.ordinal();
+		if (i >= intervals.length) {
+			IntervalResult[] larger = new IntervalResult[Math.max(i + 1, intervals.length * 2)];
+			System.arraycopy(intervals, 0, larger, 0, intervals.length);
+			intervals = larger;
+		}
+		IntervalResult interval = intervals[i];
+		if (interval == null) {
+			interval = new IntervalResult();
+			interval.setWorker(worker);
+			interval.setOperation(operation);
+			intervals[i] = interval;
+		}
+		return interval;
+	}
+
+	private void send(int worker) {
+		int first = worker * OPERATIONS;
+		for (int i = first; i < first + OPERATIONS && i < intervals.length; i++) {
+			IntervalResult interval = intervals[i];
+			if (interval != null && interval.getCount() > 0) {
+				target.interval(interval);
+				interval.reset(0);
+			}
+		}
+		sent[worker] = ends[worker];
+		ends[worker] = 0;
+	}
+
+	public void heartbeat(long timestamp) {
+		target.heartbeat(timestamp);
+	}
+
+	public void status(Status status) {
+		target.status(status);
+	}
+
+	public void text(String line) {
+		target.text(line);
+	}
+
+	/**
+	 * Send the results collected so far, then EXIT.
+	 */
+	public void exit() {
+		flush();
+		target.exit();
+	}
+}
@@ -0,0 +1,12 @@
+package com.schmidt.client.report;
+
+import com.schmidt.protocol.IntervalResult;
+
+/**
+ * A reporter that can also send chunk results aggregated over an interval.
+ * Only the binary protocol carries them.
+ */
+public interface IntervalTarget extends Reporter {
+
+	void interval(IntervalResult interval);
+}
@@ -0,0 +1,32 @@
+package com.schmidt.client.report;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Status;
+
+/**
+ * Sends test results and client state to the server.  Implementations are
+ * shared by the heartbeat, status and storage test threads and must be
+ * thread safe.  Message objects are not kept after a call returns, so
+ * callers may reuse them.
+ */
+public interface Reporter {
+
+	void chunkResult(ChunkResult result);
+
+	/**
+	 * @param timestamp nanoseconds since the epoch
+	 */
+	void heartbeat(long timestamp);
+
+	void status(Status status);
+
+	/**
+	 * Free form text, such as input typed into the client window
+	 */
+	void text(String line);
+
+	/**
+	 * Tell the server this client is leaving
+	 */
+	void exit();
+}
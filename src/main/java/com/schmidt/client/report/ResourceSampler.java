@@ -0,0 +1,167 @@
+package com.schmidt.client.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.EpochClock;
+import com.schmidt.protocol.Status;
+
+/**
+ * Samples the resources the client process is using into a {@link Status}:
+ * process CPU time, system load, heap, garbage collection count and time,
+ * allocation by live threads, the process's storage I/O from /proc/self/io
+ * and the disks' counters from /proc/diskstats.  Values the JVM or the
+ * operating system does not provide are left at -1.  Not thread safe.
+ */
+public class ResourceSampler {
+
+	private static final String PROC_IO = "/proc/self/io";
+	private static final String DISKSTATS = "/proc/diskstats";
+	private static final String SYS_BLOCK = "/sys/block";
+	private static final int SECTOR = 512;
+
+	private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+	private final boolean allocation;
+
+	final static Logger log = Logger.getLogger(ResourceSampler.class.getName());
+
+	public ResourceSampler() {
+		boolean supported = false;
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+			if (sun.isThreadAllocatedMemorySupported()) {
+				sun.setThreadAllocatedMemoryEnabled(true);
+				supported = true;
+			}
+		}
+		allocation = supported;
+	}
+
+	/**
+	 * Fill in the status with the current values.
+	 */
+	public void sample(Status status) {
+		status.setTimestamp(EpochClock.epochNanos());
+
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		status.setTotalMemory(heap.getCommitted());
+		status.setHeapUsed(heap.getUsed());
+
+		status.setProcessors(os.getAvailableProcessors());
+		status.setSystemLoad(os.getSystemLoadAverage());
+		status.setCpuNanos(os instanceof com.sun.management.OperatingSystemMXBean
+				? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() : -1);
+
+		long gcCount = 0;
+		long gcMillis = 0;
+		for (GarbageCollectorMXBean collector : collectors) {
+			gcCount += Math.max(0, collector.getCollectionCount());
+			gcMillis += Math.max(0, collector.getCollectionTime());
+		}
+		status.setGcCount(gcCount);
+		status.setGcNanos(gcMillis * 1000000L);
+
+		long allocated = -1;
+		if (allocation) {
+			allocated = 0;
+			long[] ids = threads.getAllThreadIds();
+			for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(ids)) {
+				allocated += Math.max(0, bytes);
+			}
+		}
+		status.setAllocatedBytes(allocated);
+
+		status.setIoReadBytes(-1);
+		status.setIoWriteBytes(-1);
+		try {
+			if (new File(PROC_IO).canRead()) {
+				parseProcIo(Files.readAllLines(Paths.get(PROC_IO)), status);
+			}
+		} catch (IOException e) {
+			log.debug("Could not read " + PROC_IO + ": " + e.getMessage());
+		}
+
+		status.setDiskReadBytes(-1);
+		status.setDiskWriteBytes(-1);
+		status.setDiskBusyMillis(-1);
+		try {
+			if (new File(DISKSTATS).canRead()) {
+				parseDiskStats(Files.readAllLines(Paths.get(DISKSTATS)), new File(SYS_BLOCK), status);
+			}
+		} catch (IOException e) {
+			log.debug("Could not read " + DISKSTATS + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Take read_bytes and write_bytes, the bytes this process caused to be
+	 * fetched from or sent to storage, from /proc/self/io.
+	 */
+	static void parseProcIo(List<String> lines, Status status) {
+		for (String line : lines) {
+			if (line.startsWith("read_bytes:")) {
+				status.setIoReadBytes(Long.parseLong(line.substring(11).trim()));
+			} else if (line.startsWith("write_bytes:")) {
+				status.setIoWriteBytes(Long.parseLong(line.substring(12).trim()));
+			}
+		}
+	}
+
+	/**
+	 * Sum the sectors read and written by every whole disk in
+	 * /proc/diskstats, leaving out partitions, loop and ram devices, and take
+	 * the busy time of the busiest one.  Whole disks are the ones listed in
+	 * /sys/block.  Devices stacked on other block devices, such as device
+	 * mapper and md RAID devices, have entries in their slaves directory;
+	 * they are left out too, since the disks under them already count
+	 * their I/O.
+	 */
+	static void parseDiskStats(List<String> lines, File sysBlock, Status status) {
+		long read = 0;
+		long written = 0;
+		long busy = 0;
+		boolean found = false;
+		for (String line : lines) {
+			String[] fields = line.trim().split("\\s+");
+			if (fields.length < 13 || !isDisk(fields[2], sysBlock)) {
+				continue;
+			}
+			read += Long.parseLong(fields[5]);
+			written += Long.parseLong(fields[9]);
+			busy = Math.max(busy, Long.parseLong(fields[12]));
+			found = true;
+		}
+		if (found) {
+			status.setDiskReadBytes(read * SECTOR);
+			status.setDiskWriteBytes(written * SECTOR);
+			status.setDiskBusyMillis(busy);
+		}
+	}
+
+	private static boolean isDisk(String name, File sysBlock) {
+		if (name.startsWith("loop") || name.startsWith("ram") || name.startsWith("zram")) {
+			return false;
+		}
+		if (!sysBlock.isDirectory()) {
+			return true;
+		}
+		File device = new File(sysBlock, name);
+		if (!device.exists()) {
+			return false;
+		}
+		String[] slaves = new File(device, "slaves").list();
+		return slaves == null || slaves.length == 0;
+	}
+}
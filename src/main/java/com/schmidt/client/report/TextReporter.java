@@ -0,0 +1,45 @@
+package com.schmidt.client.report;
+
+import java.io.PrintWriter;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Status;
+import com.schmidt.protocol.TextFormat;
+
+/**
+ * Reports using the line protocol understood by every server version.
+ */
+public class TextReporter implements Reporter {
+
+	private final PrintWriter out;
+	private final String clientName;
+
+	/**
+	 * @param out autoflush writer for the server socket
+	 * @param clientName name prefixed to chunk results
+	 */
+	public TextReporter(PrintWriter out, String clientName) {
+		this.out = out;
+		this.clientName = clientName;
+	}
+
+	public void chunkResult(ChunkResult result) {
+		out.println(TextFormat.chunkResult(clientName, result));
+	}
+
+	public void heartbeat(long timestamp) {
+		out.println(TextFormat.heartbeat(timestamp));
+	}
+
+	public void status(Status status) {
+		out.println(TextFormat.status(status));
+	}
+
+	public void text(String line) {
+		out.println(line);
+	}
+
+	public void exit() {
+		out.println("exit");
+	}
+}
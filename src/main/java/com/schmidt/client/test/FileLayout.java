@@ -0,0 +1,118 @@
+package com.schmidt.client.test;
+
+import java.io.File;
+
+/**
+ * Where the write workload puts its test files and what happens to them
+ * once written.  The layouts measure different costs: creating, allocating
+ * and deleting a new file every time, file system metadata across a
+ * directory tree of many files, and overwriting blocks already allocated.
+ */
+public enum FileLayout {
+
+	/**
+	 * Create a new file for each pass and delete it once written
+	 */
+	CREATE("create", 1),
+
+	/**
+	 * Spread files over a two level tree of directories, 16 wide, keeping
+	 * them; a file is deleted and created again when its turn comes round
+	 */
+	TREE("tree", 4096),
+
+	/**
+	 * Rewrite one file in place
+	 */
+	REWRITE("rewrite", 1),
+
+	/**
+	 * Rewrite a rotating pool of files in place, never deleting them
+	 */
+	POOL("pool", 16);
+
+	private static final int FANOUT = 16;
+
+	private final String name;
+	private final int defaultFiles;
+
+	private FileLayout(String name, int defaultFiles) {
+		this.name = name;
+		this.defaultFiles = defaultFiles;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return number of files the tree and pool layouts keep, if not given
+	 */
+	public int getDefaultFiles() {
+		return defaultFiles;
+	}
+
+	/**
+	 * @param files files kept by the tree and pool layouts
+	 * @return number of different files written
+	 */
+	public int slots(int files) {
+		return this == TREE || this == POOL ? files : 1;
+	}
+
+	/**
+	 * @return true if a file is overwritten in place when written again
+	 */
+	public boolean writesInPlace() {
+		return this == REWRITE || this == POOL;
+	}
+
+	/**
+	 * @return true if written files stay until the test ends
+	 */
+	public boolean keepsFiles() {
+		return this != CREATE;
+	}
+
+	/**
+	 * @param directory where test files go, or null for the working directory
+	 * @param name client or worker name the files are named after
+	 * @param pass number of files written before this one
+	 * @param files files kept by the tree and pool layouts
+	 * @return the file to write on this pass
+	 */
+	public File file(File directory, String name, long pass, int files) {
+		switch (this) {
+		case CREATE:
+			return new File(directory, "testfile_" + name + "." + pass);
+		case REWRITE:
+			return new File(directory, "testfile_" + name);
+		case POOL:
+			return new File(directory, "testfile_" + name + "." + pass % files);
+		default:
+			int slot = (int) (pass % files);
+			File leaf = new File(new File(root(directory, name), "d" + slot % FANOUT), "d" + slot / FANOUT % FANOUT);
+			return new File(leaf, "f" + slot);
+		}
+	}
+
+	/**
+	 * @return top directory of the tree layout
+	 */
+	public File root(File directory, String name) {
+		return new File(directory, "testtree_" + name);
+	}
+
+	/**
+	 * @param name name given on the command line
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	public static FileLayout forName(String name) {
+		for (FileLayout layout : values()) {
+			if (layout.name.equals(name)) {
+				return layout;
+			}
+		}
+		throw new IllegalArgumentException("Unknown file layout: " + name);
+	}
+}
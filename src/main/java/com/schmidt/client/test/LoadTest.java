@@ -0,0 +1,308 @@
+package com.schmidt.client.test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Connection load generator for the test server.  Many lightweight simulated
+ * clients are driven from a single selector thread.  Each one completes the
+ * SUBMITNAME / NAMEACCEPTED / STARTTEST handshake and then sends messages at a
+ * fixed rate.  At the end the number of registered clients, the send and
+ * receive rates and the echo latency are printed, so the thread and nio
+ * server modes can be compared on the same box.
+ */
+public class LoadTest {
+
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private static CommandLineParser parser = new DefaultParser();
+	private static Options options = new Options();
+
+	private String serverAddress = "localhost";
+	private int port = 9001;
+	private int clientCount = 100;
+	private double rate = 1;
+	private int testTime = 30;
+	private int messageLength = 64;
+	private String prefix = "load";
+
+	private long sent;
+	private long skipped;
+	private long received;
+	private long echoes;
+	private long echoNanos;
+	private long maxEchoNanos;
+
+	/**
+	 * One simulated client
+	 */
+	private static class Connection {
+		SocketChannel channel;
+		String name;
+		ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+		byte[] line = new byte[256];
+		int lineLength;
+		boolean registered;
+		long startedAt;
+		long sent;
+	}
+
+	public static void main(String[] args) throws IOException {
+		LoadTest test = new LoadTest();
+		test.processCLIArgs(args);
+		test.run();
+	}
+
+	/**
+	 * Use Apache command line parser to process arguments
+	 * @param args
+	 */
+	private void processCLIArgs(String[] args) {
+		options.addOption("h", false, "Display Help");
+		options.addOption("s", true, "Server FQDN or IP address. Default localhost");
+		options.addOption("p", true, "Server port. Default 9001");
+		options.addOption("k", true, "Number of simulated clients. Default 100");
+		options.addOption("r", true, "Messages per second sent by each client. Default 1");
+		options.addOption("t", true, "Length of time in seconds for test. Default 30");
+		options.addOption("l", true, "Message length in bytes. Default 64");
+		options.addOption("n", true, "Client name prefix. Default load");
+
+		try {
+			CommandLine cmd = parser.parse(options, args);
+			if (cmd.hasOption("h")) {
+				help();
+			}
+			if (cmd.hasOption("s")) {
+				serverAddress = cmd.getOptionValue("s");
+			}
+			if (cmd.hasOption("p")) {
+				port = Integer.valueOf(cmd.getOptionValue("p"));
+			}
+			if (cmd.hasOption("k")) {
+				clientCount = Integer.valueOf(cmd.getOptionValue("k"));
+			}
+			if (cmd.hasOption("r")) {
+				rate = Double.valueOf(cmd.getOptionValue("r"));
+			}
+			if (cmd.hasOption("t")) {
+				testTime = Integer.valueOf(cmd.getOptionValue("t"));
+			}
+			if (cmd.hasOption("l")) {
+				messageLength = Integer.valueOf(cmd.getOptionValue("l"));
+			}
+			if (cmd.hasOption("n")) {
+				prefix = cmd.getOptionValue("n");
+			}
+		} catch (ParseException e) {
+			e.printStackTrace();
+		} catch (NumberFormatException ne) {
+			System.out.println("Numeric option expected");
+			help();
+		}
+	}
+
+	/**
+	 * Print help to CLI
+	 */
+	private void help() {
+		HelpFormatter formater = new HelpFormatter();
+		formater.printHelp("LoadTest", options);
+		System.exit(0);
+	}
+
+	/**
+	 * Connect every client, drive the message schedule until the test time
+	 * has elapsed, then say exit on every connection and print the results.
+	 *
+	 * @throws IOException
+	 */
+	public void run() throws IOException {
+
+		Selector selector = Selector.open();
+		List<Connection> connections = new ArrayList<Connection>(clientCount);
+		InetSocketAddress address = new InetSocketAddress(serverAddress, port);
+
+		for (int i = 0; i < clientCount; i++) {
+			Connection connection = new Connection();
+			connection.name = prefix + "-" + i;
+			connection.channel = SocketChannel.open();
+			connection.channel.configureBlocking(false);
+			connection.channel.connect(address);
+			connection.channel.register(selector, SelectionKey.OP_CONNECT, connection);
+			connections.add(connection);
+		}
+
+		long start = System.nanoTime();
+		long end = start + testTime * 1000000000L;
+		long now;
+		while ((now = System.nanoTime()) < end) {
+			selector.select(10);
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				Connection connection = (Connection) key.attachment();
+				try {
+					if (key.isValid() && key.isConnectable()) {
+						connection.channel.finishConnect();
+						key.interestOps(SelectionKey.OP_READ);
+					}
+					if (key.isValid() && key.isReadable()) {
+						read(connection, key);
+					}
+					if (key.isValid() && key.isWritable()) {
+						flush(connection, key);
+					}
+				} catch (IOException e) {
+					key.cancel();
+					connection.channel.close();
+				}
+			}
+
+			for (Connection connection : connections) {
+				if (!connection.registered || !connection.channel.isOpen()) {
+					continue;
+				}
+				long due = (long) ((now - connection.startedAt) / 1e9 * rate) - connection.sent;
+				for (long i = 0; i < due; i++) {
+					connection.sent++;
+					if (send(connection, message(connection.sent, System.nanoTime()))) {
+						sent++;
+					} else {
+						skipped++;
+					}
+				}
+				try {
+					flush(connection, connection.channel.keyFor(selector));
+				} catch (IOException e) {
+					connection.channel.close();
+				}
+			}
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		int registered = 0;
+		for (Connection connection : connections) {
+			if (connection.registered) {
+				registered++;
+			}
+		}
+		selector.close();
+		for (Connection connection : connections) {
+			try {
+				if (connection.channel.isConnected()) {
+					connection.channel.configureBlocking(true);
+					connection.channel.write(ByteBuffer.wrap("exit\n".getBytes(CHARSET)));
+				}
+				connection.channel.close();
+			} catch (IOException e) {
+			}
+		}
+
+		System.out.println("Clients requested:     " + clientCount);
+		System.out.println("Clients registered:    " + registered);
+		System.out.println("Elapsed:               " + String.format("%.1f", elapsed) + " secs");
+		System.out.println("Messages sent:         " + sent + " (" + String.format("%.0f", sent / elapsed) + "/sec)");
+		System.out.println("Messages not sent:     " + skipped + " (send buffer full)");
+		System.out.println("Messages received:     " + received + " (" + String.format("%.0f", received / elapsed) + "/sec)");
+		if (echoes > 0) {
+			System.out.println("Echo latency mean/max: " + String.format("%.2f", echoNanos / echoes / 1e6) +
+					" / " + String.format("%.2f", maxEchoNanos / 1e6) + " ms");
+		}
+	}
+
+	private String message(long sequence, long nanos) {
+		StringBuilder sb = new StringBuilder(messageLength + 1);
+		sb.append("load ").append(sequence).append(' ').append(nanos).append(' ');
+		while (sb.length() < messageLength) {
+			sb.append('x');
+		}
+		return sb.append('\n').toString();
+	}
+
+	/**
+	 * Buffer a line for sending.  Returns false if the connection already
+	 * has too much unsent data.
+	 */
+	private boolean send(Connection connection, String line) {
+		byte[] bytes = line.getBytes(CHARSET);
+		if (connection.out.remaining() < bytes.length) {
+			return false;
+		}
+		connection.out.put(bytes);
+		return true;
+	}
+
+	private void flush(Connection connection, SelectionKey key) throws IOException {
+		connection.out.flip();
+		connection.channel.write(connection.out);
+		boolean pending = connection.out.hasRemaining();
+		connection.out.compact();
+		if (key != null && key.isValid()) {
+			key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+	}
+
+	private void read(Connection connection, SelectionKey key) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		int read;
+		while ((read = connection.channel.read(buffer)) > 0) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if (b == '\n') {
+					onLine(connection, key, new String(connection.line, 0, connection.lineLength, CHARSET));
+					connection.lineLength = 0;
+				} else {
+					if (connection.lineLength == connection.line.length) {
+						byte[] larger = new byte[connection.line.length * 2];
+						System.arraycopy(connection.line, 0, larger, 0, connection.lineLength);
+						connection.line = larger;
+					}
+					connection.line[connection.lineLength++] = b;
+				}
+			}
+			buffer.clear();
+		}
+		if (read < 0) {
+			key.cancel();
+			connection.channel.close();
+		}
+	}
+
+	private void onLine(Connection connection, SelectionKey key, String line) throws IOException {
+		if (line.startsWith("SUBMITNAME")) {
+			send(connection, connection.name + "\n");
+			flush(connection, key);
+		} else if (line.startsWith("STARTTEST")) {
+			connection.registered = true;
+			connection.startedAt = System.nanoTime();
+		} else if (line.startsWith("MESSAGE")) {
+			received++;
+			String own = "MESSAGE " + connection.name + ": load ";
+			if (line.startsWith(own)) {
+				String[] fields = line.substring(own.length()).split(" ");
+				long latency = System.nanoTime() - Long.parseLong(fields[1]);
+				echoes++;
+				echoNanos += latency;
+				maxEchoNanos = Math.max(maxEchoNanos, latency);
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.schmidt.client.test;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.schmidt.protocol.ChunkResult;
+
+/**
+ * Issues operations on a fixed schedule for open loop testing.  Operation n
+ * is scheduled at start + n / rate regardless of how long earlier
+ * operations took, so a stalled device does not lower the offered load.
+ * When operations fall behind, the following ones start immediately until
+ * the schedule is met again, and each reports its latency from its
+ * scheduled start.  Not thread safe; use one pacer per worker.
+ */
+public class Pacer {
+
+	private final double intervalNanos;
+	private long start;
+	private long count;
+
+	/**
+	 * @param opsPerSecond operations to issue each second
+	 */
+	public Pacer(double opsPerSecond) {
+		if (!(opsPerSecond > 0)) {
+			throw new IllegalArgumentException("Rate must be positive");
+		}
+		this.intervalNanos = 1e9 / opsPerSecond;
+	}
+
+	/**
+	 * Wait until the next operation is due.
+	 *
+	 * @return the System.nanoTime the operation was scheduled to start
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public long await() throws InterruptedException {
+		if (count == 0) {
+			start = System.nanoTime();
+		}
+		long intended = start + (long) (count++ * intervalNanos);
+		long wait;
+		while ((wait = intended - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(wait);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return intended;
+	}
+
+	/**
+	 * Measure a completed operation from its scheduled start.  The
+	 * result's time becomes the time since the scheduled start and the
+	 * difference from the time the operation itself took is stored as
+	 * its delay.
+	 *
+	 * @param intended scheduled start returned by {@link #await()}
+	 * @param result operation timings
+	 */
+	public static void measureFrom(long intended, ChunkResult result) {
+		long elapsed = System.nanoTime() - intended;
+		result.setDelayNanos(Math.max(0, elapsed - result.getNanos()));
+		result.setNanos(Math.max(elapsed, result.getNanos()));
+	}
+}
@@ -1,22 +1,60 @@
 package com.schmidt.client.test;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.Writer;
+import java.nio.channels.ClosedByInterruptException;
 
 import org.apache.log4j.Logger;
 
-public class StorageTest extends Thread {
-	
-	private static final double MEG = (Math.pow(1024, 2));
-	private static final String RECORD = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJCKLMNOPQRSTUVWXYZ0123456789!@#$%^&*()-\n";
+import com.schmidt.client.report.Reporter;
+import com.schmidt.client.test.io.Preallocation;
+import com.schmidt.client.test.io.Verifier;
+import com.schmidt.client.test.io.WorkingSet;
+import com.schmidt.client.test.io.WriteEngine;
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.EpochClock;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.TextFormat;
+
+/**
+ * Storage test.  Runs on the thread or virtual thread the client starts it
+ * on until that thread is interrupted.  The default workload writes files
+ * through a {@link WriteEngine} which is reused for every file, laid out as
+ * the {@link FileLayout} says and optionally preallocated before the timed
+ * writes.  Files the layout keeps are deleted when the test ends.  The read
+ * workloads run over a {@link WorkingSet} that is created first.
+ *
+ * The write workload can read its files back through a {@link Verifier}
+ * and check every block, either straight after writing a file or just
+ * before the layout writes it again.  Deferred verification also reads
+ * back the files still holding unchecked data when the test is stopped,
+ * before they are deleted.  Verification reads are reported as
+ * their own operation and are not paced.
+ *
+ * A client may run several storage tests as a worker pool.  Each worker then
+ * has its own engine, working set and result and writes its own files,
+ * optionally in its own directory.
+ */
+public class StorageTest implements Runnable {
 	
 	private int fileSize;
 	private int chunkSize;
 	private String clientName;
-	private PrintWriter out;
+	private WriteEngine engine;
+	private Reporter reporter;
+	private Workload workload = Workload.WRITE;
+	private FileLayout layout = FileLayout.CREATE;
+	private int layoutFiles = 1;
+	private Preallocation preallocation = Preallocation.NONE;
+	private VerifyMode verifyMode = VerifyMode.NONE;
+	private Verifier verifier;
+	private WorkingSet workingSet;
+	private int readPercent;
+	private int worker;
+	private File directory;
+	private long pauseMillis = 500;
+	private Pacer pacer;
+	private final ChunkResult result = new ChunkResult();
 	
 	final static Logger log = Logger.getLogger(StorageTest.class.getName());
 	
@@ -28,106 +66,369 @@ public class StorageTest extends Thread {
 	 * @param testFile
 	 * @param fileSize
 	 * @param testTime
+	 * @param engine writes the chunks
 	 */
-	public StorageTest(String clientName, int fileSize, int chunkSize, int testTime, PrintWriter printWriter) {
+	public StorageTest(String clientName, int fileSize, int chunkSize, int testTime, WriteEngine engine, Reporter reporter) {
 		
 		this.clientName = clientName;
 		this.chunkSize = chunkSize;
-		out = printWriter;
+		this.engine = engine;
+		this.reporter = reporter;
 		
 		this.fileSize = fileSize;
 	}
 	
 	/**
-	 * Run method to start writing records setup in constructor.
+	 * Select a workload other than writing files.
+	 * 
+	 * @param workload what to run
+	 * @param workingSet files to run it over
+	 * @param readPercent share of mixed operations that are reads
+	 */
+	public void setWorkload(Workload workload, WorkingSet workingSet, int readPercent) {
+		this.workload = workload;
+		this.workingSet = workingSet;
+		this.readPercent = readPercent;
+	}
+
+	/**
+	 * Choose how the write workload lays out its files.
+	 * 
+	 * @param layout where files go and whether they are kept
+	 * @param files files kept by the tree and pool layouts
+	 * @param preallocation how new files are sized before the timed writes
+	 */
+	public void setLayout(FileLayout layout, int files, Preallocation preallocation) {
+		this.layout = layout;
+		this.layoutFiles = Math.max(1, files);
+		this.preallocation = preallocation;
+	}
+
+	/**
+	 * Read written files back and check them.  The verifier must use the
+	 * payload the engine writes with.
+	 * 
+	 * @param mode when files are read back
+	 * @param verifier reads and checks them
+	 */
+	public void setVerify(VerifyMode mode, Verifier verifier) {
+		this.verifyMode = mode;
+		this.verifier = verifier;
+	}
+
+	/**
+	 * Run as one worker of a pool.  Results are tagged with the worker
+	 * number and test files are named after it.
+	 * 
+	 * @param worker worker number, from 1
+	 * @param directory where to write test files, or null for the working directory
+	 */
+	public void setWorker(int worker, File directory) {
+		this.worker = worker;
+		this.directory = directory;
+		result.setWorker(worker);
+	}
+
+	/**
+	 * @param pauseMillis time to sleep between test files of the write workload
+	 */
+	public void setPause(long pauseMillis) {
+		this.pauseMillis = pauseMillis;
+	}
+
+	/**
+	 * Run open loop: issue operations on the pacer's schedule instead of
+	 * as fast as they complete, and measure them from their scheduled
+	 * start.  Test files follow each other without a pause.
+	 * 
+	 * @param pacer schedule for this test's operations
+	 */
+	public void setPacer(Pacer pacer) {
+		this.pacer = pacer;
+		this.pauseMillis = 0;
+	}
+
+	/**
+	 * Run method to start the workload setup in constructor.
 	 */
 	public void run() {
 
-		int count = 0;
+		long count = 0;
+		long started = 0;
+		long written = 0;
 		File testFile;
+		String name = worker == 0 ? clientName : clientName + "-w" + worker;
 		try {
+			if (workload.usesWorkingSet()) {
+				runWorkingSet();
+				return;
+			}
 			while (true) {
-				testFile = new File("testfile_" + clientName + "." + count);
-				writeBuffered(testFile);
-				Thread.sleep(500);
+				testFile = layout.file(directory, name, count, layoutFiles);
+				long slots = layout.slots(layoutFiles);
+				if (verifyMode == VerifyMode.DEFERRED && count >= slots) {
+					verify(testFile, count - slots);
+				}
+				started = count + 1;
+				writeBuffered(testFile, count);
+				written = count + 1;
+				if (pauseMillis > 0) {
+					Thread.sleep(pauseMillis);
+				} else if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
 				count += 1;
 			}
+		} catch (ClosedByInterruptException e) {
+			// interrupted while a channel write was in progress
 		} catch (IOException e) {
 			e.printStackTrace();
 		} catch (InterruptedException e) {
 			
+		} finally {
+			if (!workload.usesWorkingSet()) {
+				if (verifyMode == VerifyMode.DEFERRED) {
+					verifyRemaining(name, started, written);
+				}
+				removeFiles(name, count);
+			}
 		}
 
 	}
 
 	/**
+	 * Read back the files written since their slots were last verified.
+	 * The file being written when the test stopped is incomplete and is
+	 * left out; the file it replaced was verified before the write began.
+	 * Runs with the thread's interrupt cleared so the reads can complete,
+	 * and restores it afterwards.
 	 * 
+	 * @param started files whose write was started
+	 * @param written files written completely
+	 */
+	private void verifyRemaining(String name, long started, long written) {
+		boolean interrupted = Thread.interrupted();
+		long slots = layout.slots(layoutFiles);
+		long first = Math.max(0, started - slots);
+		log.debug("Verifying the last " + (written - first) + " files");
+		try {
+			for (long pass = first; pass < written && !Thread.currentThread().isInterrupted(); pass++) {
+				verify(layout.file(directory, name, pass, layoutFiles), pass);
+			}
+		} catch (IOException e) {
+			log.error("Could not verify the last files: " + e.getMessage());
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Delete the files the layout kept, and the tree's directories.
 	 * 
-	 * @param records
-	 * @param bufSize
+	 * @param passes number of files started
+	 */
+	private void removeFiles(String name, long passes) {
+		if (!layout.keepsFiles()) {
+			return;
+		}
+		long slots = Math.min(passes + 1, layout.slots(layoutFiles));
+		for (long i = 0; i < slots; i++) {
+			layout.file(directory, name, i, layoutFiles).delete();
+		}
+		if (layout == FileLayout.TREE) {
+			File root = layout.root(directory, name);
+			File[] branches = root.listFiles();
+			if (branches != null) {
+				for (File branch : branches) {
+					File[] leaves = branch.listFiles();
+					if (leaves != null) {
+						for (File leaf : leaves) {
+							leaf.delete();
+						}
+					}
+					branch.delete();
+				}
+			}
+			root.delete();
+		}
+	}
+
+	/**
+	 * Create the working set, then run the workload over it until
+	 * interrupted, reporting every operation.
+	 * 
+	 * @throws IOException
+	 * @throws InterruptedException if interrupted while waiting for the schedule
+	 */
+	private void runWorkingSet() throws IOException, InterruptedException {
+
+		log.debug("Preparing working set for workload " + workload.getName());
+		workingSet.prepare(engine, chunkSize);
+		workingSet.open();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				long intended = pacer == null ? 0 : pacer.await();
+				switch (workload) {
+				case SEQREAD:
+					workingSet.readSequential(result);
+					break;
+				case RANDREAD:
+					workingSet.readRandom(result);
+					break;
+				default:
+					if (workingSet.nextIsRead(readPercent)) {
+						workingSet.readRandom(result);
+					} else {
+						workingSet.writeRandom(result);
+					}
+					break;
+				}
+				if (pacer != null) {
+					Pacer.measureFrom(intended, result);
+				}
+				report(result.getChunkSize(), false);
+			}
+		} finally {
+			workingSet.close();
+		}
+	}
+
+	/**
+	 * Write the file in chunks of chunkSize.  The final chunk holds what
+	 * is left of the file and may be shorter.  A new file is preallocated
+	 * first if asked, outside the timing, and is then written in place, as
+	 * is a file the layout rewrites.  The tree layout deletes the file left
+	 * from the last round first, and creates missing directories.  Deleting
+	 * a file, and creating or opening one together with its directories,
+	 * are each reported as a metadata operation, the same way in every
+	 * layout, so the chunk timings cover only the data.
+	 * 
+	 * @param testFile
+	 * @param pass number of files written before this one
 	 * @throws IOException
+	 * @throws InterruptedException if interrupted while waiting for the schedule
 	 */
-	private void writeBuffered(File testFile) throws IOException {
+	private void writeBuffered(File testFile, long pass) throws IOException, InterruptedException {
 
-		Float writeTime = new Float(0);
 		log.debug("Writing file: "+ testFile.getName() + " file size: " + fileSize + " chunk size: " + chunkSize);
 		
-		FileWriter writer = new FileWriter(testFile);
+		long openNanos = 0;
+		if (layout == FileLayout.TREE) {
+			long start = System.nanoTime();
+			if (testFile.delete()) {
+				reportMetadata(System.nanoTime() - start);
+			}
+			start = System.nanoTime();
+			testFile.getParentFile().mkdirs();
+			openNanos = System.nanoTime() - start;
+		}
+		boolean exists = layout.writesInPlace() && testFile.exists();
+		if (!exists && preallocation != Preallocation.NONE) {
+			preallocation.apply(testFile, fileSize);
+		}
+		long start = System.nanoTime();
+		if (exists || preallocation != Preallocation.NONE) {
+			engine.overwrite(testFile);
+		} else {
+			engine.open(testFile);
+		}
+		reportMetadata(openNanos + System.nanoTime() - start);
+		if (verifier != null) {
+			long slots = layout.slots(layoutFiles);
+			verifier.startFile(pass % slots, pass / slots);
+		}
+		result.setOperation(Operation.WRITE);
 		int chunkWritten = 0;
 		
 		// Start writing chunks of data to test file
 	    try {
 	    	while (chunkWritten < fileSize) {
-				writeTime = write(createDataSize(chunkSize/RECORD.length()), writer);
-				out.println(clientName + " chunksize: " + chunkSize +
-						" time to write: " + writeTime + " secs");
-				chunkWritten += chunkSize;
+	    		int length = Math.min(chunkSize, fileSize - chunkWritten);
+	    		long intended = pacer == null ? 0 : pacer.await();
+	    		engine.write(length, result);
+	    		if (pacer != null) {
+	    			Pacer.measureFrom(intended, result);
+	    		}
+	    		chunkWritten += length;
+	    		report(result.getChunkSize(), chunkWritten >= fileSize);
 	    	}
-	    } finally {
-	    	// If the last data records was smaller than the chunkSize, write out the last data
-	    	if (chunkWritten > fileSize) {
-				writeTime = write(createDataSize((chunkSize - fileSize)), writer);
-				out.println(clientName + " last chunksize: " + chunkSize + " time to write: " +  
-						writeTime + " secs");
+	    	if (verifyMode == VerifyMode.IMMEDIATE) {
+	    		engine.close();
+	    		verify(testFile, pass);
 	    	}
-	    	writer.close();
+	    } finally {
+	    	engine.close();
 	        // comment this out if you want to inspect the files afterward
-	    	testFile.delete();
+	    	if (!layout.keepsFiles()) {
+	    		start = System.nanoTime();
+	    		if (testFile.delete()) {
+	    			reportMetadata(System.nanoTime() - start);
+	    		}
+	    	}
 	    }
 	    
 	}
 
 	/**
-	 * Write records to file.  Return the amount of time taken to write file.
-	 * @param records
-	 * @param writer
-	 * @return
+	 * Read a file back in the chunks it was written in, reporting each read,
+	 * and report the file to the server if any block is wrong.
+	 * 
+	 * @param testFile file to read
+	 * @param pass pass the file was written on
 	 * @throws IOException
 	 */
-	private static Float write(String record, Writer writer) throws IOException {
-		
-	    long start = System.currentTimeMillis();
-	    
-	    writer.write(record);
-	    
-	    writer.flush();
-	    
-	    long end = System.currentTimeMillis();
-	    
-	    return Float.valueOf((end - start) / 1000f);
+	private void verify(File testFile, long pass) throws IOException {
+
+		long slots = layout.slots(layoutFiles);
+		long badBlocks = 0;
+		String first = null;
+		verifier.open(testFile, pass % slots, pass / slots);
+		try {
+			int chunkRead = 0;
+			while (chunkRead < fileSize) {
+				int length = Math.min(chunkSize, fileSize - chunkRead);
+				int bad = verifier.read(length, result);
+				if (bad > 0 && first == null) {
+					first = verifier.getError();
+				}
+				badBlocks += bad;
+				chunkRead += length;
+				report(length, chunkRead >= fileSize);
+			}
+		} finally {
+			verifier.close();
+		}
+		if (badBlocks > 0) {
+			String line = TextFormat.verifyFailed(testFile.getPath(), badBlocks, first);
+			log.error(line);
+			reporter.text(line);
+		}
 	}
-	
+
 	/**
-	 * Quickly create a String of msgSize and return
-	 * @param file
+	 * Send the time taken to create, open or delete a file.  Not paced, and
+	 * carries no data.
 	 */
-	private static String createDataSize(int msgSize) {
-		
-		StringBuilder sb = new StringBuilder(msgSize);
-		for (int i = 0; i < msgSize; i++) {
-			sb.append(RECORD);
-		}
-		return sb.toString();
+	private void reportMetadata(long nanos) {
+		result.setOperation(Operation.METADATA);
+		result.setNanos(nanos);
+		result.setWriteNanos(0);
+		result.setFlushNanos(0);
+		result.setSyncNanos(0);
+		result.setDelayNanos(0);
+		report(0, false);
+	}
+
+	/**
+	 * Send the timings in the result object to the server.
+	 */
+	private void report(int length, boolean last) {
+		result.setTimestamp(EpochClock.epochNanos());
+		result.setChunkSize(length);
+		result.setLast(last);
+		reporter.chunkResult(result);
 	}
 
 }
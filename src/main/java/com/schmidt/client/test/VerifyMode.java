@@ -0,0 +1,49 @@
+package com.schmidt.client.test;
+
+/**
+ * Whether and when the write workload reads its files back to check them.
+ * Files written for verification carry a header with a checksum in every
+ * block, see {@link com.schmidt.client.test.io.Payload}.
+ */
+public enum VerifyMode {
+
+	/**
+	 * Do not read files back
+	 */
+	NONE("none"),
+
+	/**
+	 * Read each file back as soon as it has been written
+	 */
+	IMMEDIATE("immediate"),
+
+	/**
+	 * Read a file back when its turn comes round again, just before it is
+	 * rewritten, so the data has had time to leave the page cache.  Needs a
+	 * layout that keeps its files.
+	 */
+	DEFERRED("deferred");
+
+	private final String name;
+
+	private VerifyMode(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name name given on the command line
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	public static VerifyMode forName(String name) {
+		for (VerifyMode mode : values()) {
+			if (mode.name.equals(name)) {
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("Unknown verify mode: " + name);
+	}
+}
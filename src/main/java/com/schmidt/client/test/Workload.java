@@ -0,0 +1,57 @@
+package com.schmidt.client.test;
+
+/**
+ * What the storage test does with its files.
+ */
+public enum Workload {
+
+	/**
+	 * Write, then delete, one file after another
+	 */
+	WRITE("write"),
+
+	/**
+	 * Read the working set sequentially, block by block
+	 */
+	SEQREAD("seqread"),
+
+	/**
+	 * Read random blocks of the working set
+	 */
+	RANDREAD("randread"),
+
+	/**
+	 * Read and overwrite random blocks of the working set
+	 */
+	MIXED("mixed");
+
+	private final String name;
+
+	private Workload(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true if the workload runs over a pre-created working set
+	 */
+	public boolean usesWorkingSet() {
+		return this != WRITE;
+	}
+
+	/**
+	 * @param name name given on the command line
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	public static Workload forName(String name) {
+		for (Workload workload : values()) {
+			if (workload.name.equals(name)) {
+				return workload;
+			}
+		}
+		throw new IllegalArgumentException("Unknown workload: " + name);
+	}
+}
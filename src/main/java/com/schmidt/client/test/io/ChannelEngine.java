@@ -0,0 +1,138 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.ChunkResult;
+
+/**
+ * Writes chunks from a single direct buffer through a FileChannel.  The
+ * buffer is filled with the {@link Payload} once and reused for every chunk,
+ * stamped by the payload before each write, so no allocation or encoding
+ * happens while a chunk is timed.
+ *
+ * In direct mode the file is opened with O_DIRECT, bypassing the page
+ * cache.  The buffer is then aligned to the file system block size and
+ * every write is rounded up to a whole number of blocks, since unaligned
+ * direct I/O fails.  A file whose size is not a multiple of the block size
+ * therefore grows to the next block, and the rounded up size is reported
+ * as the bytes written.
+ */
+public class ChannelEngine implements WriteEngine {
+
+	final static Logger log = Logger.getLogger(ChannelEngine.class.getName());
+
+	private final int chunkSize;
+	private final boolean sync;
+	private final boolean direct;
+	private final Payload payload;
+	private ByteBuffer buffer;
+	private int alignment = 1;
+	private boolean warned;
+	private FileChannel channel;
+
+	/**
+	 * @param chunkSize largest chunk that will be written
+	 * @param sync force each chunk to the device after writing it
+	 * @param direct open files with O_DIRECT
+	 * @param payload data to write
+	 */
+	public ChannelEngine(int chunkSize, boolean sync, boolean direct, Payload payload) {
+		if (direct && !DirectIO.isSupported()) {
+			throw new IllegalArgumentException("O_DIRECT is not supported by this JDK");
+		}
+		this.chunkSize = chunkSize;
+		this.sync = sync;
+		this.direct = direct;
+		this.payload = payload;
+	}
+
+	public void open(File file) throws IOException {
+		open(file, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	public void overwrite(File file) throws IOException {
+		open(file, StandardOpenOption.WRITE);
+	}
+
+	private void open(File file, StandardOpenOption mode) throws IOException {
+		Path path = file.toPath().toAbsolutePath();
+		if (buffer == null) {
+			allocate(path.getParent());
+		}
+		if (direct) {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode, DirectIO.OPTION);
+		} else {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+		}
+	}
+
+	/**
+	 * Allocate and fill the chunk buffer.  The block size for direct I/O
+	 * is taken from the file store the test files are written to.
+	 */
+	private void allocate(Path dir) throws IOException {
+		int size = chunkSize;
+		if (direct) {
+			alignment = DirectIO.blockSize(dir);
+			size = DirectIO.align(chunkSize, alignment);
+			if (size != chunkSize) {
+				log.warn("Chunk size " + chunkSize + " is not a multiple of the block size " + alignment +
+						", direct writes are rounded up to " + size + " bytes");
+				warned = true;
+			}
+			buffer = DirectIO.allocate(size, alignment);
+		} else {
+			buffer = ByteBuffer.allocateDirect(size);
+		}
+		payload.fill(buffer);
+	}
+
+	/**
+	 * Write the chunk and, if sync is set, force it to the device.  There
+	 * is nothing to flush on a channel so the flush time is always zero.
+	 */
+	public void write(int length, ChunkResult result) throws IOException {
+		int size = DirectIO.align(length, alignment);
+		if (size != length && !warned) {
+			log.warn("File size is not a multiple of the block size " + alignment + ", the last chunk of " + length +
+					" bytes is written as " + size + " bytes and files grow to a whole number of blocks");
+			warned = true;
+		}
+		buffer.clear();
+		buffer.limit(size);
+		payload.next(buffer, size);
+
+		long start = System.nanoTime();
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		long written = System.nanoTime();
+
+		long synced = written;
+		if (sync) {
+			channel.force(false);
+			synced = System.nanoTime();
+		}
+
+		result.setChunkSize(size);
+		result.setWriteNanos(written - start);
+		result.setFlushNanos(0);
+		result.setSyncNanos(synced - written);
+		result.setNanos(synced - start);
+	}
+
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.schmidt.client.test.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+
+/**
+ * O_DIRECT support.  The open option is JDK specific and is looked up
+ * reflectively.  Direct I/O needs buffers, lengths and file offsets aligned
+ * to the file system block size.
+ */
+final class DirectIO {
+
+	static final OpenOption OPTION;
+
+	static {
+		OpenOption direct = null;
+		try {
+			Class<?> options = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+			direct = (OpenOption) options.getField("DIRECT").get(null);
+		} catch (ReflectiveOperationException e) {
+			direct = null;
+		}
+		OPTION = direct;
+	}
+
+	private DirectIO() {
+	}
+
+	static boolean isSupported() {
+		return OPTION != null;
+	}
+
+	/**
+	 * @return block size of the file store holding the path
+	 */
+	static int blockSize(Path path) throws IOException {
+		return (int) Files.getFileStore(path).getBlockSize();
+	}
+
+	/**
+	 * @return a direct buffer of size bytes starting on an alignment boundary
+	 */
+	static ByteBuffer allocate(int size, int alignment) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(size + alignment).alignedSlice(alignment);
+		buffer.limit(size);
+		return buffer.slice();
+	}
+
+	/**
+	 * @return length rounded up to a multiple of alignment
+	 */
+	static int align(int length, int alignment) {
+		return (length + alignment - 1) / alignment * alignment;
+	}
+}
@@ -0,0 +1,54 @@
+package com.schmidt.client.test.io;
+
+/**
+ * Creates write engines by the name given on the client command line.
+ */
+public final class Engines {
+
+	public static final String CHANNEL = "channel";
+	public static final String DIRECT = "direct";
+	public static final String MMAP = "mmap";
+	public static final String STREAM = "stream";
+
+	private Engines() {
+	}
+
+	/**
+	 * @return true if an engine of that name exists
+	 */
+	public static boolean isKnown(String name) {
+		return CHANNEL.equals(name) || DIRECT.equals(name) || MMAP.equals(name) || STREAM.equals(name);
+	}
+
+	/**
+	 * @param name channel, direct, mmap or stream
+	 * @param chunkSize largest chunk that will be written
+	 * @param sync fsync every chunk
+	 * @return a new engine writing records
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	public static WriteEngine create(String name, int chunkSize, boolean sync) {
+		return create(name, chunkSize, sync, Payload.records());
+	}
+
+	/**
+	 * @param name channel, direct, mmap or stream
+	 * @param chunkSize largest chunk that will be written
+	 * @param sync fsync every chunk
+	 * @param payload data to write, ignored by the stream engine
+	 * @return a new engine
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	public static WriteEngine create(String name, int chunkSize, boolean sync, Payload payload) {
+		if (CHANNEL.equals(name)) {
+			return new ChannelEngine(chunkSize, sync, false, payload);
+		} else if (DIRECT.equals(name)) {
+			return new ChannelEngine(chunkSize, sync, true, payload);
+		} else if (MMAP.equals(name)) {
+			return new MmapEngine(chunkSize, sync, payload);
+		} else if (STREAM.equals(name)) {
+			return new StreamEngine(sync);
+		}
+		throw new IllegalArgumentException("Unknown I/O engine: " + name);
+	}
+}
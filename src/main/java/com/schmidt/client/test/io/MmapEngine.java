@@ -0,0 +1,85 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.schmidt.protocol.ChunkResult;
+
+/**
+ * Writes chunks through memory mappings.  Every chunk maps the next
+ * chunkSize window of the file, which extends the file, and copies the
+ * source buffer, filled once with the {@link Payload}, into it.  The write
+ * time covers the mapping and the copy including its page faults.  With
+ * sync the window is forced to the device with MappedByteBuffer.force().
+ *
+ * Mappings cannot be released explicitly; they are unmapped when the
+ * garbage collector reclaims the buffer.
+ */
+public class MmapEngine implements WriteEngine {
+
+	private final boolean sync;
+	private final ByteBuffer source;
+	private final Payload payload;
+	private FileChannel channel;
+	private long position;
+
+	/**
+	 * @param chunkSize largest chunk that will be written
+	 * @param sync force each chunk to the device after writing it
+	 * @param payload data to write
+	 */
+	public MmapEngine(int chunkSize, boolean sync, Payload payload) {
+		this.sync = sync;
+		this.payload = payload;
+		this.source = ByteBuffer.allocateDirect(chunkSize);
+		payload.fill(source);
+	}
+
+	public void open(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		position = 0;
+	}
+
+	public void overwrite(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		position = 0;
+	}
+
+	public void write(int length, ChunkResult result) throws IOException {
+		source.clear();
+		source.limit(length);
+		payload.next(source, length);
+
+		long start = System.nanoTime();
+
+		MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+		window.put(source);
+		long written = System.nanoTime();
+
+		long synced = written;
+		if (sync) {
+			window.force();
+			synced = System.nanoTime();
+		}
+		position += length;
+
+		result.setChunkSize(length);
+		result.setWriteNanos(written - start);
+		result.setFlushNanos(0);
+		result.setSyncNanos(synced - written);
+		result.setNanos(synced - start);
+	}
+
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package com.schmidt.client.test.io;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * The data written to the test files.  Storage that compresses or
+ * deduplicates inline turns the repeated text records into almost nothing,
+ * so the generator can instead produce data with a chosen compression ratio
+ * and deduplication ratio, or fully random data.
+ *
+ * The data is made of 4 KB blocks.  A 1 MB pattern of blocks is generated
+ * once from the seed: each block holds 4096 / compression random bytes and
+ * zeros after them, so it compresses by about the compression ratio.  The
+ * chunk buffer is filled with the pattern once.  Before each chunk is
+ * written the first eight bytes of every block are stamped: one block in
+ * every dedup ratio gets a value never used before, which makes it unique,
+ * and the others get a value shared by all duplicates, so they repeat
+ * blocks already written.  Stamping costs one store per block and is done
+ * before the write is timed.
+ *
+ * The same seed gives the same data.  Workers and clients should be given
+ * different seeds, or their files duplicate each other.
+ *
+ * For verification every block instead starts with a {@link #HEADER} byte
+ * header naming the writer, the file, the block's offset in the file and the
+ * file's sequence number, followed by the CRC32C of the rest of the block.
+ * Reading a file back and {@link #check checking} each block catches data
+ * that was lost, corrupted or written to the wrong place.  The header makes
+ * every block unique, so verification overrides the dedup ratio.  CRC32C is
+ * an intrinsic on current JDKs and costs little next to the I/O.  Not thread
+ * safe.
+ */
+public class Payload {
+
+	public static final int BLOCK = 4096;
+
+	/**
+	 * Bytes of the verification header: magic, writer, file, offset,
+	 * sequence and CRC32C
+	 */
+	public static final int HEADER = 44;
+
+	private static final int MAGIC = 0x53545631;
+	private static final int CRC = HEADER - 4;
+
+	private static final int PATTERN = 1024 * 1024;
+
+	private final boolean records;
+	private final double compression;
+	private final double dedup;
+	private final long seed;
+	private final long duplicateStamp;
+	private ByteBuffer pattern;
+	private long blocks;
+
+	private final CRC32C crc = new CRC32C();
+	private boolean verify;
+	private long writer;
+	private long file;
+	private long sequence;
+	private long offset;
+	private String error;
+
+	/**
+	 * @param compression ratio the data compresses by, at least 1
+	 * @param dedup ratio of blocks written to unique blocks, at least 1
+	 * @param seed the data is generated from
+	 */
+	public Payload(double compression, double dedup, long seed) {
+		this(false, compression, dedup, seed);
+	}
+
+	private Payload(boolean records, double compression, double dedup, long seed) {
+		if (!(compression >= 1) || !(dedup >= 1)) {
+			throw new IllegalArgumentException("Compression and dedup ratios must be at least 1");
+		}
+		this.records = records;
+		this.compression = compression;
+		this.dedup = dedup;
+		this.seed = seed;
+		this.duplicateStamp = mix(seed ^ 0x5DEECE66DL);
+	}
+
+	/**
+	 * @return the original payload, the same text record repeated, for
+	 * comparison with earlier results
+	 */
+	public static Payload records() {
+		return new Payload(true, 1, 1, 0);
+	}
+
+	/**
+	 * @param spec records, random, or compression:dedup ratios such as 2:1.5
+	 * @param seed the data is generated from
+	 * @throws IllegalArgumentException if the spec cannot be read
+	 */
+	public static Payload parse(String spec, long seed) {
+		if ("records".equals(spec)) {
+			return records();
+		} else if ("random".equals(spec)) {
+			return new Payload(1, 1, seed);
+		}
+		String[] ratios = spec.split(":");
+		try {
+			return new Payload(Double.parseDouble(ratios[0]), ratios.length > 1 ? Double.parseDouble(ratios[1]) : 1, seed);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Payload must be records, random or compression:dedup, not " + spec);
+		}
+	}
+
+	/**
+	 * Fill the buffer from its start to its capacity, once, before the
+	 * first chunk.  Leaves the buffer cleared.
+	 */
+	public void fill(ByteBuffer buffer) {
+		buffer.clear();
+		if (records) {
+			Records.fill(buffer);
+			buffer.clear();
+			return;
+		}
+		if (pattern == null) {
+			pattern = generate();
+		}
+		while (buffer.hasRemaining()) {
+			pattern.clear();
+			pattern.limit(Math.min(pattern.capacity(), buffer.remaining()));
+			buffer.put(pattern);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Write verification headers into every block from now on.
+	 *
+	 * @param writer identifies the client and worker writing
+	 */
+	public void setVerify(long writer) {
+		this.verify = true;
+		this.writer = writer;
+	}
+
+	public boolean isVerify() {
+		return verify;
+	}
+
+	/**
+	 * Start a new file: the headers of the chunks that follow carry the
+	 * file and sequence number and offsets from its start.
+	 *
+	 * @param file number of the file
+	 * @param sequence how many times the file has been written before
+	 */
+	public void startFile(long file, long sequence) {
+		this.file = file;
+		this.sequence = sequence;
+		this.offset = 0;
+	}
+
+	/**
+	 * Stamp the blocks of the next chunk.  The buffer must have been filled.
+	 *
+	 * @param buffer chunk buffer; its position and limit are not changed
+	 * @param length bytes about to be written from its start
+	 */
+	public void next(ByteBuffer buffer, int length) {
+		if (verify) {
+			for (int start = 0; start + HEADER <= length; start += BLOCK) {
+				header(buffer, start, Math.min(BLOCK, length - start), offset + start);
+			}
+			offset += length;
+			return;
+		}
+		if (records) {
+			return;
+		}
+		for (int offset = 0; offset < length; offset += BLOCK) {
+			long block = blocks++;
+			if (offset + 8 <= buffer.capacity()) {
+				boolean unique = (long) ((block + 1) / dedup) > (long) (block / dedup);
+				buffer.putLong(offset, unique ? mix(seed + block) : duplicateStamp);
+			}
+		}
+	}
+
+	private void header(ByteBuffer buffer, int start, int length, long position) {
+		buffer.putInt(start, MAGIC);
+		buffer.putLong(start + 4, writer);
+		buffer.putLong(start + 12, file);
+		buffer.putLong(start + 20, position);
+		buffer.putLong(start + 28, sequence);
+		buffer.putInt(start + 36, length);
+		buffer.putInt(start + CRC, checksum(buffer, start, length));
+	}
+
+	/**
+	 * @return CRC32C of a block apart from its checksum field
+	 */
+	private int checksum(ByteBuffer buffer, int start, int length) {
+		int position = buffer.position();
+		int limit = buffer.limit();
+		crc.reset();
+		buffer.limit(start + CRC).position(start);
+		crc.update(buffer);
+		buffer.limit(start + length).position(start + HEADER);
+		crc.update(buffer);
+		buffer.limit(limit).position(position);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Check the blocks of a chunk read back from a file written with
+	 * verification headers.
+	 *
+	 * @param buffer data read, from its start
+	 * @param length bytes read
+	 * @param position offset of the chunk in the file
+	 * @param expectedFile number the file was written with
+	 * @param expectedSequence sequence number the file was written with
+	 * @return number of bad blocks; {@link #getError()} describes the first
+	 */
+	public int check(ByteBuffer buffer, int length, long position, long expectedFile, long expectedSequence) {
+		int bad = 0;
+		for (int start = 0; start + HEADER <= length; start += BLOCK) {
+			String problem = checkBlock(buffer, start, Math.min(BLOCK, length - start), position + start,
+					expectedFile, expectedSequence);
+			if (problem != null) {
+				if (bad == 0) {
+					error = problem;
+				}
+				bad++;
+			}
+		}
+		return bad;
+	}
+
+	private String checkBlock(ByteBuffer buffer, int start, int length, long position, long expectedFile,
+			long expectedSequence) {
+		if (buffer.getInt(start) != MAGIC) {
+			return "no block header at offset " + position;
+		}
+		if (buffer.getInt(start + 36) != length) {
+			return "block at offset " + position + " was written " + buffer.getInt(start + 36) + " bytes long, read " +
+					length;
+		}
+		if (buffer.getInt(start + CRC) != checksum(buffer, start, length)) {
+			return "checksum mismatch at offset " + position;
+		}
+		if (buffer.getLong(start + 4) != writer) {
+			return "block at offset " + position + " was written by another writer";
+		}
+		if (buffer.getLong(start + 12) != expectedFile || buffer.getLong(start + 20) != position) {
+			return "block at offset " + position + " belongs to file " + buffer.getLong(start + 12) + " offset " +
+					buffer.getLong(start + 20);
+		}
+		if (buffer.getLong(start + 28) != expectedSequence) {
+			return "block at offset " + position + " is from write " + buffer.getLong(start + 28) + " of the file, " +
+					"expected " + expectedSequence;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the first bad block found by the last check that found one
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Random bytes at the start of every block, zeros after them.
+	 */
+	private ByteBuffer generate() {
+		ByteBuffer data = ByteBuffer.allocate(PATTERN);
+		SplittableRandom random = new SplittableRandom(seed);
+		int randomBytes = (int) Math.max(8, Math.min(BLOCK, Math.round(BLOCK / compression)));
+		for (int block = 0; block < PATTERN; block += BLOCK) {
+			for (int i = 0; i < randomBytes; i += 8) {
+				data.putLong(block + i, random.nextLong());
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Spread a counter over all 64 bits, from SplitMix64.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	public boolean isRecords() {
+		return records;
+	}
+
+	public double getCompression() {
+		return compression;
+	}
+
+	public double getDedup() {
+		return dedup;
+	}
+}
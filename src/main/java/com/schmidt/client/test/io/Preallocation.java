@@ -0,0 +1,88 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * How a test file is sized before its chunks are written and timed.  Java
+ * has no portable fallocate, so the two ways the JDK offers stand in for
+ * it: setting the length, which on most file systems only records the size
+ * and leaves the file sparse, and writing zeros over the whole file and
+ * forcing them to the device, which makes the file system allocate every
+ * block.  The timed writes that follow then overwrite the file in place.
+ */
+public enum Preallocation {
+
+	/**
+	 * Let the timed writes extend the file
+	 */
+	NONE("none"),
+
+	/**
+	 * Set the file's length first, leaving it sparse where the file system
+	 * allows
+	 */
+	SPARSE("sparse"),
+
+	/**
+	 * Write and force zeros over the whole file first, allocating its blocks
+	 */
+	FULL("full");
+
+	private static final int ZEROS = 1024 * 1024;
+
+	private final String name;
+
+	private Preallocation(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Size the file, creating it if needed.  Does nothing for NONE.
+	 *
+	 * @param file file to size
+	 * @param size bytes
+	 */
+	public void apply(File file, long size) throws IOException {
+		if (this == NONE) {
+			return;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (this == SPARSE) {
+				raf.setLength(size);
+				return;
+			}
+			FileChannel channel = raf.getChannel();
+			ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(ZEROS, Math.max(1, size)));
+			for (long position = 0; position < size; ) {
+				zeros.clear();
+				zeros.limit((int) Math.min(zeros.capacity(), size - position));
+				position += channel.write(zeros, position);
+			}
+			channel.force(false);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @param name name given on the command line
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	public static Preallocation forName(String name) {
+		for (Preallocation preallocation : values()) {
+			if (preallocation.name.equals(name)) {
+				return preallocation;
+			}
+		}
+		throw new IllegalArgumentException("Unknown preallocation: " + name);
+	}
+}
@@ -0,0 +1,38 @@
+package com.schmidt.client.test.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test data: a fixed ASCII record repeated to the requested length.
+ */
+public final class Records {
+
+	static final String RECORD = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJCKLMNOPQRSTUVWXYZ0123456789!@#$%^&*()-\n";
+
+	private static final byte[] RECORD_BYTES = RECORD.getBytes(StandardCharsets.US_ASCII);
+
+	private Records() {
+	}
+
+	/**
+	 * @return a new String of exactly length characters
+	 */
+	public static String create(int length) {
+		StringBuilder sb = new StringBuilder(length);
+		while (sb.length() + RECORD.length() <= length) {
+			sb.append(RECORD);
+		}
+		sb.append(RECORD, 0, length - sb.length());
+		return sb.toString();
+	}
+
+	/**
+	 * Fill the buffer from its position to its limit with records.
+	 */
+	public static void fill(ByteBuffer buffer) {
+		while (buffer.hasRemaining()) {
+			buffer.put(RECORD_BYTES, 0, Math.min(RECORD_BYTES.length, buffer.remaining()));
+		}
+	}
+}
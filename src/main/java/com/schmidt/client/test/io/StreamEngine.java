@@ -0,0 +1,85 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+import com.schmidt.protocol.ChunkResult;
+
+/**
+ * The original write path: every chunk is built as a new String and
+ * written through a Writer, so the write time includes allocation and
+ * charset encoding as well as the storage.  Kept for comparison with
+ * earlier results, so it always writes records whatever the payload.
+ */
+public class StreamEngine implements WriteEngine {
+
+	private final boolean sync;
+	private RandomAccessFile existing;
+	private FileOutputStream stream;
+	private Writer writer;
+
+	public StreamEngine(boolean sync) {
+		this.sync = sync;
+	}
+
+	public void open(File file) throws IOException {
+		stream = new FileOutputStream(file);
+		writer = new OutputStreamWriter(stream);
+	}
+
+	/**
+	 * Write through a stream on a RandomAccessFile's descriptor, since a
+	 * FileOutputStream can only truncate or append.
+	 */
+	public void overwrite(File file) throws IOException {
+		existing = new RandomAccessFile(file, "rw");
+		stream = new FileOutputStream(existing.getFD());
+		writer = new OutputStreamWriter(stream);
+	}
+
+	/**
+	 * Write records to file and time each step with System.nanoTime.  The
+	 * write time covers encoding and the writes the writer makes while its
+	 * buffer fills, the flush time pushing the rest to the operating system
+	 * and the fsync time forcing it to the device.
+	 */
+	public void write(int length, ChunkResult result) throws IOException {
+		String record = Records.create(length);
+
+		long start = System.nanoTime();
+
+		writer.write(record);
+		long written = System.nanoTime();
+
+		writer.flush();
+		long flushed = System.nanoTime();
+
+		long synced = flushed;
+		if (sync) {
+			stream.getFD().sync();
+			synced = System.nanoTime();
+		}
+
+		result.setChunkSize(length);
+		result.setWriteNanos(written - start);
+		result.setFlushNanos(flushed - written);
+		result.setSyncNanos(synced - flushed);
+		result.setNanos(synced - start);
+	}
+
+	public void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+			stream = null;
+		}
+		if (existing != null) {
+			existing.close();
+			existing = null;
+		}
+	}
+}
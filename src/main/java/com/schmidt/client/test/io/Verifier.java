@@ -0,0 +1,149 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Operation;
+
+/**
+ * Reads test files back in the chunks they were written in and checks the
+ * verification headers the {@link Payload} wrote into every block.  With
+ * direct I/O the file is read with O_DIRECT so the data comes from the
+ * device; otherwise a file read soon after it was written mostly comes from
+ * the page cache.  The read is timed, the check is not.  Not thread safe.
+ */
+public class Verifier {
+
+	private final Payload payload;
+	private final int chunkSize;
+	private final boolean direct;
+	private ByteBuffer buffer;
+	private int alignment = 1;
+	private FileChannel channel;
+	private long position;
+	private long file;
+	private long sequence;
+	private String error;
+
+	/**
+	 * @param payload the payload the files were written with, in verify mode
+	 * @param chunkSize largest chunk that was written
+	 * @param direct read with O_DIRECT, as the files were written
+	 */
+	public Verifier(Payload payload, int chunkSize, boolean direct) {
+		if (!payload.isVerify()) {
+			throw new IllegalArgumentException("The payload does not write verification headers");
+		}
+		if (direct && !DirectIO.isSupported()) {
+			throw new IllegalArgumentException("O_DIRECT is not supported by this JDK");
+		}
+		this.payload = payload;
+		this.chunkSize = chunkSize;
+		this.direct = direct;
+	}
+
+	/**
+	 * Start writing a file that will be verified: the blocks written next
+	 * carry its number and sequence number.
+	 *
+	 * @param number number of the file
+	 * @param sequence how many times the file has been written before
+	 */
+	public void startFile(long number, long sequence) {
+		payload.startFile(number, sequence);
+	}
+
+	/**
+	 * Open a file to read back.
+	 *
+	 * @param file the file to read
+	 * @param number number the file was written with
+	 * @param sequence sequence number the file was written with
+	 */
+	public void open(File file, long number, long sequence) throws IOException {
+		Path path = file.toPath().toAbsolutePath();
+		if (buffer == null) {
+			if (direct) {
+				alignment = DirectIO.blockSize(path.getParent());
+				buffer = DirectIO.allocate(DirectIO.align(chunkSize, alignment), alignment);
+			} else {
+				buffer = ByteBuffer.allocateDirect(chunkSize);
+			}
+		}
+		if (direct) {
+			channel = FileChannel.open(path, StandardOpenOption.READ, DirectIO.OPTION);
+		} else {
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+		}
+		this.position = 0;
+		this.file = number;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Read the next chunk and check its blocks.
+	 *
+	 * @param length bytes the chunk was written with
+	 * @param result receives the read time
+	 * @return number of bad blocks, counting blocks missing from the end of
+	 * the file as bad; {@link #getError()} describes the first
+	 */
+	public int read(int length, ChunkResult result) throws IOException {
+		buffer.clear();
+		buffer.limit(DirectIO.align(length, alignment));
+
+		long start = System.nanoTime();
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		long read = System.nanoTime();
+
+		result.setOperation(Operation.VERIFY);
+		result.setWriteNanos(0);
+		result.setFlushNanos(0);
+		result.setSyncNanos(0);
+		result.setDelayNanos(0);
+		result.setNanos(read - start);
+
+		int got = buffer.position();
+		int bad = payload.check(buffer, got, position, file, sequence);
+		error = bad > 0 ? payload.getError() : null;
+		if (got < buffer.limit()) {
+			if (bad == 0) {
+				error = "file ends at offset " + (position + got);
+			}
+			bad += (buffer.limit() - got + Payload.BLOCK - 1) / Payload.BLOCK;
+		}
+		position += buffer.limit();
+		return bad;
+	}
+
+	/**
+	 * @return offset in the file of the next chunk
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return the first bad block of the last chunk read, or null
+	 */
+	public String getError() {
+		return error;
+	}
+
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+}
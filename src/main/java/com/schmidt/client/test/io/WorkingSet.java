@@ -0,0 +1,226 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Operation;
+
+/**
+ * Files that the read workloads run over.  The files are created once and
+ * kept, so later runs reuse them; make the working set larger than memory
+ * to measure the device rather than the page cache.  Blocks are read and
+ * written at block aligned offsets through positional FileChannel calls
+ * using one reusable buffer for each direction.  Not thread safe.
+ */
+public class WorkingSet {
+
+	private final File[] files;
+	private final int fileSize;
+	private final boolean direct;
+	private final boolean sync;
+	private final Random random = new Random();
+	private Payload payload = Payload.records();
+
+	private int blockSize;
+	private int blocksPerFile;
+	private FileChannel[] channels;
+	private ByteBuffer readBuffer;
+	private ByteBuffer writeBuffer;
+
+	private int nextFile;
+	private int nextBlock;
+
+	final static Logger log = Logger.getLogger(WorkingSet.class.getName());
+
+	/**
+	 * @param directory where the files are kept, or null for the working directory
+	 * @param name used to name the files
+	 * @param size total bytes, rounded up to whole files
+	 * @param fileSize bytes per file
+	 * @param blockSize bytes per read or write
+	 * @param direct open the files with O_DIRECT
+	 * @param sync force every block write to the device
+	 */
+	public WorkingSet(File directory, String name, long size, int fileSize, int blockSize, boolean direct, boolean sync) {
+		if (blockSize <= 0 || blockSize > fileSize) {
+			throw new IllegalArgumentException("Block size must be between 1 and the file size " + fileSize);
+		}
+		if (direct && !DirectIO.isSupported()) {
+			throw new IllegalArgumentException("O_DIRECT is not supported by this JDK");
+		}
+		int count = (int) Math.max(1, (size + fileSize - 1) / fileSize);
+		this.files = new File[count];
+		for (int i = 0; i < count; i++) {
+			files[i] = new File(directory, "workset_" + name + "." + i);
+		}
+		this.fileSize = fileSize;
+		this.blockSize = blockSize;
+		this.direct = direct;
+		this.sync = sync;
+	}
+
+	/**
+	 * @param payload data the mixed workload overwrites blocks with
+	 */
+	public void setPayload(Payload payload) {
+		this.payload = payload;
+	}
+
+	/**
+	 * Create the files that are missing or have the wrong size.
+	 *
+	 * @param engine writes the files
+	 * @param chunkSize bytes per write while creating
+	 */
+	public void prepare(WriteEngine engine, int chunkSize) throws IOException {
+		ChunkResult scratch = new ChunkResult();
+		for (File file : files) {
+			if (file.length() == fileSize) {
+				continue;
+			}
+			log.info("Creating working set file " + file.getName() + " of " + fileSize + " bytes");
+			engine.open(file);
+			try {
+				for (int written = 0; written < fileSize; ) {
+					int length = Math.min(chunkSize, fileSize - written);
+					engine.write(length, scratch);
+					written += length;
+				}
+			} finally {
+				engine.close();
+			}
+		}
+	}
+
+	/**
+	 * Open every file and allocate the block buffers.
+	 */
+	public void open() throws IOException {
+		int alignment = 1;
+		if (direct) {
+			alignment = DirectIO.blockSize(files[0].toPath().toAbsolutePath().getParent());
+			int aligned = DirectIO.align(blockSize, alignment);
+			if (aligned != blockSize) {
+				log.warn("Block size " + blockSize + " is not a multiple of the file system block size " +
+						alignment + ", using " + aligned + " bytes");
+				blockSize = aligned;
+			}
+		}
+		blocksPerFile = Math.max(1, fileSize / blockSize);
+		readBuffer = DirectIO.allocate(blockSize, alignment);
+		writeBuffer = DirectIO.allocate(blockSize, alignment);
+		payload.fill(writeBuffer);
+
+		channels = new FileChannel[files.length];
+		for (int i = 0; i < files.length; i++) {
+			Path path = files[i].toPath();
+			if (direct) {
+				channels[i] = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, DirectIO.OPTION);
+			} else {
+				channels[i] = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+		}
+	}
+
+	/**
+	 * Read the block after the one read last, wrapping to the first file
+	 * after the last.
+	 */
+	public void readSequential(ChunkResult result) throws IOException {
+		read(nextFile, nextBlock, result);
+		if (++nextBlock == blocksPerFile) {
+			nextBlock = 0;
+			nextFile = (nextFile + 1) % channels.length;
+		}
+	}
+
+	/**
+	 * Read a random block.
+	 */
+	public void readRandom(ChunkResult result) throws IOException {
+		read(random.nextInt(channels.length), random.nextInt(blocksPerFile), result);
+	}
+
+	/**
+	 * Overwrite a random block and, with sync, force it to the device.
+	 */
+	public void writeRandom(ChunkResult result) throws IOException {
+		FileChannel channel = channels[random.nextInt(channels.length)];
+		long position = (long) random.nextInt(blocksPerFile) * blockSize;
+		writeBuffer.clear();
+		payload.next(writeBuffer, blockSize);
+
+		long start = System.nanoTime();
+
+		while (writeBuffer.hasRemaining()) {
+			channel.write(writeBuffer, position + writeBuffer.position());
+		}
+		long written = System.nanoTime();
+
+		long synced = written;
+		if (sync) {
+			channel.force(false);
+			synced = System.nanoTime();
+		}
+
+		result.setOperation(Operation.WRITE);
+		result.setChunkSize(blockSize);
+		result.setWriteNanos(written - start);
+		result.setFlushNanos(0);
+		result.setSyncNanos(synced - written);
+		result.setNanos(synced - start);
+	}
+
+	/**
+	 * @param percent chance out of 100 of a read
+	 * @return true if the next mixed operation should be a read
+	 */
+	public boolean nextIsRead(int percent) {
+		return random.nextInt(100) < percent;
+	}
+
+	private void read(int file, int block, ChunkResult result) throws IOException {
+		FileChannel channel = channels[file];
+		long position = (long) block * blockSize;
+		readBuffer.clear();
+
+		long start = System.nanoTime();
+
+		while (readBuffer.hasRemaining()) {
+			if (channel.read(readBuffer, position + readBuffer.position()) < 0) {
+				break;
+			}
+		}
+		long read = System.nanoTime();
+
+		result.setOperation(Operation.READ);
+		result.setChunkSize(readBuffer.position());
+		result.setWriteNanos(0);
+		result.setFlushNanos(0);
+		result.setSyncNanos(0);
+		result.setNanos(read - start);
+	}
+
+	/**
+	 * Close the files but keep them for the next run.
+	 */
+	public void close() throws IOException {
+		if (channels == null) {
+			return;
+		}
+		for (FileChannel channel : channels) {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+		channels = null;
+	}
+}
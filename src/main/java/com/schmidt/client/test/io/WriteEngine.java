@@ -0,0 +1,41 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.schmidt.protocol.ChunkResult;
+
+/**
+ * Writes the chunks of one test file at a time.  An engine is created once
+ * per storage test and reused for every file so that buffers are allocated
+ * only once.  Not thread safe.
+ */
+public interface WriteEngine {
+
+	/**
+	 * Create or truncate the file and get ready to write it.
+	 */
+	void open(File file) throws IOException;
+
+	/**
+	 * Open the file, creating it if needed, to write it again from the
+	 * start without truncating it, so blocks it already has are overwritten
+	 * in place rather than freed and allocated again.
+	 */
+	void overwrite(File file) throws IOException;
+
+	/**
+	 * Write the next chunk of the open file and store the bytes written
+	 * and the write, flush and fsync times in the result.
+	 *
+	 * @param length bytes to write, at most the chunk size
+	 * @param result receives the bytes written, which direct I/O may round
+	 * up from length, and the timings
+	 */
+	void write(int length, ChunkResult result) throws IOException;
+
+	/**
+	 * Close the open file.
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,46 @@
+package com.schmidt.client.view;
+
+import com.schmidt.client.report.Reporter;
+
+/**
+ * What the client shows its user and asks of them: the server address and
+ * client name when they are not given on the command line, messages
+ * broadcast by the server, and text typed to send to the server.  Called
+ * from the client's connection thread.
+ */
+public interface ClientView {
+
+	/**
+	 * Make the view visible.
+	 */
+	void show();
+
+	/**
+	 * @return address of the server to connect to, or null to give up
+	 */
+	String askServerAddress();
+
+	/**
+	 * @param rejected name the server refused because it is taken, or null
+	 * when asking for the first time
+	 * @return client name to register, or null to give up
+	 */
+	String askName(String rejected);
+
+	/**
+	 * The client is registered; text the user enters may now be sent.
+	 *
+	 * @param reporter sends the user's text to the server
+	 */
+	void connected(Reporter reporter);
+
+	/**
+	 * Show a message broadcast by the server.
+	 */
+	void message(String line);
+
+	/**
+	 * Release the view once the client is done.
+	 */
+	void close();
+}
@@ -0,0 +1,61 @@
+package com.schmidt.client.view;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.client.report.Reporter;
+
+/**
+ * View for clients started from scripts or on machines without a display.
+ * No AWT or Swing class is loaded.  Nothing is asked of the user: the
+ * server defaults to localhost, the name to host-pid, and a taken name
+ * ends the client.  Messages from the server are not kept.
+ */
+public class HeadlessView implements ClientView {
+
+	final static Logger log = Logger.getLogger(HeadlessView.class.getName());
+
+	public void show() {
+	}
+
+	public String askServerAddress() {
+		log.info("No server address given, connecting to localhost");
+		return "localhost";
+	}
+
+	public String askName(String rejected) {
+		if (rejected != null) {
+			log.error("Client name " + rejected + " is taken");
+			return null;
+		}
+		return defaultName();
+	}
+
+	public void connected(Reporter reporter) {
+	}
+
+	public void message(String line) {
+	}
+
+	public void close() {
+	}
+
+	/**
+	 * @return host name and process id, unique for clients started together
+	 */
+	static String defaultName() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			host = "client";
+		}
+		// The runtime name is pid@host
+		String runtime = ManagementFactory.getRuntimeMXBean().getName();
+		int at = runtime.indexOf('@');
+		return host + "-" + (at > 0 ? runtime.substring(0, at) : runtime);
+	}
+}
@@ -0,0 +1,47 @@
+package com.schmidt.client.view;
+
+/**
+ * The most recent lines up to a fixed capacity.  Adding a line to a full
+ * ring overwrites the oldest, so memory stays bounded however long the
+ * client runs.  Thread safe.
+ */
+public class MessageRing {
+
+	private final String[] lines;
+	private int first;
+	private int size;
+
+	/**
+	 * @param capacity number of lines kept
+	 */
+	public MessageRing(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		lines = new String[capacity];
+	}
+
+	public synchronized void add(String line) {
+		lines[(first + size) % lines.length] = line;
+		if (size == lines.length) {
+			first = (first + 1) % lines.length;
+		} else {
+			size++;
+		}
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return the kept lines, oldest first, each ended by a newline
+	 */
+	public synchronized String text() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			sb.append(lines[(first + i) % lines.length]).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,103 @@
+package com.schmidt.client.view;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+
+import com.schmidt.client.report.Reporter;
+
+/**
+ * Window showing the last {@link #LINES} messages from the server, with a
+ * text field for sending text.  Messages go into a {@link MessageRing} and
+ * the text area is refreshed from it on the event thread, at most one
+ * refresh pending at a time, so neither the text area nor the event queue
+ * grows with the number of messages.
+ */
+public class SwingView implements ClientView {
+
+	/**
+	 * Messages kept in the window
+	 */
+	static final int LINES = 1000;
+
+	private final JFrame frame = new JFrame("Client");
+	private final JTextField textField = new JTextField(40);
+	private final JTextArea messageArea = new JTextArea(8, 40);
+	private final MessageRing messages = new MessageRing(LINES);
+	private final AtomicBoolean refreshPending = new AtomicBoolean();
+	private volatile Reporter reporter;
+
+	private final Runnable refresh = new Runnable() {
+		public void run() {
+			refreshPending.set(false);
+			messageArea.setText(messages.text());
+			messageArea.setCaretPosition(messageArea.getDocument().getLength());
+		}
+	};
+
+	public SwingView() {
+		textField.setEditable(false);
+		messageArea.setEditable(false);
+		frame.getContentPane().add(textField, "North");
+		frame.getContentPane().add(new JScrollPane(messageArea), "Center");
+		frame.pack();
+
+		textField.addActionListener(new ActionListener() {
+			/**
+			 * Responds to pressing the enter key in the textfield by sending
+			 * the contents of the text field to the server.  Then clear the
+			 * text field in preparation for the next message.
+			 */
+			public void actionPerformed(ActionEvent e) {
+				Reporter to = reporter;
+				if (to != null) {
+					to.text(textField.getText());
+				}
+				textField.setText("");
+			}
+		});
+	}
+
+	public void show() {
+		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		frame.setVisible(true);
+	}
+
+	public String askServerAddress() {
+		return (String) JOptionPane.showInputDialog(frame, "Enter IP Address or FQDN of the Server:",
+				"Storage Test Client", JOptionPane.QUESTION_MESSAGE, null, null, "localhost");
+	}
+
+	public String askName(String rejected) {
+		String prompt = rejected == null ? "Choose a client name:"
+				: "Client name " + rejected + " is taken, choose another:";
+		return JOptionPane.showInputDialog(frame, prompt, "Client name selection", JOptionPane.PLAIN_MESSAGE);
+	}
+
+	public void connected(Reporter reporter) {
+		this.reporter = reporter;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				textField.setEditable(true);
+			}
+		});
+	}
+
+	public void message(String line) {
+		messages.add(line);
+		if (refreshPending.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(refresh);
+		}
+	}
+
+	public void close() {
+		frame.dispose();
+	}
+}
@@ -0,0 +1,132 @@
+package com.schmidt.protocol;
+
+/**
+ * Time taken to write or read one chunk of a test file.  Mutable so that
+ * writers and decoders can reuse one instance instead of allocating per
+ * chunk.
+ */
+public class ChunkResult {
+
+	private Operation operation = Operation.WRITE;
+	private int worker;
+	private long timestamp;
+	private int chunkSize;
+	private boolean last;
+	private long nanos;
+	private long writeNanos;
+	private long flushNanos;
+	private long syncNanos;
+	private long delayNanos;
+
+	/**
+	 * @return whether the chunk was written or read
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public void setOperation(Operation operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * @return the client worker that ran the operation, 0 unless the
+	 * client runs a pool of workers, which are numbered from 1
+	 */
+	public int getWorker() {
+		return worker;
+	}
+
+	public void setWorker(int worker) {
+		this.worker = worker;
+	}
+
+	/**
+	 * @return when the operation completed, nanoseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @return true for the final, partial chunk of a file
+	 */
+	public boolean isLast() {
+		return last;
+	}
+
+	public void setLast(boolean last) {
+		this.last = last;
+	}
+
+	/**
+	 * @return total time taken in nanoseconds.  For writes the sum of the
+	 * write, flush and fsync times.  In rate limited mode the time is
+	 * measured from when the operation was scheduled to start and includes
+	 * the delay.
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	public void setNanos(long nanos) {
+		this.nanos = nanos;
+	}
+
+	/**
+	 * @return nanoseconds spent handing the data to the operating system
+	 */
+	public long getWriteNanos() {
+		return writeNanos;
+	}
+
+	public void setWriteNanos(long writeNanos) {
+		this.writeNanos = writeNanos;
+	}
+
+	/**
+	 * @return nanoseconds spent flushing buffered data
+	 */
+	public long getFlushNanos() {
+		return flushNanos;
+	}
+
+	public void setFlushNanos(long flushNanos) {
+		this.flushNanos = flushNanos;
+	}
+
+	/**
+	 * @return nanoseconds spent in fsync, zero if fsync was not requested
+	 */
+	public long getSyncNanos() {
+		return syncNanos;
+	}
+
+	public void setSyncNanos(long syncNanos) {
+		this.syncNanos = syncNanos;
+	}
+
+	/**
+	 * @return nanoseconds the operation started after its scheduled start
+	 * in rate limited mode, zero otherwise
+	 */
+	public long getDelayNanos() {
+		return delayNanos;
+	}
+
+	public void setDelayNanos(long delayNanos) {
+		this.delayNanos = delayNanos;
+	}
+}
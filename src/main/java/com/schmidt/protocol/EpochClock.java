@@ -0,0 +1,29 @@
+package com.schmidt.protocol;
+
+/**
+ * Allocation free wall clock with nanosecond resolution.  The epoch time is
+ * read once and advanced with System.nanoTime, so timestamps from one JVM
+ * are monotonic and cheap to take at high rates.
+ */
+public final class EpochClock {
+
+	private static final long BASE_EPOCH_NANOS = System.currentTimeMillis() * 1000000L;
+	private static final long BASE_NANO_TIME = System.nanoTime();
+
+	private EpochClock() {
+	}
+
+	/**
+	 * @return nanoseconds since the epoch
+	 */
+	public static long epochNanos() {
+		return BASE_EPOCH_NANOS + (System.nanoTime() - BASE_NANO_TIME);
+	}
+
+	/**
+	 * Convert a System.nanoTime reading to nanoseconds since the epoch.
+	 */
+	public static long toEpochNanos(long nanoTime) {
+		return BASE_EPOCH_NANOS + (nanoTime - BASE_NANO_TIME);
+	}
+}
@@ -0,0 +1,213 @@
+package com.schmidt.protocol;
+
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a byte stream into binary protocol frames and hands the decoded
+ * messages to a {@link MessageHandler}.  Bytes may arrive in any pieces; a
+ * partial frame is kept until the rest arrives.  Message objects are reused,
+ * so decoding fixed size messages allocates nothing.  Not thread safe; use
+ * one decoder per connection.
+ */
+public class FrameDecoder {
+
+	/**
+	 * Resource values of a status from an older client
+	 */
+	private static final Status UNKNOWN = new Status();
+
+	private final MessageHandler handler;
+	private final ChunkResult chunkResult = new ChunkResult();
+	private final IntervalResult interval = new IntervalResult();
+	private final Status status = new Status();
+
+	private ByteBuffer frame = ByteBuffer.allocate(256);
+	private int length = -1;
+	private int header;
+	private int headerRead;
+
+	public FrameDecoder(MessageHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Decode every complete frame in the buffer and keep any trailing
+	 * partial frame.  Consumes all remaining bytes.
+	 *
+	 * @throws ProtocolException if a frame is malformed
+	 */
+	public void decode(ByteBuffer in) throws ProtocolException {
+		while (in.hasRemaining()) {
+			if (length < 0) {
+				while (headerRead < Protocol.HEADER && in.hasRemaining()) {
+					header = (header << 8) | (in.get() & 0xff);
+					headerRead++;
+				}
+				if (headerRead < Protocol.HEADER) {
+					return;
+				}
+				length = header;
+				header = 0;
+				headerRead = 0;
+				if (length == 0) {
+					throw new ProtocolException("Empty frame");
+				}
+				if (frame.capacity() < length) {
+					frame = ByteBuffer.allocate(Math.max(length, frame.capacity() * 2));
+				}
+				frame.clear();
+				frame.limit(length);
+			}
+
+			int limit = in.limit();
+			if (frame.position() == 0 && in.remaining() >= length) {
+				// Whole frame available, decode it in place
+				int end = in.position() + length;
+				in.limit(end);
+				dispatch(in);
+				in.limit(limit);
+				in.position(end);
+				length = -1;
+				continue;
+			}
+
+			int n = Math.min(frame.remaining(), in.remaining());
+			in.limit(in.position() + n);
+			frame.put(in);
+			in.limit(limit);
+			if (!frame.hasRemaining()) {
+				frame.flip();
+				dispatch(frame);
+				length = -1;
+			}
+		}
+	}
+
+	private void dispatch(ByteBuffer body) throws ProtocolException {
+		MessageType type = MessageType.valueOf(body.get());
+		if (type == null) {
+			throw new ProtocolException("Unknown message type");
+		}
+		try {
+			switch (type) {
+			case HELLO:
+				int version = body.get();
+				handler.onHello(version, getString(body));
+				break;
+			case CHUNK_RESULT:
+				chunkResult.setTimestamp(body.getLong());
+				chunkResult.setChunkSize(body.getInt());
+				chunkResult.setLast(body.get() != 0);
+				chunkResult.setNanos(body.getLong());
+				if (body.hasRemaining()) {
+					chunkResult.setWriteNanos(body.getLong());
+					chunkResult.setFlushNanos(body.getLong());
+					chunkResult.setSyncNanos(body.getLong());
+				} else {
+					// Sent before the breakdown was added
+					chunkResult.setWriteNanos(chunkResult.getNanos());
+					chunkResult.setFlushNanos(0);
+					chunkResult.setSyncNanos(0);
+				}
+				chunkResult.setOperation(body.hasRemaining() ? operation(body.get()) : Operation.WRITE);
+				chunkResult.setWorker(body.hasRemaining() ? body.getShort() & 0xffff : 0);
+				chunkResult.setDelayNanos(body.hasRemaining() ? body.getLong() : 0);
+				handler.onChunkResult(chunkResult);
+				break;
+			case INTERVAL:
+				interval.reset(body.getLong());
+				interval.setTimestamp(body.getLong());
+				interval.setOperation(operation(body.get()));
+				interval.setWorker(body.getShort() & 0xffff);
+				interval.setCount(body.getLong());
+				interval.setBytes(body.getLong());
+				interval.setFiles(body.getLong());
+				interval.setMinNanos(body.getLong());
+				for (int t = 0; t < IntervalResult.TIMINGS; t++) {
+					LatencyHistogram histogram = interval.getHistogram(t);
+					histogram.setTotals(body.getLong(), body.getLong());
+					int buckets = body.getShort() & 0xffff;
+					for (int b = 0; b < buckets; b++) {
+						int i = body.getShort() & 0xffff;
+						if (i >= histogram.getBucketCount()) {
+							throw new ProtocolException("Bad histogram bucket " + i);
+						}
+						histogram.addCountAt(i, body.getInt() & 0xffffffffL);
+					}
+				}
+				handler.onInterval(interval);
+				break;
+			case HEARTBEAT:
+				handler.onHeartbeat(body.getLong());
+				break;
+			case STATUS:
+				long timestamp = body.getLong();
+				long totalMemory = body.getLong();
+				if (body.hasRemaining()) {
+					status.setHeapUsed(body.getLong());
+					status.setCpuNanos(body.getLong());
+					status.setProcessors(body.getInt());
+					status.setSystemLoad(body.getDouble());
+					status.setGcCount(body.getLong());
+					status.setGcNanos(body.getLong());
+					status.setAllocatedBytes(body.getLong());
+					status.setIoReadBytes(body.getLong());
+					status.setIoWriteBytes(body.getLong());
+					status.setDiskReadBytes(body.getLong());
+					status.setDiskWriteBytes(body.getLong());
+					status.setDiskBusyMillis(body.getLong());
+				} else {
+					// Sent before resource sampling was added
+					status.copyFrom(UNKNOWN);
+				}
+				status.setTimestamp(timestamp);
+				status.setTotalMemory(totalMemory);
+				handler.onStatus(status);
+				break;
+			case TEXT:
+				handler.onText(getString(body));
+				break;
+			case EXIT:
+				handler.onExit();
+				break;
+			case JOIN:
+				int id = body.getInt();
+				handler.onJoin(id, getString(body));
+				break;
+			case CLIENT:
+				handler.onClient(body.getInt());
+				break;
+			}
+		} catch (BufferUnderflowException e) {
+			throw new ProtocolException("Truncated " + type + " frame");
+		}
+	}
+
+	private static Operation operation(byte code) throws ProtocolException {
+		Operation operation = Operation.valueOf(code);
+		if (operation == null) {
+			throw new ProtocolException("Unknown operation " + code);
+		}
+		return operation;
+	}
+
+	private static String getString(ByteBuffer body) {
+		int length = body.getShort() & 0xffff;
+		if (body.remaining() < length) {
+			throw new BufferUnderflowException();
+		}
+		String value;
+		if (body.hasArray()) {
+			value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+			body.position(body.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			body.get(bytes);
+			value = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,155 @@
+package com.schmidt.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes binary protocol frames into a buffer.  Each method appends one
+ * complete frame at the buffer's position.  The buffer must have room for
+ * the frame; fixed size messages need at most {@link #MAX_FIXED} bytes and
+ * every message fits in {@link Protocol#MAX_FRAME}.
+ */
+public final class FrameEncoder {
+
+	/**
+	 * Largest frame, header included, of any message without strings
+	 */
+	public static final int MAX_FIXED = 128;
+
+	private FrameEncoder() {
+	}
+
+	public static void hello(ByteBuffer dst, String name) {
+		int start = begin(dst, MessageType.HELLO);
+		dst.put((byte) Protocol.VERSION);
+		putString(dst, name);
+		end(dst, start);
+	}
+
+	public static void chunkResult(ByteBuffer dst, ChunkResult result) {
+		int start = begin(dst, MessageType.CHUNK_RESULT);
+		dst.putLong(result.getTimestamp());
+		dst.putInt(result.getChunkSize());
+		dst.put((byte) (result.isLast() ? 1 : 0));
+		dst.putLong(result.getNanos());
+		dst.putLong(result.getWriteNanos());
+		dst.putLong(result.getFlushNanos());
+		dst.putLong(result.getSyncNanos());
+		dst.put(result.getOperation().getCode());
+		dst.putShort((short) result.getWorker());
+		dst.putLong(result.getDelayNanos());
+		end(dst, start);
+	}
+
+	/**
+	 * The histograms are sent as their sum, maximum and the index and count
+	 * of each bucket that has samples.  Even with every bucket of every
+	 * histogram in use the frame stays within {@link Protocol#MAX_FRAME}.
+	 */
+	public static void interval(ByteBuffer dst, IntervalResult interval) {
+		int start = begin(dst, MessageType.INTERVAL);
+		dst.putLong(interval.getStart());
+		dst.putLong(interval.getTimestamp());
+		dst.put(interval.getOperation().getCode());
+		dst.putShort((short) interval.getWorker());
+		dst.putLong(interval.getCount());
+		dst.putLong(interval.getBytes());
+		dst.putLong(interval.getFiles());
+		dst.putLong(interval.getMinNanos());
+		for (int t = 0; t < IntervalResult.TIMINGS; t++) {
+			LatencyHistogram histogram = interval.getHistogram(t);
+			dst.putLong(histogram.getSum());
+			dst.putLong(histogram.getMax());
+			int countAt = dst.position();
+			dst.putShort((short) 0);
+			int buckets = 0;
+			for (int i = 0; i < histogram.getBucketCount(); i++) {
+				long count = histogram.getCountAt(i);
+				if (count != 0) {
+					dst.putShort((short) i);
+					dst.putInt((int) count);
+					buckets++;
+				}
+			}
+			dst.putShort(countAt, (short) buckets);
+		}
+		end(dst, start);
+	}
+
+	public static void heartbeat(ByteBuffer dst, long timestamp) {
+		int start = begin(dst, MessageType.HEARTBEAT);
+		dst.putLong(timestamp);
+		end(dst, start);
+	}
+
+	public static void status(ByteBuffer dst, Status status) {
+		int start = begin(dst, MessageType.STATUS);
+		dst.putLong(status.getTimestamp());
+		dst.putLong(status.getTotalMemory());
+		dst.putLong(status.getHeapUsed());
+		dst.putLong(status.getCpuNanos());
+		dst.putInt(status.getProcessors());
+		dst.putDouble(status.getSystemLoad());
+		dst.putLong(status.getGcCount());
+		dst.putLong(status.getGcNanos());
+		dst.putLong(status.getAllocatedBytes());
+		dst.putLong(status.getIoReadBytes());
+		dst.putLong(status.getIoWriteBytes());
+		dst.putLong(status.getDiskReadBytes());
+		dst.putLong(status.getDiskWriteBytes());
+		dst.putLong(status.getDiskBusyMillis());
+		end(dst, start);
+	}
+
+	public static void text(ByteBuffer dst, String line) {
+		int start = begin(dst, MessageType.TEXT);
+		putString(dst, line);
+		end(dst, start);
+	}
+
+	public static void exit(ByteBuffer dst) {
+		int start = begin(dst, MessageType.EXIT);
+		end(dst, start);
+	}
+
+	public static void join(ByteBuffer dst, int id, String name) {
+		int start = begin(dst, MessageType.JOIN);
+		dst.putInt(id);
+		putString(dst, name);
+		end(dst, start);
+	}
+
+	/**
+	 * Route the frame that follows to a logical client
+	 */
+	public static void client(ByteBuffer dst, int id) {
+		int start = begin(dst, MessageType.CLIENT);
+		dst.putInt(id);
+		end(dst, start);
+	}
+
+	/**
+	 * @return bytes needed to encode a string field
+	 */
+	public static int stringSize(String value) {
+		return 2 + value.length() * 3;
+	}
+
+	private static int begin(ByteBuffer dst, MessageType type) {
+		int start = dst.position();
+		dst.putShort((short) 0);
+		dst.put(type.getCode());
+		return start;
+	}
+
+	private static void end(ByteBuffer dst, int start) {
+		dst.putShort(start, (short) (dst.position() - start - Protocol.HEADER));
+	}
+
+	private static void putString(ByteBuffer dst, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(bytes.length, Protocol.MAX_FRAME - MAX_FIXED);
+		dst.putShort((short) length);
+		dst.put(bytes, 0, length);
+	}
+}
@@ -0,0 +1,200 @@
+package com.schmidt.protocol;
+
+/**
+ * Chunk results of one worker and operation aggregated over an interval, so
+ * that a client sends one message per interval however small its chunks
+ * are.  Holds the number of operations, bytes and files, the shortest
+ * operation and a {@link LatencyHistogram} for each timing a chunk result
+ * reports, which keeps the sum and maximum as well.  The client records
+ * chunk results into it and the server adds it to its statistics as if it
+ * had received them one by one, to within the histogram's precision.
+ * Mutable so that writers and decoders can reuse one instance.
+ */
+public class IntervalResult {
+
+	/**
+	 * Whole operation, including any delay
+	 */
+	public static final int TOTAL = 0;
+
+	/**
+	 * Delay behind schedule, only for operations that started late
+	 */
+	public static final int DELAY = 1;
+
+	/**
+	 * Write time of writes, read time without delay of reads
+	 */
+	public static final int SERVICE = 2;
+
+	/**
+	 * Flush time of writes, only when not zero
+	 */
+	public static final int FLUSH = 3;
+
+	/**
+	 * Fsync time of writes, only when not zero
+	 */
+	public static final int FSYNC = 4;
+
+	/**
+	 * Number of timings
+	 */
+	public static final int TIMINGS = 5;
+
+	private Operation operation = Operation.WRITE;
+	private int worker;
+	private long start;
+	private long timestamp;
+	private long count;
+	private long bytes;
+	private long files;
+	private long minNanos;
+	private final LatencyHistogram[] histograms = new LatencyHistogram[TIMINGS];
+
+	public IntervalResult() {
+		for (int i = 0; i < TIMINGS; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Add one chunk result.  The operation and worker must be those of
+	 * the interval.
+	 */
+	public void record(ChunkResult result) {
+		long nanos = result.getNanos();
+		if (count == 0 || nanos < minNanos) {
+			minNanos = nanos;
+		}
+		count++;
+		bytes += result.getChunkSize();
+		if (result.isLast()) {
+			files++;
+		}
+		timestamp = Math.max(timestamp, result.getTimestamp());
+		histograms[TOTAL].record(nanos);
+		if (result.getDelayNanos() > 0) {
+			histograms[DELAY].record(result.getDelayNanos());
+		}
+		if (result.getOperation() == Operation.WRITE) {
+			histograms[SERVICE].record(result.getWriteNanos());
+			if (result.getFlushNanos() > 0) {
+				histograms[FLUSH].record(result.getFlushNanos());
+			}
+			if (result.getSyncNanos() > 0) {
+				histograms[FSYNC].record(result.getSyncNanos());
+			}
+		} else {
+			histograms[SERVICE].record(nanos - result.getDelayNanos());
+		}
+	}
+
+	/**
+	 * Empty the interval and start the next one.
+	 *
+	 * @param start when the next interval starts, nanoseconds since the epoch
+	 */
+	public void reset(long start) {
+		this.start = start;
+		timestamp = 0;
+		count = 0;
+		bytes = 0;
+		files = 0;
+		minNanos = 0;
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public void setOperation(Operation operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * @return the client worker, 0 unless the client runs a pool of workers
+	 */
+	public int getWorker() {
+		return worker;
+	}
+
+	public void setWorker(int worker) {
+		this.worker = worker;
+	}
+
+	/**
+	 * @return when the interval started, nanoseconds since the epoch
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	public void setStart(long start) {
+		this.start = start;
+	}
+
+	/**
+	 * @return when the last operation in the interval completed,
+	 * nanoseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return number of operations
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public void setBytes(long bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * @return number of files finished, counted by their last chunks
+	 */
+	public long getFiles() {
+		return files;
+	}
+
+	public void setFiles(long files) {
+		this.files = files;
+	}
+
+	/**
+	 * @return shortest whole operation in nanoseconds
+	 */
+	public long getMinNanos() {
+		return minNanos;
+	}
+
+	public void setMinNanos(long minNanos) {
+		this.minNanos = minNanos;
+	}
+
+	/**
+	 * @param timing one of {@link #TOTAL}, {@link #DELAY}, {@link #SERVICE},
+	 * {@link #FLUSH} or {@link #FSYNC}
+	 */
+	public LatencyHistogram getHistogram(int timing) {
+		return histograms[timing];
+	}
+}
@@ -0,0 +1,219 @@
+package com.schmidt.protocol;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HDR style latency histogram.  Values are nanoseconds.  Buckets are linear
+ * within each power of two and double in width from one power to the next,
+ * so every recorded value is kept to within 1 / 2^(SUB_BUCKET_BITS - 1) of
+ * its true value, about 3%, from one nanosecond up to {@link #MAX_VALUE}.
+ *
+ * A histogram has a single writer: recording is a plain read and ordered
+ * write of one counter, with no locks or CAS.  Other threads may read a
+ * histogram while it is being written, for instance to copy it, and will see
+ * a state that is at most a few samples behind.
+ *
+ * Clients use the same buckets to send results aggregated over an
+ * interval, see {@link IntervalResult}; the frames carry only the buckets
+ * that have samples.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Bits of precision kept for every value
+	 */
+	public static final int SUB_BUCKET_BITS = 6;
+
+	/**
+	 * Largest value tracked, about 2.4 hours.  Larger values are recorded
+	 * as this value.
+	 */
+	public static final long MAX_VALUE = (1L << 43) - 1;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF = SUB_BUCKETS / 2;
+	private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private volatile long sum;
+	private volatile long max;
+
+	/**
+	 * Record one value.  Only one thread may record into a histogram.
+	 *
+	 * @param nanos value in nanoseconds, negative values count as zero
+	 */
+	public void record(long nanos) {
+		long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+		int i = index(value);
+		counts.lazySet(i, counts.get(i) + 1);
+		sum += value;
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+	}
+
+	/**
+	 * @return the largest value that falls in bucket i
+	 */
+	static long highestEquivalentValue(int i) {
+		if (i < SUB_BUCKETS) {
+			return i;
+		}
+		int shift = (i - SUB_BUCKETS) / HALF + 1;
+		long sub = (i - SUB_BUCKETS) % HALF + HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * @return number of buckets
+	 */
+	public int getBucketCount() {
+		return BUCKETS;
+	}
+
+	/**
+	 * @return samples in bucket i
+	 */
+	public long getCountAt(int i) {
+		return counts.get(i);
+	}
+
+	/**
+	 * @return upper bound of bucket i in nanoseconds
+	 */
+	public long getBucketLimit(int i) {
+		return highestEquivalentValue(i);
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return largest recorded value, exact for directly recorded
+	 * histograms and bucket accurate for differences
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return sum of all recorded values
+	 */
+	public long getSum() {
+		return sum;
+	}
+
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * @param percentile 0 to 100
+	 * @return the value below which the given percentage of samples fall,
+	 * or 0 if the histogram is empty
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestEquivalentValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Make this histogram a copy of another, which may still be recording.
+	 */
+	public void copyFrom(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.lazySet(i, other.counts.get(i));
+		}
+		sum = other.sum;
+		max = other.max;
+	}
+
+	/**
+	 * Set this histogram to the samples in later that are not in earlier.
+	 * Both are snapshots of one histogram, earlier taken first.
+	 */
+	public void setToDifference(LatencyHistogram later, LatencyHistogram earlier) {
+		int top = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long delta = later.counts.get(i) - earlier.counts.get(i);
+			counts.lazySet(i, delta);
+			if (delta > 0) {
+				top = i;
+			}
+		}
+		sum = later.sum - earlier.sum;
+		max = Math.min(highestEquivalentValue(top), later.max);
+	}
+
+	/**
+	 * Add another histogram's samples to this one.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.counts.get(i);
+			if (c != 0) {
+				counts.lazySet(i, counts.get(i) + c);
+			}
+		}
+		sum += other.sum;
+		if (other.max > max) {
+			max = other.max;
+		}
+	}
+
+	/**
+	 * Add samples to bucket i, leaving the sum and maximum alone.  For
+	 * decoding a histogram sent over the wire or stored in a run file.
+	 */
+	public void addCountAt(int i, long count) {
+		counts.lazySet(i, counts.get(i) + count);
+	}
+
+	/**
+	 * Set the sum and maximum of a decoded histogram.
+	 */
+	public void setTotals(long sum, long max) {
+		this.sum = sum;
+		this.max = max;
+	}
+
+	/**
+	 * Remove all samples
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.lazySet(i, 0);
+		}
+		sum = 0;
+		max = 0;
+	}
+}
@@ -0,0 +1,62 @@
+package com.schmidt.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads lines from a byte stream without reading past the end of the line.
+ * Unlike BufferedReader it leaves everything after the last line in the
+ * underlying stream, so a session can switch from lines to binary frames.
+ * The stream should be buffered.
+ */
+public class LineReader {
+
+	/**
+	 * Longest line accepted before the stream is considered corrupt.
+	 */
+	public static final int MAX_LINE = 64 * 1024;
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private final InputStream in;
+	private byte[] line = new byte[256];
+
+	public LineReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * @return the next line without its terminator, or null at end of stream
+	 * @throws IOException
+	 */
+	public String readLine() throws IOException {
+		int length = 0;
+		int b;
+		while ((b = in.read()) != -1) {
+			if (b == '\n') {
+				if (length > 0 && line[length - 1] == '\r') {
+					length--;
+				}
+				return new String(line, 0, length, CHARSET);
+			}
+			if (length == line.length) {
+				if (length >= MAX_LINE) {
+					throw new ProtocolException("Line too long");
+				}
+				byte[] larger = new byte[length * 2];
+				System.arraycopy(line, 0, larger, 0, length);
+				line = larger;
+			}
+			line[length++] = (byte) b;
+		}
+		return length > 0 ? new String(line, 0, length, CHARSET) : null;
+	}
+
+	/**
+	 * @return the underlying stream, positioned after the last line read
+	 */
+	public InputStream getInputStream() {
+		return in;
+	}
+}
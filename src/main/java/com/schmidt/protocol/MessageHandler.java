@@ -0,0 +1,42 @@
+package com.schmidt.protocol;
+
+/**
+ * Receives decoded messages.  Message objects passed in are reused by the
+ * decoder and must not be kept after the call returns.
+ */
+public interface MessageHandler {
+
+	void onHello(int version, String name);
+
+	void onChunkResult(ChunkResult result);
+
+	/**
+	 * Chunk results aggregated by the client over an interval
+	 */
+	void onInterval(IntervalResult interval);
+
+	/**
+	 * @param timestamp nanoseconds since the epoch
+	 */
+	void onHeartbeat(long timestamp);
+
+	void onStatus(Status status);
+
+	void onText(String line);
+
+	void onExit();
+
+	/**
+	 * Another logical client, running in the same process, joins over this
+	 * connection.
+	 *
+	 * @param id number the client's messages are routed with
+	 * @param name name to register the client under
+	 */
+	void onJoin(int id, String name);
+
+	/**
+	 * The next message comes from the logical client that joined with id.
+	 */
+	void onClient(int id);
+}
@@ -0,0 +1,43 @@
+package com.schmidt.protocol;
+
+/**
+ * Message types of the binary protocol.  The code is the first byte of every
+ * frame body.
+ */
+public enum MessageType {
+
+	HELLO(1),
+	CHUNK_RESULT(2),
+	HEARTBEAT(3),
+	STATUS(4),
+	EXIT(5),
+	TEXT(6),
+	JOIN(7),
+	CLIENT(8),
+	INTERVAL(9);
+
+	private static final MessageType[] BY_CODE = new MessageType[10];
+
+	static {
+		for (MessageType type : values()) {
+			BY_CODE[type.code] = type;
+		}
+	}
+
+	private final byte code;
+
+	private MessageType(int code) {
+		this.code = (byte) code;
+	}
+
+	public byte getCode() {
+		return code;
+	}
+
+	/**
+	 * @return the type for a code, or null if the code is unknown
+	 */
+	public static MessageType valueOf(byte code) {
+		return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+	}
+}
@@ -0,0 +1,48 @@
+package com.schmidt.protocol;
+
+/**
+ * Storage operation timed by a chunk result.
+ */
+public enum Operation {
+
+	WRITE(0, "write"),
+	READ(1, "read"),
+
+	/**
+	 * Reading back written data to check it
+	 */
+	VERIFY(2, "verify"),
+
+	/**
+	 * Creating, opening or deleting a test file, reported with no data
+	 */
+	METADATA(3, "metadata");
+
+	private static final Operation[] BY_CODE = { WRITE, READ, VERIFY, METADATA };
+
+	private final byte code;
+	private final String label;
+
+	private Operation(int code, String label) {
+		this.code = (byte) code;
+		this.label = label;
+	}
+
+	public byte getCode() {
+		return code;
+	}
+
+	/**
+	 * @return the verb used in the line protocol
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * @return the operation for a code, or null if the code is unknown
+	 */
+	public static Operation valueOf(byte code) {
+		return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+	}
+}
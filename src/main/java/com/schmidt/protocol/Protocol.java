@@ -0,0 +1,81 @@
+package com.schmidt.protocol;
+
+/**
+ * Constants for negotiating the wire protocol.
+ *
+ * Every session starts with the line protocol.  A server that understands
+ * binary frames offers them by appending {@link #BINARY} to its NAMEACCEPTED
+ * line.  A client that wants them answers with the line {@link #ACCEPT_BINARY}
+ * and from then on sends only frames, starting with HELLO.  Older clients
+ * ignore the offer and older servers never make it, so either side falls
+ * back to lines.
+ *
+ * Frames are an unsigned 16 bit body length followed by the body.  The body
+ * starts with the {@link MessageType} code.  Numbers are big endian.
+ * Timestamps are nanoseconds since the epoch.
+ *
+ * One connection may carry many logical clients.  Each one after the
+ * connection's own is announced with a JOIN frame giving its id and name,
+ * and each of its messages is preceded by a CLIENT frame with its id.  A
+ * name that is taken is refused with the line {@link #JOIN_REJECTED}.
+ *
+ * A server that accepts INTERVAL frames also appends {@link #INTERVALS} to
+ * NAMEACCEPTED.  A binary client may then aggregate its chunk results and
+ * send one INTERVAL frame per worker and operation each interval instead
+ * of a CHUNK_RESULT frame per chunk.
+ */
+public final class Protocol {
+
+	/**
+	 * Version sent in HELLO
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Token appended to NAMEACCEPTED by servers that accept binary frames
+	 */
+	public static final String BINARY = "BINARY";
+
+	/**
+	 * Token appended to NAMEACCEPTED by servers that accept INTERVAL frames
+	 */
+	public static final String INTERVALS = "INTERVALS";
+
+	/**
+	 * Line sent by a client switching to binary frames
+	 */
+	public static final String ACCEPT_BINARY = "PROTOCOL BINARY";
+
+	/**
+	 * Largest frame body
+	 */
+	public static final int MAX_FRAME = 0xffff;
+
+	/**
+	 * Bytes in the frame length prefix
+	 */
+	public static final int HEADER = 2;
+
+	/**
+	 * Line telling a client to start its test, see {@link TestStart}
+	 */
+	public static final String START_TEST = "STARTTEST";
+
+	/**
+	 * Line telling a client to stop its test and exit
+	 */
+	public static final String STOP_TEST = "STOPTEST";
+
+	/**
+	 * Seconds between client heartbeats
+	 */
+	public static final int HEARTBEAT_SECONDS = 5;
+
+	/**
+	 * Line refusing a logical client: "JOINREJECTED id name"
+	 */
+	public static final String JOIN_REJECTED = "JOINREJECTED";
+
+	private Protocol() {
+	}
+}
@@ -0,0 +1,199 @@
+package com.schmidt.protocol;
+
+/**
+ * Periodic client status: the resources the client process is using, so
+ * the server can tell a slow client from slow storage.  Apart from the
+ * timestamp, memory and load every value is a counter since the client
+ * started; rates come from the difference between two statuses.  Values
+ * the client could not read are -1.  Mutable so one instance can be
+ * reused.
+ */
+public class Status {
+
+	private long timestamp;
+	private long totalMemory;
+	private long heapUsed = -1;
+	private long cpuNanos = -1;
+	private int processors = -1;
+	private double systemLoad = -1;
+	private long gcCount = -1;
+	private long gcNanos = -1;
+	private long allocatedBytes = -1;
+	private long ioReadBytes = -1;
+	private long ioWriteBytes = -1;
+	private long diskReadBytes = -1;
+	private long diskWriteBytes = -1;
+	private long diskBusyMillis = -1;
+
+	/**
+	 * Make this status a copy of another.
+	 */
+	public void copyFrom(Status other) {
+		timestamp = other.timestamp;
+		totalMemory = other.totalMemory;
+		heapUsed = other.heapUsed;
+		cpuNanos = other.cpuNanos;
+		processors = other.processors;
+		systemLoad = other.systemLoad;
+		gcCount = other.gcCount;
+		gcNanos = other.gcNanos;
+		allocatedBytes = other.allocatedBytes;
+		ioReadBytes = other.ioReadBytes;
+		ioWriteBytes = other.ioWriteBytes;
+		diskReadBytes = other.diskReadBytes;
+		diskWriteBytes = other.diskWriteBytes;
+		diskBusyMillis = other.diskBusyMillis;
+	}
+
+	/**
+	 * @return when the status was taken, nanoseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return heap committed, in bytes
+	 */
+	public long getTotalMemory() {
+		return totalMemory;
+	}
+
+	public void setTotalMemory(long totalMemory) {
+		this.totalMemory = totalMemory;
+	}
+
+	/**
+	 * @return heap in use, in bytes
+	 */
+	public long getHeapUsed() {
+		return heapUsed;
+	}
+
+	public void setHeapUsed(long heapUsed) {
+		this.heapUsed = heapUsed;
+	}
+
+	/**
+	 * @return CPU time used by the client process
+	 */
+	public long getCpuNanos() {
+		return cpuNanos;
+	}
+
+	public void setCpuNanos(long cpuNanos) {
+		this.cpuNanos = cpuNanos;
+	}
+
+	public int getProcessors() {
+		return processors;
+	}
+
+	public void setProcessors(int processors) {
+		this.processors = processors;
+	}
+
+	/**
+	 * @return one minute system load average
+	 */
+	public double getSystemLoad() {
+		return systemLoad;
+	}
+
+	public void setSystemLoad(double systemLoad) {
+		this.systemLoad = systemLoad;
+	}
+
+	/**
+	 * @return garbage collections
+	 */
+	public long getGcCount() {
+		return gcCount;
+	}
+
+	public void setGcCount(long gcCount) {
+		this.gcCount = gcCount;
+	}
+
+	/**
+	 * @return time spent in garbage collection
+	 */
+	public long getGcNanos() {
+		return gcNanos;
+	}
+
+	public void setGcNanos(long gcNanos) {
+		this.gcNanos = gcNanos;
+	}
+
+	/**
+	 * @return bytes allocated by the client's live threads
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	public void setAllocatedBytes(long allocatedBytes) {
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	/**
+	 * @return bytes the process read from storage, /proc/self/io read_bytes
+	 */
+	public long getIoReadBytes() {
+		return ioReadBytes;
+	}
+
+	public void setIoReadBytes(long ioReadBytes) {
+		this.ioReadBytes = ioReadBytes;
+	}
+
+	/**
+	 * @return bytes the process caused to be written to storage,
+	 * /proc/self/io write_bytes
+	 */
+	public long getIoWriteBytes() {
+		return ioWriteBytes;
+	}
+
+	public void setIoWriteBytes(long ioWriteBytes) {
+		this.ioWriteBytes = ioWriteBytes;
+	}
+
+	/**
+	 * @return bytes read by all disks, from /proc/diskstats
+	 */
+	public long getDiskReadBytes() {
+		return diskReadBytes;
+	}
+
+	public void setDiskReadBytes(long diskReadBytes) {
+		this.diskReadBytes = diskReadBytes;
+	}
+
+	/**
+	 * @return bytes written by all disks, from /proc/diskstats
+	 */
+	public long getDiskWriteBytes() {
+		return diskWriteBytes;
+	}
+
+	public void setDiskWriteBytes(long diskWriteBytes) {
+		this.diskWriteBytes = diskWriteBytes;
+	}
+
+	/**
+	 * @return time the busiest disk had I/O in flight, from /proc/diskstats
+	 */
+	public long getDiskBusyMillis() {
+		return diskBusyMillis;
+	}
+
+	public void setDiskBusyMillis(long diskBusyMillis) {
+		this.diskBusyMillis = diskBusyMillis;
+	}
+}
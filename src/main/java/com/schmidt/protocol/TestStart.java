@@ -0,0 +1,132 @@
+package com.schmidt.protocol;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The STARTTEST line.  A plain "STARTTEST" starts the test immediately with
+ * the client's own settings.  A coordinating server adds space separated
+ * key=value fields:
+ *
+ * <pre>
+ * STARTTEST start=1476000000000 now=1476000000000 duration=60 c=1048576 f=20971520 w=write
+ * </pre>
+ *
+ * start is when to begin, in milliseconds since the epoch, and duration is
+ * the length of the test in seconds.  now is the server's clock when it
+ * sent the line, so a client whose clock differs from the server's can
+ * start at the same moment as the others.  Every other field is a client command
+ * line option and its value, empty for options without one, which
+ * overrides the client's own setting.
+ */
+public class TestStart {
+
+	private static final String START = "start";
+	private static final String DURATION = "duration";
+	private static final String NOW = "now";
+
+	private long startMillis;
+	private long nowMillis;
+	private int durationSeconds;
+	private final Map<String, String> options = new LinkedHashMap<String, String>();
+
+	/**
+	 * @return when to start in milliseconds since the epoch, 0 for now
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	public void setStartMillis(long startMillis) {
+		this.startMillis = startMillis;
+	}
+
+	/**
+	 * @return the server's clock when the line was sent, in milliseconds
+	 * since the epoch, 0 if not sent
+	 */
+	public long getNowMillis() {
+		return nowMillis;
+	}
+
+	public void setNowMillis(long nowMillis) {
+		this.nowMillis = nowMillis;
+	}
+
+	/**
+	 * @param clientMillis the client's clock when the line arrived
+	 * @return when to start by the client's clock, 0 for now
+	 */
+	public long getLocalStartMillis(long clientMillis) {
+		if (startMillis == 0 || nowMillis == 0) {
+			return startMillis;
+		}
+		return startMillis - (nowMillis - clientMillis);
+	}
+
+	/**
+	 * @return test length in seconds, 0 if not set by the server
+	 */
+	public int getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	public void setDurationSeconds(int durationSeconds) {
+		this.durationSeconds = durationSeconds;
+	}
+
+	/**
+	 * @return client options to override, in order
+	 */
+	public Map<String, String> getOptions() {
+		return options;
+	}
+
+	/**
+	 * @return the STARTTEST line
+	 */
+	public String toLine() {
+		StringBuilder sb = new StringBuilder(Protocol.START_TEST);
+		if (startMillis > 0) {
+			sb.append(' ').append(START).append('=').append(startMillis);
+		}
+		if (nowMillis > 0) {
+			sb.append(' ').append(NOW).append('=').append(nowMillis);
+		}
+		if (durationSeconds > 0) {
+			sb.append(' ').append(DURATION).append('=').append(durationSeconds);
+		}
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			sb.append(' ').append(option.getKey()).append('=').append(option.getValue());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param line a STARTTEST line
+	 * @return the decoded message
+	 * @throws IllegalArgumentException if the line is not a valid STARTTEST
+	 */
+	public static TestStart parse(String line) {
+		String[] fields = line.trim().split("\\s+");
+		if (!fields[0].equals(Protocol.START_TEST)) {
+			throw new IllegalArgumentException("Not a " + Protocol.START_TEST + " line: " + line);
+		}
+		TestStart start = new TestStart();
+		for (int i = 1; i < fields.length; i++) {
+			int equals = fields[i].indexOf('=');
+			String key = equals < 0 ? fields[i] : fields[i].substring(0, equals);
+			String value = equals < 0 ? "" : fields[i].substring(equals + 1);
+			if (key.equals(START)) {
+				start.startMillis = Long.parseLong(value);
+			} else if (key.equals(NOW)) {
+				start.nowMillis = Long.parseLong(value);
+			} else if (key.equals(DURATION)) {
+				start.durationSeconds = Integer.parseInt(value);
+			} else {
+				start.options.put(key, value);
+			}
+		}
+		return start;
+	}
+}
@@ -0,0 +1,95 @@
+package com.schmidt.protocol;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Renders messages in the line protocol.  Used by clients that fall back to
+ * lines and by the server to echo and log binary messages in the same form.
+ */
+public final class TextFormat {
+
+	/**
+	 * Thread safe replacement for the heartbeat SimpleDateFormat
+	 */
+	private static final DateTimeFormatter HEARTBEAT_FORMAT =
+			DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+	/**
+	 * Start of every heartbeat line
+	 */
+	public static final String HEARTBEAT = "HeartBeat: ";
+
+	/**
+	 * Start of the line a client sends when data it read back was wrong
+	 */
+	public static final String VERIFY_FAILED = "Verify failed: ";
+
+	private TextFormat() {
+	}
+
+	/**
+	 * "name chunksize: N time to write: X secs (write W flush F fsync S ns)",
+	 * with "last chunksize" for the final partial chunk of a file, or
+	 * "name chunksize: N time to read: X secs" for reads, "time to
+	 * verify" for verification reads and "chunksize: 0 time to metadata"
+	 * for creating, opening or deleting a file.  Results of rate
+	 * limited operations that started late add " delay D ns" and results
+	 * from a pool worker end with " worker W".
+	 */
+	public static String chunkResult(String name, ChunkResult result) {
+		String line = name + (result.isLast() ? " last chunksize: " : " chunksize: ") + result.getChunkSize() +
+				" time to " + result.getOperation().getLabel() + ": " + (result.getNanos() / 1e9) + " secs";
+		if (result.getOperation() == Operation.WRITE) {
+			line += " (write " + result.getWriteNanos() + " flush " + result.getFlushNanos() +
+					" fsync " + result.getSyncNanos() + " ns)";
+		}
+		if (result.getDelayNanos() > 0) {
+			line += " delay " + result.getDelayNanos() + " ns";
+		}
+		return result.getWorker() == 0 ? line : line + " worker " + result.getWorker();
+	}
+
+	/**
+	 * "name interval: write ops N bytes B files F ns min A mean M max X", with
+	 * " worker W" for a pool worker.  For display only; servers receive
+	 * intervals as binary frames.
+	 */
+	public static String interval(String name, IntervalResult interval) {
+		LatencyHistogram total = interval.getHistogram(IntervalResult.TOTAL);
+		String line = name + " interval: " + interval.getOperation().getLabel() + " ops " + interval.getCount() +
+				" bytes " + interval.getBytes() + " files " + interval.getFiles() + " ns min " +
+				interval.getMinNanos() + " mean " + Math.round(total.getMean()) + " max " + total.getMax();
+		return interval.getWorker() == 0 ? line : line + " worker " + interval.getWorker();
+	}
+
+	/**
+	 * "Verify failed: N bad blocks in file, first: reason"
+	 */
+	public static String verifyFailed(String file, long badBlocks, String reason) {
+		return VERIFY_FAILED + badBlocks + " bad blocks in " + file + ", first: " + reason;
+	}
+
+	/**
+	 * "HeartBeat: yyyy/MM/dd HH:mm:ss"
+	 */
+	public static String heartbeat(long timestamp) {
+		return HEARTBEAT + HEARTBEAT_FORMAT.format(Instant.ofEpochSecond(0, timestamp));
+	}
+
+	/**
+	 * "Status Memory: N heap: N cpu: N cpus: N load: X gc: N gctime: N
+	 * allocated: N ioread: N iowrite: N diskread: N diskwrite: N diskbusy: N",
+	 * times in nanoseconds except diskbusy in milliseconds
+	 */
+	public static String status(Status status) {
+		return "Status Memory: " + status.getTotalMemory() + " heap: " + status.getHeapUsed() +
+				" cpu: " + status.getCpuNanos() + " cpus: " + status.getProcessors() +
+				" load: " + status.getSystemLoad() + " gc: " + status.getGcCount() +
+				" gctime: " + status.getGcNanos() + " allocated: " + status.getAllocatedBytes() +
+				" ioread: " + status.getIoReadBytes() + " iowrite: " + status.getIoWriteBytes() +
+				" diskread: " + status.getDiskReadBytes() + " diskwrite: " + status.getDiskWriteBytes() +
+				" diskbusy: " + status.getDiskBusyMillis();
+	}
+}
@@ -0,0 +1,225 @@
+package com.schmidt.server;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.Server;
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.MessageHandler;
+import com.schmidt.protocol.Protocol;
+import com.schmidt.protocol.Status;
+import com.schmidt.protocol.TextFormat;
+import com.schmidt.server.domain.Client;
+import com.schmidt.server.metrics.ServerMetrics;
+import com.schmidt.server.stats.ClientStats;
+import com.schmidt.server.stats.ResultParser;
+import com.schmidt.server.store.RunFileWriter;
+
+/**
+ * Handles messages from one registered client, whether they arrive as lines
+ * or binary frames.  Chunk results, one by one or aggregated over an
+ * interval, are recorded in the client's statistics,
+ * unless they fall outside a coordinated test, and appended to the run
+ * file if there is one.
+ * Binary messages are rendered to their line form only when they will be
+ * echoed or logged.  EXIT, or the line "exit", ends the session; anything
+ * received after it is ignored.  Every message tells the registry the client
+ * is alive.  Used by a single connection thread.
+ */
+public class ClientMessageHandler implements MessageHandler {
+
+	private final String name;
+	private final ClientStats stats;
+	private final ChunkResult parsed = new ChunkResult();
+	private final Status parsedStatus = new Status();
+	private final ServerMetrics metrics = Server.metrics();
+	private final RunFileWriter runFile;
+	private final Client client;
+	private int runFileClient;
+	private boolean exited;
+	private boolean closed;
+
+	final static Logger log = Logger.getLogger(ClientMessageHandler.class.getName());
+
+	/**
+	 * @param client the registered client
+	 * @param stats where the client's results are recorded
+	 */
+	public ClientMessageHandler(Client client, ClientStats stats) {
+		this.name = client.getName();
+		this.stats = stats;
+		this.runFile = Server.runFile();
+		this.client = client;
+		if (runFile != null) {
+			try {
+				runFileClient = runFile.client(name);
+			} catch (IOException e) {
+				log.error("Could not add client " + name + " to the run file", e);
+			}
+		}
+	}
+
+	public void onHello(int version, String helloName) {
+		if (version != Protocol.VERSION || !name.equals(helloName)) {
+			log.warn("Unexpected HELLO from " + name + ": version " + version + " name " + helloName);
+		}
+	}
+
+	public void onChunkResult(ChunkResult result) {
+		if (exited) {
+			return;
+		}
+		metrics.messageReceived();
+		heard(false);
+		if (Server.accepts(name, result.getTimestamp() + client.getClockOffset())) {
+			record(result);
+		}
+		if (Server.wantsText()) {
+			Server.broadcast(name, TextFormat.chunkResult(name, result));
+		}
+	}
+
+	public void onInterval(IntervalResult interval) {
+		if (exited) {
+			return;
+		}
+		metrics.messageReceived();
+		heard(false);
+		if (Server.accepts(name, interval.getTimestamp() + client.getClockOffset())) {
+			stats.record(interval);
+			metrics.resultsRecorded(interval.getCount());
+			if (runFile != null) {
+				try {
+					runFile.append(runFileClient, interval);
+				} catch (IOException e) {
+					log.error("Could not write to the run file", e);
+				}
+			}
+		}
+		if (Server.wantsText()) {
+			Server.broadcast(name, TextFormat.interval(name, interval));
+		}
+	}
+
+	public void onHeartbeat(long timestamp) {
+		if (!exited) {
+			metrics.messageReceived();
+			heard(true);
+			client.clockSample(System.currentTimeMillis() * 1000000L, timestamp);
+		}
+		if (!exited && Server.wantsText()) {
+			Server.broadcast(name, TextFormat.heartbeat(timestamp));
+		}
+	}
+
+	public void onStatus(Status status) {
+		if (!exited) {
+			metrics.messageReceived();
+			heard(false);
+			stats.record(status);
+		}
+		if (!exited && Server.wantsText()) {
+			Server.broadcast(name, TextFormat.status(status));
+		}
+	}
+
+	public void onText(String line) {
+		if (exited) {
+			return;
+		}
+		metrics.messageReceived();
+		heard(line.startsWith(TextFormat.HEARTBEAT));
+		if (line.equalsIgnoreCase("exit")) {
+			onExit();
+			return;
+		}
+		if (ResultParser.parse(line, parsed)) {
+			if (Server.accepts(name, parsed.getTimestamp() + client.getClockOffset())) {
+				record(parsed);
+			}
+		} else if (line.startsWith(TextFormat.VERIFY_FAILED)) {
+			log.error("Client " + name + ": " + line);
+			metrics.verifyFailed();
+			stats.verifyFailed();
+		} else if (ResultParser.parseStatus(line, parsedStatus)) {
+			stats.record(parsedStatus);
+		}
+		Server.broadcast(name, line);
+	}
+
+	public void onExit() {
+		if (!exited) {
+			log.debug("Exiting for client: " + name);
+			exited = true;
+		}
+	}
+
+	/**
+	 * Logical clients join through the {@link ConnectionHandler}, never
+	 * through one client's handler.
+	 */
+	public void onJoin(int id, String joinName) {
+		log.warn("Unexpected JOIN from " + name + " for " + joinName);
+	}
+
+	public void onClient(int id) {
+		log.warn("Unexpected CLIENT from " + name + " for " + id);
+	}
+
+	/**
+	 * @param heartbeat true if the message was a heartbeat
+	 */
+	private void heard(boolean heartbeat) {
+		if (heartbeat) {
+			client.heartbeat(System.nanoTime());
+		} else {
+			client.heard(System.nanoTime());
+		}
+	}
+
+	private void record(ChunkResult result) {
+		stats.record(result);
+		metrics.resultRecorded();
+		if (runFile != null) {
+			try {
+				runFile.append(runFileClient, result);
+			} catch (IOException e) {
+				log.error("Could not write to the run file", e);
+			}
+		}
+	}
+
+	/**
+	 * Release the client's statistics once its connection has closed or
+	 * the logical client has exited.  Only the first call counts.
+	 */
+	public void close() {
+		if (!closed) {
+			closed = true;
+			Server.releaseStats(stats);
+		}
+	}
+
+	/**
+	 * @return the client whose messages this handles
+	 */
+	public Client getClient() {
+		return client;
+	}
+
+	/**
+	 * @return name of the client whose messages this handles
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true once the client has sent EXIT
+	 */
+	public boolean isExited() {
+		return exited;
+	}
+}
@@ -0,0 +1,174 @@
+package com.schmidt.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.Server;
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.MessageHandler;
+import com.schmidt.protocol.Protocol;
+import com.schmidt.protocol.Status;
+import com.schmidt.server.broadcast.OutboundQueue;
+import com.schmidt.server.domain.Client;
+
+/**
+ * Handles the messages of one connection: those of the client that
+ * registered on it and those of any logical clients that joined over it
+ * from the same process.  Every client has its own
+ * {@link ClientMessageHandler}.  A CLIENT message routes the message that
+ * follows it to a logical client; all other messages belong to the
+ * connection's own client.  Messages for a logical client that was refused
+ * or has exited are dropped.  Logical clients are unregistered when they
+ * exit or the connection closes.  Used by a single connection thread.
+ */
+public class ConnectionHandler implements MessageHandler {
+
+	private final String name;
+	private final Client client;
+	private final OutboundQueue outbound;
+	private final ClientMessageHandler own;
+	private final Map<Integer, ClientMessageHandler> logical = new HashMap<Integer, ClientMessageHandler>();
+
+	/**
+	 * Handler for the next message, or null to drop it
+	 */
+	private ClientMessageHandler next;
+
+	final static Logger log = Logger.getLogger(ConnectionHandler.class.getName());
+
+	/**
+	 * @param client the connection's registered client
+	 * @param outbound queue used to reach the connection's client
+	 */
+	public ConnectionHandler(Client client, OutboundQueue outbound) {
+		this.name = client.getName();
+		this.client = client;
+		this.outbound = outbound;
+		this.own = new ClientMessageHandler(client, Server.statsFor(name));
+		this.next = own;
+	}
+
+	/**
+	 * @return handler for the current message, and route the following one
+	 * to the connection's own client again
+	 */
+	private ClientMessageHandler target() {
+		ClientMessageHandler target = next;
+		next = own;
+		return target;
+	}
+
+	public void onHello(int version, String helloName) {
+		ClientMessageHandler target = target();
+		if (target != null) {
+			target.onHello(version, helloName);
+		}
+	}
+
+	public void onChunkResult(ChunkResult result) {
+		ClientMessageHandler target = target();
+		if (target != null) {
+			target.onChunkResult(result);
+		}
+	}
+
+	public void onInterval(IntervalResult interval) {
+		ClientMessageHandler target = target();
+		if (target != null) {
+			target.onInterval(interval);
+		}
+	}
+
+	public void onHeartbeat(long timestamp) {
+		ClientMessageHandler target = target();
+		if (target != null) {
+			target.onHeartbeat(timestamp);
+		}
+	}
+
+	public void onStatus(Status status) {
+		ClientMessageHandler target = target();
+		if (target != null) {
+			target.onStatus(status);
+		}
+	}
+
+	public void onText(String line) {
+		ClientMessageHandler target = target();
+		if (target != null) {
+			target.onText(line);
+		}
+	}
+
+	/**
+	 * EXIT from the connection's own client ends the connection.  EXIT from
+	 * a logical client unregisters only that client.
+	 */
+	public void onExit() {
+		ClientMessageHandler target = target();
+		if (target == null) {
+			return;
+		}
+		target.onExit();
+		if (target != own) {
+			for (Map.Entry<Integer, ClientMessageHandler> entry : logical.entrySet()) {
+				if (entry.getValue() == target) {
+					logical.remove(entry.getKey());
+					break;
+				}
+			}
+			target.close();
+			Server.unregister(target.getClient());
+		}
+	}
+
+	public void onJoin(int id, String joinName) {
+		next = own;
+		if (own.isExited() || logical.containsKey(id)) {
+			log.warn("Ignoring JOIN of " + joinName + " as " + id + " from " + name);
+			return;
+		}
+		Client joined = Server.join(joinName, client);
+		if (joined != null) {
+			logical.put(id, new ClientMessageHandler(joined, Server.statsFor(joinName)));
+			log.debug("Client " + joinName + " joined over the connection of " + name);
+		} else {
+			outbound.offerControl(Protocol.JOIN_REJECTED + " " + id + " " + joinName);
+			log.info("Client name " + joinName + " from " + name + " is taken");
+		}
+	}
+
+	public void onClient(int id) {
+		next = logical.get(id);
+	}
+
+	/**
+	 * @return true once the connection's own client has sent EXIT
+	 */
+	public boolean isExited() {
+		return own.isExited();
+	}
+
+	/**
+	 * @return logical clients currently joined
+	 */
+	public int getLogicalClients() {
+		return logical.size();
+	}
+
+	/**
+	 * Unregister the logical clients and release the statistics of every
+	 * client when the connection closes.
+	 */
+	public void close() {
+		for (ClientMessageHandler handler : logical.values()) {
+			handler.close();
+			Server.unregister(handler.getClient());
+		}
+		logical.clear();
+		own.close();
+	}
+}
@@ -0,0 +1,49 @@
+package com.schmidt.server.broadcast;
+
+import com.schmidt.server.domain.Client;
+import com.schmidt.server.registry.ClientRegistry;
+
+/**
+ * Fans a client message out to every registered client.  The message is
+ * formatted once and offered to each client's {@link OutboundQueue}, so the
+ * sender never waits on another client's socket.  Echoing can be switched
+ * off entirely, in which case messages only reach the server's own
+ * collectors.
+ */
+public class Broadcaster {
+
+	private final ClientRegistry registry;
+	private final boolean echo;
+
+	/**
+	 * @param registry clients to send to
+	 * @param echo false to not send client messages to other clients
+	 */
+	public Broadcaster(ClientRegistry registry, boolean echo) {
+		this.registry = registry;
+		this.echo = echo;
+	}
+
+	/**
+	 * Queue "MESSAGE name: input" for every registered client.
+	 *
+	 * @param name name of the sending client
+	 * @param input line received from the client
+	 */
+	public void publish(String name, String input) {
+		if (!echo) {
+			return;
+		}
+		String message = "MESSAGE " + name + ": " + input;
+		for (Client client : registry.clients()) {
+			OutboundQueue outbound = client.getOutbound();
+			if (outbound != null) {
+				outbound.offer(message);
+			}
+		}
+	}
+
+	public boolean isEcho() {
+		return echo;
+	}
+}
@@ -0,0 +1,187 @@
+package com.schmidt.server.broadcast;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded queue of lines waiting to be written to one client.  Any thread may
+ * offer lines without blocking.  A single writer drains the queue and writes
+ * many lines per flush.  When the queue is full the
+ * {@link SlowConsumerPolicy} decides whether the line is dropped or the
+ * client is disconnected.
+ *
+ * Control lines, such as SUBMITNAME, STARTTEST and STOPTEST, go into a
+ * separate unbounded queue that the writer drains first, so a client whose
+ * queue is full of echoed messages still gets them.  There are only a
+ * handful of them per client and test.
+ */
+public class OutboundQueue {
+
+	private final int capacity;
+	private final ArrayDeque<String> lines;
+	private final ArrayDeque<String> control = new ArrayDeque<String>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final SlowConsumerPolicy policy;
+	private final Closeable connection;
+	private final Runnable signal;
+
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicBoolean disconnected = new AtomicBoolean();
+
+	final static Logger log = Logger.getLogger(OutboundQueue.class.getName());
+
+	/**
+	 * @param capacity maximum number of queued lines, not counting control lines
+	 * @param policy what to do when the queue is full
+	 * @param connection closed when the policy disconnects the client
+	 * @param signal run after each accepted line to wake the writer, may be null
+	 */
+	public OutboundQueue(int capacity, SlowConsumerPolicy policy, Closeable connection, Runnable signal) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.lines = new ArrayDeque<String>(Math.min(capacity, 1024));
+		this.policy = policy;
+		this.connection = connection;
+		this.signal = signal;
+	}
+
+	/**
+	 * Queue a line for the client.
+	 *
+	 * @param line text without line terminator
+	 * @return false if the queue was full and the line was discarded
+	 */
+	public boolean offer(String line) {
+		boolean accepted = false;
+		lock.lock();
+		try {
+			if (lines.size() < capacity) {
+				lines.add(line);
+				notEmpty.signal();
+				accepted = true;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (accepted) {
+			if (signal != null) {
+				signal.run();
+			}
+			return true;
+		}
+
+		dropped.incrementAndGet();
+		if (policy == SlowConsumerPolicy.DISCONNECT && disconnect()) {
+			log.warn("Outbound queue full, disconnecting slow client");
+		}
+		return false;
+	}
+
+	/**
+	 * Queue a protocol control line for the client.  It is never dropped and
+	 * is written before any queued ordinary lines; control lines keep their
+	 * order among themselves.
+	 *
+	 * @param line text without line terminator
+	 */
+	public void offerControl(String line) {
+		lock.lock();
+		try {
+			control.add(line);
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+		if (signal != null) {
+			signal.run();
+		}
+	}
+
+	/**
+	 * Close the client's connection.  Its handler then unregisters it.
+	 *
+	 * @return false if the connection had already been closed this way
+	 */
+	public boolean disconnect() {
+		if (!disconnected.compareAndSet(false, true)) {
+			return false;
+		}
+		try {
+			connection.close();
+		} catch (IOException e) {
+		}
+		return true;
+	}
+
+	/**
+	 * Wait for the next line, control lines first.
+	 */
+	public String take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (control.isEmpty() && lines.isEmpty()) {
+				notEmpty.await();
+			}
+			return control.isEmpty() ? lines.poll() : control.poll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Move up to max queued lines into the collection, control lines first.
+	 *
+	 * @return number of lines moved
+	 */
+	public int drainTo(Collection<? super String> batch, int max) {
+		lock.lock();
+		try {
+			int moved = 0;
+			while (moved < max && !control.isEmpty()) {
+				batch.add(control.poll());
+				moved++;
+			}
+			while (moved < max && !lines.isEmpty()) {
+				batch.add(lines.poll());
+				moved++;
+			}
+			return moved;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return number of lines waiting to be written
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return control.size() + lines.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of lines discarded because the queue was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+}
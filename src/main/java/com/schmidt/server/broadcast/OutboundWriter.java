@@ -0,0 +1,54 @@
+package com.schmidt.server.broadcast;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Drains an {@link OutboundQueue} to a blocking client socket.  Everything
+ * queued while the previous batch was being written goes out with a single
+ * flush.  Runs until interrupted or the socket fails.
+ */
+public class OutboundWriter implements Runnable {
+
+	/**
+	 * Most lines written per flush.
+	 */
+	public static final int MAX_BATCH = 256;
+
+	private final OutboundQueue queue;
+	private final PrintWriter out;
+
+	final static Logger log = Logger.getLogger(OutboundWriter.class.getName());
+
+	/**
+	 * @param queue lines to write
+	 * @param out buffered writer without autoflush
+	 */
+	public OutboundWriter(OutboundQueue queue, PrintWriter out) {
+		this.queue = queue;
+		this.out = out;
+	}
+
+	public void run() {
+		List<String> batch = new ArrayList<String>(MAX_BATCH);
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_BATCH - 1);
+				for (String line : batch) {
+					out.println(line);
+				}
+				batch.clear();
+				out.flush();
+				if (out.checkError()) {
+					log.debug("Write failed, stopping writer");
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+		}
+	}
+}
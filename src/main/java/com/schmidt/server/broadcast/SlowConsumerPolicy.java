@@ -0,0 +1,17 @@
+package com.schmidt.server.broadcast;
+
+/**
+ * What to do when a client's outbound queue is full.
+ */
+public enum SlowConsumerPolicy {
+
+	/**
+	 * Discard the message for that client and keep the connection.
+	 */
+	DROP,
+
+	/**
+	 * Discard the message and close the client's connection.
+	 */
+	DISCONNECT
+}
@@ -0,0 +1,216 @@
+package com.schmidt.server.coordinator;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.Protocol;
+import com.schmidt.protocol.TestStart;
+import com.schmidt.server.broadcast.OutboundQueue;
+import com.schmidt.server.domain.Client;
+import com.schmidt.server.registry.ClientRegistry;
+import com.schmidt.server.stats.ResultAggregator;
+
+/**
+ * Runs one test across many clients.  Clients that register are held until
+ * the expected number has joined.  All of them are then sent the same
+ * STARTTEST with a start time a little in the future, the duration and the
+ * test options, and after the duration every participant is sent STOPTEST.
+ *
+ * Logical clients that joined over another client's connection take part
+ * with their parent: they count towards the expected clients, and the
+ * STARTTEST and STOPTEST sent to the parent's connection start and stop
+ * them too.
+ *
+ * Only results from participants with timestamps inside the test window
+ * are accepted, so warm up, stragglers and late joiners do not dilute the
+ * cluster throughput.  STARTTEST carries the server's clock so clients can
+ * start by their own clocks, and result timestamps are corrected by each
+ * client's clock offset before they are compared with the window.  A
+ * participant whose corrected timestamps still fall outside the window
+ * by more than the grace period while the test runs is reported once,
+ * since its results are being discarded.  Once the stop has been sent and
+ * late results have had time to arrive, the aggregator logs the run over
+ * exactly the test duration.
+ */
+public class TestCoordinator {
+
+	/**
+	 * Time from deciding to start to the start, to let STARTTEST reach
+	 * every client
+	 */
+	static final long START_DELAY_MILLIS = 2000;
+
+	/**
+	 * Time after the stop to wait for results still in flight
+	 */
+	static final long GRACE_MILLIS = 2000;
+
+	private enum State { WAITING, RUNNING, STOPPED }
+
+	private final ClientRegistry clients;
+	private final ResultAggregator aggregator;
+	private final int expectedClients;
+	private final int durationSeconds;
+	private final TestStart options;
+
+	private final Set<String> participants = ConcurrentHashMap.newKeySet();
+	private final Set<String> skewed = ConcurrentHashMap.newKeySet();
+	private volatile State state = State.WAITING;
+	private volatile long startNanos;
+	private volatile long stopNanos;
+
+	private final ScheduledExecutorService scheduler;
+	private final List<ScheduledFuture<?>> scheduled = new CopyOnWriteArrayList<ScheduledFuture<?>>();
+
+	final static Logger log = Logger.getLogger(TestCoordinator.class.getName());
+
+	/**
+	 * @param clients registered clients
+	 * @param aggregator collects the results of the test
+	 * @param expectedClients clients to wait for before starting
+	 * @param durationSeconds test length
+	 * @param options client options sent with STARTTEST, may be empty
+	 * @param scheduler runs the start, stop and summary
+	 */
+	public TestCoordinator(ClientRegistry clients, ResultAggregator aggregator, int expectedClients,
+			int durationSeconds, TestStart options, ScheduledExecutorService scheduler) {
+		this.clients = clients;
+		this.aggregator = aggregator;
+		this.expectedClients = expectedClients;
+		this.durationSeconds = durationSeconds;
+		this.options = options;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Called once a client has registered and can be reached.  Starts the
+	 * test when this client completes the expected number.
+	 */
+	public synchronized void clientRegistered(Client client) {
+		State current = state;
+		if (current != State.WAITING) {
+			OutboundQueue outbound = client.getOutbound();
+			if (outbound != null) {
+				outbound.offerControl("MESSAGE Test already " + current.name().toLowerCase() + ", not taking part");
+			}
+			log.info("Client " + client.getName() + " joined after the start and is not part of the test");
+			return;
+		}
+		int registered = clients.size();
+		log.info("Waiting for clients: " + registered + " of " + expectedClients + " registered");
+		if (registered >= expectedClients) {
+			start();
+		}
+	}
+
+	private synchronized void start() {
+		if (state != State.WAITING) {
+			return;
+		}
+		long startMillis = System.currentTimeMillis() + START_DELAY_MILLIS;
+		startNanos = startMillis * 1000000L;
+		stopNanos = startNanos + durationSeconds * 1000000000L;
+
+		TestStart start = new TestStart();
+		start.setStartMillis(startMillis);
+		start.setNowMillis(System.currentTimeMillis());
+		start.setDurationSeconds(durationSeconds);
+		start.getOptions().putAll(options.getOptions());
+		String line = start.toLine();
+
+		for (Client client : clients.clients()) {
+			OutboundQueue outbound = client.getOutbound();
+			if (outbound != null) {
+				participants.add(client.getName());
+				outbound.offerControl(line);
+			} else if (client.getParent() != null) {
+				participants.add(client.getName());
+			}
+		}
+		state = State.RUNNING;
+		log.info("Starting test with " + participants.size() + " clients for " + durationSeconds + " seconds: " + line);
+
+		long delay = startMillis - System.currentTimeMillis();
+		scheduled.add(scheduler.schedule(new Runnable() {
+			public void run() {
+				aggregator.begin();
+			}
+		}, delay, TimeUnit.MILLISECONDS));
+		scheduled.add(scheduler.schedule(new Runnable() {
+			public void run() {
+				stop();
+			}
+		}, delay + durationSeconds * 1000L, TimeUnit.MILLISECONDS));
+	}
+
+	private void stop() {
+		state = State.STOPPED;
+		for (String name : participants) {
+			Client client = clients.get(name);
+			if (client != null && client.getOutbound() != null) {
+				client.getOutbound().offerControl(Protocol.STOP_TEST);
+			}
+		}
+		log.info("Stopping test");
+		scheduled.add(scheduler.schedule(new Runnable() {
+			public void run() {
+				aggregator.summary(durationSeconds * 1000000000L);
+			}
+		}, GRACE_MILLIS, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * @param name client that sent the result
+	 * @param timestamp when the operation completed, nanoseconds since the epoch
+	 * @return true if the result belongs to the test
+	 */
+	public boolean accepts(String name, long timestamp) {
+		State current = state;
+		if (current == State.WAITING || !participants.contains(name)) {
+			return false;
+		}
+		if (timestamp >= startNanos && timestamp <= stopNanos) {
+			return true;
+		}
+		// Nothing runs before the start, and nothing can be stamped after
+		// the stop while the test still runs, unless the clocks disagree
+		long grace = GRACE_MILLIS * 1000000L;
+		if ((timestamp < startNanos - grace || (current == State.RUNNING && timestamp > stopNanos + grace))
+				&& skewed.add(name)) {
+			long off = timestamp < startNanos ? timestamp - startNanos : timestamp - stopNanos;
+			log.warn("Client " + name + " reported a result " + off / 1000000L + " ms outside the test window, " +
+					"its clock may differ from the server's; results outside the window are discarded");
+		}
+		return false;
+	}
+
+	/**
+	 * @return true once the test has been started
+	 */
+	public boolean isStarted() {
+		return state != State.WAITING;
+	}
+
+	/**
+	 * @return start of the test window in nanoseconds since the epoch
+	 */
+	long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * Cancel a pending start, stop or summary.
+	 */
+	public void shutdown() {
+		for (ScheduledFuture<?> future : scheduled) {
+			future.cancel(false);
+		}
+	}
+}
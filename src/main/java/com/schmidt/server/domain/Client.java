@@ -1,11 +1,15 @@
 package com.schmidt.server.domain;
 
-import java.io.PrintWriter;
+import com.schmidt.server.broadcast.OutboundQueue;
 
 public class Client {
 
 	private String name;
-	private PrintWriter writer;
+	private volatile OutboundQueue outbound;
+	private Client parent;
+	private volatile long lastHeard = System.nanoTime();
+	private volatile boolean heartbeats;
+	private volatile long clockOffset = Long.MAX_VALUE;
 	
 	public Client(String name) {
 		this.name = name;		
@@ -43,12 +47,87 @@ public class Client {
 		this.name = name;
 	}
 
-	public PrintWriter getWriter() {
-		return writer;
+	public OutboundQueue getOutbound() {
+		return outbound;
 	}
 
-	public void setWriter(PrintWriter writer) {
-		this.writer = writer;
+	public void setOutbound(OutboundQueue outbound) {
+		this.outbound = outbound;
+	}
+
+	/**
+	 * @return for a logical client, the client whose connection it shares,
+	 * otherwise null
+	 */
+	public Client getParent() {
+		return parent;
+	}
+
+	public void setParent(Client parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Note that a message arrived from the client.
+	 *
+	 * @param now System.nanoTime()
+	 */
+	public void heard(long now) {
+		lastHeard = now;
+	}
+
+	/**
+	 * Note that a heartbeat arrived from the client.
+	 *
+	 * @param now System.nanoTime()
+	 */
+	public void heartbeat(long now) {
+		lastHeard = now;
+		heartbeats = true;
+	}
+
+	/**
+	 * Estimate how far the client's clock is behind the server's from a
+	 * timestamped message.  The message took some time to arrive, so the
+	 * smallest difference seen is the best estimate.
+	 *
+	 * @param received server clock when the message arrived, nanoseconds since the epoch
+	 * @param sent client clock when it was sent, nanoseconds since the epoch
+	 */
+	public void clockSample(long received, long sent) {
+		long offset = received - sent;
+		if (offset < clockOffset) {
+			clockOffset = offset;
+		}
+	}
+
+	/**
+	 * @return nanoseconds to add to the client's timestamps to get the
+	 * server's time, 0 while unknown.  Logical clients share their
+	 * parent's clock.
+	 */
+	public long getClockOffset() {
+		if (parent != null) {
+			return parent.getClockOffset();
+		}
+		long offset = clockOffset;
+		return offset == Long.MAX_VALUE ? 0 : offset;
+	}
+
+	/**
+	 * @return System.nanoTime() of the last message, or of registering if
+	 * none has arrived
+	 */
+	public long getLastHeard() {
+		return lastHeard;
+	}
+
+	/**
+	 * @return true once the client has sent a heartbeat, and so is
+	 * expected to keep sending them
+	 */
+	public boolean sendsHeartbeats() {
+		return heartbeats;
 	}
 
 }
@@ -0,0 +1,107 @@
+package com.schmidt.server.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded ring of received messages for many producers and one consumer.
+ * Producers claim a slot with a compare and set on the tail and publish it
+ * through the slot's sequence number, so neither side takes a lock and a
+ * full ring refuses the message instead of blocking the producer.  The
+ * slots are allocated once; nothing is allocated per message.
+ *
+ * Based on Dmitry Vyukov's bounded queue: a slot whose sequence equals a
+ * producer's position is free, one whose sequence is a position plus one
+ * holds a message for the consumer.
+ */
+public class EventRing {
+
+	/**
+	 * Receives the messages drained from the ring.
+	 */
+	public interface Handler {
+		void event(long timeMillis, String name, String line);
+	}
+
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final long[] times;
+	private final String[] names;
+	private final String[] lines;
+	private final AtomicLong tail = new AtomicLong();
+	private long head;
+
+	/**
+	 * @param capacity slots, rounded up to a power of two
+	 */
+	public EventRing(int capacity) {
+		int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		mask = size - 1;
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		times = new long[size];
+		names = new String[size];
+		lines = new String[size];
+	}
+
+	/**
+	 * Add a message.  Safe to call from any thread.
+	 *
+	 * @return false if the ring was full and the message was not added
+	 */
+	public boolean offer(long timeMillis, String name, String line) {
+		long position = tail.get();
+		int slot;
+		while (true) {
+			slot = (int) position & mask;
+			long difference = sequences.get(slot) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+		times[slot] = timeMillis;
+		names[slot] = name;
+		lines[slot] = line;
+		sequences.lazySet(slot, position + 1);
+		return true;
+	}
+
+	/**
+	 * Pass up to max messages to the handler in the order they were added
+	 * and free their slots.  Only one thread may drain.
+	 *
+	 * @return number of messages drained
+	 */
+	public int drain(Handler handler, int max) {
+		int drained = 0;
+		while (drained < max) {
+			int slot = (int) head & mask;
+			if (sequences.get(slot) != head + 1) {
+				break;
+			}
+			long time = times[slot];
+			String name = names[slot];
+			String line = lines[slot];
+			names[slot] = null;
+			lines[slot] = null;
+			sequences.lazySet(slot, head + mask + 1);
+			head++;
+			handler.event(time, name, line);
+			drained++;
+		}
+		return drained;
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,157 @@
+package com.schmidt.server.log;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Logs the messages the server receives without holding up the connection
+ * threads.  A connection thread only checks that the target logger is at
+ * DEBUG and puts the sender and the line, both already built, in an
+ * {@link EventRing}; nothing is formatted or appended on its thread.  A
+ * background writer drains the ring in batches, formats each message and
+ * hands it to the target logger's appenders stamped with the time it was
+ * received.
+ *
+ * When the writer falls behind and the ring fills, further messages are
+ * dropped and counted rather than blocking the sender; the writer logs a
+ * warning with the count.
+ */
+public class MessageLog implements Closeable {
+
+	private static final int BATCH = 512;
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long DROP_WARNING_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final Logger target;
+	private final EventRing ring;
+	private final AtomicLong dropped = new AtomicLong();
+	private final StringBuilder text = new StringBuilder();
+	private final EventRing.Handler append = new EventRing.Handler() {
+		public void event(long timeMillis, String name, String line) {
+			text.setLength(0);
+			text.append("Message Recieved from: ").append(name).append(" Msg: ").append(line);
+			target.callAppenders(new LoggingEvent(FQCN, target, timeMillis, Level.DEBUG, text.toString(), null));
+		}
+	};
+	private Thread writer;
+	private volatile boolean closed;
+	private long reportedDrops;
+	private long lastDropWarning;
+
+	private static final String FQCN = MessageLog.class.getName();
+
+	final static Logger log = Logger.getLogger(MessageLog.class.getName());
+
+	/**
+	 * @param target logger the messages are written to, at DEBUG
+	 * @param capacity messages that may wait for the writer
+	 */
+	public MessageLog(Logger target, int capacity) {
+		this.target = target;
+		this.ring = new EventRing(capacity);
+	}
+
+	/**
+	 * Start the background writer.  Messages received before are kept,
+	 * up to the ring's capacity.
+	 */
+	public synchronized void start() {
+		if (writer != null) {
+			return;
+		}
+		writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "message-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * @return true if received messages are logged
+	 */
+	public boolean isEnabled() {
+		return target.isDebugEnabled();
+	}
+
+	/**
+	 * Log a message received from a client, if the target logger is at
+	 * DEBUG.  Never blocks.
+	 *
+	 * @param name name of the sending client
+	 * @param line line received from the client
+	 */
+	public void received(String name, String line) {
+		if (target.isDebugEnabled() && !ring.offer(System.currentTimeMillis(), name, line)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return messages dropped because the ring was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Write one batch of waiting messages.  Called only by the writer, or
+	 * by one thread when the writer has not been started.
+	 *
+	 * @return number of messages written
+	 */
+	int drain() {
+		return ring.drain(append, BATCH);
+	}
+
+	private void write() {
+		while (true) {
+			int written = drain();
+			warnDrops();
+			if (written == 0) {
+				if (closed) {
+					return;
+				}
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+
+	private void warnDrops() {
+		long drops = dropped.get();
+		long now = System.nanoTime();
+		if (drops != reportedDrops && (closed || now - lastDropWarning >= DROP_WARNING_NANOS)) {
+			log.warn((drops - reportedDrops) + " received messages were not logged, the log could not keep up");
+			reportedDrops = drops;
+			lastDropWarning = now;
+		}
+	}
+
+	/**
+	 * Write the messages still waiting and stop the writer.
+	 */
+	public void close() {
+		closed = true;
+		Thread thread;
+		synchronized (this) {
+			thread = writer;
+		}
+		if (thread == null) {
+			while (drain() > 0) {
+			}
+			return;
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
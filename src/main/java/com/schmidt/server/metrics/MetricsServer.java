@@ -0,0 +1,322 @@
+package com.schmidt.server.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.LatencyHistogram;
+import com.schmidt.server.broadcast.OutboundQueue;
+import com.schmidt.server.domain.Client;
+import com.schmidt.server.registry.ClientRegistry;
+import com.schmidt.server.stats.ClientStats;
+import com.schmidt.server.stats.Phase;
+import com.schmidt.server.stats.ResultAggregator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the server's metrics over HTTP: /metrics in the Prometheus text
+ * format and /metrics.json.  Everything is rendered from counters the
+ * connection threads already maintain without locks, the
+ * {@link ServerMetrics} adders and each client's {@link ClientStats}, so a
+ * scrape only reads and never blocks the test.  Requests are served one at
+ * a time on the HTTP server's own thread.
+ *
+ * Counters are totals since the server started; rates such as messages or
+ * bytes per second are left to the consumer, as rate() in Prometheus or the
+ * difference between two JSON scrapes.  Latency histograms are exported
+ * with a fixed set of buckets, each counting the samples whose histogram
+ * bucket lies entirely below the bound.
+ */
+public class MetricsServer {
+
+	/**
+	 * Histogram bucket bounds in seconds, 10 us to 10 s
+	 */
+	private static final double[] BOUNDS = { 0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005, 0.001,
+			0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+	private static final String[] BOUND_LABELS = new String[BOUNDS.length];
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private static final Phase[] PHASES = Phase.values();
+
+	static {
+		for (int b = 0; b < BOUNDS.length; b++) {
+			BOUND_LABELS[b] = BigDecimal.valueOf(BOUNDS[b]).toPlainString();
+		}
+	}
+
+	private final ClientRegistry clients;
+	private final ResultAggregator aggregator;
+	private final ServerMetrics metrics;
+	private final HttpServer http;
+
+	final static Logger log = Logger.getLogger(MetricsServer.class.getName());
+
+	/**
+	 * @param port port to serve on
+	 * @param clients connected clients, for their outbound queues
+	 * @param aggregator statistics of every client seen
+	 * @param metrics server counters
+	 */
+	public MetricsServer(int port, ClientRegistry clients, ResultAggregator aggregator, ServerMetrics metrics)
+			throws IOException {
+		this.clients = clients;
+		this.aggregator = aggregator;
+		this.metrics = metrics;
+		this.http = HttpServer.create(new InetSocketAddress(port), 0);
+		http.createContext("/metrics", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if (exchange.getRequestURI().getPath().equals("/metrics.json")) {
+					send(exchange, "application/json", json());
+				} else {
+					send(exchange, "text/plain; version=0.0.4", prometheus());
+				}
+			}
+		});
+	}
+
+	public void start() {
+		http.start();
+		log.info("Serving metrics on http://localhost:" + http.getAddress().getPort() + "/metrics");
+	}
+
+	public void stop() {
+		http.stop(0);
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int getPort() {
+		return http.getAddress().getPort();
+	}
+
+	private static void send(HttpExchange exchange, String type, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+		exchange.sendResponseHeaders(200, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return all metrics in the Prometheus text format
+	 */
+	String prometheus() {
+		StringBuilder sb = new StringBuilder();
+		gauge(sb, "storagetest_clients_connected", "Registered clients", clients.size());
+		counter(sb, "storagetest_connections_total", "Connections accepted", metrics.getConnections());
+		counter(sb, "storagetest_messages_received_total", "Messages received from clients", metrics.getMessages());
+		counter(sb, "storagetest_results_total", "Results recorded", metrics.getResults());
+		counter(sb, "storagetest_clients_evicted_total", "Clients disconnected for missing heartbeats",
+				metrics.getEvictions());
+		counter(sb, "storagetest_verify_failures_total", "Files clients found corrupt when reading them back",
+				metrics.getVerifyFailures());
+		gauge(sb, "storagetest_handler_threads", "Thread mode connection handler threads", metrics.getHandlerThreads());
+		gauge(sb, "storagetest_io_threads", "Nio mode selector threads", metrics.getIoThreads());
+		gauge(sb, "storagetest_jvm_threads", "Live JVM threads", ManagementFactory.getThreadMXBean().getThreadCount());
+
+		List<ClientStats> stats = stats();
+		header(sb, "storagetest_client_bytes_total", "Bytes written or read by a client", "counter");
+		for (ClientStats client : stats) {
+			sb.append("storagetest_client_bytes_total{client=\"").append(escape(client.getName())).append("\"} ")
+					.append(client.getBytes()).append('\n');
+		}
+		header(sb, "storagetest_client_operations_total", "Operations completed by a client", "counter");
+		for (ClientStats client : stats) {
+			sb.append("storagetest_client_operations_total{client=\"").append(escape(client.getName())).append("\"} ")
+					.append(client.getChunks()).append('\n');
+		}
+
+		header(sb, "storagetest_client_latency_seconds", "Operation latency by client and phase", "histogram");
+		for (ClientStats client : stats) {
+			for (Phase phase : PHASES) {
+				LatencyHistogram histogram = client.getHistogram(phase);
+				if (histogram == null) {
+					continue;
+				}
+				long[] cumulative = cumulative(histogram);
+				long count = cumulative[BOUNDS.length];
+				if (count == 0) {
+					continue;
+				}
+				String labels = "client=\"" + escape(client.getName()) + "\",phase=\"" + phase.getLabel() + "\"";
+				for (int b = 0; b < BOUNDS.length; b++) {
+					sb.append("storagetest_client_latency_seconds_bucket{").append(labels).append(",le=\"")
+							.append(BOUND_LABELS[b]).append("\"} ").append(cumulative[b]).append('\n');
+				}
+				sb.append("storagetest_client_latency_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ")
+						.append(count).append('\n');
+				sb.append("storagetest_client_latency_seconds_sum{").append(labels).append("} ")
+						.append(histogram.getSum() / 1e9).append('\n');
+				sb.append("storagetest_client_latency_seconds_count{").append(labels).append("} ")
+						.append(count).append('\n');
+			}
+		}
+
+		header(sb, "storagetest_outbound_queue_depth", "Messages waiting to be sent to a client", "gauge");
+		for (Client client : clients.clients()) {
+			OutboundQueue outbound = client.getOutbound();
+			if (outbound != null) {
+				sb.append("storagetest_outbound_queue_depth{client=\"").append(escape(client.getName())).append("\"} ")
+						.append(outbound.size()).append('\n');
+			}
+		}
+		header(sb, "storagetest_outbound_dropped_total", "Messages dropped for a slow client", "counter");
+		for (Client client : clients.clients()) {
+			OutboundQueue outbound = client.getOutbound();
+			if (outbound != null) {
+				sb.append("storagetest_outbound_dropped_total{client=\"").append(escape(client.getName())).append("\"} ")
+						.append(outbound.getDropped()).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return all metrics as one JSON object, latencies in nanoseconds
+	 */
+	String json() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"started\":").append(metrics.getStarted());
+		sb.append(",\"clients_connected\":").append(clients.size());
+		sb.append(",\"connections\":").append(metrics.getConnections());
+		sb.append(",\"messages_received\":").append(metrics.getMessages());
+		sb.append(",\"results\":").append(metrics.getResults());
+		sb.append(",\"clients_evicted\":").append(metrics.getEvictions());
+		sb.append(",\"verify_failures\":").append(metrics.getVerifyFailures());
+		sb.append(",\"handler_threads\":").append(metrics.getHandlerThreads());
+		sb.append(",\"io_threads\":").append(metrics.getIoThreads());
+		sb.append(",\"jvm_threads\":").append(ManagementFactory.getThreadMXBean().getThreadCount());
+
+		sb.append(",\"clients\":[");
+		String separator = "";
+		for (ClientStats client : stats()) {
+			sb.append(separator).append("{\"name\":\"").append(escape(client.getName())).append('"');
+			sb.append(",\"bytes\":").append(client.getBytes());
+			sb.append(",\"operations\":").append(client.getChunks());
+			Client connected = clients.get(client.getName());
+			if (connected != null && connected.getOutbound() != null) {
+				sb.append(",\"queue_depth\":").append(connected.getOutbound().size());
+				sb.append(",\"dropped\":").append(connected.getOutbound().getDropped());
+			}
+			sb.append(",\"latency\":{");
+			String phaseSeparator = "";
+			for (Phase phase : PHASES) {
+				LatencyHistogram histogram = client.getHistogram(phase);
+				if (histogram == null) {
+					continue;
+				}
+				long[] cumulative = cumulative(histogram);
+				long count = cumulative[BOUNDS.length];
+				if (count == 0) {
+					continue;
+				}
+				sb.append(phaseSeparator).append('"').append(phase.getLabel()).append("\":{");
+				sb.append("\"count\":").append(count);
+				sb.append(",\"sum\":").append(histogram.getSum());
+				for (double p : PERCENTILES) {
+					sb.append(",\"p").append(String.valueOf(p).replace(".0", "").replace('.', '_')).append("\":")
+							.append(histogram.getValueAtPercentile(p));
+				}
+				sb.append(",\"max\":").append(histogram.getMax());
+				sb.append(",\"buckets\":[");
+				for (int b = 0; b < BOUNDS.length; b++) {
+					sb.append(b == 0 ? "" : ",").append("[").append((long) (BOUNDS[b] * 1e9)).append(',')
+							.append(cumulative[b]).append(']');
+				}
+				sb.append("]}");
+				phaseSeparator = ",";
+			}
+			sb.append("}}");
+			separator = ",";
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	/**
+	 * @return clients in name order
+	 */
+	private List<ClientStats> stats() {
+		List<ClientStats> stats = new ArrayList<ClientStats>(aggregator.getClients());
+		Collections.sort(stats, new Comparator<ClientStats>() {
+			public int compare(ClientStats a, ClientStats b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return stats;
+	}
+
+	/**
+	 * @return samples at or below each bound, with the total count last
+	 */
+	private static long[] cumulative(LatencyHistogram histogram) {
+		long[] cumulative = new long[BOUNDS.length + 1];
+		int b = 0;
+		long seen = 0;
+		for (int i = 0; i < histogram.getBucketCount(); i++) {
+			long count = histogram.getCountAt(i);
+			if (count == 0) {
+				continue;
+			}
+			double limit = histogram.getBucketLimit(i) / 1e9;
+			while (b < BOUNDS.length && limit > BOUNDS[b]) {
+				cumulative[b++] = seen;
+			}
+			seen += count;
+		}
+		while (b < BOUNDS.length) {
+			cumulative[b++] = seen;
+		}
+		cumulative[BOUNDS.length] = seen;
+		return cumulative;
+	}
+
+	private static void counter(StringBuilder sb, String name, String help, long value) {
+		header(sb, name, help, "counter");
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void gauge(StringBuilder sb, String name, String help, long value) {
+		header(sb, name, help, "gauge");
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void header(StringBuilder sb, String name, String help, String type) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	/**
+	 * Escape a label or JSON string value
+	 */
+	private static String escape(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else if (c >= ' ') {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
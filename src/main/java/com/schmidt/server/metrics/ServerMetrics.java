@@ -0,0 +1,118 @@
+package com.schmidt.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server wide counters updated on the connection threads.  Each is a
+ * LongAdder, so updates from many threads do not contend and reading them
+ * for a scrape never blocks a connection.
+ */
+public class ServerMetrics {
+
+	private final long started = System.currentTimeMillis();
+	private final LongAdder connections = new LongAdder();
+	private final LongAdder handlerThreads = new LongAdder();
+	private final LongAdder messages = new LongAdder();
+	private final LongAdder results = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder verifyFailures = new LongAdder();
+	private volatile int ioThreads;
+
+	/**
+	 * Count a new connection
+	 */
+	public void connected() {
+		connections.increment();
+	}
+
+	/**
+	 * Count a thread mode handler thread starting
+	 */
+	public void handlerStarted() {
+		handlerThreads.increment();
+	}
+
+	/**
+	 * Count a thread mode handler thread ending
+	 */
+	public void handlerStopped() {
+		handlerThreads.decrement();
+	}
+
+	/**
+	 * Count a message received from a registered client, line or frame
+	 */
+	public void messageReceived() {
+		messages.increment();
+	}
+
+	/**
+	 * Count a result recorded in the statistics
+	 */
+	public void resultRecorded() {
+		results.increment();
+	}
+
+	/**
+	 * Count results that arrived aggregated over an interval
+	 */
+	public void resultsRecorded(long count) {
+		results.add(count);
+	}
+
+	/**
+	 * Count a client disconnected for going silent
+	 */
+	public void clientEvicted() {
+		evictions.increment();
+	}
+
+	/**
+	 * Count a file a client found corrupt when reading it back
+	 */
+	public void verifyFailed() {
+		verifyFailures.increment();
+	}
+
+	public void setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
+	}
+
+	/**
+	 * @return when the server started, milliseconds since the epoch
+	 */
+	public long getStarted() {
+		return started;
+	}
+
+	public long getConnections() {
+		return connections.sum();
+	}
+
+	public long getHandlerThreads() {
+		return handlerThreads.sum();
+	}
+
+	public long getMessages() {
+		return messages.sum();
+	}
+
+	public long getResults() {
+		return results.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getVerifyFailures() {
+		return verifyFailures.sum();
+	}
+
+	/**
+	 * @return selector threads in nio mode, 0 in thread mode
+	 */
+	public int getIoThreads() {
+		return ioThreads;
+	}
+}
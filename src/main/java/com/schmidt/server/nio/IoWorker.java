@@ -0,0 +1,117 @@
+package com.schmidt.server.nio;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A selector loop owning a share of the server's connections.  All channel
+ * reads, writes and interest changes happen on this thread; other threads
+ * hand work to it through {@link #execute(Runnable)}.  A failure while
+ * servicing one connection closes only that connection; the loop keeps
+ * running for the others.
+ */
+class IoWorker implements Runnable {
+
+	private final Selector selector;
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	final static Logger log = Logger.getLogger(IoWorker.class.getName());
+
+	IoWorker() throws IOException {
+		selector = Selector.open();
+	}
+
+	/**
+	 * Hand a freshly accepted channel to this worker.
+	 */
+	void register(final SocketChannel channel) {
+		execute(new Runnable() {
+			public void run() {
+				try {
+					channel.configureBlocking(false);
+					NioConnection connection = new NioConnection(channel, IoWorker.this);
+					connection.start(channel.register(selector, SelectionKey.OP_READ, connection));
+				} catch (IOException e) {
+					log.error(e);
+					closeChannel(channel);
+				} catch (RuntimeException e) {
+					log.error("Could not register connection", e);
+					closeChannel(channel);
+				}
+			}
+		});
+	}
+
+	private static void close(NioConnection connection) {
+		try {
+			connection.close();
+		} catch (RuntimeException e) {
+			log.error("Could not close connection", e);
+		}
+	}
+
+	private static void closeChannel(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Run a task on the selector thread and wake it up if it is waiting.
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	public void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				log.error(e);
+				return;
+			}
+
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					log.error("I/O task failed", e);
+				}
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				NioConnection connection = (NioConnection) key.attachment();
+				try {
+					if (key.isValid() && key.isReadable()) {
+						connection.onReadable();
+					}
+					if (key.isValid() && key.isWritable()) {
+						connection.onWritable();
+					}
+				} catch (ClosedChannelException e) {
+					close(connection);
+				} catch (IOException e) {
+					log.debug("Connection error: " + e.getMessage());
+					close(connection);
+				} catch (RuntimeException e) {
+					log.error("Closing connection after an unexpected error", e);
+					close(connection);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package com.schmidt.server.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.Server;
+import com.schmidt.protocol.FrameDecoder;
+import com.schmidt.protocol.LineReader;
+import com.schmidt.protocol.Protocol;
+import com.schmidt.server.ConnectionHandler;
+import com.schmidt.server.broadcast.OutboundQueue;
+import com.schmidt.server.broadcast.OutboundWriter;
+import com.schmidt.server.domain.Client;
+
+/**
+ * State for one client connection serviced by an {@link IoWorker}.  Incoming
+ * bytes are split into lines, or binary frames once the client has switched,
+ * and fed through the same handshake and broadcast steps as the blocking
+ * handler.  Outgoing lines are queued and written, many per write call,
+ * when the channel is writable.
+ */
+class NioConnection {
+
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private final SocketChannel channel;
+	private final IoWorker worker;
+	private final OutboundQueue out;
+	private SelectionKey key;
+
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+	private byte[] line = new byte[256];
+	private int lineLength;
+	private ConnectionHandler handler;
+	private FrameDecoder decoder;
+
+	/**
+	 * Set while the worker has been asked to write this connection's queue.
+	 */
+	private final AtomicBoolean writeScheduled = new AtomicBoolean();
+	private final List<String> batch = new ArrayList<String>(OutboundWriter.MAX_BATCH);
+	private final StringBuilder text = new StringBuilder();
+	private ByteBuffer pending;
+
+	private String name;
+	private Client client;
+	private boolean closed;
+
+	final static Logger log = Logger.getLogger(NioConnection.class.getName());
+
+	NioConnection(SocketChannel channel, IoWorker worker) {
+		this.channel = channel;
+		this.worker = worker;
+		this.out = Server.createOutbound(new Closeable() {
+			public void close() {
+				NioConnection.this.worker.execute(new Runnable() {
+					public void run() {
+						NioConnection.this.close();
+					}
+				});
+			}
+		}, new Runnable() {
+			public void run() {
+				scheduleWrite();
+			}
+		});
+	}
+
+	/**
+	 * Called once the channel is registered.  Starts the handshake.
+	 */
+	void start(SelectionKey key) {
+		this.key = key;
+		out.offerControl("SUBMITNAME");
+	}
+
+	/**
+	 * Read whatever is available and process every complete line.
+	 */
+	void onReadable() throws IOException {
+		int read = 0;
+		while (!closed && (read = channel.read(readBuffer)) > 0) {
+			readBuffer.flip();
+			while (readBuffer.hasRemaining() && !closed) {
+				if (decoder != null) {
+					decoder.decode(readBuffer);
+					if (handler.isExited()) {
+						close();
+					}
+					break;
+				}
+				byte b = readBuffer.get();
+				if (b == '\n') {
+					int length = lineLength;
+					if (length > 0 && line[length - 1] == '\r') {
+						length--;
+					}
+					lineLength = 0;
+					onLine(new String(line, 0, length, CHARSET));
+				} else {
+					if (lineLength == line.length) {
+						if (lineLength >= LineReader.MAX_LINE) {
+							log.error("Line too long, dropping client: " + name);
+							close();
+							return;
+						}
+						byte[] larger = new byte[line.length * 2];
+						System.arraycopy(line, 0, larger, 0, lineLength);
+						line = larger;
+					}
+					line[lineLength++] = b;
+				}
+			}
+			readBuffer.clear();
+		}
+		if (read < 0) {
+			close();
+		}
+	}
+
+	/**
+	 * Same protocol as the blocking handler: the first accepted line is the
+	 * client name, "exit" ends the session and anything else is recorded
+	 * and broadcast.
+	 */
+	private void onLine(String input) {
+		if (client == null) {
+			client = Server.register(input, out);
+			if (client != null) {
+				name = input;
+				handler = new ConnectionHandler(client, out);
+			} else {
+				out.offerControl("SUBMITNAME");
+			}
+		} else if (input.equals(Protocol.ACCEPT_BINARY)) {
+			decoder = new FrameDecoder(handler);
+		} else {
+			handler.onText(input);
+			if (handler.isExited()) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Ask the worker for write readiness after a line was queued.  May be
+	 * called from any thread.  Only the first line queued since the last
+	 * drain costs a wakeup.
+	 */
+	private void scheduleWrite() {
+		if (writeScheduled.compareAndSet(false, true)) {
+			worker.execute(new Runnable() {
+				public void run() {
+					if (key.isValid()) {
+						key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Write as much queued data as the socket will take.  Queued lines are
+	 * encoded together so a batch costs one write call.  Stop asking for
+	 * write readiness once the queue is drained.
+	 */
+	void onWritable() throws IOException {
+		while (true) {
+			if (pending == null) {
+				out.drainTo(batch, OutboundWriter.MAX_BATCH);
+				if (batch.isEmpty()) {
+					writeScheduled.set(false);
+					// A line may have been queued after the drain but before
+					// the flag was cleared; its signal was swallowed.
+					if (out.isEmpty() || !writeScheduled.compareAndSet(false, true)) {
+						key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+						return;
+					}
+					continue;
+				}
+				for (String line : batch) {
+					text.append(line).append('\n');
+				}
+				batch.clear();
+				pending = CHARSET.encode(CharBuffer.wrap(text));
+				text.setLength(0);
+			}
+			channel.write(pending);
+			if (pending.hasRemaining()) {
+				return;
+			}
+			pending = null;
+		}
+	}
+
+	/**
+	 * Close the channel and remove the client from the registry.  Only
+	 * called on the worker thread.
+	 */
+	void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+		try {
+			if (handler != null) {
+				handler.close();
+			}
+		} finally {
+			if (client != null) {
+				Server.unregister(client);
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.schmidt.server.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.Server;
+
+/**
+ * Non-blocking test server.  A single acceptor hands each new connection
+ * to one of a small fixed pool of {@link IoWorker} selector threads, so the
+ * number of threads no longer grows with the number of connected clients.
+ * The SUBMITNAME / NAMEACCEPTED / STARTTEST handshake and line framing are
+ * the same as the thread-per-connection handler.
+ */
+public class NioServer {
+
+	/**
+	 * Length of the pending connection queue.  Large enough to absorb a
+	 * few thousand clients connecting at once.
+	 */
+	public static final int BACKLOG = 1024;
+
+	private int port;
+	private IoWorker[] workers;
+	private ServerSocketChannel listener;
+
+	final static Logger log = Logger.getLogger(NioServer.class.getName());
+
+	/**
+	 * @param port port to listen on
+	 * @param ioThreads number of selector threads servicing connections
+	 */
+	public NioServer(int port, int ioThreads) {
+		this.port = port;
+		this.workers = new IoWorker[Math.max(1, ioThreads)];
+	}
+
+	/**
+	 * Start the I/O threads and accept connections until the listener is
+	 * closed.  Accepted channels are distributed round robin.
+	 *
+	 * @throws IOException
+	 */
+	public void run() throws IOException {
+		bind();
+		try {
+			serve();
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Start the I/O threads and open the listener.
+	 */
+	void bind() throws IOException {
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new IoWorker();
+			Thread thread = new Thread(workers[i], "nio-io-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		log.debug("Started " + workers.length + " I/O threads");
+		Server.metrics().setIoThreads(workers.length);
+
+		listener = ServerSocketChannel.open();
+		listener.bind(new InetSocketAddress(port), BACKLOG);
+	}
+
+	/**
+	 * Accept connections until the listener is closed.
+	 */
+	void serve() throws IOException {
+		int next = 0;
+		while (true) {
+			SocketChannel channel = listener.accept();
+			Server.metrics().connected();
+			workers[next].register(channel);
+			next = (next + 1) % workers.length;
+		}
+	}
+
+	/**
+	 * @return port the listener is bound to
+	 */
+	int getPort() {
+		return listener.socket().getLocalPort();
+	}
+
+	/**
+	 * Close the listener, which ends {@link #serve()}.
+	 */
+	void close() throws IOException {
+		listener.close();
+	}
+}
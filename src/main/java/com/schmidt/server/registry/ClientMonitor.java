@@ -0,0 +1,69 @@
+package com.schmidt.server.registry;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.Protocol;
+import com.schmidt.server.broadcast.OutboundQueue;
+import com.schmidt.server.domain.Client;
+import com.schmidt.server.metrics.ServerMetrics;
+
+/**
+ * Disconnects clients that have gone silent.  A client that has sent a
+ * heartbeat is expected to send one every {@link Protocol#HEARTBEAT_SECONDS}
+ * seconds; once nothing at all has arrived from it for the given number of
+ * intervals its connection is closed, which ends its handler and
+ * unregisters it.  Clients that never sent a heartbeat, such as older
+ * clients waiting for a coordinated start, are left alone, as are logical
+ * clients, which come and go with their parent's connection.  Run
+ * periodically on the server's scheduler.
+ */
+public class ClientMonitor implements Runnable {
+
+	private final ClientRegistry clients;
+	private final long timeoutNanos;
+	private final ServerMetrics metrics;
+
+	final static Logger log = Logger.getLogger(ClientMonitor.class.getName());
+
+	/**
+	 * @param clients registered clients
+	 * @param missedHeartbeats heartbeat intervals a client may stay silent
+	 * @param metrics counts evictions
+	 */
+	public ClientMonitor(ClientRegistry clients, int missedHeartbeats, ServerMetrics metrics) {
+		this.clients = clients;
+		this.timeoutNanos = missedHeartbeats * Protocol.HEARTBEAT_SECONDS * 1000000000L;
+		this.metrics = metrics;
+	}
+
+	public void run() {
+		try {
+			check(System.nanoTime());
+		} catch (RuntimeException e) {
+			log.error("Client check failed", e);
+		}
+	}
+
+	/**
+	 * Disconnect every client silent for longer than the timeout.
+	 *
+	 * @param now System.nanoTime()
+	 * @return number of clients disconnected
+	 */
+	int check(long now) {
+		int evicted = 0;
+		for (Client client : clients.clients()) {
+			OutboundQueue outbound = client.getOutbound();
+			long silent = now - client.getLastHeard();
+			if (outbound == null || client.getParent() != null || !client.sendsHeartbeats() || silent <= timeoutNanos) {
+				continue;
+			}
+			if (outbound.disconnect()) {
+				log.warn("Client " + client.getName() + " silent for " + silent / 1000000000L + " secs, disconnecting");
+				metrics.clientEvicted();
+				evicted++;
+			}
+		}
+		return evicted;
+	}
+}
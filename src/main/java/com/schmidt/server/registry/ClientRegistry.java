@@ -0,0 +1,115 @@
+package com.schmidt.server.registry;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+
+import com.schmidt.server.domain.Client;
+
+/**
+ * The set of all registered test clients, keyed by client name.  Registration
+ * is an atomic put-if-absent so a name can only be taken once, and neither
+ * registration, removal nor iteration takes a registry wide lock.
+ */
+public class ClientRegistry {
+
+	private final ConcurrentMap<String, Client> clients = new ConcurrentHashMap<String, Client>();
+	private final CopyOnWriteArrayList<RegistryListener> listeners = new CopyOnWriteArrayList<RegistryListener>();
+
+	/**
+	 * Register a client under its name.
+	 *
+	 * @param client client to add
+	 * @return true if the name was free and the client was added
+	 */
+	public boolean add(Client client) {
+		if (clients.putIfAbsent(client.getName(), client) != null) {
+			return false;
+		}
+		for (RegistryListener listener : listeners) {
+			listener.clientJoined(client);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove a client.  Only removes the entry if it is still held by this
+	 * very client instance, so a connection going away can not remove a
+	 * client that has since registered again under the same name.
+	 *
+	 * @param client client to remove
+	 * @return true if the client was removed
+	 */
+	public boolean remove(final Client client) {
+		final boolean[] removed = new boolean[1];
+		clients.computeIfPresent(client.getName(), new BiFunction<String, Client, Client>() {
+			public Client apply(String name, Client current) {
+				if (current != client) {
+					return current;
+				}
+				removed[0] = true;
+				return null;
+			}
+		});
+		if (!removed[0]) {
+			return false;
+		}
+		for (RegistryListener listener : listeners) {
+			listener.clientLeft(client);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the client registered under a name.
+	 *
+	 * @param name client name
+	 * @return the removed client, or null if the name was not registered
+	 */
+	public Client remove(String name) {
+		Client client = clients.remove(name);
+		if (client != null) {
+			for (RegistryListener listener : listeners) {
+				listener.clientLeft(client);
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * @return the client registered under the name, or null
+	 */
+	public Client get(String name) {
+		return clients.get(name);
+	}
+
+	/**
+	 * @return true if the name is registered
+	 */
+	public boolean contains(String name) {
+		return clients.containsKey(name);
+	}
+
+	/**
+	 * A live, weakly consistent view of all clients.  Iterating it never
+	 * blocks registration or removal and never throws
+	 * ConcurrentModificationException.
+	 */
+	public Collection<Client> clients() {
+		return clients.values();
+	}
+
+	public int size() {
+		return clients.size();
+	}
+
+	public void addListener(RegistryListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(RegistryListener listener) {
+		listeners.remove(listener);
+	}
+}
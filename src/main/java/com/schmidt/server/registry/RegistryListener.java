@@ -0,0 +1,21 @@
+package com.schmidt.server.registry;
+
+import com.schmidt.server.domain.Client;
+
+/**
+ * Notified when clients join or leave a {@link ClientRegistry}.  Called on the
+ * thread that registered or removed the client, so implementations should
+ * return quickly.
+ */
+public interface RegistryListener {
+
+	/**
+	 * A client name was accepted and the client added to the registry.
+	 */
+	void clientJoined(Client client);
+
+	/**
+	 * A client was removed from the registry.
+	 */
+	void clientLeft(Client client);
+}
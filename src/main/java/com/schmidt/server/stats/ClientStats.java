@@ -0,0 +1,264 @@
+package com.schmidt.server.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.LatencyHistogram;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.Status;
+
+/**
+ * Results received from one client: a latency histogram per {@link Phase}
+ * for the whole run and byte and chunk counters, which leave metadata
+ * operations out, plus chunk and byte
+ * counters per worker for clients running a worker pool, and the client's
+ * first and latest resource {@link Status}.  Written only by
+ * the thread servicing the client's connection and read by the
+ * {@link ResultAggregator}.
+ *
+ * A histogram takes about 10 KB, so one is only created for the phases a
+ * client actually reports; a writing client without fsync needs two.
+ */
+public class ClientStats {
+
+	private static final Phase[] PHASES = Phase.values();
+
+	/**
+	 * Highest worker number counted separately
+	 */
+	static final int MAX_WORKERS = 1024;
+
+	private final String name;
+	/**
+	 * Null until the phase is first recorded.  Read by the aggregator
+	 * without locks; the histogram's final and volatile fields make a
+	 * newly published one safe to read.
+	 */
+	private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+	private volatile long bytes;
+	private volatile long chunks;
+	private volatile long verifyFailures;
+
+	/**
+	 * Chunks of worker w at 2w and bytes at 2w + 1, null until a pool
+	 * worker reports.  Replaced by a larger copy as workers appear.
+	 */
+	private volatile AtomicLongArray workers;
+
+	/**
+	 * Copies of the first and the latest status received
+	 */
+	private volatile Status firstStatus;
+	private volatile Status status;
+
+	/**
+	 * Connections using these statistics, guarded by the aggregator's map
+	 */
+	int users;
+
+	/**
+	 * State of the previous report, owned by the aggregator.  The
+	 * histogram snapshot is only taken for per client debug output.
+	 */
+	LatencyHistogram previous;
+	long previousBytes;
+	long previousChunks;
+	long[] previousWorkers = new long[0];
+	Status previousStatus;
+	Status runStatus;
+
+	public ClientStats(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the histogram of a phase, created on first use
+	 */
+	private LatencyHistogram histogram(Phase phase) {
+		LatencyHistogram histogram = histograms[phase.ordinal()];
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			histograms[phase.ordinal()] = histogram;
+		}
+		return histogram;
+	}
+
+	/**
+	 * Add an interval's histogram to a phase unless it is empty.
+	 */
+	private void add(Phase phase, LatencyHistogram samples) {
+		if (samples.getCount() > 0) {
+			histogram(phase).add(samples);
+		}
+	}
+
+	/**
+	 * Record one chunk result.  Only called by the connection's thread.
+	 */
+	public void record(ChunkResult result) {
+		if (result.getOperation() == Operation.METADATA) {
+			histogram(Phase.METADATA).record(result.getNanos());
+			return;
+		}
+		histogram(Phase.TOTAL).record(result.getNanos());
+		if (result.getDelayNanos() > 0) {
+			histogram(Phase.DELAY).record(result.getDelayNanos());
+		}
+		if (result.getOperation() == Operation.READ) {
+			histogram(Phase.READ).record(result.getNanos() - result.getDelayNanos());
+		} else if (result.getOperation() == Operation.VERIFY) {
+			histogram(Phase.VERIFY).record(result.getNanos() - result.getDelayNanos());
+		} else {
+			histogram(Phase.WRITE).record(result.getWriteNanos());
+			if (result.getFlushNanos() > 0) {
+				histogram(Phase.FLUSH).record(result.getFlushNanos());
+			}
+			if (result.getSyncNanos() > 0) {
+				histogram(Phase.FSYNC).record(result.getSyncNanos());
+			}
+		}
+		bytes += result.getChunkSize();
+		chunks++;
+		countWorker(result.getWorker(), 1, result.getChunkSize());
+	}
+
+	/**
+	 * Record the results a client aggregated over an interval, as if they
+	 * had arrived one by one.  Only called by the connection's thread.
+	 */
+	public void record(IntervalResult interval) {
+		if (interval.getOperation() == Operation.METADATA) {
+			add(Phase.METADATA, interval.getHistogram(IntervalResult.TOTAL));
+			return;
+		}
+		add(Phase.TOTAL, interval.getHistogram(IntervalResult.TOTAL));
+		add(Phase.DELAY, interval.getHistogram(IntervalResult.DELAY));
+		if (interval.getOperation() == Operation.READ) {
+			add(Phase.READ, interval.getHistogram(IntervalResult.SERVICE));
+		} else if (interval.getOperation() == Operation.VERIFY) {
+			add(Phase.VERIFY, interval.getHistogram(IntervalResult.SERVICE));
+		} else {
+			add(Phase.WRITE, interval.getHistogram(IntervalResult.SERVICE));
+			add(Phase.FLUSH, interval.getHistogram(IntervalResult.FLUSH));
+			add(Phase.FSYNC, interval.getHistogram(IntervalResult.FSYNC));
+		}
+		bytes += interval.getBytes();
+		chunks += interval.getCount();
+		countWorker(interval.getWorker(), interval.getCount(), interval.getBytes());
+	}
+
+	private void countWorker(int worker, long workerChunks, long workerBytes) {
+		if (worker > 0 && worker <= MAX_WORKERS) {
+			AtomicLongArray counts = workers;
+			if (counts == null || counts.length() <= 2 * worker + 1) {
+				counts = grow(counts, worker);
+			}
+			counts.lazySet(2 * worker, counts.get(2 * worker) + workerChunks);
+			counts.lazySet(2 * worker + 1, counts.get(2 * worker + 1) + workerBytes);
+		}
+	}
+
+	/**
+	 * Count a file the client found corrupt when reading it back.  Only
+	 * called by the connection's thread.
+	 */
+	public void verifyFailed() {
+		verifyFailures++;
+	}
+
+	/**
+	 * Record a status.  Only called by the connection's thread.
+	 */
+	public void record(Status received) {
+		Status copy = new Status();
+		copy.copyFrom(received);
+		if (firstStatus == null) {
+			firstStatus = copy;
+		}
+		status = copy;
+	}
+
+	private AtomicLongArray grow(AtomicLongArray counts, int worker) {
+		AtomicLongArray larger = new AtomicLongArray(2 * (worker + 1));
+		for (int i = 0; counts != null && i < counts.length(); i++) {
+			larger.set(i, counts.get(i));
+		}
+		workers = larger;
+		return larger;
+	}
+
+	/**
+	 * @return the latest status, or null if none has been received
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the first status received, or null
+	 */
+	public Status getFirstStatus() {
+		return firstStatus;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return latencies of every operation over the whole run, or null if
+	 * nothing has been recorded
+	 */
+	public LatencyHistogram getHistogram() {
+		return histograms[Phase.TOTAL.ordinal()];
+	}
+
+	/**
+	 * @return latencies of one phase over the whole run, or null if the
+	 * client has not reported that phase
+	 */
+	public LatencyHistogram getHistogram(Phase phase) {
+		return histograms[phase.ordinal()];
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * @return files that failed verification
+	 */
+	public long getVerifyFailures() {
+		return verifyFailures;
+	}
+
+	/**
+	 * @return one more than the highest worker number seen, 0 if the
+	 * client does not run a worker pool
+	 */
+	public int getWorkerCount() {
+		AtomicLongArray counts = workers;
+		return counts == null ? 0 : counts.length() / 2;
+	}
+
+	/**
+	 * @return chunks reported by a pool worker
+	 */
+	public long getWorkerChunks(int worker) {
+		AtomicLongArray counts = workers;
+		return counts == null || 2 * worker >= counts.length() ? 0 : counts.get(2 * worker);
+	}
+
+	/**
+	 * @return bytes reported by a pool worker
+	 */
+	public long getWorkerBytes(int worker) {
+		AtomicLongArray counts = workers;
+		return counts == null || 2 * worker + 1 >= counts.length() ? 0 : counts.get(2 * worker + 1);
+	}
+}
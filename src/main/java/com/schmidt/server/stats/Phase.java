@@ -0,0 +1,61 @@
+package com.schmidt.server.stats;
+
+/**
+ * The timings reported for chunks.  Writes report the write, flush and
+ * fsync phases; reads and verification reads report only their read time.
+ * Creating, opening and deleting files is timed on its own and is not
+ * part of the total.
+ */
+public enum Phase {
+
+	/**
+	 * Whole operation, reads and writes together, including any delay
+	 * behind schedule in rate limited mode, but not metadata
+	 */
+	TOTAL("latency"),
+
+	/**
+	 * Handing data to the operating system
+	 */
+	WRITE("write"),
+
+	/**
+	 * Flushing buffered data, only for engines that buffer
+	 */
+	FLUSH("flush"),
+
+	/**
+	 * Forcing data to the device, only when the client fsyncs
+	 */
+	FSYNC("fsync"),
+
+	/**
+	 * Time to read, without any delay behind schedule
+	 */
+	READ("read"),
+
+	/**
+	 * Time to read back written data for verification
+	 */
+	VERIFY("verify"),
+
+	/**
+	 * Time to create, open or delete a test file
+	 */
+	METADATA("metadata"),
+
+	/**
+	 * How late rate limited operations started, only for late operations
+	 */
+	DELAY("delay");
+
+	private final String label;
+
+	private Phase(String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+}
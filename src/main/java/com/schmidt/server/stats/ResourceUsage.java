@@ -0,0 +1,148 @@
+package com.schmidt.server.stats;
+
+import com.schmidt.protocol.Status;
+
+/**
+ * A client's resource use between two of its statuses, and whether it was
+ * busy enough that its results may measure the client rather than the
+ * storage.  A client is CPU bound when its process used at least
+ * {@link #CPU_BOUND} of one processor's time, and GC bound when at least
+ * {@link #GC_BOUND} of the time went to garbage collection.  The CPU check
+ * is per processor rather than against all of them because a client is
+ * usually held up by one saturated thread, a worker or the reporter, long
+ * before it uses every processor of a large machine.
+ */
+public class ResourceUsage {
+
+	/**
+	 * Processors' worth of CPU time above which a client counts as CPU
+	 * bound, enough to keep one thread busy
+	 */
+	static final double CPU_BOUND = 0.9;
+
+	/**
+	 * Share of wall time in garbage collection above which a client counts
+	 * as GC bound
+	 */
+	static final double GC_BOUND = 0.1;
+
+	private final double secs;
+	private final Status to;
+	private final double cpu;
+	private final double gc;
+	private final double allocationRate;
+	private final double ioReadRate;
+	private final double ioWriteRate;
+	private final double diskReadRate;
+	private final double diskWriteRate;
+	private final double diskBusy;
+
+	private ResourceUsage(Status from, Status to) {
+		this.to = to;
+		secs = (to.getTimestamp() - from.getTimestamp()) / 1e9;
+		cpu = from.getCpuNanos() < 0 || to.getCpuNanos() < 0 || to.getProcessors() <= 0 ? -1
+				: (to.getCpuNanos() - from.getCpuNanos()) / 1e9 / secs / to.getProcessors();
+		gc = from.getGcNanos() < 0 || to.getGcNanos() < 0 ? -1 : (to.getGcNanos() - from.getGcNanos()) / 1e9 / secs;
+		allocationRate = rate(from.getAllocatedBytes(), to.getAllocatedBytes());
+		ioReadRate = rate(from.getIoReadBytes(), to.getIoReadBytes());
+		ioWriteRate = rate(from.getIoWriteBytes(), to.getIoWriteBytes());
+		diskReadRate = rate(from.getDiskReadBytes(), to.getDiskReadBytes());
+		diskWriteRate = rate(from.getDiskWriteBytes(), to.getDiskWriteBytes());
+		double busy = rate(from.getDiskBusyMillis(), to.getDiskBusyMillis());
+		diskBusy = busy < 0 ? -1 : Math.min(1, busy / 1000);
+	}
+
+	/**
+	 * @return the use between two statuses of one client, or null if they
+	 * do not span any time
+	 */
+	public static ResourceUsage between(Status from, Status to) {
+		if (from == null || to == null || to.getTimestamp() <= from.getTimestamp()) {
+			return null;
+		}
+		return new ResourceUsage(from, to);
+	}
+
+	/**
+	 * @return per second increase of a counter, never negative, or -1 if
+	 * the client could not read it
+	 */
+	private double rate(long from, long to) {
+		return from < 0 || to < 0 ? -1 : Math.max(0, to - from) / secs;
+	}
+
+	/**
+	 * @return share of all processors used by the client process, or -1
+	 */
+	public double getCpu() {
+		return cpu;
+	}
+
+	/**
+	 * @return share of wall time spent in garbage collection, or -1
+	 */
+	public double getGc() {
+		return gc;
+	}
+
+	/**
+	 * @return bytes allocated per second, or -1
+	 */
+	public double getAllocationRate() {
+		return allocationRate;
+	}
+
+	/**
+	 * @return processors' worth of CPU time used by the client process, or -1
+	 */
+	public double getCores() {
+		return cpu < 0 ? -1 : cpu * to.getProcessors();
+	}
+
+	public boolean isCpuBound() {
+		return getCores() >= CPU_BOUND;
+	}
+
+	public boolean isGcBound() {
+		return gc >= GC_BOUND;
+	}
+
+	/**
+	 * @return what bounded the client, empty if neither CPU nor GC did
+	 */
+	public String getBound() {
+		if (isCpuBound() && isGcBound()) {
+			return "CPU and GC";
+		}
+		return isCpuBound() ? "CPU" : isGcBound() ? "GC" : "";
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%.0fs:", secs));
+		if (cpu >= 0) {
+			sb.append(String.format(" cpu %.0f%% of %d", cpu * 100, to.getProcessors()));
+		}
+		if (to.getSystemLoad() >= 0) {
+			sb.append(String.format(" load %.2f", to.getSystemLoad()));
+		}
+		if (to.getHeapUsed() >= 0) {
+			sb.append(String.format(" heap %.0f/%.0f MB", to.getHeapUsed() / 1048576.0, to.getTotalMemory() / 1048576.0));
+		}
+		if (gc >= 0) {
+			sb.append(String.format(" gc %.1f%%", gc * 100));
+		}
+		if (allocationRate >= 0) {
+			sb.append(String.format(" alloc %.1f MB/s", allocationRate / 1048576));
+		}
+		if (ioReadRate >= 0) {
+			sb.append(String.format(" process io read %.1f write %.1f MB/s", ioReadRate / 1048576, ioWriteRate / 1048576));
+		}
+		if (diskReadRate >= 0) {
+			sb.append(String.format(" disks read %.1f write %.1f MB/s busy %.0f%%", diskReadRate / 1048576,
+					diskWriteRate / 1048576, diskBusy * 100));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,444 @@
+package com.schmidt.server.stats;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.LatencyHistogram;
+import com.schmidt.protocol.Status;
+
+/**
+ * Aggregates chunk results from all clients into a storage benchmark report.
+ *
+ * Every report interval the aggregator adds up every client's histograms
+ * and counters and takes the difference from the previous report's total
+ * as the global interval.  It then logs throughput and latency percentiles
+ * for the interval, for a sliding window of recent intervals and for the
+ * whole run.  The write, flush and fsync phases of each chunk are reported
+ * the same way.  At debug level each client, and each worker of clients
+ * running a worker pool, is reported as well.  When the last connection
+ * using a client's statistics closes, they are folded into a retired total,
+ * so the server keeps no state per departed client and the totals stay
+ * continuous.  Clients whose resource statuses show them CPU or GC bound
+ * are flagged with a warning, since their results may measure the client
+ * rather than the storage.  Clients record into their own
+ * {@link ClientStats} without any locks; all merging happens on the report
+ * thread.
+ */
+public class ResultAggregator {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private static final Phase[] PHASES = Phase.values();
+
+	private final ConcurrentMap<String, ClientStats> clients = new ConcurrentHashMap<String, ClientStats>();
+	private final int intervalSeconds;
+
+	private final LatencyHistogram snapshot = new LatencyHistogram();
+	private final LatencyHistogram clientInterval = new LatencyHistogram();
+	private final LatencyHistogram window = new LatencyHistogram();
+	private final LatencyHistogram[] interval = new LatencyHistogram[PHASES.length];
+	private final LatencyHistogram[] run = new LatencyHistogram[PHASES.length];
+
+	/**
+	 * Sum of every client's histograms now and at the previous report
+	 */
+	private final LatencyHistogram[] total = new LatencyHistogram[PHASES.length];
+	private final LatencyHistogram[] previous = new LatencyHistogram[PHASES.length];
+	private long previousBytes;
+	private long previousChunks;
+
+	/**
+	 * Results of clients whose connections have all closed
+	 */
+	private final LatencyHistogram[] retired = new LatencyHistogram[PHASES.length];
+	private long retiredBytes;
+	private long retiredChunks;
+	private long retiredVerifyFailures;
+
+	/**
+	 * Ring of the most recent global intervals, per phase
+	 */
+	private final LatencyHistogram[][] windowIntervals;
+	private final long[] windowBytes;
+	private final long[] windowChunks;
+	private final long[] windowNanos;
+	private int windowNext;
+
+	private long start = System.nanoTime();
+	private long lastReport = start;
+	private long runBytes;
+	private long runChunks;
+
+	/**
+	 * Length of a coordinated run once it has ended, 0 while open ended
+	 */
+	private long runNanos;
+
+	private ScheduledFuture<?> reporting;
+
+	final static Logger log = Logger.getLogger(ResultAggregator.class.getName());
+
+	/**
+	 * @param intervalSeconds seconds between reports
+	 * @param windowLength number of intervals in the sliding window
+	 */
+	public ResultAggregator(int intervalSeconds, int windowLength) {
+		this.intervalSeconds = intervalSeconds;
+		windowIntervals = new LatencyHistogram[Math.max(1, windowLength)][PHASES.length];
+		for (int p = 0; p < PHASES.length; p++) {
+			interval[p] = new LatencyHistogram();
+			run[p] = new LatencyHistogram();
+			total[p] = new LatencyHistogram();
+			previous[p] = new LatencyHistogram();
+			retired[p] = new LatencyHistogram();
+			for (int i = 0; i < windowIntervals.length; i++) {
+				windowIntervals[i][p] = new LatencyHistogram();
+			}
+		}
+		windowBytes = new long[windowIntervals.length];
+		windowChunks = new long[windowIntervals.length];
+		windowNanos = new long[windowIntervals.length];
+	}
+
+	/**
+	 * @return the statistics for a client, created on first use.  A client
+	 * that reconnects under the same name before its old connection has
+	 * closed keeps its statistics.  Every join must be matched by a
+	 * {@link #leave(ClientStats)}.
+	 */
+	public ClientStats join(String name) {
+		return clients.compute(name, new BiFunction<String, ClientStats, ClientStats>() {
+			public ClientStats apply(String key, ClientStats stats) {
+				if (stats == null) {
+					stats = new ClientStats(key);
+				}
+				stats.users++;
+				return stats;
+			}
+		});
+	}
+
+	/**
+	 * Release a client's statistics when its connection closes.  Once no
+	 * connection uses them they are added to the retired total and
+	 * dropped.  A final resource summary is logged for the client.
+	 */
+	public synchronized void leave(final ClientStats stats) {
+		final boolean[] last = new boolean[1];
+		clients.computeIfPresent(stats.getName(), new BiFunction<String, ClientStats, ClientStats>() {
+			public ClientStats apply(String key, ClientStats current) {
+				if (current != stats || --current.users > 0) {
+					return current;
+				}
+				last[0] = true;
+				return null;
+			}
+		});
+		if (!last[0]) {
+			return;
+		}
+		for (int p = 0; p < PHASES.length; p++) {
+			LatencyHistogram histogram = stats.getHistogram(PHASES[p]);
+			if (histogram != null) {
+				retired[p].add(histogram);
+			}
+		}
+		retiredBytes += stats.getBytes();
+		retiredChunks += stats.getChunks();
+		retiredVerifyFailures += stats.getVerifyFailures();
+		summarizeResources(stats, "Client " + stats.getName() + " left,");
+	}
+
+	/**
+	 * @return statistics of every connected client, live
+	 */
+	public Collection<ClientStats> getClients() {
+		return clients.values();
+	}
+
+	/**
+	 * Start reporting every interval.
+	 *
+	 * @param scheduler runs the reports
+	 */
+	public void start(ScheduledExecutorService scheduler) {
+		reporting = scheduler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					report();
+				} catch (RuntimeException e) {
+					log.error("Report failed", e);
+				}
+			}
+		}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stop reporting.
+	 */
+	public void stop() {
+		if (reporting != null) {
+			reporting.cancel(false);
+		}
+	}
+
+	/**
+	 * Collect the interval since the last report and log interval, window
+	 * and run statistics.
+	 */
+	public synchronized void report() {
+		long now = System.nanoTime();
+		long elapsed = now - lastReport;
+		lastReport = now;
+
+		for (int p = 0; p < PHASES.length; p++) {
+			total[p].copyFrom(retired[p]);
+		}
+		long totalBytes = retiredBytes;
+		long totalChunks = retiredChunks;
+		for (ClientStats stats : clients.values()) {
+			totalBytes += stats.getBytes();
+			totalChunks += stats.getChunks();
+			for (int p = 0; p < PHASES.length; p++) {
+				LatencyHistogram histogram = stats.getHistogram(PHASES[p]);
+				if (histogram != null) {
+					total[p].add(histogram);
+				}
+			}
+
+			if (log.isDebugEnabled()) {
+				reportClient(stats, elapsed, now);
+				reportWorkers(stats, elapsed);
+			}
+			reportResources(stats);
+		}
+		long bytes = totalBytes - previousBytes;
+		long chunks = totalChunks - previousChunks;
+		previousBytes = totalBytes;
+		previousChunks = totalChunks;
+
+		for (int p = 0; p < PHASES.length; p++) {
+			interval[p].setToDifference(total[p], previous[p]);
+			LatencyHistogram swap = previous[p];
+			previous[p] = total[p];
+			total[p] = swap;
+			run[p].add(interval[p]);
+			windowIntervals[windowNext][p].copyFrom(interval[p]);
+		}
+		runBytes += bytes;
+		runChunks += chunks;
+
+		windowBytes[windowNext] = bytes;
+		windowChunks[windowNext] = chunks;
+		windowNanos[windowNext] = elapsed;
+		windowNext = (windowNext + 1) % windowIntervals.length;
+
+		if (runChunks == 0) {
+			return;
+		}
+
+		long windowByteTotal = 0;
+		long windowChunkTotal = 0;
+		long windowNanoTotal = 0;
+		for (int i = 0; i < windowIntervals.length; i++) {
+			windowByteTotal += windowBytes[i];
+			windowChunkTotal += windowChunks[i];
+			windowNanoTotal += windowNanos[i];
+		}
+
+		for (Phase phase : PHASES) {
+			int p = phase.ordinal();
+			if (run[p].getCount() == 0) {
+				continue;
+			}
+			window.reset();
+			for (int i = 0; i < windowIntervals.length; i++) {
+				window.add(windowIntervals[i][p]);
+			}
+			String suffix = phase == Phase.TOTAL ? " clients " + clients.size() : "";
+			log.info(format("Interval", phase, interval[p], chunks, bytes, elapsed) + suffix);
+			log.info(format("Window", phase, window, windowChunkTotal, windowByteTotal, windowNanoTotal));
+			log.info(format("Run", phase, run[p], runChunks, runBytes, now - start));
+		}
+	}
+
+	/**
+	 * Start the run now.  Anything collected so far is reported as an
+	 * interval and then left out of the run and the window.  Called when a
+	 * coordinated test starts.
+	 */
+	public synchronized void begin() {
+		report();
+		for (int p = 0; p < PHASES.length; p++) {
+			run[p].reset();
+			for (int i = 0; i < windowIntervals.length; i++) {
+				windowIntervals[i][p].reset();
+			}
+		}
+		Arrays.fill(windowBytes, 0);
+		Arrays.fill(windowChunks, 0);
+		Arrays.fill(windowNanos, 0);
+		runBytes = 0;
+		runChunks = 0;
+		runNanos = 0;
+		for (ClientStats stats : clients.values()) {
+			stats.runStatus = stats.getStatus();
+		}
+		start = System.nanoTime();
+		log.info("Run started");
+	}
+
+	/**
+	 * Log the whole run.  Called when the server shuts down.
+	 */
+	public synchronized void summary() {
+		summary(runNanos > 0 ? runNanos : System.nanoTime() - start);
+	}
+
+	/**
+	 * Log the whole run as lasting exactly the given time.  Called when a
+	 * coordinated test has ended, so throughput is over the test window
+	 * rather than until the last result arrived.
+	 *
+	 * @param nanos length of the run
+	 */
+	public synchronized void summary(long nanos) {
+		runNanos = nanos;
+		report();
+		for (Phase phase : PHASES) {
+			int p = phase.ordinal();
+			if (run[p].getCount() > 0) {
+				log.info(format("Run summary", phase, run[p], runChunks, runBytes, nanos));
+			}
+		}
+		if (retiredVerifyFailures > 0) {
+			log.error("Clients that have left read back wrong data in " + retiredVerifyFailures + " files");
+		}
+		for (ClientStats stats : clients.values()) {
+			if (stats.getVerifyFailures() > 0) {
+				log.error("Client " + stats.getName() + " read back wrong data in " + stats.getVerifyFailures() + " files");
+			}
+			summarizeResources(stats, "Client " + stats.getName());
+		}
+	}
+
+	/**
+	 * Log a client's resource use over the run, with a warning if it was
+	 * CPU or GC bound.
+	 */
+	private static void summarizeResources(ClientStats stats, String label) {
+		Status from = stats.runStatus != null ? stats.runStatus : stats.getFirstStatus();
+		ResourceUsage usage = ResourceUsage.between(from, stats.getStatus());
+		if (usage == null) {
+			return;
+		}
+		log.info(label + " resources " + usage);
+		if (!usage.getBound().isEmpty()) {
+			log.warn("Client " + stats.getName() + " was " + usage.getBound() + " bound during the run, " +
+					"its results may measure the client rather than the storage");
+		}
+	}
+
+	/**
+	 * Log a client's resource use since its previous status, as a warning
+	 * if it is CPU or GC bound.
+	 */
+	private static void reportResources(ClientStats stats) {
+		Status status = stats.getStatus();
+		if (status == stats.previousStatus) {
+			return;
+		}
+		ResourceUsage usage = ResourceUsage.between(stats.previousStatus, status);
+		stats.previousStatus = status;
+		if (usage == null) {
+			return;
+		}
+		if (!usage.getBound().isEmpty()) {
+			log.warn("Client " + stats.getName() + " is " + usage.getBound() + " bound " + usage);
+		} else if (log.isDebugEnabled()) {
+			log.debug("Client " + stats.getName() + " resources " + usage);
+		}
+	}
+
+	/**
+	 * Log a client's interval and run at debug level.  The snapshot needed
+	 * for the interval is only kept while debug output is on.
+	 */
+	private void reportClient(ClientStats stats, long elapsed, long now) {
+		long clientBytes = stats.getBytes();
+		long clientChunks = stats.getChunks();
+		long deltaBytes = clientBytes - stats.previousBytes;
+		long deltaChunks = clientChunks - stats.previousChunks;
+		stats.previousBytes = clientBytes;
+		stats.previousChunks = clientChunks;
+		LatencyHistogram histogram = stats.getHistogram();
+		if (histogram == null) {
+			return;
+		}
+		if (stats.previous == null) {
+			stats.previous = new LatencyHistogram();
+		}
+		snapshot.copyFrom(histogram);
+		clientInterval.setToDifference(snapshot, stats.previous);
+		stats.previous.copyFrom(snapshot);
+		if (deltaChunks > 0) {
+			log.debug(format("Client " + stats.getName() + " interval", Phase.TOTAL, clientInterval, deltaChunks, deltaBytes, elapsed));
+			log.debug(format("Client " + stats.getName() + " run", Phase.TOTAL, snapshot, clientChunks, clientBytes, now - start));
+		}
+	}
+
+	/**
+	 * Log the throughput of each pool worker of a client over the interval.
+	 */
+	private static void reportWorkers(ClientStats stats, long elapsed) {
+		int count = stats.getWorkerCount();
+		if (stats.previousWorkers.length < 2 * count) {
+			stats.previousWorkers = Arrays.copyOf(stats.previousWorkers, 2 * count);
+		}
+		double secs = elapsed / 1e9;
+		for (int w = 1; w < count; w++) {
+			long chunks = stats.getWorkerChunks(w);
+			long bytes = stats.getWorkerBytes(w);
+			long deltaChunks = chunks - stats.previousWorkers[2 * w];
+			long deltaBytes = bytes - stats.previousWorkers[2 * w + 1];
+			stats.previousWorkers[2 * w] = chunks;
+			stats.previousWorkers[2 * w + 1] = bytes;
+			if (deltaChunks > 0) {
+				log.debug(String.format("Client %s worker %d interval: %.1f chunks/s %.2f MB/s", stats.getName(), w,
+						deltaChunks / secs, deltaBytes / secs / (1024 * 1024)));
+			}
+		}
+	}
+
+	/**
+	 * @return the whole run histogram of a phase, updated every report
+	 */
+	public LatencyHistogram getRun(Phase phase) {
+		return run[phase.ordinal()];
+	}
+
+	private static String format(String label, Phase phase, LatencyHistogram histogram, long chunks, long bytes, long nanos) {
+		double secs = nanos / 1e9;
+		StringBuilder sb = new StringBuilder(160);
+		sb.append(label).append(' ').append(String.format("%.0f", secs)).append("s: ");
+		if (phase == Phase.TOTAL) {
+			sb.append(String.format("%.1f chunks/s %.2f MB/s %s ms", chunks / secs, bytes / secs / (1024 * 1024), phase.getLabel()));
+		} else {
+			// Phases only cover some operations, so show their own rate
+			sb.append(String.format("%.1f ops/s %s ms", histogram.getCount() / secs, phase.getLabel()));
+		}
+		for (double p : PERCENTILES) {
+			sb.append(" p").append(p == Math.rint(p) ? String.valueOf((int) p) : String.valueOf(p));
+			sb.append(' ').append(String.format("%.3f", histogram.getValueAtPercentile(p) / 1e6));
+		}
+		sb.append(" max ").append(String.format("%.3f", histogram.getMax() / 1e6));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,190 @@
+package com.schmidt.server.stats;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.EpochClock;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.Status;
+
+/**
+ * Parses chunk results sent with the line protocol:
+ *
+ * <pre>
+ * name chunksize: N time to write: X secs
+ * name last chunksize: N time to write: X secs
+ * name chunksize: N time to write: X secs (write W flush F fsync S ns)
+ * name chunksize: N time to read: X secs
+ * name chunksize: N time to read: X secs worker W
+ * name chunksize: N time to read: X secs delay D ns worker W
+ * name chunksize: 0 time to metadata: X secs
+ * </pre>
+ *
+ * The total time is in seconds and is converted to nanoseconds.  Write
+ * lines without the breakdown count the whole time as write time.  Lines
+ * carry no timestamp, so the time of parsing is used.
+ *
+ * Status lines are parsed too, see
+ * {@link com.schmidt.protocol.TextFormat#status(Status)}.
+ */
+public final class ResultParser {
+
+	private static final String CHUNKSIZE = " chunksize: ";
+	private static final String LAST = " last";
+	private static final String TIME = " time to write: ";
+	private static final String READ_TIME = " time to read: ";
+	private static final String VERIFY_TIME = " time to verify: ";
+	private static final String METADATA_TIME = " time to metadata: ";
+	private static final String SECS = " secs";
+	private static final String WRITE = " (write ";
+	private static final String FLUSH = " flush ";
+	private static final String FSYNC = " fsync ";
+	private static final String NS = " ns)";
+	private static final String DELAY = " delay ";
+	private static final String DELAY_NS = " ns";
+	private static final String WORKER = " worker ";
+	private static final String STATUS = "Status ";
+	private static final Status UNKNOWN = new Status();
+
+	private ResultParser() {
+	}
+
+	/**
+	 * Parse a result line into a reusable result.
+	 *
+	 * @param line line received from a client
+	 * @param result filled in if the line is a result
+	 * @return true if the line was a chunk result
+	 */
+	public static boolean parse(String line, ChunkResult result) {
+		int chunk = line.indexOf(CHUNKSIZE);
+		if (chunk < 0) {
+			return false;
+		}
+		Operation operation = Operation.WRITE;
+		int time = line.indexOf(TIME, chunk);
+		int timeLength = TIME.length();
+		if (time < 0) {
+			operation = Operation.READ;
+			time = line.indexOf(READ_TIME, chunk);
+			timeLength = READ_TIME.length();
+		}
+		if (time < 0) {
+			operation = Operation.VERIFY;
+			time = line.indexOf(VERIFY_TIME, chunk);
+			timeLength = VERIFY_TIME.length();
+		}
+		if (time < 0) {
+			operation = Operation.METADATA;
+			time = line.indexOf(METADATA_TIME, chunk);
+			timeLength = METADATA_TIME.length();
+		}
+		int secs = time < 0 ? -1 : line.indexOf(SECS, time);
+		if (secs < 0) {
+			return false;
+		}
+		try {
+			result.setChunkSize(Integer.parseInt(line, chunk + CHUNKSIZE.length(), time, 10));
+			int value = time + timeLength;
+			double seconds = Double.parseDouble(line.substring(value, secs));
+			result.setNanos(Math.round(seconds * 1e9));
+
+			int write = operation != Operation.WRITE ? -1 : line.indexOf(WRITE, secs);
+			int flush = write < 0 ? -1 : line.indexOf(FLUSH, write);
+			int fsync = flush < 0 ? -1 : line.indexOf(FSYNC, flush);
+			int ns = fsync < 0 ? -1 : line.indexOf(NS, fsync);
+			if (operation != Operation.WRITE) {
+				result.setWriteNanos(0);
+				result.setFlushNanos(0);
+				result.setSyncNanos(0);
+			} else if (ns < 0) {
+				result.setWriteNanos(result.getNanos());
+				result.setFlushNanos(0);
+				result.setSyncNanos(0);
+			} else {
+				result.setWriteNanos(Long.parseLong(line, write + WRITE.length(), flush, 10));
+				result.setFlushNanos(Long.parseLong(line, flush + FLUSH.length(), fsync, 10));
+				result.setSyncNanos(Long.parseLong(line, fsync + FSYNC.length(), ns, 10));
+			}
+
+			int delay = line.indexOf(DELAY, secs);
+			int delayNs = delay < 0 ? -1 : line.indexOf(DELAY_NS, delay + DELAY.length());
+			result.setDelayNanos(delayNs < 0 ? 0 : Long.parseLong(line, delay + DELAY.length(), delayNs, 10));
+
+			int worker = line.indexOf(WORKER, secs);
+			result.setWorker(worker < 0 ? 0 : Integer.parseInt(line, worker + WORKER.length(), line.length(), 10));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		result.setOperation(operation);
+		result.setLast(line.startsWith(LAST, chunk - LAST.length()));
+		result.setTimestamp(EpochClock.epochNanos());
+		return true;
+	}
+
+	/**
+	 * Parse a status line into a reusable status.  Values missing from the
+	 * line, as sent by older clients, are set to -1.
+	 *
+	 * @param line line received from a client
+	 * @param status filled in if the line is a status
+	 * @return true if the line was a status
+	 */
+	public static boolean parseStatus(String line, Status status) {
+		if (!line.startsWith(STATUS)) {
+			return false;
+		}
+		String[] fields = line.substring(STATUS.length()).split(" ");
+		status.copyFrom(UNKNOWN);
+		try {
+			for (int i = 0; i + 1 < fields.length; i += 2) {
+				String value = fields[i + 1];
+				switch (fields[i]) {
+				case "Memory:":
+					status.setTotalMemory(Long.parseLong(value));
+					break;
+				case "heap:":
+					status.setHeapUsed(Long.parseLong(value));
+					break;
+				case "cpu:":
+					status.setCpuNanos(Long.parseLong(value));
+					break;
+				case "cpus:":
+					status.setProcessors(Integer.parseInt(value));
+					break;
+				case "load:":
+					status.setSystemLoad(Double.parseDouble(value));
+					break;
+				case "gc:":
+					status.setGcCount(Long.parseLong(value));
+					break;
+				case "gctime:":
+					status.setGcNanos(Long.parseLong(value));
+					break;
+				case "allocated:":
+					status.setAllocatedBytes(Long.parseLong(value));
+					break;
+				case "ioread:":
+					status.setIoReadBytes(Long.parseLong(value));
+					break;
+				case "iowrite:":
+					status.setIoWriteBytes(Long.parseLong(value));
+					break;
+				case "diskread:":
+					status.setDiskReadBytes(Long.parseLong(value));
+					break;
+				case "diskwrite:":
+					status.setDiskWriteBytes(Long.parseLong(value));
+					break;
+				case "diskbusy:":
+					status.setDiskBusyMillis(Long.parseLong(value));
+					break;
+				default:
+					break;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		status.setTimestamp(EpochClock.epochNanos());
+		return true;
+	}
+}
@@ -0,0 +1,65 @@
+package com.schmidt.server.store;
+
+/**
+ * Layout of a run file.  All numbers are big endian.
+ *
+ * <pre>
+ * file header   magic(8) version(4) created millis(8) reserved(4)
+ * block         type(4) payload length(4) min timestamp(8) max timestamp(8) payload
+ * trailer       last index offset(8) end magic(8)
+ * </pre>
+ *
+ * A DATA block holds up to {@link #RECORDS_PER_BLOCK} fixed width records
+ * of timestamp(8) nanos(8) bytes(4) client(2) worker(2) operation(1), in
+ * arrival order, with the block header giving the time range they cover.
+ * A NAMES block maps client ids to names, as id(2) followed by the name in
+ * modified UTF-8, and always precedes the first DATA or INTERVALS block
+ * using them.
+ *
+ * An INTERVALS block holds results a client aggregated over an interval,
+ * up to {@link #INTERVAL_BLOCK} bytes of timestamp(8) start(8) client(2)
+ * worker(2) operation(1) bytes(8) sum(8) max(8) buckets(2) followed by
+ * index(2) count(4) for each non-empty bucket of the operations' latency
+ * histogram, as in the INTERVAL frame.  The timestamp is when the last
+ * operation completed, and the block's count in the index is the number
+ * of operations.  Version 1 files, which have no INTERVALS blocks, are
+ * still read.
+ *
+ * After every {@link #BLOCKS_PER_INDEX} blocks, and on close, an INDEX block
+ * lists them as type(4) count(4) offset(8) min timestamp(8) max
+ * timestamp(8), after the offset of the previous INDEX block, or -1.  The
+ * trailer points at the last one, so a reader walks the index chain
+ * backwards and never touches data it does not need.  A file without a
+ * trailer, from a server that did not shut down cleanly, is read by walking
+ * the block headers instead.
+ */
+final class RunFileFormat {
+
+	// "SFRUN001" and "SFRUNEND"
+
+	static final long MAGIC = 0x5346_5255_4e30_3031L;
+	static final long END_MAGIC = 0x5346_5255_4e45_4e44L;
+	static final int VERSION = 2;
+
+	static final int FILE_HEADER = 24;
+	static final int BLOCK_HEADER = 24;
+	static final int TRAILER = 16;
+
+	static final int DATA = 1;
+	static final int NAMES = 2;
+	static final int INDEX = 3;
+	static final int INTERVALS = 4;
+
+	static final int RECORD_SIZE = 25;
+	static final int RECORDS_PER_BLOCK = 2048;
+
+	static final int INTERVAL_HEADER = 47;
+	static final int BUCKET_SIZE = 6;
+	static final int INTERVAL_BLOCK = RECORD_SIZE * RECORDS_PER_BLOCK;
+
+	static final int INDEX_ENTRY = 32;
+	static final int BLOCKS_PER_INDEX = 64;
+
+	private RunFileFormat() {
+	}
+}
@@ -0,0 +1,377 @@
+package com.schmidt.server.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.LatencyHistogram;
+import com.schmidt.protocol.Operation;
+
+/**
+ * Reads a run file written by {@link RunFileWriter}.  Opening the file reads
+ * only the index and the client names; results are streamed block by block
+ * through one reusable buffer, and blocks outside the requested time range
+ * are skipped without being read, so files of any size can be scanned in
+ * constant memory.  Intervals are passed on whole, with their operations'
+ * latency histogram, rather than as one result per operation.
+ */
+public class RunFileReader implements Closeable {
+
+	/**
+	 * Receives the results of a scan.  The result and interval objects
+	 * are reused for every call.
+	 */
+	public interface Visitor {
+		void result(int client, ChunkResult result);
+
+		/**
+		 * @param interval results aggregated by a client, with only the
+		 * byte count and the {@link IntervalResult#TOTAL} histogram set
+		 */
+		void interval(int client, IntervalResult interval);
+	}
+
+	private static class Block {
+		int type;
+		int count;
+		long offset;
+		long minTimestamp;
+		long maxTimestamp;
+	}
+
+	private final FileChannel channel;
+	private final long created;
+	private final List<Block> blocks = new ArrayList<Block>();
+	private final Map<Integer, String> names = new HashMap<Integer, String>();
+	private final ByteBuffer buffer = ByteBuffer.allocate(RunFileFormat.RECORD_SIZE * RunFileFormat.RECORDS_PER_BLOCK);
+	private boolean complete;
+
+	final static Logger log = Logger.getLogger(RunFileReader.class.getName());
+
+	public RunFileReader(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = read(0, RunFileFormat.FILE_HEADER);
+			if (header.getLong() != RunFileFormat.MAGIC) {
+				throw new IOException(file + " is not a run file");
+			}
+			int version = header.getInt();
+			if (version < 1 || version > RunFileFormat.VERSION) {
+				throw new IOException("Unsupported run file version " + version);
+			}
+			created = header.getLong();
+
+			complete = readIndex();
+			if (!complete) {
+				log.warn("Run file " + file + " was not closed, reading block by block");
+				scanBlocks();
+			}
+			Collections.sort(blocks, new Comparator<Block>() {
+				public int compare(Block a, Block b) {
+					return Long.compare(a.offset, b.offset);
+				}
+			});
+			for (Block block : blocks) {
+				if (block.type == RunFileFormat.NAMES) {
+					readNames(block);
+				}
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Follow the index chain back from the trailer.
+	 *
+	 * @return false if the file has no trailer
+	 */
+	private boolean readIndex() throws IOException {
+		long size = channel.size();
+		if (size < RunFileFormat.FILE_HEADER + RunFileFormat.TRAILER) {
+			return false;
+		}
+		ByteBuffer trailer = read(size - RunFileFormat.TRAILER, RunFileFormat.TRAILER);
+		long index = trailer.getLong();
+		if (trailer.getLong() != RunFileFormat.END_MAGIC) {
+			return false;
+		}
+		while (index >= 0) {
+			ByteBuffer header = read(index, RunFileFormat.BLOCK_HEADER);
+			if (header.getInt() != RunFileFormat.INDEX) {
+				throw new IOException("Corrupt run file index at " + index);
+			}
+			ByteBuffer entries = read(index + RunFileFormat.BLOCK_HEADER, header.getInt());
+			index = entries.getLong();
+			while (entries.hasRemaining()) {
+				Block block = new Block();
+				block.type = entries.getInt();
+				block.count = entries.getInt();
+				block.offset = entries.getLong();
+				block.minTimestamp = entries.getLong();
+				block.maxTimestamp = entries.getLong();
+				blocks.add(block);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Walk the block headers of a file without a trailer, stopping at the
+	 * first block that was not completely written.
+	 */
+	private void scanBlocks() throws IOException {
+		long size = channel.size();
+		long position = RunFileFormat.FILE_HEADER;
+		while (position + RunFileFormat.BLOCK_HEADER <= size) {
+			ByteBuffer header = read(position, RunFileFormat.BLOCK_HEADER);
+			Block block = new Block();
+			block.type = header.getInt();
+			int length = header.getInt();
+			block.minTimestamp = header.getLong();
+			block.maxTimestamp = header.getLong();
+			block.offset = position;
+			block.count = block.type == RunFileFormat.DATA ? length / RunFileFormat.RECORD_SIZE : 0;
+			position += RunFileFormat.BLOCK_HEADER + length;
+			if (length < 0 || position > size) {
+				break;
+			}
+			if (block.type == RunFileFormat.INTERVALS) {
+				block.count = countOperations(block);
+			}
+			if (block.type != RunFileFormat.INDEX) {
+				blocks.add(block);
+			}
+		}
+	}
+
+	private void readNames(Block block) throws IOException {
+		ByteBuffer header = read(block.offset, RunFileFormat.BLOCK_HEADER);
+		header.getInt();
+		ByteBuffer payload = read(block.offset + RunFileFormat.BLOCK_HEADER, header.getInt());
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array(), 0, payload.limit()));
+		while (in.available() > 0) {
+			int id = in.readUnsignedShort();
+			names.put(id, in.readUTF());
+		}
+	}
+
+	/**
+	 * @return operations in an intervals block, for a file without an index
+	 */
+	private int countOperations(Block block) throws IOException {
+		readIntervals(block);
+		long count = 0;
+		while (buffer.hasRemaining()) {
+			buffer.position(buffer.position() + RunFileFormat.INTERVAL_HEADER - 2);
+			int buckets = buffer.getShort() & 0xffff;
+			for (int b = 0; b < buckets; b++) {
+				buffer.getShort();
+				count += buffer.getInt() & 0xffffffffL;
+			}
+		}
+		return (int) count;
+	}
+
+	private void readIntervals(Block block) throws IOException {
+		ByteBuffer header = read(block.offset, RunFileFormat.BLOCK_HEADER);
+		header.getInt();
+		int length = header.getInt();
+		if (length < 0 || length > buffer.capacity()) {
+			throw new IOException("Corrupt run file block at " + block.offset);
+		}
+		buffer.clear();
+		buffer.limit(length);
+		readFully(block.offset + RunFileFormat.BLOCK_HEADER, buffer);
+		buffer.flip();
+	}
+
+	/**
+	 * Pass every result and interval with a timestamp in the range to the
+	 * visitor, in file order.
+	 *
+	 * @param from first timestamp, nanoseconds since the epoch
+	 * @param to last timestamp, inclusive
+	 */
+	public void scan(long from, long to, Visitor visitor) throws IOException {
+		ChunkResult result = new ChunkResult();
+		IntervalResult interval = new IntervalResult();
+		for (Block block : blocks) {
+			if (block.maxTimestamp < from || block.minTimestamp > to) {
+				continue;
+			}
+			if (block.type == RunFileFormat.INTERVALS) {
+				scanIntervals(block, from, to, interval, visitor);
+				continue;
+			}
+			if (block.type != RunFileFormat.DATA) {
+				continue;
+			}
+			buffer.clear();
+			buffer.limit(block.count * RunFileFormat.RECORD_SIZE);
+			readFully(block.offset + RunFileFormat.BLOCK_HEADER, buffer);
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				long timestamp = buffer.getLong();
+				long nanos = buffer.getLong();
+				int bytes = buffer.getInt();
+				int client = buffer.getShort() & 0xffff;
+				int worker = buffer.getShort() & 0xffff;
+				Operation operation = Operation.valueOf(buffer.get());
+				if (timestamp < from || timestamp > to) {
+					continue;
+				}
+				result.setTimestamp(timestamp);
+				result.setNanos(nanos);
+				result.setChunkSize(bytes);
+				result.setWorker(worker);
+				result.setOperation(operation);
+				visitor.result(client, result);
+			}
+		}
+	}
+
+	private void scanIntervals(Block block, long from, long to, IntervalResult interval, Visitor visitor)
+			throws IOException {
+		readIntervals(block);
+		LatencyHistogram total = interval.getHistogram(IntervalResult.TOTAL);
+		while (buffer.hasRemaining()) {
+			long timestamp = buffer.getLong();
+			long start = buffer.getLong();
+			int client = buffer.getShort() & 0xffff;
+			int worker = buffer.getShort() & 0xffff;
+			Operation operation = Operation.valueOf(buffer.get());
+			long bytes = buffer.getLong();
+			long sum = buffer.getLong();
+			long max = buffer.getLong();
+			int buckets = buffer.getShort() & 0xffff;
+			boolean inRange = timestamp >= from && timestamp <= to;
+			if (inRange) {
+				interval.reset(start);
+				interval.setTimestamp(timestamp);
+				interval.setWorker(worker);
+				interval.setOperation(operation);
+				interval.setBytes(bytes);
+				total.setTotals(sum, max);
+			}
+			long count = 0;
+			for (int b = 0; b < buckets; b++) {
+				int i = buffer.getShort() & 0xffff;
+				long n = buffer.getInt() & 0xffffffffL;
+				if (i >= total.getBucketCount()) {
+					throw new IOException("Corrupt run file block at " + block.offset);
+				}
+				if (inRange) {
+					total.addCountAt(i, n);
+				}
+				count += n;
+			}
+			if (inRange) {
+				interval.setCount(count);
+				visitor.interval(client, interval);
+			}
+		}
+	}
+
+	/**
+	 * @return when the file was created, milliseconds since the epoch
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * @return false if the server did not close the file, in which case
+	 * results that were still buffered are missing
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return client name for an id, or null
+	 */
+	public String getName(int client) {
+		return names.get(client);
+	}
+
+	/**
+	 * @return client names by id
+	 */
+	public Map<Integer, String> getNames() {
+		return Collections.unmodifiableMap(names);
+	}
+
+	/**
+	 * @return number of results in the file, counting every operation of
+	 * an interval
+	 */
+	public long getCount() {
+		long count = 0;
+		for (Block block : blocks) {
+			count += block.count;
+		}
+		return count;
+	}
+
+	/**
+	 * @return earliest result timestamp, or Long.MAX_VALUE for an empty file
+	 */
+	public long getFirstTimestamp() {
+		long first = Long.MAX_VALUE;
+		for (Block block : blocks) {
+			if (block.type == RunFileFormat.DATA || block.type == RunFileFormat.INTERVALS) {
+				first = Math.min(first, block.minTimestamp);
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * @return latest result timestamp, or Long.MIN_VALUE for an empty file
+	 */
+	public long getLastTimestamp() {
+		long last = Long.MIN_VALUE;
+		for (Block block : blocks) {
+			if (block.type == RunFileFormat.DATA || block.type == RunFileFormat.INTERVALS) {
+				last = Math.max(last, block.maxTimestamp);
+			}
+		}
+		return last;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(length);
+		readFully(position, bytes);
+		bytes.flip();
+		return bytes;
+	}
+
+	private void readFully(long position, ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()) {
+			if (channel.read(bytes, position + bytes.position()) < 0) {
+				throw new IOException("Run file truncated at " + (position + bytes.position()));
+			}
+		}
+	}
+}
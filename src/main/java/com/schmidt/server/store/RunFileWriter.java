@@ -0,0 +1,296 @@
+package com.schmidt.server.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.LatencyHistogram;
+
+/**
+ * Appends every result of a run to a run file, see {@link RunFileFormat}.
+ * Records are collected in a heap buffer and written a whole block at a
+ * time, so the file grows by about 50 KB per 2048 results and nothing is
+ * allocated per result.  Called from every connection thread; appends are
+ * serialised by the writer's lock, which is also held while a full block is
+ * written out.
+ *
+ * Results a client aggregated over an interval are stored as they arrived,
+ * with the non-empty buckets of their latency histogram, in INTERVALS
+ * blocks of their own, so an interval costs a few hundred bytes however
+ * many operations it counts.
+ *
+ * Results still in the buffer are lost if the server is killed.  Blocks
+ * already written can be read without the trailer.
+ */
+public class RunFileWriter implements Closeable {
+
+	private final File file;
+	private final FileChannel channel;
+	private final ByteBuffer header = ByteBuffer.allocate(RunFileFormat.BLOCK_HEADER);
+	private final ByteBuffer records = ByteBuffer.allocate(RunFileFormat.RECORD_SIZE * RunFileFormat.RECORDS_PER_BLOCK);
+	private final ByteBuffer intervals = ByteBuffer.allocate(RunFileFormat.INTERVAL_BLOCK);
+	private final ByteBuffer index = ByteBuffer.allocate(8 + RunFileFormat.INDEX_ENTRY * RunFileFormat.BLOCKS_PER_INDEX);
+	private final Map<String, Integer> clients = new HashMap<String, Integer>();
+	private final ByteArrayOutputStream namesBytes = new ByteArrayOutputStream();
+	private final DataOutputStream names = new DataOutputStream(namesBytes);
+
+	private long position;
+	private long minTimestamp = Long.MAX_VALUE;
+	private long maxTimestamp = Long.MIN_VALUE;
+	private long intervalMin = Long.MAX_VALUE;
+	private long intervalMax = Long.MIN_VALUE;
+	private int intervalCount;
+	private long lastIndex = -1;
+	private int indexEntries;
+	private long written;
+	private boolean closed;
+
+	final static Logger log = Logger.getLogger(RunFileWriter.class.getName());
+
+	/**
+	 * Create the run file, replacing any file of that name.
+	 */
+	public RunFileWriter(File file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer start = ByteBuffer.allocate(RunFileFormat.FILE_HEADER);
+		start.putLong(RunFileFormat.MAGIC).putInt(RunFileFormat.VERSION).putLong(System.currentTimeMillis()).putInt(0);
+		start.flip();
+		write(start);
+		index.putLong(lastIndex);
+	}
+
+	/**
+	 * @param name client name
+	 * @return the id the client's results are stored under, the same for
+	 * every call with the same name
+	 */
+	public synchronized int client(String name) throws IOException {
+		Integer id = clients.get(name);
+		if (id == null) {
+			if (clients.size() > 0xffff) {
+				throw new IOException("Too many clients for one run file");
+			}
+			id = clients.size();
+			clients.put(name, id);
+			names.writeShort(id);
+			names.writeUTF(name);
+		}
+		return id;
+	}
+
+	/**
+	 * Add a result for a client.
+	 *
+	 * @param client id from {@link #client(String)}
+	 */
+	public synchronized void append(int client, ChunkResult result) throws IOException {
+		if (closed) {
+			return;
+		}
+		put(client, result.getWorker(), result.getOperation().getCode(), result.getTimestamp(), result.getNanos(),
+				result.getChunkSize());
+	}
+
+	/**
+	 * Add the results a client aggregated over an interval.
+	 *
+	 * @param client id from {@link #client(String)}
+	 */
+	public synchronized void append(int client, IntervalResult interval) throws IOException {
+		if (closed || interval.getCount() == 0) {
+			return;
+		}
+		LatencyHistogram total = interval.getHistogram(IntervalResult.TOTAL);
+		int buckets = 0;
+		for (int i = 0; i < total.getBucketCount(); i++) {
+			if (total.getCountAt(i) != 0) {
+				buckets++;
+			}
+		}
+		long count = total.getCount();
+		if (intervals.remaining() < RunFileFormat.INTERVAL_HEADER + buckets * RunFileFormat.BUCKET_SIZE
+				|| intervalCount + count > Integer.MAX_VALUE) {
+			writeIntervals();
+		}
+		long timestamp = interval.getTimestamp();
+		intervals.putLong(timestamp);
+		intervals.putLong(interval.getStart());
+		intervals.putShort((short) client);
+		intervals.putShort((short) interval.getWorker());
+		intervals.put(interval.getOperation().getCode());
+		intervals.putLong(interval.getBytes());
+		intervals.putLong(total.getSum());
+		intervals.putLong(total.getMax());
+		intervals.putShort((short) buckets);
+		for (int i = 0; i < total.getBucketCount(); i++) {
+			long n = total.getCountAt(i);
+			if (n != 0) {
+				intervals.putShort((short) i);
+				intervals.putInt((int) n);
+			}
+		}
+		intervalMin = Math.min(intervalMin, timestamp);
+		intervalMax = Math.max(intervalMax, timestamp);
+		intervalCount += count;
+		written += count;
+	}
+
+	private void put(int client, int worker, byte operation, long timestamp, long nanos, int chunkSize)
+			throws IOException {
+		records.putLong(timestamp);
+		records.putLong(nanos);
+		records.putInt(chunkSize);
+		records.putShort((short) client);
+		records.putShort((short) worker);
+		records.put(operation);
+		minTimestamp = Math.min(minTimestamp, timestamp);
+		maxTimestamp = Math.max(maxTimestamp, timestamp);
+		written++;
+		if (!records.hasRemaining()) {
+			writeData();
+		}
+	}
+
+	/**
+	 * Write out the results collected so far, as a partial block.
+	 */
+	public synchronized void flush() throws IOException {
+		if (!closed) {
+			writeData();
+			writeIntervals();
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Write the remaining results, the last index and the trailer.
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			writeData();
+			writeIntervals();
+			writeNames();
+			writeIndex();
+			ByteBuffer trailer = ByteBuffer.allocate(RunFileFormat.TRAILER);
+			trailer.putLong(lastIndex).putLong(RunFileFormat.END_MAGIC);
+			trailer.flip();
+			write(trailer);
+			channel.force(true);
+		} finally {
+			closed = true;
+			channel.close();
+		}
+		log.info("Run file " + file + ": " + written + " results from " + clients.size() + " clients, "
+				+ position + " bytes");
+	}
+
+	/**
+	 * @return results appended so far
+	 */
+	public synchronized long getWritten() {
+		return written;
+	}
+
+	private void writeData() throws IOException {
+		writeNames();
+		if (records.position() == 0) {
+			return;
+		}
+		records.flip();
+		writeBlock(RunFileFormat.DATA, records.remaining() / RunFileFormat.RECORD_SIZE, records,
+				minTimestamp, maxTimestamp);
+		records.clear();
+		minTimestamp = Long.MAX_VALUE;
+		maxTimestamp = Long.MIN_VALUE;
+	}
+
+	private void writeIntervals() throws IOException {
+		writeNames();
+		if (intervals.position() == 0) {
+			return;
+		}
+		intervals.flip();
+		writeBlock(RunFileFormat.INTERVALS, intervalCount, intervals, intervalMin, intervalMax);
+		intervals.clear();
+		intervalMin = Long.MAX_VALUE;
+		intervalMax = Long.MIN_VALUE;
+		intervalCount = 0;
+	}
+
+	private void writeNames() throws IOException {
+		if (namesBytes.size() == 0) {
+			return;
+		}
+		ByteBuffer payload = ByteBuffer.wrap(namesBytes.toByteArray());
+		namesBytes.reset();
+		writeBlock(RunFileFormat.NAMES, 0, payload, 0, 0);
+	}
+
+	private void writeBlock(int type, int count, ByteBuffer payload, long min, long max) throws IOException {
+		long offset = position;
+		writeHeader(type, payload.remaining(), min, max);
+		write(payload);
+
+		index.putInt(type).putInt(count).putLong(offset).putLong(min).putLong(max);
+		if (++indexEntries == RunFileFormat.BLOCKS_PER_INDEX) {
+			writeIndex();
+		}
+	}
+
+	/**
+	 * Write the index of the blocks since the previous index.  The time
+	 * range in the header covers their data and intervals blocks.
+	 */
+	private void writeIndex() throws IOException {
+		if (indexEntries == 0 && lastIndex >= 0) {
+			return;
+		}
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < indexEntries; i++) {
+			int entry = 8 + i * RunFileFormat.INDEX_ENTRY;
+			int type = index.getInt(entry);
+			if (type == RunFileFormat.DATA || type == RunFileFormat.INTERVALS) {
+				min = Math.min(min, index.getLong(entry + 16));
+				max = Math.max(max, index.getLong(entry + 24));
+			}
+		}
+		long offset = position;
+		index.flip();
+		writeHeader(RunFileFormat.INDEX, index.remaining(), min, max);
+		write(index);
+		index.clear();
+		lastIndex = offset;
+		indexEntries = 0;
+		index.putLong(lastIndex);
+	}
+
+	private void writeHeader(int type, int length, long min, long max) throws IOException {
+		header.clear();
+		header.putInt(type).putInt(length).putLong(min).putLong(max);
+		header.flip();
+		write(header);
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package com.schmidt.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.LatencyHistogram;
+import com.schmidt.protocol.Operation;
+
+/**
+ * Reports throughput and latency percentiles from a run file, for the whole
+ * run or a time range, in total and per client, and optionally over time in
+ * fixed intervals.  The file is streamed through fixed size histograms, so
+ * runs of any length are reported in constant memory apart from one
+ * histogram per interval.
+ *
+ * <pre>
+ * java com.schmidt.server.store.RunReport -f run.sfr -b 60 -e 360 -i 30
+ * </pre>
+ */
+public class RunReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private static CommandLineParser parser = new DefaultParser();
+	private Options options = new Options();
+
+	private File file;
+	private double begin;
+	private double end = -1;
+	private String client;
+	private Operation operation;
+	private double interval;
+
+	private static class Totals {
+		final LatencyHistogram latency = new LatencyHistogram();
+		long bytes;
+
+		void add(ChunkResult result) {
+			latency.record(result.getNanos());
+			bytes += result.getChunkSize();
+		}
+
+		void add(IntervalResult interval) {
+			latency.add(interval.getHistogram(IntervalResult.TOTAL));
+			bytes += interval.getBytes();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		RunReport report = new RunReport();
+		report.processCLIArgs(args);
+		report.run();
+	}
+
+	/**
+	 * Use Apache command line parser to process arguments
+	 * @param args
+	 */
+	private void processCLIArgs(String[] args) {
+		options.addOption("h", false, "Display Help");
+		options.addOption("f", true, "Run file to report on.");
+		options.addOption("b", true, "Start of the range in seconds from the first result. Default 0");
+		options.addOption("e", true, "End of the range in seconds from the first result. Default the last result");
+		options.addOption("n", true, "Report only this client.");
+		options.addOption("o", true, "Report only this operation: write, read, verify or metadata. " +
+				"Default all but metadata.");
+		options.addOption("i", true, "Also report every interval of this many seconds.");
+
+		try {
+			CommandLine cmd = parser.parse(options, args);
+			if (cmd.hasOption("h") || !cmd.hasOption("f")) {
+				help();
+			}
+			file = new File(cmd.getOptionValue("f"));
+			if (cmd.hasOption("b")) {
+				begin = Double.valueOf(cmd.getOptionValue("b"));
+			}
+			if (cmd.hasOption("e")) {
+				end = Double.valueOf(cmd.getOptionValue("e"));
+			}
+			if (cmd.hasOption("n")) {
+				client = cmd.getOptionValue("n");
+			}
+			if (cmd.hasOption("o")) {
+				String label = cmd.getOptionValue("o").toLowerCase();
+				for (Operation op : Operation.values()) {
+					if (op.getLabel().equals(label)) {
+						operation = op;
+					}
+				}
+				if (operation == null) {
+					System.out.println("Operation must be write, read, verify or metadata");
+					help();
+				}
+			}
+			if (cmd.hasOption("i")) {
+				interval = Double.valueOf(cmd.getOptionValue("i"));
+			}
+		} catch (ParseException e) {
+			e.printStackTrace();
+		} catch (NumberFormatException ne) {
+			System.out.println("Numeric option expected");
+			help();
+		}
+	}
+
+	/**
+	 * Print help to CLI
+	 */
+	private void help() {
+		HelpFormatter formater = new HelpFormatter();
+		formater.printHelp("RunReport", options);
+		System.exit(0);
+	}
+
+	/**
+	 * Scan the file once and print the report.
+	 */
+	public void run() throws IOException {
+		RunFileReader reader = new RunFileReader(file);
+		try {
+			report(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void report(final RunFileReader reader) throws IOException {
+		DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
+		final long first = reader.getFirstTimestamp();
+		long last = reader.getLastTimestamp();
+		System.out.println("Run file:    " + file + (reader.isComplete() ? "" : " (not closed)"));
+		System.out.println("Created:     " + dateFormat.format(new Date(reader.getCreated())));
+		System.out.println("Results:     " + reader.getCount() + " from " + reader.getNames().size() + " clients");
+		if (first > last) {
+			return;
+		}
+		System.out.println("Duration:    " + String.format("%.1f", (last - first) / 1e9) + " secs");
+
+		final long from = first + (long) (begin * 1e9);
+		final long to = end < 0 ? last : first + (long) (end * 1e9);
+		final long step = (long) (interval * 1e9);
+		final int clientId = clientId(reader);
+
+		final Totals total = new Totals();
+		final Map<Integer, Totals> clients = new TreeMap<Integer, Totals>();
+		final List<Totals> intervals = new ArrayList<Totals>();
+
+		reader.scan(from, to, new RunFileReader.Visitor() {
+			public void result(int id, ChunkResult result) {
+				if (!selected(id, result.getOperation())) {
+					return;
+				}
+				total.add(result);
+				perClient(id).add(result);
+				if (step > 0) {
+					at(result.getTimestamp()).add(result);
+				}
+			}
+
+			public void interval(int id, IntervalResult interval) {
+				if (!selected(id, interval.getOperation())) {
+					return;
+				}
+				total.add(interval);
+				perClient(id).add(interval);
+				if (step > 0) {
+					at(interval.getTimestamp()).add(interval);
+				}
+			}
+
+			/**
+			 * Metadata operations carry no data and are only reported on
+			 * their own.
+			 */
+			private boolean selected(int id, Operation op) {
+				if (clientId >= 0 && id != clientId) {
+					return false;
+				}
+				return operation == null ? op != Operation.METADATA : op == operation;
+			}
+
+			private Totals perClient(int id) {
+				Totals perClient = clients.get(id);
+				if (perClient == null) {
+					perClient = new Totals();
+					clients.put(id, perClient);
+				}
+				return perClient;
+			}
+
+			/**
+			 * A result exactly at the end belongs to the last interval, and
+			 * a client's interval to the one its last operation fell in.
+			 */
+			private Totals at(long timestamp) {
+				int i = (int) Math.min((timestamp - from) / step, Math.max(0, to - from - 1) / step);
+				while (intervals.size() <= i) {
+					intervals.add(new Totals());
+				}
+				return intervals.get(i);
+			}
+		});
+
+		double secs = (to - from) / 1e9;
+		System.out.println("Range:       " + String.format("%.1f", begin) + "s to "
+				+ String.format("%.1f", (to - first) / 1e9) + "s");
+		System.out.println(format("Total", total, secs));
+		for (Map.Entry<Integer, Totals> entry : clients.entrySet()) {
+			System.out.println(format("Client " + reader.getName(entry.getKey()), entry.getValue(), secs));
+		}
+		for (int i = 0; i < intervals.size(); i++) {
+			double length = Math.min(interval, secs - i * interval);
+			System.out.println(format(String.format("At %.0fs", begin + i * interval), intervals.get(i), length));
+		}
+	}
+
+	/**
+	 * @return id of the client to report on, or -1 for all clients
+	 */
+	private int clientId(RunFileReader reader) {
+		if (client == null) {
+			return -1;
+		}
+		for (Map.Entry<Integer, String> entry : reader.getNames().entrySet()) {
+			if (entry.getValue().equals(client)) {
+				return entry.getKey();
+			}
+		}
+		System.out.println("No results from client " + client);
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * An empty range, from a single result or -b equal to -e, has no
+	 * rates, so only the counts are shown.
+	 */
+	private static String format(String label, Totals totals, double secs) {
+		LatencyHistogram latency = totals.latency;
+		StringBuilder sb = new StringBuilder();
+		sb.append(label).append(": ");
+		if (secs > 0) {
+			sb.append(String.format("%d ops %.1f ops/s %.2f MB/s latency ms", latency.getCount(),
+					latency.getCount() / secs, totals.bytes / secs / (1024 * 1024)));
+		} else {
+			sb.append(String.format("%d ops %d bytes latency ms", latency.getCount(), totals.bytes));
+		}
+		for (double p : PERCENTILES) {
+			sb.append(" p").append(p == (long) p ? String.valueOf((long) p) : String.valueOf(p));
+			sb.append(' ').append(String.format("%.3f", latency.getValueAtPercentile(p) / 1e6));
+		}
+		sb.append(" max ").append(String.format("%.3f", latency.getMax() / 1e6));
+		return sb.toString();
+	}
+}
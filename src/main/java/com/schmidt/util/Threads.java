@@ -0,0 +1,94 @@
+package com.schmidt.util;
+
+import java.lang.reflect.Method;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Starts the server handler and client worker threads.  By default these are
+ * ordinary platform threads.  When virtual threads are enabled and the
+ * running JDK provides them (JDK 21 and later) tasks are started on virtual
+ * threads instead, which lets blocking code such as the server handler scale
+ * to tens of thousands of connections.
+ *
+ * Virtual threads are looked up reflectively so the project still builds and
+ * runs on older JDKs, which fall back to platform threads.
+ */
+public final class Threads {
+
+	private static volatile boolean virtual;
+
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_START;
+
+	final static Logger log = Logger.getLogger(Threads.class.getName());
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method start = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class);
+			start = builder.getMethod("start", Runnable.class);
+		} catch (ReflectiveOperationException e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_START = start;
+	}
+
+	private Threads() {
+	}
+
+	/**
+	 * @return true if the running JDK supports virtual threads
+	 */
+	public static boolean isVirtualSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Select virtual threads for all tasks started after this call.  Logs a
+	 * warning and keeps platform threads if the JDK does not support them.
+	 */
+	public static void setVirtual(boolean enabled) {
+		if (enabled && !isVirtualSupported()) {
+			log.warn("Virtual threads need JDK 21 or later, running " +
+					System.getProperty("java.version") + ". Using platform threads.");
+			enabled = false;
+		}
+		virtual = enabled;
+	}
+
+	/**
+	 * @return true if tasks are started on virtual threads
+	 */
+	public static boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Start a task on a new thread of the configured kind.
+	 *
+	 * @param name thread name
+	 * @param task work to run
+	 * @return the started thread
+	 */
+	public static Thread start(String name, Runnable task) {
+		if (virtual) {
+			try {
+				Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+				return (Thread) BUILDER_START.invoke(builder, task);
+			} catch (ReflectiveOperationException e) {
+				log.error("Unable to start virtual thread, using platform thread", e);
+			}
+		}
+		Thread thread = new Thread(task, name);
+		thread.start();
+		return thread;
+	}
+}
@@ -0,0 +1,38 @@
+package com.schmidt;
+
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the client's server address option.
+ */
+public class ClientTest extends TestCase {
+
+	public void testServerAddress() {
+		assertAddress("server1", 9001, Client.parseServerAddress("server1"));
+		assertAddress("server1", 9100, Client.parseServerAddress("server1:9100"));
+		assertAddress("10.0.0.1", 9100, Client.parseServerAddress("10.0.0.1:9100"));
+		assertAddress("::1", 9001, Client.parseServerAddress("::1"));
+		assertAddress("::1", 9100, Client.parseServerAddress("[::1]:9100"));
+		assertAddress("::1", 9001, Client.parseServerAddress("[::1]"));
+	}
+
+	public void testBadPort() {
+		try {
+			Client.parseServerAddress("server1:http");
+			fail("Port must be a number");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			Client.parseServerAddress("server1:70000");
+			fail("Port must fit in 16 bits");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	private static void assertAddress(String host, int port, InetSocketAddress address) {
+		assertEquals(host, address.getHostString());
+		assertEquals(port, address.getPort());
+	}
+}
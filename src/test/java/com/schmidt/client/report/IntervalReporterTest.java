@@ -0,0 +1,126 @@
+package com.schmidt.client.report;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.Status;
+
+/**
+ * Unit test for aggregating chunk results over intervals.
+ */
+public class IntervalReporterTest extends TestCase {
+
+	private static final long SECOND = 1000000000L;
+	private static final long ORIGIN = 1000 * SECOND + 300;
+
+	private final List<String> sent = new ArrayList<String>();
+	private final IntervalTarget target = new IntervalTarget() {
+		public void interval(IntervalResult interval) {
+			sent.add(interval.getStart() - ORIGIN + " " + interval.getOperation() + " " + interval.getWorker() + " " +
+					interval.getCount() + " " + interval.getBytes() + " " + interval.getFiles() + " " +
+					interval.getMinNanos() + " " + interval.getHistogram(IntervalResult.TOTAL).getMax());
+		}
+
+		public void chunkResult(ChunkResult result) {
+			sent.add("chunk");
+		}
+
+		public void heartbeat(long timestamp) {
+		}
+
+		public void status(Status status) {
+		}
+
+		public void text(String line) {
+			sent.add("text " + line);
+		}
+
+		public void exit() {
+			sent.add("exit");
+		}
+	};
+
+	public void testOneMessagePerWorkerAndOperation() {
+		IntervalReporter reporter = new IntervalReporter(target, SECOND);
+		reporter.setOrigin(ORIGIN);
+		for (int i = 0; i < 1000; i++) {
+			reporter.chunkResult(result(ORIGIN + i * 1000, Operation.WRITE, 1, 100 + i, i % 100 == 99));
+			reporter.chunkResult(result(ORIGIN + i * 1000, Operation.WRITE, 2, 50, false));
+		}
+		reporter.chunkResult(result(ORIGIN + 5000, Operation.READ, 1, 70, false));
+		assertTrue(sent.isEmpty());
+
+		// the first result of the next interval sends the worker's previous one
+		reporter.chunkResult(result(ORIGIN + SECOND, Operation.WRITE, 1, 10, false));
+		assertEquals(2, sent.size());
+		assertEquals("0 WRITE 1 1000 4096000 10 100 1099", sent.get(0));
+		assertEquals("0 READ 1 1 4096 0 70 70", sent.get(1));
+
+		reporter.text("typed");
+		reporter.exit();
+		assertEquals("text typed", sent.get(2));
+		assertEquals(SECOND + " WRITE 1 1 4096 0 10 10", sent.get(3));
+		assertEquals("0 WRITE 2 1000 4096000 0 50 50", sent.get(4));
+		assertEquals("exit", sent.get(5));
+	}
+
+	/**
+	 * A worker that moves on does not close the interval of one still
+	 * finishing a chunk, and a result arriving after its own interval was
+	 * sent goes into the next one rather than sending that interval again.
+	 */
+	public void testOlderResultAfterNewer() {
+		IntervalReporter reporter = new IntervalReporter(target, SECOND);
+		reporter.setOrigin(ORIGIN);
+		reporter.chunkResult(result(ORIGIN + 10, Operation.WRITE, 0, 5, false));
+		reporter.chunkResult(result(ORIGIN + 20, Operation.WRITE, 1, 6, false));
+		reporter.chunkResult(result(ORIGIN + SECOND + 10, Operation.WRITE, 0, 7, false));
+		assertEquals(1, sent.size());
+		assertEquals("0 WRITE 0 1 4096 0 5 5", sent.get(0));
+
+		reporter.chunkResult(result(ORIGIN + SECOND - 10, Operation.WRITE, 1, 8, false));
+		reporter.chunkResult(result(ORIGIN + SECOND - 20, Operation.WRITE, 0, 9, false));
+		reporter.flush(ORIGIN + SECOND);
+		assertEquals(2, sent.size());
+		assertEquals("0 WRITE 1 2 8192 0 6 8", sent.get(1));
+
+		reporter.flush();
+		assertEquals(3, sent.size());
+		assertEquals(SECOND + " WRITE 0 2 8192 0 7 9", sent.get(2));
+	}
+
+	public void testFlushSendsOnlyEndedIntervals() {
+		IntervalReporter reporter = new IntervalReporter(target, SECOND);
+		reporter.setOrigin(ORIGIN);
+		reporter.chunkResult(result(ORIGIN + 3 * SECOND + 10, Operation.WRITE, 0, 5, false));
+		reporter.flush(ORIGIN + 4 * SECOND - 1);
+		assertTrue(sent.isEmpty());
+		reporter.flush(ORIGIN + 4 * SECOND);
+		assertEquals(1, sent.size());
+		assertEquals(3 * SECOND + " WRITE 0 1 4096 0 5 5", sent.get(0));
+		reporter.flush(ORIGIN + 9 * SECOND);
+		assertEquals(1, sent.size());
+
+		// results from before the origin fall in intervals aligned to it
+		reporter.chunkResult(result(ORIGIN - 1, Operation.WRITE, 1, 5, false));
+		reporter.flush();
+		assertEquals(-SECOND + " WRITE 1 1 4096 0 5 5", sent.get(1));
+	}
+
+	private static ChunkResult result(long timestamp, Operation operation, int worker, long nanos, boolean last) {
+		ChunkResult result = new ChunkResult();
+		result.setTimestamp(timestamp);
+		result.setOperation(operation);
+		result.setWorker(worker);
+		result.setChunkSize(4096);
+		result.setNanos(nanos);
+		result.setWriteNanos(nanos);
+		result.setLast(last);
+		return result;
+	}
+}
@@ -0,0 +1,74 @@
+package com.schmidt.client.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.Status;
+
+/**
+ * Unit test for sampling client resources.
+ */
+public class ResourceSamplerTest extends TestCase {
+
+	public void testProcIo() {
+		Status status = new Status();
+		ResourceSampler.parseProcIo(Arrays.asList("rchar: 100", "wchar: 200", "read_bytes: 4096",
+				"write_bytes: 8192", "cancelled_write_bytes: 0"), status);
+		assertEquals(4096, status.getIoReadBytes());
+		assertEquals(8192, status.getIoWriteBytes());
+	}
+
+	/**
+	 * Only whole disks count: partitions, loop devices and devices stacked
+	 * on other disks are left out.
+	 */
+	public void testDiskStats() throws IOException {
+		File sysBlock = Files.createTempDirectory("block").toFile();
+		File sda = new File(sysBlock, "sda");
+		File nvme = new File(sysBlock, "nvme0n1");
+		File dm = new File(sysBlock, "dm-0");
+		File dmSlave = new File(new File(dm, "slaves"), "sda");
+		File md = new File(sysBlock, "md0");
+		File mdSlaves = new File(md, "slaves");
+		sda.mkdir();
+		nvme.mkdir();
+		dmSlave.mkdirs();
+		mdSlaves.mkdirs();
+		try {
+			Status status = new Status();
+			ResourceSampler.parseDiskStats(Arrays.asList(
+					"   8       0 sda 100 0 1000 50 200 0 2000 80 0 500 130 0 0 0 0",
+					"   8       1 sda1 100 0 1000 50 200 0 2000 80 0 500 130 0 0 0 0",
+					" 259       0 nvme0n1 10 0 8 1 20 0 16 2 0 700 3",
+					" 253       0 dm-0 100 0 1000 50 200 0 2000 80 0 900 130 0 0 0 0",
+					"   7       0 loop0 5 0 10 0 0 0 0 0 0 4 0",
+					"   9       0 md0 1 0 4 0 1 0 4 0 0 1 0"), sysBlock, status);
+			assertEquals((1000 + 8 + 4) * 512, status.getDiskReadBytes());
+			assertEquals((2000 + 16 + 4) * 512, status.getDiskWriteBytes());
+			assertEquals(700, status.getDiskBusyMillis());
+		} finally {
+			dmSlave.delete();
+			new File(dm, "slaves").delete();
+			dm.delete();
+			mdSlaves.delete();
+			md.delete();
+			sda.delete();
+			nvme.delete();
+			sysBlock.delete();
+		}
+	}
+
+	public void testSample() {
+		Status status = new Status();
+		new ResourceSampler().sample(status);
+		assertTrue(status.getTimestamp() > 0);
+		assertTrue(status.getHeapUsed() > 0);
+		assertTrue(status.getTotalMemory() >= status.getHeapUsed());
+		assertTrue(status.getProcessors() > 0);
+		assertTrue(status.getGcCount() >= 0);
+	}
+}
@@ -0,0 +1,48 @@
+package com.schmidt.client.test;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.ChunkResult;
+
+/**
+ * Unit test for the open loop schedule.
+ */
+public class PacerTest extends TestCase {
+
+	public void testFixedSchedule() throws InterruptedException {
+		Pacer pacer = new Pacer(1000);
+		long first = pacer.await();
+		// fall behind by 20 intervals, the schedule must not slip
+		Thread.sleep(20);
+		long second = pacer.await();
+		long third = pacer.await();
+		assertEquals(1000000, second - first);
+		assertEquals(1000000, third - second);
+	}
+
+	public void testWaitsForSchedule() throws InterruptedException {
+		Pacer pacer = new Pacer(100);
+		long start = System.nanoTime();
+		pacer.await();
+		pacer.await();
+		pacer.await();
+		assertTrue(System.nanoTime() - start >= 20000000);
+	}
+
+	public void testMeasureFromScheduledStart() {
+		ChunkResult result = new ChunkResult();
+		result.setNanos(1000);
+		Pacer.measureFrom(System.nanoTime() - 5000000, result);
+		assertTrue(result.getNanos() >= 5000000);
+		assertEquals(result.getNanos() - 1000, result.getDelayNanos());
+	}
+
+	public void testRateMustBePositive() {
+		try {
+			new Pacer(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
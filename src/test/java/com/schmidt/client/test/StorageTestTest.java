@@ -0,0 +1,167 @@
+package com.schmidt.client.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.schmidt.client.report.Reporter;
+import com.schmidt.client.test.io.Engines;
+import com.schmidt.client.test.io.Payload;
+import com.schmidt.client.test.io.Preallocation;
+import com.schmidt.client.test.io.Verifier;
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.Status;
+import com.schmidt.protocol.TextFormat;
+
+/**
+ * Unit test for the write workload's file layouts.
+ */
+public class StorageTestTest extends TestCase {
+
+	private File directory;
+	private final AtomicInteger results = new AtomicInteger();
+	private final AtomicInteger verified = new AtomicInteger();
+	private final AtomicInteger metadata = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+	private final Reporter counter = new Reporter() {
+		public void chunkResult(ChunkResult result) {
+			if (result.getOperation() == Operation.VERIFY) {
+				verified.incrementAndGet();
+			} else if (result.getOperation() == Operation.METADATA) {
+				assertEquals(0, result.getChunkSize());
+				metadata.incrementAndGet();
+			} else {
+				results.incrementAndGet();
+			}
+		}
+
+		public void heartbeat(long timestamp) {
+		}
+
+		public void status(Status status) {
+		}
+
+		public void text(String line) {
+			if (line.startsWith(TextFormat.VERIFY_FAILED)) {
+				failures.incrementAndGet();
+			}
+		}
+
+		public void exit() {
+		}
+	};
+
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("layout").toFile();
+	}
+
+	protected void tearDown() {
+		directory.delete();
+	}
+
+	public void testLayoutFileNames() {
+		assertEquals("testfile_a.7", FileLayout.CREATE.file(null, "a", 7, 1).getName());
+		assertEquals("testfile_a", FileLayout.REWRITE.file(null, "a", 7, 1).getName());
+		assertEquals("testfile_a.3", FileLayout.POOL.file(null, "a", 7, 4).getName());
+		File tree = FileLayout.TREE.file(directory, "a", 4096 + 35, 4096);
+		assertEquals(new File(directory, "testtree_a/d3/d2/f35"), tree);
+		assertEquals(4, FileLayout.POOL.slots(4));
+		assertEquals(1, FileLayout.REWRITE.slots(4));
+	}
+
+	public void testPreallocation() throws IOException {
+		File file = new File(directory, "prealloc");
+		try {
+			Preallocation.SPARSE.apply(file, 100000);
+			assertEquals(100000, file.length());
+			file.delete();
+			Preallocation.FULL.apply(file, 3 * 1024 * 1024 + 5);
+			assertEquals(3 * 1024 * 1024 + 5, file.length());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Creating and deleting each file is reported on its own, never as
+	 * part of a chunk write.
+	 */
+	public void testCreateReportsMetadata() throws InterruptedException {
+		runLayout(FileLayout.CREATE, 3, Preallocation.NONE);
+		// two chunks, a create and a delete per file
+		assertTrue(metadata.get() >= results.get());
+		assertEquals(0, directory.list().length);
+	}
+
+	public void testTreeRemovedAtEnd() throws InterruptedException {
+		runLayout(FileLayout.TREE, 40, Preallocation.NONE);
+		assertEquals(0, directory.list().length);
+	}
+
+	public void testPoolRewrittenInPlaceAndRemoved() throws InterruptedException {
+		runLayout(FileLayout.POOL, 3, Preallocation.SPARSE);
+		assertEquals(0, directory.list().length);
+	}
+
+	public void testDeferredVerifyOfPool() throws InterruptedException {
+		Payload payload = Payload.parse("random", 3);
+		payload.setVerify(1);
+		StorageTest test = layoutTest(FileLayout.POOL, 3, Preallocation.NONE, payload);
+		test.setVerify(VerifyMode.DEFERRED, new Verifier(payload, 4096, false));
+		run(test, 3);
+		assertTrue(verified.get() > 0);
+		assertEquals(0, failures.get());
+		assertEquals(0, directory.list().length);
+	}
+
+	/**
+	 * Files written since their slot was last verified, here every file
+	 * since the pool is never filled, are read back when the test stops.
+	 */
+	public void testDeferredVerifyOfLastFiles() throws InterruptedException {
+		Payload payload = Payload.parse("random", 3);
+		payload.setVerify(1);
+		StorageTest test = layoutTest(FileLayout.POOL, 64, Preallocation.NONE, payload);
+		test.setVerify(VerifyMode.DEFERRED, new Verifier(payload, 4096, false));
+		run(test, 1);
+		// two chunks per complete file
+		assertTrue(verified.get() >= 2);
+		assertEquals(0, verified.get() % 2);
+		assertTrue(verified.get() <= results.get());
+		assertEquals(0, failures.get());
+		assertEquals(0, directory.list().length);
+	}
+
+	/**
+	 * Write small files until more than a full round of the layout's files
+	 * has been written, then stop the test.
+	 */
+	private void runLayout(FileLayout layout, int files, Preallocation preallocation) throws InterruptedException {
+		run(layoutTest(layout, files, preallocation, Payload.records()), files);
+	}
+
+	private StorageTest layoutTest(FileLayout layout, int files, Preallocation preallocation, Payload payload) {
+		StorageTest test = new StorageTest("a", 8192, 4096, 0, Engines.create(Engines.CHANNEL, 4096, false, payload),
+				counter);
+		test.setWorker(0, directory);
+		test.setPause(0);
+		test.setLayout(layout, files, preallocation);
+		return test;
+	}
+
+	private void run(StorageTest test, int files) throws InterruptedException {
+		Thread thread = new Thread(test);
+		thread.start();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (results.get() < files * 4 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		thread.interrupt();
+		thread.join();
+		assertTrue(results.get() >= files * 4);
+	}
+}
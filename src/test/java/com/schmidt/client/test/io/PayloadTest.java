@@ -0,0 +1,111 @@
+package com.schmidt.client.test.io;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the generated write payloads.
+ */
+public class PayloadTest extends TestCase {
+
+	private static final int CHUNK = 64 * 1024;
+
+	public void testSameSeedSameData() {
+		assertTrue(Arrays.equals(chunks(new Payload(2, 2, 7), 3), chunks(new Payload(2, 2, 7), 3)));
+		assertFalse(Arrays.equals(chunks(new Payload(2, 2, 7), 3), chunks(new Payload(2, 2, 8), 3)));
+	}
+
+	public void testCompressionRatio() {
+		assertEquals(1.0, compression(Payload.parse("random", 1)), 0.05);
+		assertEquals(2.0, compression(Payload.parse("2", 1)), 0.2);
+		assertEquals(4.0, compression(Payload.parse("4:1", 1)), 0.4);
+		assertTrue(compression(Payload.records()) > 20);
+	}
+
+	public void testDedupRatio() throws NoSuchAlgorithmException {
+		assertEquals(1.0, dedup(Payload.parse("random", 1)), 0.01);
+		assertEquals(2.0, dedup(Payload.parse("1:2", 1)), 0.05);
+		assertEquals(4.0, dedup(Payload.parse("2:4", 1)), 0.15);
+	}
+
+	public void testVerifyHeaders() {
+		Payload payload = Payload.parse("random", 1);
+		payload.setVerify(9);
+		payload.startFile(4, 2);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK);
+		payload.fill(buffer);
+		payload.next(buffer, CHUNK);
+		assertEquals(0, payload.check(buffer, CHUNK, 0, 4, 2));
+		payload.next(buffer, 10000);
+		assertEquals(0, payload.check(buffer, 10000, CHUNK, 4, 2));
+		assertEquals(3, payload.check(buffer, 10000, 0, 4, 2));
+		assertEquals(3, payload.check(buffer, 10000, CHUNK, 4, 1));
+		buffer.put(8200, (byte) (buffer.get(8200) ^ 0x80));
+		assertEquals(1, payload.check(buffer, 10000, CHUNK, 4, 2));
+		assertEquals("checksum mismatch at offset " + (CHUNK + 8192), payload.getError());
+		assertEquals(0, buffer.position());
+		assertEquals(CHUNK, buffer.limit());
+	}
+
+	public void testBadSpec() {
+		try {
+			Payload.parse("squashed", 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			Payload.parse("0.5:1", 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * @return the bytes of that many chunks as written
+	 */
+	private static byte[] chunks(Payload payload, int count) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK);
+		payload.fill(buffer);
+		byte[] data = new byte[CHUNK * count];
+		for (int i = 0; i < count; i++) {
+			payload.next(buffer, CHUNK);
+			buffer.clear();
+			buffer.get(data, i * CHUNK, CHUNK);
+		}
+		return data;
+	}
+
+	private static double compression(Payload payload) {
+		byte[] data = chunks(payload, 16);
+		Deflater deflater = new Deflater();
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] out = new byte[data.length + 1024];
+		int compressed = 0;
+		while (!deflater.finished()) {
+			compressed += deflater.deflate(out);
+		}
+		deflater.end();
+		return (double) data.length / compressed;
+	}
+
+	private static double dedup(Payload payload) throws NoSuchAlgorithmException {
+		byte[] data = chunks(payload, 200);
+		MessageDigest md5 = MessageDigest.getInstance("MD5");
+		Set<String> unique = new HashSet<String>();
+		for (int offset = 0; offset < data.length; offset += Payload.BLOCK) {
+			md5.update(data, offset, Payload.BLOCK);
+			unique.add(Arrays.toString(md5.digest()));
+		}
+		return (double) (data.length / Payload.BLOCK) / unique.size();
+	}
+}
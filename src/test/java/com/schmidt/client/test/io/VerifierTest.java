@@ -0,0 +1,110 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Operation;
+
+/**
+ * Unit test for reading back and checking files written with verification
+ * headers.
+ */
+public class VerifierTest extends TestCase {
+
+	private static final int CHUNK = 16 * 1024;
+	private static final int SIZE = 3 * CHUNK + 1000;
+
+	private File file;
+	private Payload payload;
+	private final ChunkResult result = new ChunkResult();
+	private String error;
+
+	protected void setUp() throws IOException {
+		file = File.createTempFile("verify", ".test");
+		payload = Payload.parse("2", 5);
+		payload.setVerify(42);
+	}
+
+	protected void tearDown() {
+		file.delete();
+	}
+
+	public void testIntactFile() throws IOException {
+		write(Engines.create(Engines.CHANNEL, CHUNK, false, payload), 3, 1);
+		assertEquals(0, readBack(3, 1));
+		assertEquals(Operation.VERIFY, result.getOperation());
+		write(Engines.create(Engines.MMAP, CHUNK, false, payload), 3, 2);
+		assertEquals(0, readBack(3, 2));
+	}
+
+	public void testCorruptByte() throws IOException {
+		write(Engines.create(Engines.CHANNEL, CHUNK, false, payload), 3, 1);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(CHUNK + 5000);
+			int b = raf.read();
+			raf.seek(CHUNK + 5000);
+			raf.write(b ^ 1);
+		} finally {
+			raf.close();
+		}
+		assertEquals(1, readBack(3, 1));
+		assertEquals("checksum mismatch at offset " + (CHUNK + 4096), error);
+	}
+
+	public void testStaleOrMisplacedData() throws IOException {
+		write(Engines.create(Engines.CHANNEL, CHUNK, false, payload), 3, 1);
+		assertEquals(SIZE / Payload.BLOCK + 1, readBack(3, 2));
+		assertEquals(SIZE / Payload.BLOCK + 1, readBack(4, 1));
+	}
+
+	public void testShortFile() throws IOException {
+		write(Engines.create(Engines.CHANNEL, CHUNK, false, payload), 3, 1);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(2 * CHUNK);
+		} finally {
+			raf.close();
+		}
+		assertEquals(5, readBack(3, 1));
+		assertEquals("file ends at offset " + 2 * CHUNK, error);
+	}
+
+	private void write(WriteEngine engine, long number, long sequence) throws IOException {
+		payload.startFile(number, sequence);
+		engine.open(file);
+		try {
+			for (int written = 0; written < SIZE; written += CHUNK) {
+				engine.write(Math.min(CHUNK, SIZE - written), result);
+			}
+		} finally {
+			engine.close();
+		}
+	}
+
+	/**
+	 * @return bad blocks in the whole file; the first is left in error
+	 */
+	private int readBack(long number, long sequence) throws IOException {
+		Verifier verifier = new Verifier(payload, CHUNK, false);
+		int bad = 0;
+		error = null;
+		verifier.open(file, number, sequence);
+		try {
+			for (int read = 0; read < SIZE; read += CHUNK) {
+				int chunk = verifier.read(Math.min(CHUNK, SIZE - read), result);
+				if (chunk > 0 && error == null) {
+					error = verifier.getError();
+				}
+				bad += chunk;
+			}
+		} finally {
+			verifier.close();
+		}
+		return bad;
+	}
+}
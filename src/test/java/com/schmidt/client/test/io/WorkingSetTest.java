@@ -0,0 +1,59 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Operation;
+
+/**
+ * Unit test for creating and running over a working set.
+ */
+public class WorkingSetTest extends TestCase {
+
+	private static final String NAME = "unittest";
+
+	protected void tearDown() {
+		for (int i = 0; i < 3; i++) {
+			new File("workset_" + NAME + "." + i).delete();
+		}
+	}
+
+	public void testReadsAndWrites() throws IOException {
+		WorkingSet set = new WorkingSet(null, NAME, 20000, 8192, 4096, false, false);
+		set.prepare(Engines.create(Engines.CHANNEL, 4096, false), 4096);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(8192, new File("workset_" + NAME + "." + i).length());
+		}
+
+		ChunkResult result = new ChunkResult();
+		set.open();
+		try {
+			// two blocks per file, three files, then wrap around
+			for (int i = 0; i < 7; i++) {
+				set.readSequential(result);
+				assertEquals(Operation.READ, result.getOperation());
+				assertEquals(4096, result.getChunkSize());
+			}
+			set.readRandom(result);
+			assertEquals(4096, result.getChunkSize());
+			set.writeRandom(result);
+			assertEquals(Operation.WRITE, result.getOperation());
+			assertEquals(4096, result.getChunkSize());
+		} finally {
+			set.close();
+		}
+		assertEquals(8192, new File("workset_" + NAME + ".0").length());
+	}
+
+	public void testBlockLargerThanFile() {
+		try {
+			new WorkingSet(null, NAME, 1000, 1000, 4096, false, false);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.schmidt.client.test.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.ChunkResult;
+
+/**
+ * Unit test for the write engines writing exact chunk sizes.
+ */
+public class WriteEngineTest extends TestCase {
+
+	public void testRecordsExactLength() {
+		assertEquals(0, Records.create(0).length());
+		assertEquals(10, Records.create(10).length());
+		assertEquals(4096, Records.create(4096).length());
+		assertTrue(Records.create(200).startsWith(Records.RECORD));
+	}
+
+	public void testChannelEngine() throws IOException {
+		assertWrites(Engines.create(Engines.CHANNEL, 4096, true));
+	}
+
+	public void testMmapEngine() throws IOException {
+		assertWrites(Engines.create(Engines.MMAP, 4096, true));
+	}
+
+	public void testStreamEngine() throws IOException {
+		assertWrites(Engines.create(Engines.STREAM, 4096, false));
+	}
+
+	/**
+	 * Direct writes are whole blocks, so the bytes written, and the file,
+	 * are rounded up.  Skipped where O_DIRECT is not available.
+	 */
+	public void testDirectRoundsUpLastChunk() throws IOException {
+		if (!DirectIO.isSupported()) {
+			return;
+		}
+		File file = File.createTempFile("engine", ".test");
+		ChunkResult result = new ChunkResult();
+		WriteEngine engine = new ChannelEngine(8192, false, true, Payload.records());
+		try {
+			try {
+				engine.open(file);
+			} catch (IOException e) {
+				// the temporary directory's file system does not do O_DIRECT
+				return;
+			}
+			int block = DirectIO.blockSize(file.toPath().toAbsolutePath().getParent());
+			engine.write(8192, result);
+			assertEquals(8192, result.getChunkSize());
+			engine.write(1000, result);
+			engine.close();
+			assertEquals(DirectIO.align(1000, block), result.getChunkSize());
+			assertEquals(8192 + result.getChunkSize(), file.length());
+		} finally {
+			engine.close();
+			file.delete();
+		}
+	}
+
+	public void testUnknownEngine() {
+		try {
+			Engines.create("carrier-pigeon", 4096, false);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private void assertWrites(WriteEngine engine) throws IOException {
+		File file = File.createTempFile("engine", ".test");
+		ChunkResult result = new ChunkResult();
+		try {
+			engine.open(file);
+			engine.write(4096, result);
+			engine.write(1000, result);
+			engine.close();
+			assertEquals(5096, file.length());
+			assertEquals(1000, result.getChunkSize());
+			assertTrue(result.getNanos() >= result.getWriteNanos());
+			assertEquals(Records.create(100),
+					new String(Files.readAllBytes(file.toPath()), "US-ASCII").substring(0, 100));
+
+			// engines are reused for the next file
+			engine.open(file);
+			engine.write(10, result);
+			engine.close();
+			assertEquals(10, file.length());
+
+			// overwriting in place keeps the rest of the file
+			engine.open(file);
+			engine.write(1000, result);
+			engine.close();
+			engine.overwrite(file);
+			engine.write(10, result);
+			engine.close();
+			assertEquals(1000, file.length());
+		} finally {
+			file.delete();
+		}
+	}
+}
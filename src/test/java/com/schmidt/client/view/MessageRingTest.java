@@ -0,0 +1,35 @@
+package com.schmidt.client.view;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the bounded message view.
+ */
+public class MessageRingTest extends TestCase {
+
+	public void testBelowCapacity() {
+		MessageRing ring = new MessageRing(3);
+		assertEquals("", ring.text());
+		ring.add("a");
+		ring.add("b");
+		assertEquals(2, ring.size());
+		assertEquals("a\nb\n", ring.text());
+	}
+
+	public void testOverwritesOldest() {
+		MessageRing ring = new MessageRing(3);
+		for (int i = 1; i <= 7; i++) {
+			ring.add("m" + i);
+		}
+		assertEquals(3, ring.size());
+		assertEquals("m5\nm6\nm7\n", ring.text());
+	}
+
+	public void testCapacity() {
+		try {
+			new MessageRing(0);
+			fail("Zero capacity accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
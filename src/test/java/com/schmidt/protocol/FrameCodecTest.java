@@ -0,0 +1,175 @@
+package com.schmidt.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for binary frame encoding and decoding.
+ */
+public class FrameCodecTest extends TestCase {
+
+	/**
+	 * Records decoded messages as strings
+	 */
+	private static class Recorder implements MessageHandler {
+		List<String> messages = new ArrayList<String>();
+
+		public void onHello(int version, String name) {
+			messages.add("hello " + version + " " + name);
+		}
+
+		public void onChunkResult(ChunkResult result) {
+			messages.add("chunk " + result.getTimestamp() + " " + result.getChunkSize() + " " +
+					result.isLast() + " " + result.getNanos() + " " + result.getWriteNanos() + " " +
+					result.getFlushNanos() + " " + result.getSyncNanos() + " " + result.getOperation() +
+					" " + result.getWorker() + " " + result.getDelayNanos());
+		}
+
+		public void onInterval(IntervalResult interval) {
+			LatencyHistogram total = interval.getHistogram(IntervalResult.TOTAL);
+			LatencyHistogram fsync = interval.getHistogram(IntervalResult.FSYNC);
+			messages.add("interval " + interval.getStart() + " " + interval.getTimestamp() + " " +
+					interval.getOperation() + " " + interval.getWorker() + " " + interval.getCount() + " " +
+					interval.getBytes() + " " + interval.getFiles() + " " + interval.getMinNanos() + " " +
+					total.getCount() + " " + total.getSum() + " " + total.getMax() + " " +
+					interval.getHistogram(IntervalResult.SERVICE).getCount() + " " + fsync.getCount() + " " +
+					fsync.getValueAtPercentile(100) + " " + interval.getHistogram(IntervalResult.DELAY).getCount());
+		}
+
+		public void onHeartbeat(long timestamp) {
+			messages.add("heartbeat " + timestamp);
+		}
+
+		public void onStatus(Status status) {
+			messages.add("status " + status.getTimestamp() + " " + status.getTotalMemory() + " " +
+					status.getCpuNanos() + " " + status.getProcessors() + " " + status.getSystemLoad() + " " +
+					status.getGcNanos() + " " + status.getDiskBusyMillis());
+		}
+
+		public void onText(String line) {
+			messages.add("text " + line);
+		}
+
+		public void onExit() {
+			messages.add("exit");
+		}
+
+		public void onJoin(int id, String name) {
+			messages.add("join " + id + " " + name);
+		}
+
+		public void onClient(int id) {
+			messages.add("client " + id);
+		}
+	}
+
+	private ByteBuffer encodeAll() {
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		FrameEncoder.hello(buffer, "client1");
+		ChunkResult result = new ChunkResult();
+		result.setTimestamp(1234567890123456789L);
+		result.setChunkSize(10485760);
+		result.setLast(true);
+		result.setNanos(987654321L);
+		result.setWriteNanos(900000000L);
+		result.setFlushNanos(80000000L);
+		result.setSyncNanos(7654321L);
+		FrameEncoder.chunkResult(buffer, result);
+		result.setOperation(Operation.READ);
+		result.setWorker(40000);
+		result.setDelayNanos(5000L);
+		FrameEncoder.chunkResult(buffer, result);
+		IntervalResult interval = new IntervalResult();
+		interval.setOperation(Operation.WRITE);
+		interval.setWorker(3);
+		interval.reset(1000000000L);
+		result.setOperation(Operation.WRITE);
+		result.setDelayNanos(0);
+		result.setTimestamp(1500000000L);
+		interval.record(result);
+		result.setLast(false);
+		result.setNanos(1000L);
+		result.setTimestamp(1200000000L);
+		interval.record(result);
+		FrameEncoder.interval(buffer, interval);
+		FrameEncoder.heartbeat(buffer, 42L);
+		Status status = new Status();
+		status.setTimestamp(7L);
+		status.setTotalMemory(1024L);
+		status.setCpuNanos(5000000000L);
+		status.setProcessors(8);
+		status.setSystemLoad(1.5);
+		status.setGcNanos(3000000L);
+		status.setDiskBusyMillis(900L);
+		FrameEncoder.status(buffer, status);
+		FrameEncoder.text(buffer, "h\u00e9llo");
+		FrameEncoder.join(buffer, 70000, "client1-2");
+		FrameEncoder.client(buffer, 70000);
+		FrameEncoder.exit(buffer);
+		buffer.flip();
+		return buffer;
+	}
+
+	private List<String> expected() {
+		List<String> expected = new ArrayList<String>();
+		expected.add("hello " + Protocol.VERSION + " client1");
+		expected.add("chunk 1234567890123456789 10485760 true 987654321 900000000 80000000 7654321 WRITE 0 0");
+		expected.add("chunk 1234567890123456789 10485760 true 987654321 900000000 80000000 7654321 READ 40000 5000");
+		expected.add("interval 1000000000 1500000000 WRITE 3 2 20971520 1 1000 2 987655321 987654321 2 2 7654321 0");
+		expected.add("heartbeat 42");
+		expected.add("status 7 1024 5000000000 8 1.5 3000000 900");
+		expected.add("text h\u00e9llo");
+		expected.add("join 70000 client1-2");
+		expected.add("client 70000");
+		expected.add("exit");
+		return expected;
+	}
+
+	public void testDecodeWholeBuffer() throws ProtocolException {
+		Recorder recorder = new Recorder();
+		new FrameDecoder(recorder).decode(encodeAll());
+		assertEquals(expected(), recorder.messages);
+	}
+
+	public void testDecodeOneByteAtATime() throws ProtocolException {
+		Recorder recorder = new Recorder();
+		FrameDecoder decoder = new FrameDecoder(recorder);
+		ByteBuffer all = encodeAll();
+		while (all.hasRemaining()) {
+			decoder.decode(ByteBuffer.wrap(new byte[] { all.get() }));
+		}
+		assertEquals(expected(), recorder.messages);
+	}
+
+	/**
+	 * A status from a client that sends only the timestamp and memory
+	 */
+	public void testShortStatus() throws ProtocolException {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.putShort((short) 17).put(MessageType.STATUS.getCode()).putLong(7L).putLong(1024L);
+		buffer.flip();
+		Recorder recorder = new Recorder();
+		new FrameDecoder(recorder).decode(buffer);
+		assertEquals("status 7 1024 -1 -1 -1.0 -1 -1", recorder.messages.get(0));
+	}
+
+	public void testUnknownTypeRejected() {
+		try {
+			new FrameDecoder(new Recorder()).decode(ByteBuffer.wrap(new byte[] { 0, 1, 99 }));
+			fail("Expected ProtocolException");
+		} catch (ProtocolException e) {
+		}
+	}
+
+	public void testTruncatedFrameRejected() {
+		try {
+			new FrameDecoder(new Recorder()).decode(ByteBuffer.wrap(new byte[] { 0, 2, 3, 0 }));
+			fail("Expected ProtocolException");
+		} catch (ProtocolException e) {
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.schmidt.protocol;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the latency histogram.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue("expected " + expected + " got " + actual,
+				Math.abs(actual - expected) <= expected / 32 + 1);
+	}
+
+	public void testBucketsCoverEveryValue() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		long previous = -1;
+		for (int i = 0; i < histogram.getBucketCount(); i++) {
+			long limit = histogram.getBucketLimit(i);
+			assertTrue(limit > previous);
+			previous = limit;
+		}
+		assertEquals(LatencyHistogram.MAX_VALUE, previous);
+	}
+
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000);
+		}
+		assertEquals(10000, histogram.getCount());
+		assertWithin(5000000, histogram.getValueAtPercentile(50));
+		assertWithin(9900000, histogram.getValueAtPercentile(99));
+		assertWithin(9990000, histogram.getValueAtPercentile(99.9));
+		assertEquals(10000000, histogram.getMax());
+		assertEquals(10000000, histogram.getValueAtPercentile(100));
+		assertEquals(5000500.0, histogram.getMean(), 0.1);
+	}
+
+	public void testDifferenceOfSnapshots() {
+		LatencyHistogram live = new LatencyHistogram();
+		LatencyHistogram earlier = new LatencyHistogram();
+		LatencyHistogram later = new LatencyHistogram();
+		LatencyHistogram interval = new LatencyHistogram();
+
+		live.record(1000);
+		live.record(2000);
+		earlier.copyFrom(live);
+		live.record(1000000);
+		later.copyFrom(live);
+
+		interval.setToDifference(later, earlier);
+		assertEquals(1, interval.getCount());
+		assertWithin(1000000, interval.getValueAtPercentile(50));
+		assertWithin(1000000, interval.getMax());
+	}
+
+	public void testAddAndReset() {
+		LatencyHistogram a = new LatencyHistogram();
+		LatencyHistogram b = new LatencyHistogram();
+		a.record(10);
+		b.record(20);
+		b.record(30);
+		a.add(b);
+		assertEquals(3, a.getCount());
+		assertEquals(30, a.getMax());
+		a.reset();
+		assertEquals(0, a.getCount());
+		assertEquals(0, a.getValueAtPercentile(50));
+	}
+
+	public void testOutOfRangeValuesClamped() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+	}
+}
@@ -0,0 +1,51 @@
+package com.schmidt.protocol;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the STARTTEST line.
+ */
+public class TestStartTest extends TestCase {
+
+	public void testRoundTrip() {
+		TestStart start = new TestStart();
+		start.setStartMillis(1476000000000L);
+		start.setDurationSeconds(60);
+		start.getOptions().put("c", "1048576");
+		start.getOptions().put("y", "");
+
+		TestStart parsed = TestStart.parse(start.toLine());
+		assertEquals(1476000000000L, parsed.getStartMillis());
+		assertEquals(60, parsed.getDurationSeconds());
+		assertEquals("1048576", parsed.getOptions().get("c"));
+		assertEquals("", parsed.getOptions().get("y"));
+		assertEquals(2, parsed.getOptions().size());
+	}
+
+	public void testStartByClientClock() {
+		TestStart start = new TestStart();
+		start.setStartMillis(1476000002000L);
+		start.setNowMillis(1476000000000L);
+		TestStart parsed = TestStart.parse(start.toLine());
+		assertEquals(1476000000000L, parsed.getNowMillis());
+		assertTrue(parsed.getOptions().isEmpty());
+		// client clock 5 s behind the server
+		assertEquals(1475999997000L, parsed.getLocalStartMillis(1475999995000L));
+		assertEquals(0, TestStart.parse(Protocol.START_TEST).getLocalStartMillis(1475999995000L));
+	}
+
+	public void testPlainStart() {
+		TestStart parsed = TestStart.parse(Protocol.START_TEST);
+		assertEquals(0, parsed.getStartMillis());
+		assertEquals(0, parsed.getDurationSeconds());
+		assertTrue(parsed.getOptions().isEmpty());
+	}
+
+	public void testOtherLineRejected() {
+		try {
+			TestStart.parse("MESSAGE hello");
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.schmidt.server.broadcast;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the per client outbound queue.
+ */
+public class OutboundQueueTest extends TestCase {
+
+	private final AtomicInteger closed = new AtomicInteger();
+	private final AtomicInteger signals = new AtomicInteger();
+
+	private OutboundQueue queue(int capacity, SlowConsumerPolicy policy) {
+		return new OutboundQueue(capacity, policy, new Closeable() {
+			public void close() {
+				closed.incrementAndGet();
+			}
+		}, new Runnable() {
+			public void run() {
+				signals.incrementAndGet();
+			}
+		});
+	}
+
+	public void testDropPolicyKeepsConnection() {
+		OutboundQueue queue = queue(2, SlowConsumerPolicy.DROP);
+		assertTrue(queue.offer("a"));
+		assertTrue(queue.offer("b"));
+		assertFalse(queue.offer("c"));
+		assertFalse(queue.offer("d"));
+		assertEquals(2, queue.size());
+		assertEquals(2, queue.getDropped());
+		assertEquals(2, signals.get());
+		assertEquals(0, closed.get());
+	}
+
+	public void testDisconnectPolicyClosesOnce() {
+		OutboundQueue queue = queue(1, SlowConsumerPolicy.DISCONNECT);
+		assertTrue(queue.offer("a"));
+		assertFalse(queue.offer("b"));
+		assertFalse(queue.offer("c"));
+		assertEquals(2, queue.getDropped());
+		assertEquals(1, closed.get());
+	}
+
+	public void testControlLinesNeverDroppedAndFirst() {
+		for (SlowConsumerPolicy policy : SlowConsumerPolicy.values()) {
+			closed.set(0);
+			OutboundQueue queue = queue(2, policy);
+			queue.offer("MESSAGE a: 1");
+			queue.offer("MESSAGE a: 2");
+			assertFalse(queue.offer("MESSAGE a: 3"));
+			queue.offerControl("STARTTEST");
+			queue.offerControl("STOPTEST");
+			assertEquals(4, queue.size());
+
+			List<String> batch = new ArrayList<String>();
+			assertEquals(3, queue.drainTo(batch, 3));
+			assertEquals(Arrays.asList("STARTTEST", "STOPTEST", "MESSAGE a: 1"), batch);
+			assertEquals(1, queue.size());
+			assertEquals(1, queue.getDropped());
+			assertEquals(policy == SlowConsumerPolicy.DISCONNECT ? 1 : 0, closed.get());
+		}
+	}
+
+	public void testTakeWakesForControlLine() throws InterruptedException {
+		final OutboundQueue queue = queue(1, SlowConsumerPolicy.DROP);
+		final String[] taken = new String[1];
+		Thread taker = new Thread(new Runnable() {
+			public void run() {
+				try {
+					taken[0] = queue.take();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		taker.start();
+		Thread.sleep(50);
+		queue.offerControl("STOPTEST");
+		taker.join(5000);
+		assertEquals("STOPTEST", taken[0]);
+		assertTrue(queue.isEmpty());
+	}
+}
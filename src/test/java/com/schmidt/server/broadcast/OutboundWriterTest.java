@@ -0,0 +1,91 @@
+package com.schmidt.server.broadcast;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the blocking outbound writer.
+ */
+public class OutboundWriterTest extends TestCase {
+
+	/**
+	 * Counts flushes that have new data to send, which are the writes to
+	 * the socket.
+	 */
+	private static class CountingWriter extends StringWriter {
+		int flushes;
+		private int flushed;
+
+		public void flush() {
+			if (getBuffer().length() > flushed) {
+				flushed = getBuffer().length();
+				flushes++;
+			}
+		}
+	}
+
+	private static Thread start(OutboundWriter writer) {
+		Thread thread = new Thread(writer, "outbound-test");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private static void awaitLines(CountingWriter out, int lines) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < deadline) {
+			synchronized (out.getBuffer()) {
+				if (out.toString().split("\n", -1).length > lines) {
+					return;
+				}
+			}
+			Thread.sleep(10);
+		}
+		fail("Only got " + out);
+	}
+
+	public void testQueuedLinesWrittenInBatches() throws InterruptedException {
+		OutboundQueue queue = new OutboundQueue(1024, SlowConsumerPolicy.DROP, null, null);
+		for (int i = 0; i < 300; i++) {
+			queue.offer("MESSAGE a: " + i);
+		}
+		queue.offerControl("STOPTEST");
+		CountingWriter out = new CountingWriter();
+		Thread thread = start(new OutboundWriter(queue, new PrintWriter(out)));
+		awaitLines(out, 301);
+		thread.interrupt();
+		thread.join(5000);
+
+		String[] lines = out.toString().split(System.lineSeparator());
+		assertEquals(301, lines.length);
+		assertEquals("STOPTEST", lines[0]);
+		assertEquals("MESSAGE a: 0", lines[1]);
+		assertEquals("MESSAGE a: 299", lines[300]);
+		// 301 lines at most 256 per flush
+		assertEquals(2, out.flushes);
+	}
+
+	public void testStopsWhenWriteFails() throws InterruptedException {
+		OutboundQueue queue = new OutboundQueue(16, SlowConsumerPolicy.DROP, null, null);
+		queue.offerControl("SUBMITNAME");
+		Writer broken = new Writer() {
+			public void write(char[] buffer, int offset, int length) throws IOException {
+				throw new IOException("closed");
+			}
+
+			public void flush() throws IOException {
+				throw new IOException("closed");
+			}
+
+			public void close() {
+			}
+		};
+		Thread thread = start(new OutboundWriter(queue, new PrintWriter(broken)));
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+	}
+}
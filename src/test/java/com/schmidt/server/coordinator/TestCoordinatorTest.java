@@ -0,0 +1,118 @@
+package com.schmidt.server.coordinator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.TestStart;
+import com.schmidt.server.broadcast.OutboundQueue;
+import com.schmidt.server.broadcast.SlowConsumerPolicy;
+import com.schmidt.server.domain.Client;
+import com.schmidt.server.registry.ClientRegistry;
+import com.schmidt.server.stats.ResultAggregator;
+
+/**
+ * Unit test for the test coordinator.
+ */
+public class TestCoordinatorTest extends TestCase {
+
+	private ClientRegistry registry = new ClientRegistry();
+	private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private TestCoordinator coordinator;
+
+	protected void setUp() {
+		TestStart options = new TestStart();
+		options.getOptions().put("c", "4096");
+		coordinator = new TestCoordinator(registry, new ResultAggregator(10, 6), 2, 60, options, scheduler);
+	}
+
+	protected void tearDown() {
+		coordinator.shutdown();
+		scheduler.shutdownNow();
+	}
+
+	public void testStartsWhenAllClientsRegistered() throws InterruptedException {
+		Client a = register("a");
+		assertFalse(coordinator.isStarted());
+		assertTrue(a.getOutbound().isEmpty());
+
+		Client b = register("b");
+		assertTrue(coordinator.isStarted());
+		TestStart start = TestStart.parse(a.getOutbound().take());
+		assertEquals(60, start.getDurationSeconds());
+		assertEquals("4096", start.getOptions().get("c"));
+		assertEquals(start.toLine(), b.getOutbound().take());
+	}
+
+	public void testOnlyAcceptsParticipantsInsideWindow() {
+		register("a");
+		register("b");
+		long start = coordinator.getStartNanos();
+		assertTrue(coordinator.accepts("a", start + 1));
+		assertFalse(coordinator.accepts("a", start - 1));
+		assertFalse(coordinator.accepts("a", start + 61 * 1000000000L));
+
+		Client late = register("c");
+		assertFalse(coordinator.accepts("c", start + 1));
+		assertEquals(1, late.getOutbound().size());
+	}
+
+	public void testStartCarriesServerClock() throws InterruptedException {
+		Client a = register("a");
+		register("b");
+		TestStart start = TestStart.parse(a.getOutbound().take());
+		assertTrue(start.getNowMillis() > 0);
+		assertEquals(TestCoordinator.START_DELAY_MILLIS, start.getStartMillis() - start.getNowMillis(), 100);
+	}
+
+	/**
+	 * Result timestamps are corrected by the offset estimated from
+	 * heartbeats, which logical clients share with their parent.
+	 */
+	public void testClockOffsetFromHeartbeats() {
+		Client a = register("a");
+		Client logical = new Client("a-2");
+		logical.setParent(a);
+		assertEquals(0, logical.getClockOffset());
+		// a's clock is 10 s ahead, the second heartbeat took less time
+		a.clockSample(1500, 10000001000L);
+		a.clockSample(6100, 10000006000L);
+		a.clockSample(11900, 10000011000L);
+		assertEquals(-9999999900L, a.getClockOffset());
+		assertEquals(-9999999900L, logical.getClockOffset());
+	}
+
+	/**
+	 * A logical client counts towards the expected clients and takes part,
+	 * but is started through its parent's connection.
+	 */
+	public void testLogicalClientTakesPart() {
+		Client a = register("a");
+		Client logical = new Client("a-2");
+		logical.setParent(a);
+		registry.add(logical);
+		coordinator.clientRegistered(logical);
+
+		assertTrue(coordinator.isStarted());
+		assertEquals(1, a.getOutbound().size());
+		long start = coordinator.getStartNanos();
+		assertTrue(coordinator.accepts("a-2", start + 1));
+	}
+
+	private Client register(String name) {
+		Client client = new Client(name);
+		client.setOutbound(new OutboundQueue(16, SlowConsumerPolicy.DROP, new Closeable() {
+			public void close() throws IOException {
+			}
+		}, new Runnable() {
+			public void run() {
+			}
+		}));
+		registry.add(client);
+		coordinator.clientRegistered(client);
+		return client;
+	}
+}
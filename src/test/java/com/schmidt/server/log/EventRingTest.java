@@ -0,0 +1,83 @@
+package com.schmidt.server.log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the message ring.
+ */
+public class EventRingTest extends TestCase {
+
+	private final List<String> drained = new ArrayList<String>();
+	private final EventRing.Handler collect = new EventRing.Handler() {
+		public void event(long timeMillis, String name, String line) {
+			drained.add(timeMillis + " " + name + " " + line);
+		}
+	};
+
+	public void testCapacityRoundedUp() {
+		assertEquals(2, new EventRing(1).capacity());
+		assertEquals(4, new EventRing(4).capacity());
+		assertEquals(8, new EventRing(5).capacity());
+	}
+
+	public void testFullRingRefusesAndWrapsInOrder() {
+		EventRing ring = new EventRing(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(ring.offer(i, "a", "line" + i));
+		}
+		assertFalse(ring.offer(4, "a", "line4"));
+		assertEquals(3, ring.drain(collect, 3));
+		assertTrue(ring.offer(5, "b", "line5"));
+		assertEquals(2, ring.drain(collect, 10));
+		assertEquals(0, ring.drain(collect, 10));
+		assertEquals("[0 a line0, 1 a line1, 2 a line2, 3 a line3, 5 b line5]", drained.toString());
+	}
+
+	public void testConcurrentProducers() throws InterruptedException {
+		final EventRing ring = new EventRing(1024);
+		final int perThread = 20000;
+		Thread[] producers = new Thread[4];
+		for (int t = 0; t < producers.length; t++) {
+			final String name = "p" + t;
+			producers[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perThread; i++) {
+						while (!ring.offer(i, name, "")) {
+							Thread.yield();
+						}
+					}
+				}
+			});
+			producers[t].start();
+		}
+
+		final Set<String> seen = new HashSet<String>();
+		final int[] next = new int[producers.length];
+		EventRing.Handler check = new EventRing.Handler() {
+			public void event(long timeMillis, String name, String line) {
+				int producer = Integer.parseInt(name.substring(1));
+				assertEquals(next[producer]++, timeMillis);
+				seen.add(name + " " + timeMillis);
+			}
+		};
+		int total = producers.length * perThread;
+		int count = 0;
+		while (count < total) {
+			int n = ring.drain(check, 100);
+			if (n == 0) {
+				Thread.yield();
+			}
+			count += n;
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		assertEquals(total, seen.size());
+		assertEquals(0, ring.drain(check, 100));
+	}
+}
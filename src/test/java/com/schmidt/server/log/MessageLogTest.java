@@ -0,0 +1,77 @@
+package com.schmidt.server.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Unit test for the background message log.
+ */
+public class MessageLogTest extends TestCase {
+
+	private final List<LoggingEvent> events = new ArrayList<LoggingEvent>();
+	private Logger target;
+
+	protected void setUp() {
+		target = Logger.getLogger("test.messages");
+		target.setAdditivity(false);
+		target.addAppender(new AppenderSkeleton() {
+			protected void append(LoggingEvent event) {
+				events.add(event);
+			}
+
+			public boolean requiresLayout() {
+				return false;
+			}
+
+			public void close() {
+			}
+		});
+	}
+
+	protected void tearDown() {
+		target.removeAllAppenders();
+	}
+
+	public void testNothingQueuedAboveDebug() {
+		target.setLevel(Level.INFO);
+		MessageLog messages = new MessageLog(target, 4);
+		assertFalse(messages.isEnabled());
+		messages.received("a", "hello");
+		assertEquals(0, messages.drain());
+	}
+
+	public void testWritesWithReceivedTimeAndCountsDrops() {
+		target.setLevel(Level.DEBUG);
+		MessageLog messages = new MessageLog(target, 2);
+		long before = System.currentTimeMillis();
+		messages.received("a", "one");
+		messages.received("b", "two");
+		messages.received("c", "three");
+		assertEquals(1, messages.getDropped());
+
+		messages.close();
+		assertEquals(2, events.size());
+		assertEquals("Message Recieved from: a Msg: one", events.get(0).getMessage());
+		assertEquals(Level.DEBUG, events.get(1).getLevel());
+		assertTrue(events.get(0).getTimeStamp() >= before);
+	}
+
+	public void testWriterDrainsInBackground() throws InterruptedException {
+		target.setLevel(Level.DEBUG);
+		MessageLog messages = new MessageLog(target, 1024);
+		messages.start();
+		for (int i = 0; i < 1000; i++) {
+			messages.received("a", String.valueOf(i));
+		}
+		messages.close();
+		assertEquals(1000, events.size());
+		assertEquals("Message Recieved from: a Msg: 999", events.get(999).getMessage());
+	}
+}
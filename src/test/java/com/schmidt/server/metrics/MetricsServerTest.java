@@ -0,0 +1,66 @@
+package com.schmidt.server.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Operation;
+import com.schmidt.server.registry.ClientRegistry;
+import com.schmidt.server.stats.ClientStats;
+import com.schmidt.server.stats.ResultAggregator;
+
+/**
+ * Unit test for the metrics endpoint.
+ */
+public class MetricsServerTest extends TestCase {
+
+	private ServerMetrics metrics = new ServerMetrics();
+	private ResultAggregator aggregator = new ResultAggregator(10, 6);
+	private MetricsServer server;
+
+	protected void setUp() throws IOException {
+		server = new MetricsServer(0, new ClientRegistry(), aggregator, metrics);
+		ClientStats stats = aggregator.join("a\"1");
+		ChunkResult result = new ChunkResult();
+		result.setOperation(Operation.WRITE);
+		result.setChunkSize(4096);
+		for (int i = 1; i <= 100; i++) {
+			result.setNanos(i * 100000L);
+			result.setWriteNanos(i * 100000L);
+			stats.record(result);
+			metrics.resultRecorded();
+		}
+	}
+
+	protected void tearDown() {
+		server.stop();
+	}
+
+	public void testPrometheus() {
+		String text = server.prometheus();
+		assertTrue(text.contains("storagetest_results_total 100\n"));
+		assertTrue(text.contains("storagetest_client_bytes_total{client=\"a\\\"1\"} 409600\n"));
+		// 100 us to 10 ms in steps of 100 us: 2 samples up to 250 us
+		assertTrue(text.contains("storagetest_client_latency_seconds_bucket{client=\"a\\\"1\",phase=\"latency\",le=\"0.00025\"} 2\n"));
+		assertTrue(text.contains("storagetest_client_latency_seconds_bucket{client=\"a\\\"1\",phase=\"write\",le=\"+Inf\"} 100\n"));
+		assertFalse(text.contains("phase=\"read\""));
+	}
+
+	public void testJsonOverHttp() throws IOException {
+		server.start();
+		URL url = new URL("http://localhost:" + server.getPort() + "/metrics.json");
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		assertEquals(200, connection.getResponseCode());
+		InputStream in = connection.getInputStream();
+		String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		in.close();
+		assertTrue(body.startsWith("{\"started\":"));
+		assertTrue(body.contains("\"results\":100"));
+		assertTrue(body.contains("\"name\":\"a\\\"1\",\"bytes\":409600,\"operations\":100"));
+	}
+}
@@ -0,0 +1,123 @@
+package com.schmidt.server.nio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.schmidt.Server;
+
+/**
+ * Loopback test of the NIO server: registration, echo and close.
+ */
+public class NioServerTest extends TestCase {
+
+	private NioServer server;
+
+	protected void setUp() throws IOException {
+		server = new NioServer(0, 1);
+		server.bind();
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					server.serve();
+				} catch (IOException e) {
+					// Listener closed by tearDown
+				}
+			}
+		}, "nio-test-acceptor");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	protected void tearDown() throws IOException {
+		server.close();
+	}
+
+	private static class TestClient {
+		final Socket socket;
+		final BufferedReader in;
+		final PrintWriter out;
+
+		TestClient(int port) throws IOException {
+			socket = new Socket("localhost", port);
+			socket.setSoTimeout(5000);
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			out = new PrintWriter(socket.getOutputStream(), true);
+		}
+
+		void register(String name) throws IOException {
+			assertEquals("SUBMITNAME", in.readLine());
+			out.println(name);
+			assertTrue(in.readLine().startsWith("NAMEACCEPTED"));
+			assertEquals("STARTTEST", in.readLine());
+		}
+	}
+
+	private static void awaitUnregistered(String name) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (Server.client(name) != null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertNull(Server.client(name));
+	}
+
+	public void testRegisterEchoAndClose() throws Exception {
+		TestClient a = new TestClient(server.getPort());
+		a.register("nio-a");
+		TestClient b = new TestClient(server.getPort());
+		b.register("nio-b");
+		assertNotNull(Server.client("nio-a"));
+
+		a.out.println("hello");
+		assertEquals("MESSAGE nio-a: hello", a.in.readLine());
+		assertEquals("MESSAGE nio-a: hello", b.in.readLine());
+
+		a.out.println("exit");
+		assertNull(a.in.readLine());
+		awaitUnregistered("nio-a");
+		b.socket.close();
+		awaitUnregistered("nio-b");
+	}
+
+	public void testTakenNameRequestedAgain() throws Exception {
+		TestClient a = new TestClient(server.getPort());
+		a.register("nio-taken");
+		TestClient b = new TestClient(server.getPort());
+		assertEquals("SUBMITNAME", b.in.readLine());
+		b.out.println("nio-taken");
+		assertEquals("SUBMITNAME", b.in.readLine());
+		b.out.println("nio-other");
+		assertTrue(b.in.readLine().startsWith("NAMEACCEPTED"));
+		a.socket.close();
+		b.socket.close();
+		awaitUnregistered("nio-taken");
+		awaitUnregistered("nio-other");
+	}
+
+	public void testWorkerSurvivesFailingTask() throws Exception {
+		IoWorker worker = new IoWorker();
+		Thread thread = new Thread(worker, "nio-test-worker");
+		thread.setDaemon(true);
+		thread.start();
+		worker.execute(new Runnable() {
+			public void run() {
+				throw new IllegalStateException("test");
+			}
+		});
+		final CountDownLatch ran = new CountDownLatch(1);
+		worker.execute(new Runnable() {
+			public void run() {
+				ran.countDown();
+			}
+		});
+		assertTrue(ran.await(5, TimeUnit.SECONDS));
+		assertTrue(thread.isAlive());
+		thread.interrupt();
+	}
+}
@@ -0,0 +1,57 @@
+package com.schmidt.server.registry;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.schmidt.server.broadcast.OutboundQueue;
+import com.schmidt.server.broadcast.SlowConsumerPolicy;
+import com.schmidt.server.domain.Client;
+import com.schmidt.server.metrics.ServerMetrics;
+
+/**
+ * Unit test for the silent client check.
+ */
+public class ClientMonitorTest extends TestCase {
+
+	private static final long SECOND = 1000000000L;
+
+	private final ClientRegistry registry = new ClientRegistry();
+	private final ServerMetrics metrics = new ServerMetrics();
+	private final ClientMonitor monitor = new ClientMonitor(registry, 2, metrics);
+	private final AtomicInteger closed = new AtomicInteger();
+
+	private Client connect(String name, long now) {
+		Client client = new Client(name);
+		client.setOutbound(new OutboundQueue(10, SlowConsumerPolicy.DROP, new Closeable() {
+			public void close() {
+				closed.incrementAndGet();
+			}
+		}, null));
+		client.heartbeat(now);
+		registry.add(client);
+		return client;
+	}
+
+	public void testSilentClientDisconnectedOnce() {
+		connect("a", 0);
+		Client b = connect("b", 0);
+		b.heard(8 * SECOND);
+		assertEquals(0, monitor.check(10 * SECOND));
+		assertEquals(1, monitor.check(11 * SECOND));
+		assertEquals(0, monitor.check(12 * SECOND));
+		assertEquals(1, closed.get());
+		assertEquals(1, metrics.getEvictions());
+	}
+
+	public void testClientsWithoutHeartbeatsKept() {
+		Client quiet = new Client("old");
+		quiet.setOutbound(new OutboundQueue(10, SlowConsumerPolicy.DROP, null, null));
+		registry.add(quiet);
+		Client logical = connect("logical", 0);
+		logical.setParent(quiet);
+		assertEquals(0, monitor.check(System.nanoTime() + 60 * SECOND));
+		assertEquals(0, closed.get());
+	}
+}
@@ -0,0 +1,94 @@
+package com.schmidt.server.registry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.schmidt.server.domain.Client;
+
+/**
+ * Unit test for the client registry.
+ */
+public class ClientRegistryTest extends TestCase {
+
+	public void testDuplicateNameRejected() {
+		ClientRegistry registry = new ClientRegistry();
+		assertTrue(registry.add(new Client("a")));
+		assertTrue(registry.add(new Client("b")));
+		assertFalse(registry.add(new Client("a")));
+		assertEquals(2, registry.size());
+	}
+
+	public void testRemoveFreesName() {
+		ClientRegistry registry = new ClientRegistry();
+		Client client = new Client("a");
+		registry.add(client);
+		assertTrue(registry.remove(client));
+		assertFalse(registry.remove(client));
+		assertNull(registry.remove("a"));
+		assertTrue(registry.add(new Client("a")));
+	}
+
+	public void testRemoveKeepsClientRegisteredAgain() {
+		ClientRegistry registry = new ClientRegistry();
+		Client old = new Client("a");
+		registry.add(old);
+		assertNotNull(registry.remove("a"));
+		Client again = new Client("a");
+		registry.add(again);
+		assertFalse(registry.remove(old));
+		assertSame(again, registry.get("a"));
+		assertTrue(registry.remove(again));
+	}
+
+	public void testListenerEvents() {
+		ClientRegistry registry = new ClientRegistry();
+		final AtomicInteger joined = new AtomicInteger();
+		final AtomicInteger left = new AtomicInteger();
+		registry.addListener(new RegistryListener() {
+			public void clientJoined(Client client) {
+				joined.incrementAndGet();
+			}
+
+			public void clientLeft(Client client) {
+				left.incrementAndGet();
+			}
+		});
+
+		registry.add(new Client("a"));
+		registry.add(new Client("a"));
+		registry.remove("a");
+		registry.remove("a");
+
+		assertEquals(1, joined.get());
+		assertEquals(1, left.get());
+	}
+
+	public void testConcurrentRegistrationOfSameName() throws InterruptedException {
+		final ClientRegistry registry = new ClientRegistry();
+		final AtomicInteger accepted = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[16];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					if (registry.add(new Client("same"))) {
+						accepted.incrementAndGet();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, accepted.get());
+	}
+}
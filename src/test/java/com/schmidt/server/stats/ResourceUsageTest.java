@@ -0,0 +1,67 @@
+package com.schmidt.server.stats;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.Status;
+
+/**
+ * Unit test for flagging clients that are CPU or GC bound.
+ */
+public class ResourceUsageTest extends TestCase {
+
+	public void testCpuBound() {
+		// 10 seconds on 2 processors using 19 seconds of CPU
+		ResourceUsage usage = ResourceUsage.between(status(0, 0, 0), status(10, 19, 0));
+		assertEquals(0.95, usage.getCpu(), 1e-9);
+		assertTrue(usage.isCpuBound());
+		assertFalse(usage.isGcBound());
+		assertEquals("CPU", usage.getBound());
+	}
+
+	/**
+	 * One saturated thread on a 16 processor machine is only 6% of all of
+	 * them, but the client is still held up by it.
+	 */
+	public void testOneCoreOfMany() {
+		Status from = status(0, 0, 0);
+		Status to = status(10, 9.5, 0);
+		from.setProcessors(16);
+		to.setProcessors(16);
+		ResourceUsage usage = ResourceUsage.between(from, to);
+		assertEquals(0.95 / 16, usage.getCpu(), 1e-9);
+		assertEquals(0.95, usage.getCores(), 1e-9);
+		assertEquals("CPU", usage.getBound());
+	}
+
+	public void testGcBound() {
+		ResourceUsage usage = ResourceUsage.between(status(0, 0, 0), status(10, 4, 2));
+		assertEquals(0.2, usage.getGc(), 1e-9);
+		assertEquals("GC", usage.getBound());
+	}
+
+	public void testStorageBound() {
+		ResourceUsage usage = ResourceUsage.between(status(0, 0, 0), status(10, 2, 0.1));
+		assertEquals("", usage.getBound());
+	}
+
+	public void testUnknownValues() {
+		Status from = new Status();
+		from.setTimestamp(1);
+		Status to = new Status();
+		to.setTimestamp(1000000001);
+		ResourceUsage usage = ResourceUsage.between(from, to);
+		assertEquals(-1.0, usage.getCpu());
+		assertEquals("", usage.getBound());
+		assertNull(ResourceUsage.between(to, from));
+		assertNull(ResourceUsage.between(null, to));
+	}
+
+	private static Status status(double secs, double cpuSecs, double gcSecs) {
+		Status status = new Status();
+		status.setTimestamp((long) (secs * 1e9));
+		status.setProcessors(2);
+		status.setCpuNanos((long) (cpuSecs * 1e9));
+		status.setGcNanos((long) (gcSecs * 1e9));
+		return status;
+	}
+}
@@ -0,0 +1,89 @@
+package com.schmidt.server.stats;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Operation;
+
+/**
+ * Unit test for the run statistics across clients joining and leaving.
+ */
+public class ResultAggregatorTest extends TestCase {
+
+	private final ResultAggregator aggregator = new ResultAggregator(10, 6);
+	private final ChunkResult write = new ChunkResult();
+
+	protected void setUp() {
+		write.setOperation(Operation.WRITE);
+		write.setChunkSize(4096);
+		write.setNanos(200000);
+		write.setWriteNanos(150000);
+	}
+
+	private static void record(ClientStats stats, ChunkResult result, int count) {
+		for (int i = 0; i < count; i++) {
+			stats.record(result);
+		}
+	}
+
+	public void testOnlyReportedPhasesAllocated() {
+		ClientStats stats = aggregator.join("a");
+		assertNull(stats.getHistogram());
+		record(stats, write, 1);
+		assertNotNull(stats.getHistogram(Phase.TOTAL));
+		assertNotNull(stats.getHistogram(Phase.WRITE));
+		assertNull(stats.getHistogram(Phase.FSYNC));
+		assertNull(stats.getHistogram(Phase.READ));
+		assertNull(stats.getHistogram(Phase.DELAY));
+	}
+
+	/**
+	 * Creating and deleting files has its own phase and leaves the
+	 * operation and byte counts alone.
+	 */
+	public void testMetadataKeptOutOfTotal() {
+		ClientStats stats = aggregator.join("a");
+		ChunkResult metadata = new ChunkResult();
+		metadata.setOperation(Operation.METADATA);
+		metadata.setNanos(50000);
+		record(stats, write, 2);
+		record(stats, metadata, 2);
+		assertEquals(2, stats.getChunks());
+		assertEquals(8192, stats.getBytes());
+		assertEquals(2, stats.getHistogram(Phase.TOTAL).getCount());
+		assertEquals(2, stats.getHistogram(Phase.METADATA).getCount());
+		aggregator.report();
+		assertEquals(2, aggregator.getRun(Phase.METADATA).getCount());
+	}
+
+	public void testDepartedClientsKeptInRun() {
+		ClientStats a = aggregator.join("a");
+		ClientStats b = aggregator.join("b");
+		record(a, write, 10);
+		record(b, write, 5);
+		aggregator.report();
+		assertEquals(15, aggregator.getRun(Phase.WRITE).getCount());
+
+		record(a, write, 3);
+		aggregator.leave(a);
+		assertEquals(1, aggregator.getClients().size());
+		record(b, write, 2);
+		aggregator.report();
+		assertEquals(20, aggregator.getRun(Phase.TOTAL).getCount());
+		assertEquals(20, aggregator.getRun(Phase.WRITE).getCount());
+
+		aggregator.report();
+		assertEquals(20, aggregator.getRun(Phase.TOTAL).getCount());
+	}
+
+	public void testStatsKeptUntilLastConnectionLeaves() {
+		ClientStats first = aggregator.join("a");
+		ClientStats second = aggregator.join("a");
+		assertSame(first, second);
+		aggregator.leave(first);
+		assertEquals(1, aggregator.getClients().size());
+		aggregator.leave(second);
+		assertEquals(0, aggregator.getClients().size());
+		assertNotSame(first, aggregator.join("a"));
+	}
+}
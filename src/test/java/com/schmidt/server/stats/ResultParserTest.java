@@ -0,0 +1,141 @@
+package com.schmidt.server.stats;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.Operation;
+import com.schmidt.protocol.Status;
+import com.schmidt.protocol.TextFormat;
+
+/**
+ * Unit test for parsing line protocol chunk results.
+ */
+public class ResultParserTest extends TestCase {
+
+	public void testChunkResult() {
+		ChunkResult result = new ChunkResult();
+		assertTrue(ResultParser.parse("client1 chunksize: 10485760 time to write: 0.015 secs", result));
+		assertEquals(10485760, result.getChunkSize());
+		assertEquals(15000000, result.getNanos());
+		assertEquals(15000000, result.getWriteNanos());
+		assertEquals(0, result.getSyncNanos());
+		assertFalse(result.isLast());
+	}
+
+	public void testLastChunkResult() {
+		ChunkResult result = new ChunkResult();
+		assertTrue(ResultParser.parse("client1 last chunksize: 4096 time to write: 1.0E-4 secs", result));
+		assertEquals(4096, result.getChunkSize());
+		assertEquals(100000, result.getNanos());
+		assertTrue(result.isLast());
+	}
+
+	public void testBreakdown() {
+		ChunkResult result = new ChunkResult();
+		assertTrue(ResultParser.parse("client1 chunksize: 4096 time to write: 0.001234567 secs " +
+				"(write 1000000 flush 200000 fsync 34567 ns)", result));
+		assertEquals(1234567, result.getNanos());
+		assertEquals(1000000, result.getWriteNanos());
+		assertEquals(200000, result.getFlushNanos());
+		assertEquals(34567, result.getSyncNanos());
+	}
+
+	public void testRead() {
+		ChunkResult result = new ChunkResult();
+		assertTrue(ResultParser.parse("client1 chunksize: 4096 time to read: 1.5E-5 secs", result));
+		assertEquals(Operation.READ, result.getOperation());
+		assertEquals(4096, result.getChunkSize());
+		assertEquals(15000, result.getNanos());
+		assertEquals(0, result.getWriteNanos());
+
+		assertTrue(ResultParser.parse("client1 chunksize: 4096 time to write: 1.5E-5 secs", result));
+		assertEquals(Operation.WRITE, result.getOperation());
+	}
+
+	public void testVerifyRoundTrip() {
+		ChunkResult sent = new ChunkResult();
+		sent.setOperation(Operation.VERIFY);
+		sent.setChunkSize(65536);
+		sent.setNanos(250000);
+		sent.setLast(true);
+		ChunkResult result = new ChunkResult();
+		assertTrue(ResultParser.parse(TextFormat.chunkResult("client1", sent), result));
+		assertEquals(Operation.VERIFY, result.getOperation());
+		assertEquals(65536, result.getChunkSize());
+		assertEquals(250000, result.getNanos());
+		assertEquals(0, result.getWriteNanos());
+		assertTrue(result.isLast());
+	}
+
+	public void testMetadataRoundTrip() {
+		ChunkResult sent = new ChunkResult();
+		sent.setOperation(Operation.METADATA);
+		sent.setNanos(70000);
+		ChunkResult result = new ChunkResult();
+		assertTrue(ResultParser.parse(TextFormat.chunkResult("client1", sent), result));
+		assertEquals(Operation.METADATA, result.getOperation());
+		assertEquals(0, result.getChunkSize());
+		assertEquals(70000, result.getNanos());
+	}
+
+	public void testFormatRoundTrip() {
+		ChunkResult result = new ChunkResult();
+		result.setOperation(Operation.READ);
+		result.setChunkSize(8192);
+		result.setNanos(123456);
+		ChunkResult parsed = new ChunkResult();
+		assertTrue(ResultParser.parse(TextFormat.chunkResult("client1", result), parsed));
+		assertEquals(Operation.READ, parsed.getOperation());
+		assertEquals(8192, parsed.getChunkSize());
+		assertEquals(123456, parsed.getNanos());
+		assertEquals(0, parsed.getWorker());
+
+		result.setOperation(Operation.WRITE);
+		result.setWorker(3);
+		result.setWriteNanos(100000);
+		result.setDelayNanos(23456);
+		assertTrue(ResultParser.parse(TextFormat.chunkResult("client1", result), parsed));
+		assertEquals(23456, parsed.getDelayNanos());
+		assertEquals(Operation.WRITE, parsed.getOperation());
+		assertEquals(3, parsed.getWorker());
+		assertEquals(100000, parsed.getWriteNanos());
+	}
+
+	public void testOtherLinesIgnored() {
+		ChunkResult result = new ChunkResult();
+		assertFalse(ResultParser.parse("HeartBeat: 2016/01/01 10:00:00", result));
+		assertFalse(ResultParser.parse("Status Memory: 12345", result));
+		assertFalse(ResultParser.parse("client1 chunksize: x time to write: 1 secs", result));
+	}
+
+	public void testStatusRoundTrip() {
+		Status sent = new Status();
+		sent.setTotalMemory(256L << 20);
+		sent.setHeapUsed(100L << 20);
+		sent.setCpuNanos(12000000000L);
+		sent.setProcessors(4);
+		sent.setSystemLoad(2.25);
+		sent.setGcCount(12);
+		sent.setDiskBusyMillis(3000);
+
+		Status status = new Status();
+		assertTrue(ResultParser.parseStatus(TextFormat.status(sent), status));
+		assertEquals(256L << 20, status.getTotalMemory());
+		assertEquals(100L << 20, status.getHeapUsed());
+		assertEquals(12000000000L, status.getCpuNanos());
+		assertEquals(4, status.getProcessors());
+		assertEquals(2.25, status.getSystemLoad());
+		assertEquals(12, status.getGcCount());
+		assertEquals(-1, status.getGcNanos());
+		assertEquals(3000, status.getDiskBusyMillis());
+	}
+
+	public void testOldStatus() {
+		Status status = new Status();
+		status.setCpuNanos(5);
+		assertTrue(ResultParser.parseStatus("Status Memory: 1024", status));
+		assertEquals(1024, status.getTotalMemory());
+		assertEquals(-1, status.getCpuNanos());
+		assertFalse(ResultParser.parseStatus("client1 chunksize: 4096 time to write: 0.1 secs", status));
+	}
+}
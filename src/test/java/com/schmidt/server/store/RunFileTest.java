@@ -0,0 +1,179 @@
+package com.schmidt.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import com.schmidt.protocol.ChunkResult;
+import com.schmidt.protocol.IntervalResult;
+import com.schmidt.protocol.LatencyHistogram;
+import com.schmidt.protocol.Operation;
+
+/**
+ * Unit test for writing and reading run files.
+ */
+public class RunFileTest extends TestCase {
+
+	private static final long START = 1476000000000000000L;
+
+	private File file;
+
+	protected void setUp() throws IOException {
+		file = File.createTempFile("run", ".sfr");
+	}
+
+	protected void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Enough results for several index blocks, one every millisecond,
+	 * alternating between two clients.
+	 */
+	public void testRoundTrip() throws IOException {
+		int count = RunFileFormat.RECORDS_PER_BLOCK * RunFileFormat.BLOCKS_PER_INDEX * 2 + 100;
+		RunFileWriter writer = new RunFileWriter(file);
+		write(writer, count);
+		writer.close();
+
+		RunFileReader reader = new RunFileReader(file);
+		try {
+			assertTrue(reader.isComplete());
+			assertEquals(count, reader.getCount());
+			assertEquals("a", reader.getName(0));
+			assertEquals("b", reader.getName(1));
+			assertEquals(START, reader.getFirstTimestamp());
+			assertEquals(START + (count - 1) * 1000000L, reader.getLastTimestamp());
+
+			final AtomicLong seen = new AtomicLong();
+			final AtomicLong reads = new AtomicLong();
+			reader.scan(START + 1000 * 1000000L, START + 1999 * 1000000L, new RunFileReader.Visitor() {
+				public void result(int client, ChunkResult result) {
+					long i = (result.getTimestamp() - START) / 1000000L;
+					assertEquals(i % 2, client);
+					assertEquals(i, result.getNanos());
+					assertEquals(4096, result.getChunkSize());
+					seen.incrementAndGet();
+					if (result.getOperation() == Operation.READ) {
+						reads.incrementAndGet();
+					}
+				}
+
+				public void interval(int client, IntervalResult interval) {
+					fail("No intervals were written");
+				}
+			});
+			assertEquals(1000, seen.get());
+			assertEquals(500, reads.get());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * A file that was flushed but never closed is read block by block.
+	 */
+	public void testUnclosedFile() throws IOException {
+		RunFileWriter writer = new RunFileWriter(file);
+		write(writer, 5000);
+		writer.flush();
+
+		RunFileReader reader = new RunFileReader(file);
+		try {
+			assertFalse(reader.isComplete());
+			assertEquals(5000, reader.getCount());
+			assertEquals("b", reader.getName(1));
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+
+	/**
+	 * Intervals are stored with their histogram rather than one record per
+	 * operation, and read back with the same buckets, sum and maximum.
+	 */
+	public void testIntervals() throws IOException {
+		RunFileWriter writer = new RunFileWriter(file);
+		int a = writer.client("a");
+		IntervalResult interval = new IntervalResult();
+		interval.setOperation(Operation.READ);
+		interval.setWorker(3);
+		ChunkResult result = new ChunkResult();
+		result.setOperation(Operation.READ);
+		result.setWorker(3);
+		result.setChunkSize(4096);
+		for (int s = 0; s < 100; s++) {
+			interval.reset(START + s * 1000000000L);
+			for (int i = 0; i < 10000; i++) {
+				result.setTimestamp(START + s * 1000000000L + i * 1000L);
+				result.setNanos(1000 + i * 37);
+				interval.record(result);
+			}
+			writer.append(a, interval);
+		}
+		writer.flush();
+		assertEquals(1000000, writer.getWritten());
+		assertTrue(file.length() < 100 * 2000);
+
+		RunFileReader unclosed = new RunFileReader(file);
+		try {
+			assertFalse(unclosed.isComplete());
+			assertEquals(1000000, unclosed.getCount());
+		} finally {
+			unclosed.close();
+		}
+		writer.close();
+
+		RunFileReader reader = new RunFileReader(file);
+		try {
+			assertTrue(reader.isComplete());
+			assertEquals(1000000, reader.getCount());
+			assertEquals(START + 9999 * 1000L, reader.getFirstTimestamp());
+			assertEquals(START + 99 * 1000000000L + 9999 * 1000L, reader.getLastTimestamp());
+
+			final IntervalResult expected = interval;
+			final AtomicLong seen = new AtomicLong();
+			reader.scan(START + 50 * 1000000000L, START + 59 * 1000000000L + 9999 * 1000L, new RunFileReader.Visitor() {
+				public void result(int client, ChunkResult result) {
+					fail("No results were written");
+				}
+
+				public void interval(int client, IntervalResult interval) {
+					assertEquals(0, client);
+					assertEquals(START + (50 + seen.get()) * 1000000000L, interval.getStart());
+					assertEquals(interval.getStart() + 9999 * 1000L, interval.getTimestamp());
+					assertEquals(Operation.READ, interval.getOperation());
+					assertEquals(3, interval.getWorker());
+					assertEquals(10000, interval.getCount());
+					assertEquals(10000 * 4096L, interval.getBytes());
+					LatencyHistogram read = interval.getHistogram(IntervalResult.TOTAL);
+					LatencyHistogram written = expected.getHistogram(IntervalResult.TOTAL);
+					assertEquals(written.getSum(), read.getSum());
+					assertEquals(written.getMax(), read.getMax());
+					for (int i = 0; i < written.getBucketCount(); i++) {
+						assertEquals(written.getCountAt(i), read.getCountAt(i));
+					}
+					seen.incrementAndGet();
+				}
+			});
+			assertEquals(10, seen.get());
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void write(RunFileWriter writer, int count) throws IOException {
+		int[] clients = { writer.client("a"), writer.client("b") };
+		ChunkResult result = new ChunkResult();
+		result.setChunkSize(4096);
+		for (int i = 0; i < count; i++) {
+			result.setTimestamp(START + i * 1000000L);
+			result.setNanos(i);
+			result.setOperation(i % 4 < 2 ? Operation.WRITE : Operation.READ);
+			writer.append(clients[i % 2], result);
+		}
+	}
+}